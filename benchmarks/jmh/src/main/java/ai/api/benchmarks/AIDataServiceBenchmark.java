@@ -0,0 +1,124 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.benchmarks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceContext;
+import ai.api.AIServiceContextBuilder;
+import ai.api.AIServiceException;
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.stub.StubServer;
+
+/**
+ * End-to-end calls of {@link AIDataService} against the embedded {@link StubServer}.
+ * <p>
+ * Sample time mode reports latency percentiles, throughput mode reports calls per second. Count
+ * of requests per connection is printed after every iteration to show connection reuse.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(16)
+@State(Scope.Benchmark)
+public class AIDataServiceBenchmark {
+
+  /**
+   * Service latency in milliseconds
+   */
+  @Param({"0", "20"})
+  private int latency;
+
+  private StubServer server;
+  private AIDataService dataService;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = new StubServer();
+    server.setLatency(latency, 0);
+    server.start();
+    final AIConfiguration config = new AIConfiguration("benchmark");
+    config.setServiceUrl(server.getUrl());
+    dataService = new AIDataService(config);
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Setup(Level.Iteration)
+  public void resetStatistics() {
+    server.resetStatistics();
+  }
+
+  @TearDown(Level.Iteration)
+  public void printConnectionReuse() {
+    final long connections = Math.max(1, server.getConnectionCount());
+    System.out.printf("%n%d requests over %d connections, %.2f requests per connection%n",
+        server.getRequestCount(), connections, (double) server.getRequestCount() / connections);
+  }
+
+  /**
+   * Per thread session, so contexts of different threads do not mix
+   */
+  @State(Scope.Thread)
+  public static class Session {
+
+    AIServiceContext context;
+
+    @Setup
+    public void setUp() {
+      context = new AIServiceContextBuilder().generateSessionId().build();
+    }
+  }
+
+  @Benchmark
+  public AIResponse textQuery(final Session session) throws AIServiceException {
+    return dataService.request(new AIRequest("book a table for four"), session.context);
+  }
+
+  @Benchmark
+  public AIContext contextRoundTrip(final Session session) throws AIServiceException {
+    dataService.addActiveContext(Collections.singletonList(new AIContext("booking")),
+        session.context);
+    return dataService.getActiveContext("booking", session.context);
+  }
+}
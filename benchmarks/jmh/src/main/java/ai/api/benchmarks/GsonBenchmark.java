@@ -0,0 +1,130 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+import ai.api.GsonFactory;
+import ai.api.ProjectedResponse;
+import ai.api.Projection;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.BinaryResponseReader;
+import ai.api.model.BinaryResponseWriter;
+
+/**
+ * Serialization of requests and deserialization of responses with rich messages
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GsonBenchmark {
+
+  private Gson gson;
+  private Gson lazyGson;
+  private AIRequest request;
+  private String requestJson;
+  private String responseJson;
+  private AIResponse response;
+  private Projection projection;
+  private byte[] responseBinary;
+
+  @Setup
+  public void setUp() throws IOException {
+    gson = GsonFactory.getDefaultFactory().getGson();
+    lazyGson = GsonFactory.getDefaultFactory().getLazyGson();
+    request = Payloads.createRequest();
+    requestJson = gson.toJson(request);
+    responseJson = Payloads.loadResponseJson();
+    response = gson.fromJson(responseJson, AIResponse.class);
+    projection = Projection.of("result.metadata.intentName", "result.score");
+    responseBinary = writeBinary();
+  }
+
+  @Benchmark
+  public String serializeRequest() {
+    return gson.toJson(request);
+  }
+
+  @Benchmark
+  public AIRequest deserializeRequest() {
+    return gson.fromJson(requestJson, AIRequest.class);
+  }
+
+  @Benchmark
+  public AIResponse deserializeResponse() {
+    return gson.fromJson(responseJson, AIResponse.class);
+  }
+
+  @Benchmark
+  public String readActionLazily() {
+    return lazyGson.fromJson(responseJson, AIResponse.class).getResult().getAction();
+  }
+
+  @Benchmark
+  public String readSpeechLazily() {
+    return lazyGson.fromJson(responseJson, AIResponse.class).getResult().getFulfillment()
+        .getSpeech();
+  }
+
+  @Benchmark
+  public ProjectedResponse projectResponse() {
+    return projection.read(responseJson);
+  }
+
+  @Benchmark
+  public String serializeResponse() {
+    return gson.toJson(response);
+  }
+
+  @Benchmark
+  public byte[] writeBinaryResponse() throws IOException {
+    return writeBinary();
+  }
+
+  @Benchmark
+  public AIResponse readBinaryResponse() throws IOException {
+    return new BinaryResponseReader(new ByteArrayInputStream(responseBinary)).read();
+  }
+
+  private byte[] writeBinary() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final BinaryResponseWriter writer = new BinaryResponseWriter(out);
+    writer.write(response);
+    writer.close();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.benchmarks;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.api.util.ParametersConverter;
+import ai.api.util.PartialDate;
+
+/**
+ * Parsing of parameter values in protocol formats
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParametersConverterBenchmark {
+
+  private String date = "2017-02-10";
+  private String dateTime = "2017-02-10T19:00:00+0000";
+  private String time = "19:00:00";
+  private String partialDate = "uuuu-02-10";
+  private String integer = "42";
+  private String floatNumber = "12.5";
+
+  @Benchmark
+  public Date parseDate() throws ParseException {
+    return ParametersConverter.parseDate(date);
+  }
+
+  @Benchmark
+  public Date parseDateTime() throws ParseException {
+    return ParametersConverter.parseDateTime(dateTime);
+  }
+
+  @Benchmark
+  public Date parseTime() throws ParseException {
+    return ParametersConverter.parseTime(time);
+  }
+
+  @Benchmark
+  public PartialDate parsePartialDate() throws ParseException {
+    return ParametersConverter.parsePartialDate(partialDate);
+  }
+
+  @Benchmark
+  public int parseInteger() {
+    return ParametersConverter.parseInteger(integer);
+  }
+
+  @Benchmark
+  public float parseFloat() {
+    return ParametersConverter.parseFloat(floatNumber);
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+import ai.api.model.Location;
+import ai.api.util.IOUtils;
+
+/**
+ * Realistic payloads used by benchmarks
+ */
+final class Payloads {
+
+  private static final String RESPONSE_RESOURCE = "response.json";
+
+  private Payloads() {
+  }
+
+  /**
+   * @return Response with parameters, contexts, metadata and rich fulfillment messages of all types
+   */
+  static String loadResponseJson() {
+    final InputStream inputStream = Payloads.class.getResourceAsStream(RESPONSE_RESOURCE);
+    if (inputStream == null) {
+      throw new IllegalStateException("Resource not found: " + RESPONSE_RESOURCE);
+    }
+    try {
+      try {
+        return IOUtils.readAll(inputStream);
+      } finally {
+        inputStream.close();
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Can't read resource: " + RESPONSE_RESOURCE, e);
+    }
+  }
+
+  /**
+   * @return Query request with contexts, user entities and location
+   */
+  static AIRequest createRequest() {
+    final AIRequest request = new AIRequest("book a table for four tomorrow at 7 pm");
+    request.setLanguage("en");
+    request.setSessionId("5b0e2d4c-8a3f-4c69-9f57-3f0b5a6d7e21");
+    request.setTimezone("Europe/Berlin");
+    request.setLocation(new Location(52.525, 13.369));
+
+    final List<AIContext> contexts = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final AIContext context = new AIContext("context" + i);
+      final Map<String, String> parameters = new HashMap<>();
+      parameters.put("city", "Berlin");
+      parameters.put("guests", String.valueOf(i + 2));
+      context.setParameters(parameters);
+      context.setLifespan(5);
+      contexts.add(context);
+    }
+    request.setContexts(contexts);
+
+    final Entity entity = new Entity("restaurant");
+    entity.addEntry(new EntityEntry("trattoria", Arrays.asList("trattoria", "trattoria centrale")));
+    entity.addEntry(new EntityEntry("osteria", Arrays.asList("osteria", "osteria berlin")));
+    entity.addEntry(new EntityEntry("pizzeria", Arrays.asList("pizzeria", "pizzeria napoli")));
+    request.setEntities(Arrays.asList(entity));
+    return request;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+
+import ai.api.GsonFactory;
+import ai.api.model.AIOutputContext;
+import ai.api.model.AIResponse;
+import ai.api.model.Result;
+
+/**
+ * Typed parameter getters of a parsed response
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultBenchmark {
+
+  private Result result;
+
+  @Setup
+  public void setUp() {
+    final AIResponse response = GsonFactory.getDefaultFactory().getGson()
+        .fromJson(Payloads.loadResponseJson(), AIResponse.class);
+    result = response.getResult();
+  }
+
+  @Benchmark
+  public String getStringParameter() {
+    return result.getStringParameter("cuisine");
+  }
+
+  @Benchmark
+  public int getIntParameter() {
+    return result.getIntParameter("guests");
+  }
+
+  @Benchmark
+  public float getFloatParameter() {
+    return result.getFloatParameter("price");
+  }
+
+  @Benchmark
+  public Date getDateParameter() {
+    return result.getDateParameter("date");
+  }
+
+  @Benchmark
+  public Date getDateTimeParameter() {
+    return result.getDateTimeParameter("date-time");
+  }
+
+  @Benchmark
+  public Date getTimeParameter() {
+    return result.getTimeParameter("time");
+  }
+
+  @Benchmark
+  public JsonObject getComplexParameter() {
+    return result.getComplexParameter("location");
+  }
+
+  @Benchmark
+  public AIOutputContext getContext() {
+    return result.getContext("location-selected");
+  }
+}
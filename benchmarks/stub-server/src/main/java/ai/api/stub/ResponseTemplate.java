@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.stub;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query response body with <code>${name}</code> placeholders.
+ * <p>
+ * Supported placeholders: <code>query</code>, <code>sessionId</code>, <code>lang</code>,
+ * <code>id</code> (random UUID) and <code>timestamp</code>. Values are JSON escaped, so
+ * placeholders should be put inside JSON strings.
+ */
+public class ResponseTemplate {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z]+)\\}");
+
+  /**
+   * Echo response with a single text message
+   */
+  public static final ResponseTemplate DEFAULT = new ResponseTemplate("{"
+      + "\"id\":\"${id}\","
+      + "\"timestamp\":\"${timestamp}\","
+      + "\"lang\":\"${lang}\","
+      + "\"result\":{"
+      + "\"source\":\"agent\","
+      + "\"resolvedQuery\":\"${query}\","
+      + "\"action\":\"stub.echo\","
+      + "\"actionIncomplete\":false,"
+      + "\"parameters\":{},"
+      + "\"contexts\":[],"
+      + "\"metadata\":{\"intentId\":\"stub-echo\",\"intentName\":\"stub.echo\"},"
+      + "\"fulfillment\":{"
+      + "\"speech\":\"You said: ${query}\","
+      + "\"messages\":[{\"type\":0,\"speech\":\"You said: ${query}\"}]"
+      + "},"
+      + "\"score\":1.0"
+      + "},"
+      + "\"status\":{\"code\":200,\"errorType\":\"success\"},"
+      + "\"sessionId\":\"${sessionId}\""
+      + "}");
+
+  private final String template;
+
+  /**
+   * @param template Response body. Cannot be <code>null</code>
+   */
+  public ResponseTemplate(final String template) {
+    if (template == null) {
+      throw new IllegalArgumentException("template must not be null");
+    }
+    this.template = template;
+  }
+
+  /**
+   * @param values Placeholder values. Missing values are replaced with empty strings
+   * @return Response body
+   */
+  public String render(final Map<String, String> values) {
+    final Matcher matcher = PLACEHOLDER.matcher(template);
+    final StringBuffer result = new StringBuffer(template.length() + 64);
+    while (matcher.find()) {
+      final String name = matcher.group(1);
+      final String value;
+      if ("id".equals(name)) {
+        value = UUID.randomUUID().toString();
+      } else if ("timestamp".equals(name)) {
+        value = formatTimestamp(new Date());
+      } else {
+        value = values.get(name);
+      }
+      matcher.appendReplacement(result, Matcher.quoteReplacement(escape(value)));
+    }
+    matcher.appendTail(result);
+    return result.toString();
+  }
+
+  private static String formatTimestamp(final Date date) {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(date);
+  }
+
+  private static String escape(final String value) {
+    if (value == null) {
+      return "";
+    }
+    final StringBuilder result = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          result.append("\\\"");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            result.append(String.format("\\u%04x", (int) c));
+          } else {
+            result.append(c);
+          }
+      }
+    }
+    return result.toString();
+  }
+}
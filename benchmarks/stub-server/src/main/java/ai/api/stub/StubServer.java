@@ -0,0 +1,606 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.GsonFactory;
+import ai.api.model.AIContext;
+import ai.api.util.IOUtils;
+
+/**
+ * Embedded stand-in of the API.AI service for offline end-to-end tests and benchmarks.
+ * <p>
+ * Implements the endpoints used by <code>AIDataService</code>: <code>/query</code> (JSON and
+ * multipart voice requests), <code>/contexts</code> (kept in memory per session) and
+ * <code>/userEntities</code>. Query responses are rendered from a {@link ResponseTemplate}.
+ * Latency and errors can be injected to check client behavior under a slow or failing service.
+ * <p>
+ * Point a client to the server with <code>AIConfiguration.setServiceUrl(server.getUrl())</code>.
+ * <p>
+ * The server writes response headers and body separately, so without TCP_NODELAY Nagle's
+ * algorithm and delayed ACK add about 40 ms to every response. {@link #main(String[])} enables
+ * it, an embedded server needs <code>-Dsun.net.httpserver.nodelay=true</code> on the command line.
+ */
+public class StubServer {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int DEFAULT_THREADS = 64;
+
+  private static final String QUERY_PATH = "/query";
+  private static final String CONTEXTS_PATH = "/contexts";
+  private static final String USER_ENTITIES_PATH = "/userEntities";
+
+  private static final String SUCCESS_STATUS = "{\"code\":200,\"errorType\":\"success\"}";
+
+  /**
+   * Read once by the JDK server when its first instance is created, so it applies to the whole JVM
+   */
+  private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+  private final Gson gson = GsonFactory.getDefaultFactory().getGson();
+
+  private final int port;
+  private final int threads;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  private volatile ResponseTemplate queryTemplate = ResponseTemplate.DEFAULT;
+  private volatile long latencyMillis;
+  private volatile long latencyJitterMillis;
+  private volatile double errorRate;
+  private volatile int errorCode = 503;
+
+  /**
+   * Contexts by session id
+   */
+  private final ConcurrentMap<String, Map<String, AIContext>> sessions = new ConcurrentHashMap<>();
+
+  /**
+   * Remote addresses of accepted connections
+   */
+  private final ConcurrentMap<String, Boolean> connections = new ConcurrentHashMap<>();
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong errorCount = new AtomicLong();
+  private final AtomicLong voiceRequestCount = new AtomicLong();
+  private final AtomicLong uploadedEntityCount = new AtomicLong();
+
+  /**
+   * Create server listening on a random free port
+   */
+  public StubServer() {
+    this(0, DEFAULT_THREADS);
+  }
+
+  /**
+   * @param port Port to listen on, zero for a random free port
+   * @param threads Count of request handling threads
+   */
+  public StubServer(final int port, final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    this.port = port;
+    this.threads = threads;
+  }
+
+  /**
+   * Start accepting requests
+   */
+  public synchronized void start() throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("Server is already started");
+    }
+    server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException {
+        try {
+          dispatch(exchange);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * Stop the server, requests in progress are dropped
+   */
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+      executor = null;
+    }
+  }
+
+  /**
+   * @return Service url to be used in <code>AIConfiguration.setServiceUrl</code>
+   */
+  public synchronized String getUrl() {
+    if (server == null) {
+      throw new IllegalStateException("Server is not started");
+    }
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  private void dispatch(final HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+    connections.putIfAbsent(exchange.getRemoteAddress().toString(), Boolean.TRUE);
+    final byte[] body = readBody(exchange.getRequestBody());
+
+    injectLatency();
+    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+      errorCount.incrementAndGet();
+      respond(exchange, errorCode, "{\"status\":{\"code\":" + errorCode
+          + ",\"errorType\":\"injected_error\",\"errorDetails\":\"Injected by stub server\"}}");
+      return;
+    }
+
+    final String path = exchange.getRequestURI().getPath();
+    final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    if (path.endsWith(QUERY_PATH)) {
+      handleQuery(exchange, body);
+    } else if (path.endsWith(CONTEXTS_PATH)) {
+      handleContexts(exchange, query.get("sessionId"), null, body);
+    } else if (path.contains(CONTEXTS_PATH + "/")) {
+      final String name = path.substring(path.lastIndexOf('/') + 1);
+      handleContexts(exchange, query.get("sessionId"), name, body);
+    } else if (path.endsWith(USER_ENTITIES_PATH)) {
+      handleUserEntities(exchange, body);
+    } else {
+      respondStatus(exchange, 404);
+    }
+  }
+
+  private void handleQuery(final HttpExchange exchange, final byte[] body) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      respondStatus(exchange, 405);
+      return;
+    }
+    final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    final String requestJson;
+    if (contentType != null && contentType.startsWith("multipart/form-data")) {
+      voiceRequestCount.incrementAndGet();
+      requestJson = extractFormPart(body, contentType, "request");
+    } else {
+      requestJson = new String(body, UTF8);
+    }
+
+    final JsonObject request;
+    try {
+      final JsonElement element = requestJson != null ? new JsonParser().parse(requestJson) : null;
+      request = element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    } catch (final JsonSyntaxException e) {
+      respondStatus(exchange, 400);
+      return;
+    }
+    if (request == null) {
+      respondStatus(exchange, 400);
+      return;
+    }
+
+    final String sessionId = getString(request, "sessionId");
+    final Map<String, String> values = new HashMap<>();
+    values.put("query", getQueryText(request));
+    values.put("sessionId", sessionId);
+    values.put("lang", getString(request, "lang"));
+    if (sessionId != null && request.has("contexts") && request.get("contexts").isJsonArray()) {
+      final List<AIContext> contexts = new ArrayList<>();
+      for (final JsonElement context : request.getAsJsonArray("contexts")) {
+        contexts.add(gson.fromJson(context, AIContext.class));
+      }
+      storeContexts(sessionId, contexts);
+    }
+    respond(exchange, 200, queryTemplate.render(values));
+  }
+
+  private void handleContexts(final HttpExchange exchange, final String sessionId,
+      final String name, final byte[] body) throws IOException {
+    if (sessionId == null) {
+      respondStatus(exchange, 400);
+      return;
+    }
+    final String method = exchange.getRequestMethod();
+    final Map<String, AIContext> contexts = getSessionContexts(sessionId);
+    if ("GET".equals(method)) {
+      if (name == null) {
+        synchronized (contexts) {
+          respond(exchange, 200, gson.toJson(new ArrayList<>(contexts.values())));
+        }
+      } else {
+        final AIContext context;
+        synchronized (contexts) {
+          context = contexts.get(name);
+        }
+        if (context != null) {
+          respond(exchange, 200, gson.toJson(context));
+        } else {
+          respondNotFound(exchange);
+        }
+      }
+    } else if ("POST".equals(method) && name == null) {
+      final List<AIContext> added = parseContexts(new String(body, UTF8));
+      if (added == null) {
+        respondStatus(exchange, 400);
+        return;
+      }
+      final List<String> names = storeContexts(sessionId, added);
+      respond(exchange, 200,
+          "{\"names\":" + gson.toJson(names) + ",\"status\":" + SUCCESS_STATUS + "}");
+    } else if ("DELETE".equals(method)) {
+      final boolean removed;
+      synchronized (contexts) {
+        if (name == null) {
+          contexts.clear();
+          removed = true;
+        } else {
+          removed = contexts.remove(name) != null;
+        }
+      }
+      if (removed) {
+        respondStatus(exchange, 200);
+      } else {
+        respondNotFound(exchange);
+      }
+    } else {
+      respondStatus(exchange, 405);
+    }
+  }
+
+  private void handleUserEntities(final HttpExchange exchange, final byte[] body)
+      throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      respondStatus(exchange, 405);
+      return;
+    }
+    final JsonElement entities;
+    try {
+      entities = new JsonParser().parse(new String(body, UTF8));
+    } catch (final JsonSyntaxException e) {
+      respondStatus(exchange, 400);
+      return;
+    }
+    if (entities.isJsonArray()) {
+      uploadedEntityCount.addAndGet(entities.getAsJsonArray().size());
+    } else if (entities.isJsonObject() && entities.getAsJsonObject().has("entities")) {
+      uploadedEntityCount.addAndGet(entities.getAsJsonObject().getAsJsonArray("entities").size());
+    } else {
+      respondStatus(exchange, 400);
+      return;
+    }
+    respondStatus(exchange, 200);
+  }
+
+  private static String getString(final JsonObject object, final String name) {
+    final JsonElement value = object.get(name);
+    return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+  }
+
+  /**
+   * @return The most confident query text, or a stub text for voice queries
+   */
+  private static String getQueryText(final JsonObject request) {
+    final JsonElement query = request.get("query");
+    if (query != null && query.isJsonArray() && query.getAsJsonArray().size() > 0) {
+      return query.getAsJsonArray().get(0).getAsString();
+    }
+    if (query != null && query.isJsonPrimitive()) {
+      return query.getAsString();
+    }
+    return "voice query";
+  }
+
+  private List<AIContext> parseContexts(final String json) {
+    try {
+      final JsonElement element = new JsonParser().parse(json);
+      final List<AIContext> contexts = new ArrayList<>();
+      if (element.isJsonArray()) {
+        for (final JsonElement item : element.getAsJsonArray()) {
+          contexts.add(gson.fromJson(item, AIContext.class));
+        }
+      } else if (element.isJsonObject()) {
+        contexts.add(gson.fromJson(element, AIContext.class));
+      } else {
+        return null;
+      }
+      return contexts;
+    } catch (final JsonSyntaxException e) {
+      return null;
+    }
+  }
+
+  private List<String> storeContexts(final String sessionId, final List<AIContext> added) {
+    final Map<String, AIContext> contexts = getSessionContexts(sessionId);
+    final List<String> names = new ArrayList<>();
+    synchronized (contexts) {
+      for (final AIContext context : added) {
+        if (context != null && context.getName() != null) {
+          contexts.put(context.getName(), context);
+          names.add(context.getName());
+        }
+      }
+    }
+    return names;
+  }
+
+  private Map<String, AIContext> getSessionContexts(final String sessionId) {
+    Map<String, AIContext> contexts = sessions.get(sessionId);
+    if (contexts == null) {
+      final Map<String, AIContext> newContexts = new LinkedHashMap<>();
+      contexts = sessions.putIfAbsent(sessionId, newContexts);
+      if (contexts == null) {
+        contexts = newContexts;
+      }
+    }
+    return contexts;
+  }
+
+  private void injectLatency() {
+    long delay = latencyMillis;
+    if (latencyJitterMillis > 0) {
+      delay += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+    }
+    if (delay > 0) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(delay);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Missing resources are reported in the response status with 200 HTTP code, as the client
+   * expects for contexts
+   */
+  private static void respondNotFound(final HttpExchange exchange) throws IOException {
+    respond(exchange, 200, "{\"status\":{\"code\":404,\"errorType\":\"not_found\"}}");
+  }
+
+  private static void respondStatus(final HttpExchange exchange, final int code)
+      throws IOException {
+    final String status = code == 200 ? SUCCESS_STATUS : "{\"code\":" + code + "}";
+    respond(exchange, code, "{\"status\":" + status + "}");
+  }
+
+  private static void respond(final HttpExchange exchange, final int code, final String body)
+      throws IOException {
+    final byte[] data = body.getBytes(UTF8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(code, data.length);
+    final OutputStream outputStream = exchange.getResponseBody();
+    outputStream.write(data);
+    outputStream.close();
+  }
+
+  private static byte[] readBody(final InputStream inputStream) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int count;
+    while ((count = inputStream.read(buffer)) >= 0) {
+      result.write(buffer, 0, count);
+    }
+    inputStream.close();
+    return result.toByteArray();
+  }
+
+  /**
+   * Find text value of a named part in multipart form data
+   */
+  private static String extractFormPart(final byte[] body, final String contentType,
+      final String name) {
+    final int boundaryStart = contentType.indexOf("boundary=");
+    if (boundaryStart < 0) {
+      return null;
+    }
+    final String boundary = "--" + contentType.substring(boundaryStart + "boundary=".length());
+    // Latin-1 keeps one char per byte, so binary parts do not break the search
+    final String content = new String(body, Charset.forName("ISO-8859-1"));
+    int partStart = content.indexOf(boundary);
+    while (partStart >= 0) {
+      final int headersEnd = content.indexOf("\r\n\r\n", partStart);
+      final int nextPart = content.indexOf(boundary, partStart + boundary.length());
+      if (headersEnd < 0 || nextPart < 0) {
+        return null;
+      }
+      final String headers = content.substring(partStart, headersEnd);
+      if (headers.contains("name=\"" + name + "\"")) {
+        // Part value ends with CRLF before the next boundary
+        final int valueEnd = Math.max(headersEnd + 4, nextPart - 2);
+        return new String(body, headersEnd + 4, valueEnd - headersEnd - 4, UTF8);
+      }
+      partStart = nextPart;
+    }
+    return null;
+  }
+
+  private static Map<String, String> parseQuery(final String query) {
+    final Map<String, String> result = new HashMap<>();
+    if (query == null) {
+      return result;
+    }
+    for (final String pair : query.split("&")) {
+      final int separator = pair.indexOf('=');
+      if (separator > 0) {
+        try {
+          result.put(pair.substring(0, separator),
+              URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+        } catch (final UnsupportedEncodingException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param queryTemplate Template of query responses. Cannot be <code>null</code>
+   */
+  public void setQueryTemplate(final ResponseTemplate queryTemplate) {
+    if (queryTemplate == null) {
+      throw new IllegalArgumentException("queryTemplate must not be null");
+    }
+    this.queryTemplate = queryTemplate;
+  }
+
+  /**
+   * @param latencyMillis Delay added to every response
+   * @param jitterMillis Upper bound of random delay added to the fixed one
+   */
+  public void setLatency(final long latencyMillis, final long jitterMillis) {
+    this.latencyMillis = latencyMillis;
+    this.latencyJitterMillis = jitterMillis;
+  }
+
+  /**
+   * @param errorRate Share of requests answered with the error code, between 0 and 1
+   * @param errorCode HTTP code of injected errors
+   */
+  public void setErrors(final double errorRate, final int errorCode) {
+    if (errorRate < 0 || errorRate > 1) {
+      throw new IllegalArgumentException("errorRate must be between 0 and 1");
+    }
+    this.errorRate = errorRate;
+    this.errorCode = errorCode;
+  }
+
+  /**
+   * @return Count of received requests
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return Count of distinct client connections. Approximate for long runs, because client ports
+   *         are reused
+   */
+  public long getConnectionCount() {
+    return connections.size();
+  }
+
+  /**
+   * @return Count of injected errors
+   */
+  public long getErrorCount() {
+    return errorCount.get();
+  }
+
+  /**
+   * @return Count of multipart voice queries
+   */
+  public long getVoiceRequestCount() {
+    return voiceRequestCount.get();
+  }
+
+  /**
+   * @return Count of entities received by the user entities endpoint
+   */
+  public long getUploadedEntityCount() {
+    return uploadedEntityCount.get();
+  }
+
+  /**
+   * Forget counters and connections, contexts are kept
+   */
+  public void resetStatistics() {
+    requestCount.set(0);
+    errorCount.set(0);
+    voiceRequestCount.set(0);
+    uploadedEntityCount.set(0);
+    connections.clear();
+  }
+
+  /**
+   * Run standalone server. Options: <code>--port N</code>, <code>--threads N</code>,
+   * <code>--latency MILLIS</code>, <code>--jitter MILLIS</code>, <code>--error-rate RATE</code>,
+   * <code>--error-code CODE</code>, <code>--template FILE</code>.
+   */
+  public static void main(final String[] args) throws IOException {
+    if (System.getProperty(NODELAY_PROPERTY) == null) {
+      System.setProperty(NODELAY_PROPERTY, "true");
+    }
+    final Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+      }
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+
+    final StubServer server = new StubServer(getInt(options, "port", 8080),
+        getInt(options, "threads", DEFAULT_THREADS));
+    server.setLatency(getInt(options, "latency", 0), getInt(options, "jitter", 0));
+    if (options.containsKey("error-rate")) {
+      server.setErrors(Double.parseDouble(options.get("error-rate")),
+          getInt(options, "error-code", 503));
+    }
+    if (options.containsKey("template")) {
+      final InputStream inputStream = new FileInputStream(new File(options.get("template")));
+      try {
+        server.setQueryTemplate(new ResponseTemplate(IOUtils.readAll(inputStream)));
+      } finally {
+        inputStream.close();
+      }
+    }
+    server.start();
+    System.out.println("Stub API.AI service is listening on " + server.getUrl());
+  }
+
+  private static int getInt(final Map<String, String> options, final String name,
+      final int defaultValue) {
+    final String value = options.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+}
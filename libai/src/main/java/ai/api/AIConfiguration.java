@@ -22,6 +22,16 @@ import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
 
+import ai.api.http.CircuitBreaker;
+import ai.api.http.Compression;
+import ai.api.http.ConcurrencyLimiter;
+import ai.api.http.HttpTransport;
+import ai.api.http.RateLimiter;
+import ai.api.http.RetryPolicy;
+import ai.api.local.LocalResponder;
+import ai.api.model.AIResponse;
+import ai.api.traffic.TrafficRecorder;
+import ai.api.util.StringPool;
 import ai.api.util.StringUtils;
 
 /**
@@ -35,6 +45,9 @@ public class AIConfiguration implements Cloneable {
   protected static final String USER_ENTITIES_ENDPOINT = "userEntities";
   protected static final String CONTEXTS_ENDPOINT = "contexts";
 
+  private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+  private static final int DEFAULT_ATTEMPT_TIMEOUT_MILLIS = 30000;
+
   private final String apiKey;
   private final SupportedLanguages language;
   private String serviceUrl;
@@ -47,6 +60,22 @@ public class AIConfiguration implements Cloneable {
   private String protocolVersion;
   private boolean writeSoundLog = false;
   private Proxy proxy;
+  private HttpTransport transport;
+  private ConcurrencyLimiter concurrencyLimiter;
+  private RetryPolicy retryPolicy;
+  private CircuitBreaker circuitBreaker;
+  private AIResponse fallbackResponse;
+  private QueryCoalescer queryCoalescer;
+  private RateLimiter rateLimiter;
+  private TrafficRecorder trafficRecorder;
+  private long requestTimeoutMillis;
+  private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+  private int attemptTimeoutMillis = DEFAULT_ATTEMPT_TIMEOUT_MILLIS;
+  private int warmUpConnections = 1;
+  private Compression compression;
+  private LocalResponder localResponder;
+  private boolean lazyDecoding = false;
+  private StringPool stringPool;
 
   /**
    * Create configuration with given client access token and language.
@@ -148,6 +177,15 @@ public class AIConfiguration implements Cloneable {
     this.serviceUrl = serviceUrl;
   }
 
+  /**
+   * Get API service url
+   * 
+   * @return Never <code>null</code>
+   */
+  public String getServiceUrl() {
+    return serviceUrl;
+  }
+
   /**
    * Get connection proxy information. If <code>null</code> then direct connection would be used.
    */
@@ -164,6 +202,318 @@ public class AIConfiguration implements Cloneable {
     this.proxy = proxy;
   }
 
+  /**
+   * Get transport of text queries, contexts and user entities requests. If <code>null</code> then
+   * {@link ai.api.http.UrlConnectionTransport} is used.
+   */
+  public HttpTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Set transport of text queries, contexts and user entities requests. Voice requests always use
+   * <code>HttpURLConnection</code>. The transport is shared by configuration clones.
+   * 
+   * @param transport If <code>null</code> then {@link ai.api.http.UrlConnectionTransport} with
+   *        configured proxy is used. Proxy setting does not apply to other transports.
+   */
+  public void setTransport(final HttpTransport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * Get limiter of simultaneous requests. If <code>null</code> then requests are not limited.
+   */
+  public ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Set limiter of simultaneous requests. The limiter is shared by configuration clones, so all
+   * services created with this configuration are limited together.
+   * 
+   * @param concurrencyLimiter If <code>null</code> then requests are not limited.
+   */
+  public void setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * Get policy of failed requests repeating. If <code>null</code> then requests are not repeated.
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Set policy of failed requests repeating. The policy and its retry budget are shared by
+   * configuration clones.
+   * 
+   * @param retryPolicy If <code>null</code> then requests are not repeated.
+   */
+  public void setRetryPolicy(final RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Get limiter of request rate. If <code>null</code> then request rate is not limited.
+   */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /**
+   * Set limiter of request rate. The limiter keeps separate buckets for every api key and is
+   * shared by configuration clones.
+   * 
+   * @param rateLimiter If <code>null</code> then request rate is not limited.
+   */
+  public void setRateLimiter(final RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Get breaker stopping requests to a failing service. If <code>null</code> then requests are
+   * always made.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Set breaker stopping requests to a failing service. The breaker keeps separate state for every
+   * service url and is shared by configuration clones.
+   * 
+   * @param circuitBreaker If <code>null</code> then requests are always made.
+   */
+  public void setCircuitBreaker(final CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Get coalescer of identical simultaneous text queries. If <code>null</code> then every query
+   * makes its own request.
+   */
+  public QueryCoalescer getQueryCoalescer() {
+    return queryCoalescer;
+  }
+
+  /**
+   * Set coalescer of identical simultaneous text queries. The coalescer is shared by configuration
+   * clones.
+   * 
+   * @param queryCoalescer If <code>null</code> then every query makes its own request.
+   */
+  public void setQueryCoalescer(final QueryCoalescer queryCoalescer) {
+    this.queryCoalescer = queryCoalescer;
+  }
+
+  /**
+   * Get time limit of every call, including retries. If <code>0</code> then calls are not limited.
+   */
+  public long getRequestTimeoutMillis() {
+    return requestTimeoutMillis;
+  }
+
+  /**
+   * Set time limit of every call, including retries. The time left limits the timeout of each
+   * request attempt, and no retry is made after it runs out. Calls exceeding the
+   * limit throw {@link AIServiceTimeoutException}, or queries return the fallback response if it
+   * is set. {@link RequestExtras#setDeadline(Deadline)} sets an earlier deadline for a query.
+   * 
+   * @param requestTimeoutMillis If <code>0</code> then calls are not limited
+   */
+  public void setRequestTimeoutMillis(final long requestTimeoutMillis) {
+    if (requestTimeoutMillis < 0) {
+      throw new IllegalArgumentException("requestTimeoutMillis must not be negative");
+    }
+    this.requestTimeoutMillis = requestTimeoutMillis;
+  }
+
+  /**
+   * Get time limit of opening a connection by the default transport. <code>10000</code> ms by
+   * default.
+   */
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  /**
+   * Set time limit of opening a connection by the default transport and of voice requests. A
+   * transport set by {@link #setTransport(HttpTransport)} uses its own connect timeout.
+   *
+   * @param connectTimeoutMillis If <code>0</code> then only the attempt timeout limits
+   *        connecting
+   */
+  public void setConnectTimeoutMillis(final int connectTimeoutMillis) {
+    if (connectTimeoutMillis < 0) {
+      throw new IllegalArgumentException("connectTimeoutMillis must not be negative");
+    }
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  /**
+   * Get time limit of every request attempt. <code>30000</code> ms by default.
+   */
+  public int getAttemptTimeoutMillis() {
+    return attemptTimeoutMillis;
+  }
+
+  /**
+   * Set time limit of every request attempt, so a connection hung without a response fails the
+   * attempt and the retry policy may try again. The limit is shortened to the time left of the
+   * call deadline, see {@link #setRequestTimeoutMillis(long)}.
+   *
+   * @param attemptTimeoutMillis If <code>0</code> then attempts are limited only by the call
+   *        deadline, or wait indefinitely if the call has none
+   */
+  public void setAttemptTimeoutMillis(final int attemptTimeoutMillis) {
+    if (attemptTimeoutMillis < 0) {
+      throw new IllegalArgumentException("attemptTimeoutMillis must not be negative");
+    }
+    this.attemptTimeoutMillis = attemptTimeoutMillis;
+  }
+
+  /**
+   * Get response returned by queries while the circuit breaker rejects requests.
+   */
+  public AIResponse getFallbackResponse() {
+    return fallbackResponse;
+  }
+
+  /**
+   * Set response returned by text and voice queries while the circuit breaker rejects requests,
+   * or when they do not complete before their deadline. Every query gets its own copy of the
+   * response.
+   * 
+   * @param fallbackResponse If <code>null</code> then {@link CircuitBreakerOpenException} or
+   *        {@link AIServiceTimeoutException} is thrown instead.
+   */
+  public void setFallbackResponse(final AIResponse fallbackResponse) {
+    this.fallbackResponse = fallbackResponse;
+  }
+
+  /**
+   * Get recorder of text queries. If <code>null</code> then queries are not recorded.
+   */
+  public TrafficRecorder getTrafficRecorder() {
+    return trafficRecorder;
+  }
+
+  /**
+   * Set recorder of text queries. Queries are recorded with their responses and latency for later
+   * replay by {@link ai.api.traffic.TrafficReplayer}. The recorder is shared by configuration
+   * clones.
+   * 
+   * @param trafficRecorder If <code>null</code> then queries are not recorded.
+   */
+  public void setTrafficRecorder(final TrafficRecorder trafficRecorder) {
+    this.trafficRecorder = trafficRecorder;
+  }
+
+  /**
+   * Get compression of request bodies. If <code>null</code> then request bodies are sent
+   * uncompressed.
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Set compression of request bodies sent by the default transport. Responses are received
+   * compressed regardless of it, the object also counts their compressed sizes. Enable it only if
+   * the service accepts gzip encoded requests. The compression is shared by configuration clones.
+   * <p>
+   * A transport set by {@link #setTransport(HttpTransport)} does not use this value.
+   * <code>NettyTransport</code> and <code>JdkHttpClientTransport</code> take the compression by
+   * their own <code>setCompression</code>, e.g.
+   * <code>transport.setCompression(config.getCompression())</code>.
+   *
+   * @param compression If <code>null</code> then request bodies are sent uncompressed
+   */
+  public void setCompression(final Compression compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * Get responder answering text queries on the client. If <code>null</code> then all queries are
+   * sent to the service.
+   */
+  public LocalResponder getLocalResponder() {
+    return localResponder;
+  }
+
+  /**
+   * Set responder asked before each text query is sent. A query it answers makes no request, so
+   * it passes neither limiters nor the traffic recorder. The responder is shared by configuration
+   * clones.
+   * 
+   * @param localResponder If <code>null</code> then all queries are sent to the service
+   */
+  public void setLocalResponder(final LocalResponder localResponder) {
+    this.localResponder = localResponder;
+  }
+
+  /**
+   * Check if query responses are decoded lazily
+   */
+  public boolean isLazyDecoding() {
+    return lazyDecoding;
+  }
+
+  /**
+   * Set lazy decoding of query responses. Contexts, metadata and fulfillment of a result are then
+   * kept as JSON text until their getters are first called, which saves time and memory of
+   * callers reading only the action and parameters. Such responses must not be shared between
+   * threads before their sub-trees are decoded.
+   * 
+   * @see ai.api.model.LazyDecodingAdapterFactory
+   */
+  public void setLazyDecoding(final boolean lazyDecoding) {
+    this.lazyDecoding = lazyDecoding;
+  }
+
+  /**
+   * Get pool of repeated strings of query responses. If <code>null</code> then strings are not
+   * pooled.
+   */
+  public StringPool getStringPool() {
+    return stringPool;
+  }
+
+  /**
+   * Set pool of repeated strings of query responses, such as actions, intent names and parameter
+   * names. Pooling saves memory of callers retaining many responses and costs a lookup per
+   * string. The pool is shared by configuration clones.
+   * 
+   * @param stringPool If <code>null</code> then strings are not pooled
+   */
+  public void setStringPool(final StringPool stringPool) {
+    this.stringPool = stringPool;
+  }
+
+  /**
+   * Get number of connections opened by {@link AIDataService#warmUp()}
+   */
+  public int getWarmUpConnections() {
+    return warmUpConnections;
+  }
+
+  /**
+   * Set number of connections opened by {@link AIDataService#warmUp()}. Connections stay open
+   * while the transport keeps them alive. The default transport keeps at most
+   * <code>http.maxConnections</code> idle connections per host, 5 unless the system property is
+   * set.
+   * 
+   * @param warmUpConnections If <code>0</code> then warm up opens no connections
+   */
+  public void setWarmUpConnections(final int warmUpConnections) {
+    if (warmUpConnections < 0) {
+      throw new IllegalArgumentException("warmUpConnections must not be negative");
+    }
+    this.warmUpConnections = warmUpConnections;
+  }
+
   /**
    * Clone the configuration
    */
@@ -176,7 +526,10 @@ public class AIConfiguration implements Cloneable {
     }
   }
 
-  String getQuestionUrl(final String sessionId) {
+  /**
+   * Get query endpoint url of the session
+   */
+  public String getQuestionUrl(final String sessionId) {
     if (StringUtils.isEmpty(protocolVersion)) {
       return String.format("%s%s?sessionId=%s", serviceUrl, QUESTION_ENDPOINT, sessionId);
     } else {
@@ -185,7 +538,10 @@ public class AIConfiguration implements Cloneable {
     }
   }
 
-  String getUserEntitiesEndpoint(final String sessionId) {
+  /**
+   * Get user entities endpoint url of the session
+   */
+  public String getUserEntitiesEndpoint(final String sessionId) {
     if (StringUtils.isEmpty(protocolVersion)) {
       return String.format("%s%s?sessionId=%s", serviceUrl, USER_ENTITIES_ENDPOINT, sessionId);
     } else {
@@ -194,11 +550,19 @@ public class AIConfiguration implements Cloneable {
     }
   }
 
-  String getContextsUrl(final String sessionId) {
+  /**
+   * Get contexts endpoint url of the session
+   */
+  public String getContextsUrl(final String sessionId) {
     return getContextsUrl(sessionId, "");
   }
 
-  String getContextsUrl(final String sessionId, final String suffix) {
+  /**
+   * Get url of a context of the session
+   * 
+   * @param suffix Context name. If empty then url of all session contexts is returned
+   */
+  public String getContextsUrl(final String sessionId, final String suffix) {
     StringBuilder result = new StringBuilder();
     result.append(serviceUrl).append(CONTEXTS_ENDPOINT);
     if (!StringUtils.isEmpty(suffix)) {
@@ -17,34 +17,59 @@
 package ai.api;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
-import ai.api.util.IOUtils;
 import ai.api.util.StringUtils;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Type;
 import java.net.*;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ai.api.http.CircuitBreaker;
+import ai.api.http.ConcurrencyLimiter;
+import ai.api.http.Endpoint;
 import ai.api.http.HttpClient;
+import ai.api.http.HttpTransport;
+import ai.api.http.RateLimiter;
+import ai.api.http.RetryPolicy;
+import ai.api.http.StreamingHttpTransport;
+import ai.api.http.UrlConnectionTransport;
+import ai.api.local.LocalResponder;
 import ai.api.model.AIContext;
 import ai.api.model.AIRequest;
 import ai.api.model.AIResponse;
 import ai.api.model.Entity;
 import ai.api.model.Status;
+import ai.api.traffic.TrafficRecord;
+import ai.api.traffic.TrafficRecorder;
+import ai.api.util.VirtualThreads;
 
 /**
  * Do simple requests to the AI Service
@@ -63,6 +88,24 @@ public class AIDataService {
    */
   private final static Gson GSON = GsonFactory.getDefaultFactory().getGson();
 
+  private static final Type ENTITY_COLLECTION_TYPE =
+      new TypeToken<Collection<Entity>>() {}.getType();
+
+  private static final String WARM_UP_QUERY = "warm up";
+
+  /**
+   * Typical query response, parsed to load the adapters of its fields
+   */
+  private static final String WARM_UP_RESPONSE = "{\"id\":\"0\","
+      + "\"timestamp\":\"2017-01-01T00:00:00.000Z\",\"lang\":\"en\",\"result\":{"
+      + "\"source\":\"agent\",\"resolvedQuery\":\"warm up\",\"action\":\"\","
+      + "\"actionIncomplete\":false,\"parameters\":{\"date\":\"2017-01-01\"},"
+      + "\"contexts\":[{\"name\":\"warm-up\",\"parameters\":{},\"lifespan\":1}],"
+      + "\"metadata\":{\"intentId\":\"0\",\"intentName\":\"warm up\"},"
+      + "\"fulfillment\":{\"speech\":\"\",\"messages\":[{\"type\":0,\"speech\":\"\"}]},"
+      + "\"score\":1.0},\"status\":{\"code\":200,\"errorType\":\"success\"},"
+      + "\"sessionId\":\"0\"}";
+
   /**
    * Cannot be <code>null</code>
    */
@@ -73,6 +116,13 @@ public class AIDataService {
    */
   private final AIServiceContext defaultServiceContext;
 
+  /**
+   * Deadline of the query in progress on the thread, passed past the overridable request methods
+   */
+  private final ThreadLocal<Deadline> queryDeadline = new ThreadLocal<>();
+
+  private volatile boolean ready;
+
   /**
    * Create new service for given configuration and some predefined service context
    * 
@@ -160,36 +210,17 @@ public class AIDataService {
     logger.debug("Start request");
 
     try {
+      final Map<String, String> additionalHeaders =
+          prepareQuery(request, requestExtras, serviceContext);
 
-      if (StringUtils.isEmpty(request.getLanguage())) {
-        request.setLanguage(config.getApiAiLanguage());
-      }
-      if (StringUtils.isEmpty(request.getSessionId())) {
-        request.setSessionId(getSessionId(serviceContext));
-      }
-      if (StringUtils.isEmpty(request.getTimezone())) {
-        request.setTimezone(getTimeZone(serviceContext));
+      final AIResponse localResponse = respondLocally(request, requestExtras);
+      if (localResponse != null) {
+        return localResponse;
       }
 
-      Map<String, String> additionalHeaders = null;
+      final String response = sendQuery(request, requestExtras, additionalHeaders);
 
-      if (requestExtras != null) {
-        fillRequest(request, requestExtras);
-        additionalHeaders = requestExtras.getAdditionalHeaders();
-      }
-
-      final String queryData = GSON.toJson(request);
-      final String response = doTextRequest(config.getQuestionUrl(request.getSessionId()),
-          queryData, additionalHeaders);
-
-      if (StringUtils.isEmpty(response)) {
-        throw new AIServiceException(
-            "Empty response from ai service. Please check configuration and Internet connection.");
-      }
-
-      logger.debug("Response json: " + response.replaceAll("[\r\n]+", " "));
-
-      final AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+      final AIResponse aiResponse = getResponseGson().fromJson(response, AIResponse.class);
 
       if (aiResponse == null) {
         throw new AIServiceException(
@@ -200,10 +231,95 @@ public class AIDataService {
         throw new AIServiceException(aiResponse);
       }
 
+      if (config.getQueryCoalescer() != null) {
+        // The response could be received for a query of another session
+        aiResponse.setSessionId(request.getSessionId());
+      }
+
       aiResponse.cleanup();
 
       return aiResponse;
 
+    } catch (final CircuitBreakerOpenException e) {
+      return getFallbackResponse(e, request);
+    } catch (final AIServiceTimeoutException e) {
+      return getFallbackResponse(e, request);
+    } catch (final MalformedURLException e) {
+      logger.error("Malformed url should not be raised", e);
+      throw new AIServiceException("Wrong configuration. Please, connect to API.AI Service support",
+          e);
+    } catch (final JsonSyntaxException je) {
+      throw new AIServiceException(
+          "Wrong service answer format. Please, connect to API.AI Service support", je);
+    }
+
+  }
+
+  /**
+   * Make request to the AI service reading only the projected fields of the response.
+   *
+   * @param request request object to the service. Cannot be <code>null</code>
+   * @param projection fields to read. Cannot be <code>null</code>
+   * @return projected fields of the response. Never <code>null</code>
+   */
+  public ProjectedResponse request(final AIRequest request, final Projection projection)
+      throws AIServiceException {
+    return request(request, null, null, projection);
+  }
+
+  /**
+   * Make request to the AI service reading only the projected fields of the response. Other
+   * fields are skipped without building objects, which is cheaper than
+   * {@link #request(AIRequest, RequestExtras, AIServiceContext)} when few fields are needed.
+   * Error responses are read in full and thrown as {@link AIServiceException} like by the other
+   * request methods.
+   *
+   * @param request request object to the service. Cannot be <code>null</code>
+   * @param requestExtras object that can hold additional contexts and entities
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @param projection fields to read. Cannot be <code>null</code>
+   * @return projected fields of the response. Never <code>null</code>
+   */
+  public ProjectedResponse request(final AIRequest request, final RequestExtras requestExtras,
+      final AIServiceContext serviceContext, final Projection projection)
+      throws AIServiceException {
+    if (request == null) {
+      throw new IllegalArgumentException("Request argument must not be null");
+    }
+    if (projection == null) {
+      throw new IllegalArgumentException("Projection argument must not be null");
+    }
+
+    logger.debug("Start projected request");
+
+    try {
+      final Map<String, String> additionalHeaders =
+          prepareQuery(request, requestExtras, serviceContext);
+
+      final AIResponse localResponse = respondLocally(request, requestExtras);
+      if (localResponse != null) {
+        return project(localResponse, projection);
+      }
+
+      final String response = sendQuery(request, requestExtras, additionalHeaders);
+      final ProjectedResponse projectedResponse = projection.read(response);
+
+      if (projectedResponse.getStatusCode() >= 400) {
+        final AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+        throw new AIServiceException(aiResponse);
+      }
+
+      if (config.getQueryCoalescer() != null) {
+        // The response could be received for a query of another session
+        projectedResponse.replace("sessionId", request.getSessionId());
+      }
+
+      return projectedResponse;
+
+    } catch (final CircuitBreakerOpenException e) {
+      return project(getFallbackResponse(e, request), projection);
+    } catch (final AIServiceTimeoutException e) {
+      return project(getFallbackResponse(e, request), projection);
     } catch (final MalformedURLException e) {
       logger.error("Malformed url should not be raised", e);
       throw new AIServiceException("Wrong configuration. Please, connect to API.AI Service support",
@@ -212,7 +328,85 @@ public class AIDataService {
       throw new AIServiceException(
           "Wrong service answer format. Please, connect to API.AI Service support", je);
     }
+  }
+
+  /**
+   * Read projected fields of a response made on the client side
+   */
+  private static ProjectedResponse project(final AIResponse response,
+      final Projection projection) {
+    if (response.getTimestamp() == null) {
+      // Dates are not written as null
+      response.setTimestamp(new Date());
+    }
+    return projection.read(GSON.toJson(response));
+  }
+
+  /**
+   * Fill defaults of the query and the request extras
+   *
+   * @return Additional headers of the request. May be <code>null</code>
+   */
+  private Map<String, String> prepareQuery(final AIRequest request,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext) {
+    if (StringUtils.isEmpty(request.getLanguage())) {
+      request.setLanguage(config.getApiAiLanguage());
+    }
+    if (StringUtils.isEmpty(request.getSessionId())) {
+      request.setSessionId(getSessionId(serviceContext));
+    }
+    if (StringUtils.isEmpty(request.getTimezone())) {
+      request.setTimezone(getTimeZone(serviceContext));
+    }
+
+    if (requestExtras != null) {
+      fillRequest(request, requestExtras);
+      return requestExtras.getAdditionalHeaders();
+    }
+    return null;
+  }
+
+  /**
+   * @return Response of the configured {@link LocalResponder} or <code>null</code> if the query
+   *         should be sent to the service
+   */
+  private AIResponse respondLocally(final AIRequest request, final RequestExtras requestExtras) {
+    final LocalResponder localResponder = config.getLocalResponder();
+    if (localResponder != null) {
+      final AIResponse localResponse = localResponder.respond(request, requestExtras);
+      if (localResponse != null) {
+        logger.debug("Query answered by local responder");
+        return localResponse;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Send the prepared query within the deadline of the request extras
+   *
+   * @return Response string. Never empty
+   */
+  private String sendQuery(final AIRequest request, final RequestExtras requestExtras,
+      final Map<String, String> additionalHeaders)
+      throws MalformedURLException, AIServiceException {
+    final String queryData = GSON.toJson(request);
+    final String response;
+    final Deadline previousDeadline = queryDeadline.get();
+    queryDeadline.set(createDeadline(requestExtras));
+    try {
+      response = doRecordedQueryRequest(request, queryData, additionalHeaders);
+    } finally {
+      queryDeadline.set(previousDeadline);
+    }
 
+    if (StringUtils.isEmpty(response)) {
+      throw new AIServiceException(
+          "Empty response from ai service. Please check configuration and Internet connection.");
+    }
+
+    logger.debug("Response json: " + response.replaceAll("[\r\n]+", " "));
+    return response;
   }
 
   /**
@@ -266,9 +460,9 @@ public class AIDataService {
     assert voiceStream != null;
     logger.debug("Start voice request");
 
-    try {
-      final AIRequest request = new AIRequest();
+    final AIRequest request = new AIRequest();
 
+    try {
       request.setLanguage(config.getApiAiLanguage());
       request.setSessionId(getSessionId(serviceContext));
       request.setTimezone(getTimeZone(serviceContext));
@@ -284,7 +478,14 @@ public class AIDataService {
 
       logger.debug("Request json: " + queryData);
 
-      final String response = doSoundRequest(voiceStream, queryData, additionalHeaders);
+      final String response;
+      final Deadline previousDeadline = queryDeadline.get();
+      queryDeadline.set(createDeadline(requestExtras));
+      try {
+        response = doSoundRequest(voiceStream, queryData, additionalHeaders);
+      } finally {
+        queryDeadline.set(previousDeadline);
+      }
 
       if (StringUtils.isEmpty(response)) {
         throw new AIServiceException("Empty response from ai service. Please check configuration.");
@@ -292,7 +493,7 @@ public class AIDataService {
 
       logger.debug("Response json: " + response);
 
-      final AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+      final AIResponse aiResponse = getResponseGson().fromJson(response, AIResponse.class);
 
       if (aiResponse == null) {
         throw new AIServiceException(
@@ -307,6 +508,10 @@ public class AIDataService {
 
       return aiResponse;
 
+    } catch (final CircuitBreakerOpenException e) {
+      return getFallbackResponse(e, request);
+    } catch (final AIServiceTimeoutException e) {
+      return getFallbackResponse(e, request);
     } catch (final MalformedURLException e) {
       logger.error("Malformed url should not be raised", e);
       throw new AIServiceException("Wrong configuration. Please, connect to AI Service support", e);
@@ -570,35 +775,244 @@ public class AIDataService {
 
     final String requestData = GSON.toJson(userEntities);
     try {
-      final String response =
-          doTextRequest(config.getUserEntitiesEndpoint(getSessionId(serviceContext)), requestData);
-      if (StringUtils.isEmpty(response)) {
-        throw new AIServiceException(
-            "Empty response from ai service. Please check configuration and Internet connection.");
-      }
-      logger.debug("Response json: " + response);
-
-      final AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+      return toUploadResponse(
+          doTextRequest(config.getUserEntitiesEndpoint(getSessionId(serviceContext)), requestData));
+    } catch (final MalformedURLException e) {
+      logger.error("Malformed url should not be raised", e);
+      throw new AIServiceException("Wrong configuration. Please, connect to AI Service support", e);
+    }
+  }
 
-      if (aiResponse == null) {
-        throw new AIServiceException(
-            "API.AI response parsed as null. Check debug log for details.");
-      }
+  /**
+   * Upload user entities writing them to the connection as they are serialized, if the
+   * transport supports it
+   * 
+   * @see UserEntitiesUploader
+   */
+  AIResponse uploadUserEntitiesStreamed(final Collection<Entity> userEntities,
+      final AIServiceContext serviceContext) throws AIServiceException {
+    if (userEntities == null || userEntities.size() == 0) {
+      throw new AIServiceException("Empty entities list");
+    }
 
-      if (aiResponse.isError()) {
-        throw new AIServiceException(aiResponse);
+    final String endpoint = config.getUserEntitiesEndpoint(getSessionId(serviceContext));
+    final StreamingHttpTransport.BodyWriter body = new StreamingHttpTransport.BodyWriter() {
+      @Override
+      public void writeTo(final OutputStream outputStream) throws IOException {
+        final JsonWriter writer = new JsonWriter(new OutputStreamWriter(outputStream, "UTF-8"));
+        try {
+          GSON.toJson(userEntities, ENTITY_COLLECTION_TYPE, writer);
+        } catch (final JsonIOException e) {
+          throw new IOException(e);
+        }
+        writer.flush();
       }
-
-      aiResponse.cleanup();
-      return aiResponse;
-
+    };
+    try {
+      return toUploadResponse(
+          executeWithRetries(endpoint, REQUEST_METHOD_POST, new RequestAttempt() {
+            @Override
+            public RawResponse execute(final Deadline deadline) throws AIServiceException {
+              return doTransportAttempt(null, body, endpoint, REQUEST_METHOD_POST, null,
+                  deadline);
+            }
+          }).body);
     } catch (final MalformedURLException e) {
       logger.error("Malformed url should not be raised", e);
       throw new AIServiceException("Wrong configuration. Please, connect to AI Service support", e);
+    }
+  }
+
+  private AIResponse toUploadResponse(final String response) throws AIServiceException {
+    if (StringUtils.isEmpty(response)) {
+      throw new AIServiceException(
+          "Empty response from ai service. Please check configuration and Internet connection.");
+    }
+    logger.debug("Response json: " + response);
+
+    final AIResponse aiResponse;
+    try {
+      aiResponse = GSON.fromJson(response, AIResponse.class);
     } catch (final JsonSyntaxException je) {
       throw new AIServiceException(
           "Wrong service answer format. Please, connect to API.AI Service support", je);
     }
+
+    if (aiResponse == null) {
+      throw new AIServiceException(
+          "API.AI response parsed as null. Check debug log for details.");
+    }
+
+    if (aiResponse.isError()) {
+      throw new AIServiceException(aiResponse);
+    }
+
+    aiResponse.cleanup();
+    return aiResponse;
+  }
+
+  /**
+   * Prepare the service for the first queries, opening the configured number of connections
+   * 
+   * @return Number of connections opened
+   * @throws AIServiceException If the service host cannot be resolved
+   * @see #warmUp(int)
+   */
+  public int warmUp() throws AIServiceException {
+    return warmUp(config.getWarmUpConnections());
+  }
+
+  /**
+   * Prepare the service for the first queries: resolve the service host, load JSON adapters and
+   * send concurrent contexts requests of a new session, leaving a connection per request in the
+   * keep-alive pool of the transport. The requests pass through the configured limiters and
+   * circuit breaker. Call it again to reopen connections closed after idling.
+   * 
+   * @param connections Number of concurrent requests. If <code>0</code> then no request is made
+   * @return Number of connections opened, the number of requests that succeeded
+   * @throws AIServiceException If the service host cannot be resolved
+   */
+  public int warmUp(final int connections) throws AIServiceException {
+    if (connections < 0) {
+      throw new IllegalArgumentException("connections must not be negative");
+    }
+    resolveServiceHost();
+    GSON.fromJson(GSON.toJson(new AIRequest(WARM_UP_QUERY)), AIRequest.class);
+    getResponseGson().fromJson(WARM_UP_RESPONSE, AIResponse.class);
+
+    final AIServiceContext warmUpContext =
+        new AIServiceContextBuilder().generateSessionId().build();
+    final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("libai-warm-up-");
+    int opened = 0;
+    try {
+      final List<Future<List<AIContext>>> requests = new ArrayList<>(connections);
+      for (int i = 0; i < connections; i++) {
+        requests.add(executor.submit(new Callable<List<AIContext>>() {
+          @Override
+          public List<AIContext> call() throws AIServiceException {
+            return getActiveContexts(warmUpContext);
+          }
+        }));
+      }
+      for (final Future<List<AIContext>> request : requests) {
+        try {
+          request.get();
+          opened++;
+        } catch (final ExecutionException e) {
+          logger.warn("Warm up request failed", e.getCause());
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AIServiceException("Interrupted while warming up", e);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    ready = connections == 0 || opened > 0;
+    logger.debug("Warm up opened {} of {} connections", opened, connections);
+    return opened;
+  }
+
+  /**
+   * @return <code>true</code> if the last {@link #warmUp()} reached the service
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Resolve the service host to fill the JVM address cache. Not needed behind a proxy.
+   */
+  private void resolveServiceHost() throws AIServiceException {
+    final Proxy proxy = config.getProxy();
+    if (proxy != null && proxy.type() != Proxy.Type.DIRECT) {
+      return;
+    }
+    final String host;
+    try {
+      host = new URL(config.getServiceUrl()).getHost();
+    } catch (final MalformedURLException e) {
+      throw new AIServiceException("Wrong configuration. Please, check the service url", e);
+    }
+    try {
+      InetAddress.getAllByName(host);
+    } catch (final UnknownHostException e) {
+      throw new AIServiceException("Can't resolve the api.ai service host " + host, e);
+    }
+  }
+
+  /**
+   * Make text query request, passing it to configured {@link TrafficRecorder}
+   */
+  private String doRecordedQueryRequest(final AIRequest request, final String queryData,
+      final Map<String, String> additionalHeaders)
+      throws MalformedURLException, AIServiceException {
+    final TrafficRecorder recorder = config.getTrafficRecorder();
+    if (recorder == null) {
+      return doQueryRequest(request, queryData, additionalHeaders);
+    }
+    final long timestampMillis = System.currentTimeMillis();
+    final long startNanos = System.nanoTime();
+    String response = null;
+    try {
+      response = doQueryRequest(request, queryData, additionalHeaders);
+      return response;
+    } finally {
+      recorder.record(new TrafficRecord(timestampMillis, System.nanoTime() - startNanos,
+          request.getSessionId(), queryData, additionalHeaders, response));
+    }
+  }
+
+  /**
+   * Make text query request, sharing it with identical queries in flight if configured
+   * {@link QueryCoalescer} allows
+   * 
+   * @param request Query with filled session. Cannot be <code>null</code>
+   * @param queryData Serialized query. Cannot be <code>null</code>
+   * @return Response string
+   */
+  private String doQueryRequest(final AIRequest request, final String queryData,
+      final Map<String, String> additionalHeaders)
+      throws MalformedURLException, AIServiceException {
+    final String endpoint = config.getQuestionUrl(request.getSessionId());
+    final QueryCoalescer coalescer = config.getQueryCoalescer();
+    if (coalescer == null) {
+      return doTextRequest(endpoint, queryData, additionalHeaders);
+    }
+    final String key = getCoalescingKey(request, additionalHeaders, coalescer.isSessionScoped());
+    return coalescer.execute(key, getCallDeadline(), new QueryCoalescer.Call() {
+      @Override
+      public String execute() throws MalformedURLException, AIServiceException {
+        return doTextRequest(endpoint, queryData, additionalHeaders);
+      }
+    });
+  }
+
+  /**
+   * @return Key equal for queries which get the same response
+   */
+  private String getCoalescingKey(final AIRequest request,
+      final Map<String, String> additionalHeaders, final boolean sessionScoped) {
+    final JsonObject requestTree = GSON.toJsonTree(request).getAsJsonObject();
+    if (!sessionScoped) {
+      requestTree.remove("sessionId");
+    }
+    final StringBuilder key = new StringBuilder()
+        .append(config.getApiKey()).append('\n')
+        .append(config.getServiceUrl()).append('\n')
+        .append(requestTree);
+    if (additionalHeaders != null && !additionalHeaders.isEmpty()) {
+      key.append('\n').append(new TreeMap<>(additionalHeaders));
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return Gson reading query responses as the configuration sets
+   */
+  private Gson getResponseGson() {
+    return GsonFactory.getDefaultFactory().getResponseGson(config);
   }
 
   /**
@@ -613,6 +1027,21 @@ public class AIDataService {
     return doTextRequest(config.getQuestionUrl(getSessionId(serviceContext)), requestJson);
   }
 
+  /**
+   * @param requestJson Cannot be <code>null</code>
+   * @param additionalHeaders
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @return Response string
+   * @throws MalformedURLException
+   * @throws AIServiceException
+   */
+  protected String doTextRequest(final String requestJson,
+      final Map<String, String> additionalHeaders, final AIServiceContext serviceContext)
+      throws MalformedURLException, AIServiceException {
+    return doTextRequest(config.getQuestionUrl(getSessionId(serviceContext)), requestJson,
+        additionalHeaders);
+  }
+
   /**
    * @param requestJson Cannot be <code>null</code>
    * @return Response string
@@ -650,74 +1079,21 @@ public class AIDataService {
     // TODO call doRequest method
     assert endpoint != null;
     assert requestJson != null;
-    HttpURLConnection connection = null;
-
-    try {
-
-      final URL url = new URL(endpoint);
-
-      final String queryData = requestJson;
-
-      logger.debug("Request json: " + queryData);
-
-      if (config.getProxy() != null) {
-        connection = (HttpURLConnection) url.openConnection(config.getProxy());
-      } else {
-        connection = (HttpURLConnection) url.openConnection();
-      }
-
-      connection.setRequestMethod("POST");
-      connection.setDoOutput(true);
-      connection.addRequestProperty("Authorization", "Bearer " + config.getApiKey());
-      connection.addRequestProperty("Content-Type", "application/json; charset=utf-8");
-      connection.addRequestProperty("Accept", "application/json");
-
-      if (additionalHeaders != null) {
-        for (final Map.Entry<String, String> entry : additionalHeaders.entrySet()) {
-          connection.addRequestProperty(entry.getKey(), entry.getValue());
-        }
-      }
-
-      connection.connect();
-
-      final BufferedOutputStream outputStream =
-          new BufferedOutputStream(connection.getOutputStream());
-      IOUtils.writeAll(queryData, outputStream);
-      outputStream.close();
-
-      final InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-      final String response = IOUtils.readAll(inputStream);
-      inputStream.close();
-
-      return response;
-    } catch (final IOException e) {
-      if (connection != null) {
-        try {
-          final InputStream errorStream = connection.getErrorStream();
-          if (errorStream != null) {
-            final String errorString = IOUtils.readAll(errorStream);
-            logger.debug(errorString);
-            return errorString;
-          } else {
-            throw new AIServiceException("Can't connect to the api.ai service.", e);
-          }
-        } catch (final IOException ex) {
-          logger.warn("Can't read error response", ex);
-        }
-      }
-      logger.error(
-          "Can't make request to the API.AI service. Please, check connection settings and API access token.",
-          e);
-      throw new AIServiceException(
-          "Can't make request to the API.AI service. Please, check connection settings and API access token.",
-          e);
 
-    } finally {
-      if (connection != null) {
-        connection.disconnect();
+    return executeWithRetries(endpoint, REQUEST_METHOD_POST, new RequestAttempt() {
+      @Override
+      public RawResponse execute(final Deadline deadline)
+          throws MalformedURLException, AIServiceException {
+        return doTextRequestAttempt(endpoint, requestJson, additionalHeaders, deadline);
       }
-    }
+    }).body;
+  }
 
+  private RawResponse doTextRequestAttempt(final String endpoint, final String requestJson,
+      final Map<String, String> additionalHeaders, final Deadline deadline)
+      throws MalformedURLException, AIServiceException {
+    return doTransportAttempt(requestJson, null, endpoint, REQUEST_METHOD_POST,
+        additionalHeaders, deadline);
   }
 
   /**
@@ -756,11 +1132,16 @@ public class AIDataService {
     // TODO call doRequest method
     assert voiceStream != null;
     assert queryData != null;
+    final String endpoint = config.getQuestionUrl(getSessionId(serviceContext));
+    final Deadline deadline = getCallDeadline();
+    final RequestPermit permit = acquireRequestPermit(endpoint, deadline);
+    int responseCode = ConcurrencyLimiter.NO_RESPONSE_CODE;
     HttpURLConnection connection = null;
     HttpClient httpClient = null;
 
     try {
-      final URL url = new URL(config.getQuestionUrl(getSessionId(serviceContext)));
+      final URL url = new URL(endpoint);
+      final int timeoutMillis = getAttemptTimeoutMillis(deadline, endpoint);
 
       logger.debug("Connecting to {}", url);
 
@@ -782,6 +1163,9 @@ public class AIDataService {
       connection.setRequestMethod("POST");
       connection.setDoInput(true);
       connection.setDoOutput(true);
+      connection.setConnectTimeout(
+          UrlConnectionTransport.getConnectTimeout(config.getConnectTimeoutMillis(), timeoutMillis));
+      connection.setReadTimeout(timeoutMillis);
 
       httpClient = new HttpClient(connection);
       httpClient.setWriteSoundLog(config.isWriteSoundLog());
@@ -792,6 +1176,7 @@ public class AIDataService {
       httpClient.finishMultipart();
 
       final String response = httpClient.getResponse();
+      responseCode = connection.getResponseCode();
       return response;
 
     } catch (final IOException e) {
@@ -799,16 +1184,22 @@ public class AIDataService {
         final String errorString = httpClient.getErrorString();
         logger.debug(errorString);
         if (!StringUtils.isEmpty(errorString)) {
+          responseCode = getReceivedResponseCode(connection);
           return errorString;
         } else if (e instanceof HttpRetryException) {
           final AIResponse response = new AIResponse();
           final int code = ((HttpRetryException) e).responseCode();
+          responseCode = code;
           final Status status = Status.fromResponseCode(code);
           status.setErrorDetails(((HttpRetryException) e).getReason());
           response.setStatus(status);
           throw new AIServiceException(response);
         }
       }
+      if (deadline != null && deadline.isExpired()) {
+        throw new AIServiceTimeoutException(
+            "Voice request to the api.ai service did not complete before the deadline", e);
+      }
 
       logger.error(
           "Can't make request to the API.AI service. Please, check connection settings and API.AI keys.",
@@ -817,6 +1208,7 @@ public class AIDataService {
           "Can't make request to the API.AI service. Please, check connection settings and API.AI keys.",
           e);
     } finally {
+      permit.release(responseCode);
       if (connection != null) {
         connection.disconnect();
       }
@@ -846,95 +1238,419 @@ public class AIDataService {
       throws AIServiceException, BadResponseStatusException {
 
     assert endpoint != null;
-    HttpURLConnection connection = null;
 
-    try {
+    final String queryData = request != null ? GSON.toJson(request) : null;
+    final String requestMethod = method != null ? method : DEFAULT_REQUEST_METHOD;
 
-      final URL url = new URL(endpoint);
+    if (queryData != null && !REQUEST_METHOD_POST.equals(requestMethod)) {
+      throw new AIServiceException("Non-empty request should be sent using POST method");
+    }
+
+    final RawResponse rawResponse;
+    try {
+      rawResponse = executeWithRetries(endpoint, requestMethod, new RequestAttempt() {
+        @Override
+        public RawResponse execute(final Deadline deadline)
+            throws MalformedURLException, AIServiceException {
+          return doRequestAttempt(queryData, endpoint, requestMethod, additionalHeaders, deadline);
+        }
+      });
+    } catch (final MalformedURLException e) {
+      logger.error(
+          "Can't make request to the API.AI service. Please, check connection settings and API access token.",
+          e);
+      throw new AIServiceException(
+          "Can't make request to the API.AI service. Please, check connection settings and API access token.",
+          e);
+    }
 
-      final String queryData = request != null ? GSON.toJson(request) : null;
-      final String requestMethod = method != null ? method : DEFAULT_REQUEST_METHOD;
+    if (rawResponse.error != null) {
+      throw new AIServiceException(rawResponse.body, rawResponse.error);
+    }
 
+    final String response = rawResponse.body;
 
-      logger.debug("Request json: " + queryData);
+    try {
+      AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
 
-      if (config.getProxy() != null) {
-        connection = (HttpURLConnection) url.openConnection(config.getProxy());
-      } else {
-        connection = (HttpURLConnection) url.openConnection();
+      if (aiResponse.getStatus() != null && aiResponse.getStatus().getCode() != 200) {
+        throw new BadResponseStatusException(aiResponse);
       }
+    } catch (JsonParseException e) {
+      // response is not in a expected format
+    }
 
-      if (queryData != null && !REQUEST_METHOD_POST.equals(requestMethod)) {
-        throw new AIServiceException("Non-empty request should be sent using POST method");
-      }
+    return GSON.fromJson(response, responseType);
+  }
 
-      connection.setRequestMethod(requestMethod);
-      if (REQUEST_METHOD_POST.equals(requestMethod)) {
-        connection.setDoOutput(true);
-      }
-      connection.addRequestProperty("Authorization", "Bearer " + config.getApiKey());
-      connection.addRequestProperty("Content-Type", "application/json; charset=utf-8");
-      connection.addRequestProperty("Accept", "application/json");
+  private RawResponse doRequestAttempt(final String queryData, final String endpoint,
+      final String requestMethod, final Map<String, String> additionalHeaders,
+      final Deadline deadline) throws MalformedURLException, AIServiceException {
+    return doTransportAttempt(queryData, null, endpoint, requestMethod, additionalHeaders,
+        deadline);
+  }
 
-      if (additionalHeaders != null) {
-        for (final Map.Entry<String, String> entry : additionalHeaders.entrySet()) {
-          connection.addRequestProperty(entry.getKey(), entry.getValue());
-        }
-      }
+  /**
+   * Make a single request through configured {@link HttpTransport}
+   * 
+   * @param queryData Request body. <code>null</code> if the request has no body
+   * @param bodyWriter Writer of a request body streamed to the connection. <code>null</code> if
+   *        the body is passed as <code>queryData</code>
+   * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+   * @return Response. Contains error if the service responded with an error code
+   */
+  private RawResponse doTransportAttempt(final String queryData,
+      final StreamingHttpTransport.BodyWriter bodyWriter, final String endpoint,
+      final String requestMethod, final Map<String, String> additionalHeaders,
+      final Deadline deadline) throws AIServiceException {
 
-      connection.connect();
+    final RequestPermit permit = acquireRequestPermit(endpoint, deadline);
+    int responseCode = ConcurrencyLimiter.NO_RESPONSE_CODE;
 
-      if (queryData != null) {
-        final BufferedOutputStream outputStream =
-            new BufferedOutputStream(connection.getOutputStream());
-        IOUtils.writeAll(queryData, outputStream);
-        outputStream.close();
-      }
+    try {
 
-      final InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-      final String response = IOUtils.readAll(inputStream);
-      inputStream.close();
+      final URL url = new URL(endpoint);
+      final int timeoutMillis = getAttemptTimeoutMillis(deadline, endpoint);
 
-      try {
-        AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+      if (bodyWriter == null) {
+        logger.debug("Request json: " + queryData);
+      }
 
-        if (aiResponse.getStatus() != null && aiResponse.getStatus().getCode() != 200) {
-          throw new BadResponseStatusException(aiResponse);
-        }
-      } catch (JsonParseException e) {
-        // response is not in a expected format
+      final Map<String, String> headers = new LinkedHashMap<>();
+      headers.put("Authorization", "Bearer " + config.getApiKey());
+      headers.put("Content-Type", "application/json; charset=utf-8");
+      headers.put("Accept", "application/json");
+      if (additionalHeaders != null) {
+        headers.putAll(additionalHeaders);
       }
 
-      return GSON.fromJson(response, responseType);
-    } catch (final IOException e) {
-      if (connection != null) {
-        try {
-          final InputStream errorStream = connection.getErrorStream();
-          if (errorStream != null) {
-            final String errorString = IOUtils.readAll(errorStream);
-            logger.debug(errorString);
-            throw new AIServiceException(errorString, e);
-          } else {
-            throw new AIServiceException("Can't connect to the api.ai service.", e);
-          }
-        } catch (final IOException ex) {
-          logger.warn("Can't read error response", ex);
-        }
+      final HttpTransport transport = getTransport();
+      final HttpTransport.Response response;
+      if (bodyWriter == null) {
+        response = transport.execute(requestMethod, url, headers, queryData, timeoutMillis);
+      } else if (transport instanceof StreamingHttpTransport) {
+        response = ((StreamingHttpTransport) transport).executeStreaming(requestMethod, url,
+            headers, bodyWriter, timeoutMillis);
+      } else {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        bodyWriter.writeTo(body);
+        response = transport.execute(requestMethod, url, headers, body.toString("UTF-8"),
+            timeoutMillis);
       }
+      responseCode = response.getCode();
+
+      if (responseCode < 400) {
+        return new RawResponse(responseCode, response.getBody(), null);
+      }
+      final IOException error = new IOException(
+          "Server returned HTTP response code: " + responseCode + " for URL: " + endpoint);
+      if (StringUtils.isEmpty(response.getBody())) {
+        return new RawResponse(responseCode, null, error);
+      }
+      logger.debug(response.getBody());
+      return new RawResponse(responseCode, response.getBody(), error);
+    } catch (final MalformedURLException e) {
       logger.error(
           "Can't make request to the API.AI service. Please, check connection settings and API access token.",
           e);
       throw new AIServiceException(
           "Can't make request to the API.AI service. Please, check connection settings and API access token.",
           e);
-
+    } catch (final IOException e) {
+      if (deadline != null && deadline.isExpired()) {
+        throw new AIServiceTimeoutException(
+            "Request to the api.ai service did not complete before the deadline", e);
+      }
+      throw new AIServiceException("Can't connect to the api.ai service.", e);
     } finally {
-      if (connection != null) {
-        connection.disconnect();
+      permit.release(responseCode);
+    }
+  }
+
+  /**
+   * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+   * @return The configured attempt timeout or the time left of the call if shorter. <code>0</code>
+   *         if not limited
+   * @throws AIServiceTimeoutException If the deadline has passed
+   */
+  private int getAttemptTimeoutMillis(final Deadline deadline, final String endpoint)
+      throws AIServiceTimeoutException {
+    final int attemptTimeoutMillis = config.getAttemptTimeoutMillis();
+    if (deadline == null) {
+      return attemptTimeoutMillis;
+    }
+    final long remainingMillis = deadline.getRemainingMillis();
+    if (remainingMillis <= 0) {
+      throw new AIServiceTimeoutException(
+          "Deadline passed before request to " + endpoint + " was sent", null);
+    }
+    return (int) (attemptTimeoutMillis > 0
+        ? Math.min(remainingMillis, attemptTimeoutMillis)
+        : Math.min(remainingMillis, Integer.MAX_VALUE));
+  }
+
+  /**
+   * @return Deadline of the query in progress on this thread, otherwise a new deadline of the
+   *         configured request timeout. <code>null</code> if the call is not limited
+   */
+  private Deadline getCallDeadline() {
+    final Deadline deadline = queryDeadline.get();
+    return deadline != null ? deadline : createDeadline(null);
+  }
+
+  /**
+   * @return The earliest of the request extras deadline and the configured request timeout.
+   *         <code>null</code> if the call is not limited
+   */
+  private Deadline createDeadline(final RequestExtras requestExtras) {
+    final Deadline configured = config.getRequestTimeoutMillis() > 0
+        ? Deadline.after(config.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS)
+        : null;
+    return Deadline.earliest(requestExtras != null ? requestExtras.getDeadline() : null,
+        configured);
+  }
+
+  /**
+   * @return Configured transport or {@link UrlConnectionTransport} with configured proxy
+   */
+  private HttpTransport getTransport() {
+    final HttpTransport transport = config.getTransport();
+    return transport != null ? transport
+        : new UrlConnectionTransport(config.getProxy(), config.getCompression(),
+            config.getConnectTimeoutMillis());
+  }
+
+  /**
+   * Execute request attempts until success or until configured {@link RetryPolicy} allows
+   * 
+   * @param endpoint Request url. Cannot be <code>null</code>
+   * @param method HTTP request method. Cannot be <code>null</code>
+   * @param attempt Single request attempt. Cannot be <code>null</code>
+   * @return Response of the last attempt
+   */
+  private RawResponse executeWithRetries(final String endpoint, final String method,
+      final RequestAttempt attempt) throws MalformedURLException, AIServiceException {
+    final Deadline deadline = getCallDeadline();
+    final RetryPolicy retryPolicy = config.getRetryPolicy();
+    if (retryPolicy == null) {
+      return checkBody(attempt.execute(deadline));
+    }
+
+    final Endpoint target = Endpoint.fromUrl(endpoint);
+    retryPolicy.onRequest();
+
+    for (int attemptNumber = 1;; attemptNumber++) {
+      final long backoffMillis = retryPolicy.getBackoffMillis(attemptNumber);
+      final RawResponse response;
+      try {
+        response = attempt.execute(deadline);
+      } catch (final AIServiceTimeoutException e) {
+        throw e;
+      } catch (final AIServiceException e) {
+        if (!(e.getCause() instanceof IOException)
+            || !hasTimeForRetry(deadline, backoffMillis)
+            || !retryPolicy.shouldRetry(target, method, attemptNumber,
+                ConcurrencyLimiter.NO_RESPONSE_CODE, (IOException) e.getCause())) {
+          throw e;
+        }
+        logger.debug("Retrying request to {} after connection failure", endpoint);
+        waitBeforeRetry(backoffMillis);
+        continue;
+      }
+
+      if (!hasTimeForRetry(deadline, backoffMillis)
+          || !retryPolicy.shouldRetry(target, method, attemptNumber, response.code, null)) {
+        return checkBody(response);
+      }
+      logger.debug("Retrying request to {} after {} response", endpoint, response.code);
+      waitBeforeRetry(backoffMillis);
+    }
+  }
+
+  /**
+   * @return The response if it has a body or no error
+   * @throws AIServiceException With the response code if the service responded with an error code
+   *         and no body
+   */
+  private static RawResponse checkBody(final RawResponse response) throws AIServiceException {
+    if (response.error == null || response.body != null) {
+      return response;
+    }
+    final AIServiceException exception = new AIServiceException(
+        createClientErrorResponse(response.code, response.error.getMessage()));
+    exception.initCause(response.error);
+    throw exception;
+  }
+
+  /**
+   * @return <code>false</code> if the deadline would pass during the backoff before a retry
+   */
+  private static boolean hasTimeForRetry(final Deadline deadline, final long backoffMillis) {
+    return deadline == null || deadline.getRemainingMillis() > backoffMillis;
+  }
+
+  private static void waitBeforeRetry(final long backoffMillis) throws AIServiceException {
+    try {
+      Thread.sleep(backoffMillis);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AIServiceException("Interrupted while waiting for request retry", e);
+    }
+  }
+
+  /**
+   * Pass configured {@link CircuitBreaker}, take a token from configured {@link RateLimiter} and
+   * a slot from configured {@link ConcurrencyLimiter}
+   * 
+   * @param endpoint Request url. Cannot be <code>null</code>
+   * @return Permit which must be released after the request. Never <code>null</code>
+   * @throws CircuitBreakerOpenException If the service url circuit is open
+   * @throws AIServiceException If no token or slot became free in time
+   */
+  private RequestPermit acquireRequestPermit(final String endpoint, final Deadline deadline)
+      throws AIServiceException {
+    final String serviceUrl = config.getServiceUrl();
+    final CircuitBreaker breaker = config.getCircuitBreaker();
+    if (breaker != null && !breaker.tryAcquire(serviceUrl)) {
+      throw new CircuitBreakerOpenException(createClientErrorResponse(503,
+          "Requests to the API.AI service are suspended after repeated failures"));
+    }
+    final ConcurrencyLimiter limiter;
+    try {
+      acquireRateToken(endpoint, deadline);
+      limiter = acquireConcurrencyPermit(endpoint, deadline);
+    } catch (final AIServiceException e) {
+      if (breaker != null) {
+        breaker.onCancel(serviceUrl);
       }
+      throw e;
+    }
+    return new RequestPermit(serviceUrl, breaker, limiter);
+  }
+
+  /**
+   * Take a token from configured {@link RateLimiter}, waiting for it if necessary
+   * 
+   * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+   * @throws AIServiceTimeoutException If the deadline passes before a token becomes available
+   * @throws AIServiceException If no token became available in time
+   */
+  private void acquireRateToken(final String endpoint, final Deadline deadline)
+      throws AIServiceException {
+    final RateLimiter rateLimiter = config.getRateLimiter();
+    if (rateLimiter == null) {
+      return;
+    }
+    final long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(rateLimiter.getMaxWaitMillis());
+    final long remainingNanos = getRemainingNanos(deadline);
+    final boolean acquired;
+    try {
+      acquired = rateLimiter.acquire(config.getApiKey(), Endpoint.fromUrl(endpoint),
+          Math.min(maxWaitNanos, remainingNanos));
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AIServiceException("Interrupted while waiting for request rate limit", e);
+    }
+    if (!acquired && remainingNanos < maxWaitNanos) {
+      throw new AIServiceTimeoutException(
+          "Deadline passed while waiting for request rate limit of " + endpoint, null);
+    }
+    if (!acquired) {
+      throw new AIServiceException(createClientErrorResponse(429,
+          "Request rate limit of the API.AI agent exceeded"));
     }
   }
 
+  /**
+   * Take a slot from configured {@link ConcurrencyLimiter}
+   * 
+   * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+   * @return Limiter the slot was taken from or <code>null</code> if requests are not limited
+   * @throws AIServiceTimeoutException If the deadline passes before a slot becomes free
+   * @throws AIServiceException If no slot became free in time
+   */
+  private ConcurrencyLimiter acquireConcurrencyPermit(final String endpoint,
+      final Deadline deadline) throws AIServiceException {
+    final ConcurrencyLimiter limiter = config.getConcurrencyLimiter();
+    if (limiter == null) {
+      return null;
+    }
+    final long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(limiter.getMaxQueueTimeMillis());
+    final long remainingNanos = getRemainingNanos(deadline);
+    final boolean acquired;
+    try {
+      acquired = limiter.acquire(Math.min(maxWaitNanos, remainingNanos));
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AIServiceException("Interrupted while waiting for a free request slot", e);
+    }
+    if (!acquired && remainingNanos < maxWaitNanos) {
+      throw new AIServiceTimeoutException(
+          "Deadline passed while waiting for a free slot to send request to " + endpoint, null);
+    }
+    if (!acquired) {
+      throw new AIServiceException(createClientErrorResponse(429,
+          "Too many simultaneous requests to the API.AI service"));
+    }
+    return limiter;
+  }
+
+  /**
+   * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+   * @return Time left of the call in nanoseconds, not negative. {@link Long#MAX_VALUE} if the
+   *         call is not limited
+   */
+  private static long getRemainingNanos(final Deadline deadline) {
+    return deadline != null ? Math.max(0, deadline.getRemainingNanos()) : Long.MAX_VALUE;
+  }
+
+  /**
+   * @param rejection Exception thrown because the circuit breaker is open or the deadline passed
+   * @param request Rejected request. Cannot be <code>null</code>
+   * @return Copy of the configured fallback response for the request
+   * @throws AIServiceException The rejection if no fallback response is configured
+   */
+  private AIResponse getFallbackResponse(final AIServiceException rejection,
+      final AIRequest request) throws AIServiceException {
+    final AIResponse fallbackResponse = config.getFallbackResponse();
+    if (fallbackResponse == null) {
+      throw rejection;
+    }
+    logger.debug("Returning fallback response: {}", rejection.getMessage());
+
+    final AIResponse response = new AIResponse();
+    response.setId(fallbackResponse.getId());
+    response.setTimestamp(new Date());
+    response.setLang(request.getLanguage());
+    response.setSessionId(request.getSessionId());
+    response.setResult(fallbackResponse.getResult());
+    response.setStatus(fallbackResponse.getStatus());
+    // Deep copy, so callers cannot change the configured response
+    return GSON.fromJson(GSON.toJsonTree(response), AIResponse.class);
+  }
+
+  /**
+   * @param connection Connection which error stream was already received
+   */
+  private static int getReceivedResponseCode(final HttpURLConnection connection) {
+    try {
+      return connection.getResponseCode();
+    } catch (final IOException e) {
+      return ConcurrencyLimiter.NO_RESPONSE_CODE;
+    }
+  }
+
+  /**
+   * Create response describing request failed on the client side
+   */
+  private static AIResponse createClientErrorResponse(final int code, final String errorDetails) {
+    final AIResponse response = new AIResponse();
+    final Status status = Status.fromResponseCode(code);
+    status.setErrorDetails(errorDetails);
+    response.setStatus(status);
+    return response;
+  }
+
   private void fillRequest(final AIRequest request, final RequestExtras requestExtras) {
     assert request != null;
     assert requestExtras != null;
@@ -973,6 +1689,71 @@ public class AIDataService {
   private static interface ApiActiveContextListResponse extends List<AIContext> {
   }
 
+  /**
+   * Single attempt to make a request
+   */
+  private static interface RequestAttempt {
+    /**
+     * @param deadline Deadline of the call. <code>null</code> if the call is not limited
+     */
+    RawResponse execute(Deadline deadline) throws MalformedURLException, AIServiceException;
+  }
+
+  /**
+   * Response body with status code as it was received from the service
+   */
+  private static class RawResponse {
+
+    private final int code;
+
+    private final String body;
+
+    /**
+     * Not <code>null</code> if the body was read from error stream
+     */
+    private final IOException error;
+
+    public RawResponse(final int code, final String body, final IOException error) {
+      this.code = code;
+      this.body = body;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Circuit breaker and concurrency limiter permissions held by a request
+   */
+  private static class RequestPermit {
+
+    private final String serviceUrl;
+
+    private final CircuitBreaker breaker;
+
+    private final ConcurrencyLimiter limiter;
+
+    private final long startTime = System.nanoTime();
+
+    public RequestPermit(final String serviceUrl, final CircuitBreaker breaker,
+        final ConcurrencyLimiter limiter) {
+      this.serviceUrl = serviceUrl;
+      this.breaker = breaker;
+      this.limiter = limiter;
+    }
+
+    /**
+     * @param responseCode HTTP response code or {@link ConcurrencyLimiter#NO_RESPONSE_CODE}
+     */
+    public void release(final int responseCode) {
+      final long latency = System.nanoTime() - startTime;
+      if (limiter != null) {
+        limiter.release(latency, responseCode);
+      }
+      if (breaker != null) {
+        breaker.onResult(serviceUrl, latency, responseCode);
+      }
+    }
+  }
+
   private static class BadResponseStatusException extends Exception {
 
     private static final long serialVersionUID = 1L;
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+/**
+ * Receives the result of a call made by {@link AsyncAIDataService}. Methods are called on the
+ * executor thread which made the blocking call and should not block for long.
+ */
+public interface AIServiceCallback<T> {
+
+  /**
+   * @param result Result of the call. May be <code>null</code> if the blocking call returns it
+   */
+  void onSuccess(T result);
+
+  /**
+   * @param error Exception thrown by the blocking call
+   */
+  void onError(AIServiceException error);
+}
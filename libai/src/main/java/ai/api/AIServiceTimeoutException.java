@@ -0,0 +1,33 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+/**
+ * Thrown when a call did not complete before its {@link Deadline}
+ */
+public class AIServiceTimeoutException extends AIServiceException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param detailMessage Description of the call
+   * @param cause Failure of the last request attempt. May be <code>null</code>
+   */
+  public AIServiceTimeoutException(final String detailMessage, final Throwable cause) {
+    super(detailMessage, cause);
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.util.VirtualThreads;
+
+/**
+ * Runs blocking calls of {@link AIDataService} on an executor and returns futures.
+ * <p>
+ * By default each call runs on a new virtual thread on Java 21 and newer, so a large number of
+ * conversations may wait for the service at the same time without a thread pool sized for them.
+ * Older runtimes use cached platform threads. The default transport and the limiters of the
+ * configuration do not hold monitors while waiting, so they do not pin carrier threads.
+ * <p>
+ * Futures fail with {@link java.util.concurrent.ExecutionException} caused by
+ * {@link AIServiceException} in the same cases the blocking call throws it. Cancelling a future
+ * with interruption interrupts the call.
+ */
+public class AsyncAIDataService {
+
+  private static final String THREAD_NAME_PREFIX = "libai-async-";
+
+  private final AIDataService dataService;
+  private final ExecutorService executor;
+  private final boolean ownExecutor;
+
+  /**
+   * Create service running calls on virtual threads if available
+   *
+   * @param dataService Service making blocking calls. Cannot be <code>null</code>
+   */
+  public AsyncAIDataService(final AIDataService dataService) {
+    this(dataService, VirtualThreads.newThreadPerTaskExecutor(THREAD_NAME_PREFIX), true);
+  }
+
+  /**
+   * @param dataService Service making blocking calls. Cannot be <code>null</code>
+   * @param executor Executor running the calls. Not shut down by {@link #shutdown()}. Cannot be
+   *        <code>null</code>
+   */
+  public AsyncAIDataService(final AIDataService dataService, final ExecutorService executor) {
+    this(dataService, executor, false);
+  }
+
+  private AsyncAIDataService(final AIDataService dataService, final ExecutorService executor,
+      final boolean ownExecutor) {
+    if (dataService == null) {
+      throw new IllegalArgumentException("dataService should not be null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor should not be null");
+    }
+    this.dataService = dataService;
+    this.executor = executor;
+    this.ownExecutor = ownExecutor;
+  }
+
+  public AIDataService getDataService() {
+    return dataService;
+  }
+
+  /**
+   * @see AIDataService#request(AIRequest)
+   */
+  public Future<AIResponse> request(final AIRequest request) {
+    return request(request, null, null, null);
+  }
+
+  /**
+   * @see AIDataService#request(AIRequest, RequestExtras, AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<AIResponse> request(final AIRequest request, final RequestExtras requestExtras,
+      final AIServiceContext serviceContext, final AIServiceCallback<AIResponse> callback) {
+    if (request == null) {
+      throw new IllegalArgumentException("Request argument must not be null");
+    }
+    return submit(new ServiceCall<AIResponse>(callback) {
+      @Override
+      AIResponse execute() throws AIServiceException {
+        return dataService.request(request, requestExtras, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#request(AIRequest, RequestExtras, AIServiceContext, Projection)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<ProjectedResponse> request(final AIRequest request,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext,
+      final Projection projection, final AIServiceCallback<ProjectedResponse> callback) {
+    if (request == null) {
+      throw new IllegalArgumentException("Request argument must not be null");
+    }
+    if (projection == null) {
+      throw new IllegalArgumentException("Projection argument must not be null");
+    }
+    return submit(new ServiceCall<ProjectedResponse>(callback) {
+      @Override
+      ProjectedResponse execute() throws AIServiceException {
+        return dataService.request(request, requestExtras, serviceContext, projection);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#voiceRequest(InputStream, RequestExtras, AIServiceContext)
+   * @param voiceStream Read on the executor, must not be used until the call completes. Cannot be
+   *        <code>null</code>
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<AIResponse> voiceRequest(final InputStream voiceStream,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext,
+      final AIServiceCallback<AIResponse> callback) {
+    if (voiceStream == null) {
+      throw new IllegalArgumentException("voiceStream must not be null");
+    }
+    return submit(new ServiceCall<AIResponse>(callback) {
+      @Override
+      AIResponse execute() throws AIServiceException {
+        return dataService.voiceRequest(voiceStream, requestExtras, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#getActiveContexts(AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<List<AIContext>> getActiveContexts(final AIServiceContext serviceContext,
+      final AIServiceCallback<List<AIContext>> callback) {
+    return submit(new ServiceCall<List<AIContext>>(callback) {
+      @Override
+      List<AIContext> execute() throws AIServiceException {
+        return dataService.getActiveContexts(serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#getActiveContext(String, AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<AIContext> getActiveContext(final String contextName,
+      final AIServiceContext serviceContext, final AIServiceCallback<AIContext> callback) {
+    return submit(new ServiceCall<AIContext>(callback) {
+      @Override
+      AIContext execute() throws AIServiceException {
+        return dataService.getActiveContext(contextName, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#addActiveContext(Iterable, AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<List<String>> addActiveContext(final Iterable<AIContext> contexts,
+      final AIServiceContext serviceContext, final AIServiceCallback<List<String>> callback) {
+    return submit(new ServiceCall<List<String>>(callback) {
+      @Override
+      List<String> execute() throws AIServiceException {
+        return dataService.addActiveContext(contexts, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#resetActiveContexts(AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<Void> resetActiveContexts(final AIServiceContext serviceContext,
+      final AIServiceCallback<Void> callback) {
+    return submit(new ServiceCall<Void>(callback) {
+      @Override
+      Void execute() throws AIServiceException {
+        dataService.resetActiveContexts(serviceContext);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#removeActiveContext(String, AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<Boolean> removeActiveContext(final String contextName,
+      final AIServiceContext serviceContext, final AIServiceCallback<Boolean> callback) {
+    return submit(new ServiceCall<Boolean>(callback) {
+      @Override
+      Boolean execute() throws AIServiceException {
+        return dataService.removeActiveContext(contextName, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#uploadUserEntities(Collection, AIServiceContext)
+   * @param callback Called when the call completes. May be <code>null</code>
+   */
+  public Future<AIResponse> uploadUserEntities(final Collection<Entity> userEntities,
+      final AIServiceContext serviceContext, final AIServiceCallback<AIResponse> callback) {
+    return submit(new ServiceCall<AIResponse>(callback) {
+      @Override
+      AIResponse execute() throws AIServiceException {
+        return dataService.uploadUserEntities(userEntities, serviceContext);
+      }
+    });
+  }
+
+  /**
+   * @see AIDataService#warmUp()
+   * @param callback Called with the number of connections opened when warm up completes. May
+   *        be <code>null</code>
+   */
+  public Future<Integer> warmUp(final AIServiceCallback<Integer> callback) {
+    return submit(new ServiceCall<Integer>(callback) {
+      @Override
+      Integer execute() throws AIServiceException {
+        return dataService.warmUp();
+      }
+    });
+  }
+
+  /**
+   * Stop accepting calls. Calls in progress complete. Does nothing if the executor was passed to
+   * the constructor.
+   */
+  public void shutdown() {
+    if (ownExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  private <T> Future<T> submit(final ServiceCall<T> call) {
+    return executor.submit(call);
+  }
+
+  /**
+   * Blocking call notifying the callback
+   */
+  private abstract static class ServiceCall<T> implements Callable<T> {
+
+    private final AIServiceCallback<T> callback;
+
+    ServiceCall(final AIServiceCallback<T> callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public T call() throws AIServiceException {
+      final T result;
+      try {
+        result = execute();
+      } catch (final AIServiceException e) {
+        if (callback != null) {
+          callback.onError(e);
+        }
+        throw e;
+      }
+      if (callback != null) {
+        callback.onSuccess(result);
+      }
+      return result;
+    }
+
+    abstract T execute() throws AIServiceException;
+  }
+}
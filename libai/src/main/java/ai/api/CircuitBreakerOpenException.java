@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ 
+package ai.api;
+
+import ai.api.model.AIResponse;
+
+/**
+ * Thrown when a request was not made because the circuit breaker of the service url is open
+ */
+public class CircuitBreakerOpenException extends AIServiceException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * @param aiResponse Client side response with 503 status describing the rejection
+   */
+  public CircuitBreakerOpenException(final AIResponse aiResponse) {
+    super(aiResponse);
+  }
+}
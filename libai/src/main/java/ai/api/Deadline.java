@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a call to the service must complete, including all retries.
+ * <p>
+ * Measured with {@link System#nanoTime()}, so it is not affected by wall clock changes. One
+ * deadline may be passed to several calls to share a time budget between them.
+ */
+public final class Deadline {
+
+  private final long deadlineNanos;
+
+  private Deadline(final long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * Create deadline the given time from now
+   */
+  public static Deadline after(final long duration, final TimeUnit unit) {
+    return new Deadline(System.nanoTime() + unit.toNanos(duration));
+  }
+
+  /**
+   * @return The deadline which comes first. If one of deadlines is <code>null</code> then the
+   *         other one
+   */
+  public static Deadline earliest(final Deadline first, final Deadline second) {
+    if (first == null) {
+      return second;
+    }
+    if (second == null) {
+      return first;
+    }
+    return first.deadlineNanos - second.deadlineNanos <= 0 ? first : second;
+  }
+
+  /**
+   * @return Time left in milliseconds, rounded up. Zero or negative if the deadline has passed
+   */
+  public long getRemainingMillis() {
+    final long remainingNanos = getRemainingNanos();
+    return remainingNanos > 0
+        ? TimeUnit.NANOSECONDS.toMillis(remainingNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1)
+        : TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+  }
+
+  /**
+   * @return Time left in nanoseconds. Zero or negative if the deadline has passed
+   */
+  public long getRemainingNanos() {
+    return deadlineNanos - System.nanoTime();
+  }
+
+  public boolean isExpired() {
+    return getRemainingNanos() <= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline in " + getRemainingMillis() + " ms";
+  }
+}
@@ -29,13 +29,18 @@ import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
 import ai.api.model.GoogleAssistantResponseMessages.ResponseChatBubble;
+import ai.api.model.LazyDecodingAdapterFactory;
 import ai.api.model.ResponseMessage;
 import ai.api.model.ResponseMessage.MessageType;
 import ai.api.model.ResponseMessage.Platform;
+import ai.api.model.StringPoolAdapterFactory;
+import ai.api.util.StringPool;
 
 import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /** 
  * {@link Gson} object factory used in serialization 
@@ -46,19 +51,40 @@ public class GsonFactory {
 
   private static final Gson PROTOCOL_GSON;
 
+  private static final Gson LAZY_GSON;
+
   private static final GsonFactory DEFAULT_FACTORY = new GsonFactory();
+
+  /**
+   * Pooling Gson objects cached at most, the cache is cleared when it is full
+   */
+  private static final int MAX_POOLED_GSONS = 16;
+
+  /**
+   * Gson objects of string pools, created when a pool is first used
+   */
+  private final ConcurrentMap<PooledGsonKey, Gson> pooledGsons = new ConcurrentHashMap<>();
   
   static {
-    GsonBuilder gsonBuilder = new GsonBuilder()
+    SIMPLIFIED_GSON = createSimplifiedBuilder().create();
+    PROTOCOL_GSON = createProtocolBuilder().create();
+    LAZY_GSON = createProtocolBuilder()
+        .registerTypeAdapterFactory(new LazyDecodingAdapterFactory())
+        .create();
+  }
+
+  private static GsonBuilder createSimplifiedBuilder() {
+    return new GsonBuilder()
         .setDateFormat(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).toPattern())
         .registerTypeAdapter(ResponseMessage.class, new ResponseItemAdapter())
         .registerTypeAdapter(ResponseMessage.MessageType.class, new ResponseMessageTypeAdapter())
         .registerTypeAdapter(ResponseMessage.Platform.class, new ResponseMessagePlatformAdapter());
-    SIMPLIFIED_GSON = gsonBuilder.create();
-    
-    gsonBuilder.registerTypeAdapter(ResponseMessage.ResponseSpeech.class, new ResponseSpeechAdapter());
-    gsonBuilder.registerTypeAdapter(ResponseChatBubble.class, new ResponseChatBubbleAdapter());
-    PROTOCOL_GSON = gsonBuilder.create();
+  }
+
+  private static GsonBuilder createProtocolBuilder() {
+    return createSimplifiedBuilder()
+        .registerTypeAdapter(ResponseMessage.ResponseSpeech.class, new ResponseSpeechAdapter())
+        .registerTypeAdapter(ResponseChatBubble.class, new ResponseChatBubbleAdapter());
   }
 
   /**
@@ -68,6 +94,64 @@ public class GsonFactory {
     return PROTOCOL_GSON;
   }
 
+  /**
+   * Get a {@link Gson} object reading the large sub-trees of results when they are first accessed
+   * 
+   * @see LazyDecodingAdapterFactory
+   */
+  public Gson getLazyGson() {
+    return LAZY_GSON;
+  }
+
+  /**
+   * Create a {@link Gson} object reading responses. Creating one is costly, so it should be reused
+   * 
+   * @param lazyDecoding If <code>true</code> then large sub-trees of results are read when they are
+   *        first accessed, see {@link #getLazyGson()}
+   * @param stringPool Pool of repeated response strings. If <code>null</code> then strings are not
+   *        pooled
+   * @see StringPoolAdapterFactory
+   */
+  public Gson createGson(final boolean lazyDecoding, final StringPool stringPool) {
+    if (stringPool == null) {
+      return lazyDecoding ? LAZY_GSON : PROTOCOL_GSON;
+    }
+    final GsonBuilder gsonBuilder = createProtocolBuilder();
+    if (lazyDecoding) {
+      gsonBuilder.registerTypeAdapterFactory(new LazyDecodingAdapterFactory());
+    }
+    // Registered last to read before the lazy factory
+    return gsonBuilder.registerTypeAdapterFactory(new StringPoolAdapterFactory(stringPool)).create();
+  }
+
+  /**
+   * Get a {@link Gson} object reading responses as the configuration sets: lazily if
+   * {@link AIConfiguration#isLazyDecoding()} and with the string pool of
+   * {@link AIConfiguration#getStringPool()}. Objects of string pools are cached
+   *
+   * @param config Cannot be <code>null</code>
+   */
+  public Gson getResponseGson(final AIConfiguration config) {
+    final StringPool stringPool = config.getStringPool();
+    final boolean lazyDecoding = config.isLazyDecoding();
+    if (stringPool == null) {
+      return lazyDecoding ? LAZY_GSON : PROTOCOL_GSON;
+    }
+    final PooledGsonKey key = new PooledGsonKey(stringPool, lazyDecoding);
+    Gson gson = pooledGsons.get(key);
+    if (gson == null) {
+      if (pooledGsons.size() >= MAX_POOLED_GSONS) {
+        pooledGsons.clear();
+      }
+      gson = createGson(lazyDecoding, stringPool);
+      final Gson existing = pooledGsons.putIfAbsent(key, gson);
+      if (existing != null) {
+        gson = existing;
+      }
+    }
+    return gson;
+  }
+
   /**
    * Create a default factory
    */
@@ -75,6 +159,34 @@ public class GsonFactory {
     return DEFAULT_FACTORY;
   }
   
+  /**
+   * String pool compared by identity and decoding mode
+   */
+  private static class PooledGsonKey {
+
+    final StringPool stringPool;
+    final boolean lazyDecoding;
+
+    PooledGsonKey(final StringPool stringPool, final boolean lazyDecoding) {
+      this.stringPool = stringPool;
+      this.lazyDecoding = lazyDecoding;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof PooledGsonKey)) {
+        return false;
+      }
+      final PooledGsonKey other = (PooledGsonKey) obj;
+      return stringPool == other.stringPool && lazyDecoding == other.lazyDecoding;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(stringPool) * 2 + (lazyDecoding ? 1 : 0);
+    }
+  }
+
   private static class ResponseMessagePlatformAdapter implements
     JsonDeserializer<ResponseMessage.Platform>,
     JsonSerializer<ResponseMessage.Platform> {
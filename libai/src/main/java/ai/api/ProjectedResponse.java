@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Fields of a response read by a {@link Projection}.
+ * <p>
+ * Strings and numbers are kept as their text and converted by the typed getters. Objects and
+ * arrays selected by a path are returned by {@link #getElement(String)}.
+ */
+public final class ProjectedResponse {
+
+  private final Projection projection;
+  private final Object[] values;
+  private final boolean[] found;
+
+  ProjectedResponse(final Projection projection, final Object[] values, final boolean[] found) {
+    this.projection = projection;
+    this.values = values;
+    this.found = found;
+  }
+
+  public Projection getProjection() {
+    return projection;
+  }
+
+  /**
+   * @return <code>true</code> if the response has the field, even if its value is
+   *         <code>null</code>
+   * @throws IllegalArgumentException If the path is not in the projection
+   */
+  public boolean has(final String path) {
+    return found[index(path)];
+  }
+
+  /**
+   * @return Text of the field or <code>null</code> if the response has no such field
+   * @throws IllegalArgumentException If the path is not in the projection
+   */
+  public String getString(final String path) {
+    return getString(path, null);
+  }
+
+  public String getString(final String path, final String defaultValue) {
+    final Object value = values[index(path)];
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value instanceof JsonElement) {
+      return ((JsonElement) value).toString();
+    }
+    return value.toString();
+  }
+
+  /**
+   * @throws NumberFormatException If the field is not a number
+   */
+  public int getInt(final String path, final int defaultValue) {
+    final String value = getScalar(path);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  /**
+   * @throws NumberFormatException If the field is not a number
+   */
+  public float getFloat(final String path, final float defaultValue) {
+    final String value = getScalar(path);
+    return value != null ? Float.parseFloat(value) : defaultValue;
+  }
+
+  public boolean getBoolean(final String path, final boolean defaultValue) {
+    final String value = getScalar(path);
+    return value != null ? Boolean.parseBoolean(value) : defaultValue;
+  }
+
+  /**
+   * @return Value of the field as an element or <code>null</code> if the response has no such
+   *         field. Numbers are returned as strings
+   */
+  public JsonElement getElement(final String path) {
+    final int index = index(path);
+    final Object value = values[index];
+    if (value == null) {
+      return found[index] ? JsonNull.INSTANCE : null;
+    }
+    if (value instanceof JsonElement) {
+      return (JsonElement) value;
+    }
+    if (value instanceof Boolean) {
+      return new JsonPrimitive((Boolean) value);
+    }
+    return new JsonPrimitive((String) value);
+  }
+
+  /**
+   * @return Status code of the response or <code>0</code> if the response has no status
+   */
+  public int getStatusCode() {
+    if (projection.indexOf(Projection.STATUS_CODE) >= 0) {
+      return getInt(Projection.STATUS_CODE, 0);
+    }
+    final JsonElement status = getElement(Projection.STATUS);
+    if (status == null || !status.isJsonObject()) {
+      return 0;
+    }
+    final JsonElement code = status.getAsJsonObject().get("code");
+    return code != null && code.isJsonPrimitive() ? code.getAsInt() : 0;
+  }
+
+  /**
+   * Replace the value of a path if it is in the projection
+   */
+  void replace(final String path, final String value) {
+    final int index = projection.indexOf(path);
+    if (index >= 0) {
+      values[index] = value;
+      found[index] = true;
+    }
+  }
+
+  private String getScalar(final String path) {
+    final Object value = values[index(path)];
+    if (value == null || value instanceof JsonElement) {
+      return null;
+    }
+    return value.toString();
+  }
+
+  private int index(final String path) {
+    final int index = projection.indexOf(path);
+    if (index < 0) {
+      throw new IllegalArgumentException("Path is not in the projection: " + path);
+    }
+    return index;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder result = new StringBuilder("ProjectedResponse {");
+    for (int i = 0; i < values.length; i++) {
+      if (found[i]) {
+        if (result.charAt(result.length() - 1) != '{') {
+          result.append(", ");
+        }
+        result.append(projection.getPaths().get(i)).append("='").append(values[i]).append('\'');
+      }
+    }
+    return result.append('}').toString();
+  }
+}
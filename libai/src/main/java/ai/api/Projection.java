@@ -0,0 +1,211 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Precompiled set of response fields read by
+ * {@link AIDataService#request(ai.api.model.AIRequest, Projection)}.
+ * <p>
+ * Paths are field names separated by dots, such as <code>result.metadata.intentName</code>. A
+ * numeric segment selects an array element, for example
+ * <code>result.fulfillment.messages.0.speech</code>. The response is read as a stream of tokens,
+ * fields outside the paths are skipped without building objects and reading stops when all paths
+ * are found. Projections are immutable and may be shared by threads.
+ */
+public final class Projection {
+
+  static final String STATUS = "status";
+  static final String STATUS_CODE = "status.code";
+
+  private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER =
+      GsonFactory.getDefaultFactory().getGson().getAdapter(JsonElement.class);
+
+  private final List<String> paths;
+  private final Map<String, Integer> indexes;
+  private final Node root = new Node();
+
+  private Projection(final List<String> paths) {
+    this.paths = paths;
+    this.indexes = new HashMap<>();
+    for (int i = 0; i < paths.size(); i++) {
+      final String path = paths.get(i);
+      if (path == null) {
+        throw new IllegalArgumentException("Projection path should not be null");
+      }
+      indexes.put(path, i);
+      Node node = root;
+      for (final String segment : path.split("\\.", -1)) {
+        if (segment.isEmpty()) {
+          throw new IllegalArgumentException("Wrong projection path: " + path);
+        }
+        if (node.index >= 0) {
+          throw new IllegalArgumentException("Projection paths overlap: " + path);
+        }
+        Node child = node.children.get(segment);
+        if (child == null) {
+          child = new Node();
+          node.children.put(segment, child);
+        }
+        node = child;
+      }
+      if (!node.children.isEmpty()) {
+        throw new IllegalArgumentException("Projection paths overlap: " + path);
+      }
+      node.index = i;
+    }
+  }
+
+  /**
+   * Create projection of response fields
+   *
+   * @param paths Dot separated field paths. Paths must not be prefixes of each other
+   * @throws IllegalArgumentException If a path is empty or overlaps another one
+   */
+  public static Projection of(final String... paths) {
+    if (paths == null || paths.length == 0) {
+      throw new IllegalArgumentException("Projection should have at least one path");
+    }
+    final Set<String> allPaths = new LinkedHashSet<>(Arrays.asList(paths));
+    // Read to recognize error responses, unless the whole status is read
+    if (!allPaths.contains(STATUS)) {
+      allPaths.add(STATUS_CODE);
+    }
+    return new Projection(Collections.unmodifiableList(new ArrayList<>(allPaths)));
+  }
+
+  /**
+   * @return Paths of the projection, including <code>status.code</code> which is always read
+   *         unless the projection has <code>status</code>
+   */
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  /**
+   * @return Index of the path value in {@link ProjectedResponse} or <code>-1</code> if the
+   *         projection has no such path
+   */
+  public int indexOf(final String path) {
+    final Integer index = indexes.get(path);
+    return index != null ? index : -1;
+  }
+
+  /**
+   * Read the projected fields of a response
+   *
+   * @param json Response body. Cannot be <code>null</code>
+   * @throws JsonSyntaxException If the response is not valid JSON
+   */
+  public ProjectedResponse read(final String json) {
+    final Object[] values = new Object[paths.size()];
+    final boolean[] found = new boolean[paths.size()];
+    final JsonReader reader = new JsonReader(new StringReader(json));
+    reader.setLenient(true);
+    try {
+      readValue(reader, root, values, found, new int[] {paths.size()});
+    } catch (final IOException e) {
+      throw new JsonSyntaxException(e);
+    } catch (final IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    }
+    return new ProjectedResponse(this, values, found);
+  }
+
+  /**
+   * @param remaining Count of paths not found yet
+   * @return <code>true</code> if all paths are found and reading may stop
+   */
+  private static boolean readValue(final JsonReader reader, final Node node,
+      final Object[] values, final boolean[] found, final int[] remaining) throws IOException {
+    if (node.index >= 0) {
+      values[node.index] = readLeaf(reader);
+      found[node.index] = true;
+      return --remaining[0] == 0;
+    }
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.BEGIN_OBJECT) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final Node child = node.children.get(reader.nextName());
+        if (child == null) {
+          reader.skipValue();
+        } else if (readValue(reader, child, values, found, remaining)) {
+          return true;
+        }
+      }
+      reader.endObject();
+    } else if (token == JsonToken.BEGIN_ARRAY) {
+      reader.beginArray();
+      for (int i = 0; reader.hasNext(); i++) {
+        final Node child = node.children.get(Integer.toString(i));
+        if (child == null) {
+          reader.skipValue();
+        } else if (readValue(reader, child, values, found, remaining)) {
+          return true;
+        }
+      }
+      reader.endArray();
+    } else {
+      reader.skipValue();
+    }
+    return false;
+  }
+
+  /**
+   * @return Text of a string or number, {@link Boolean}, <code>null</code> or
+   *         {@link JsonElement} of an object or array
+   */
+  private static Object readLeaf(final JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        return reader.nextString();
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        return ELEMENT_ADAPTER.read(reader);
+    }
+  }
+
+  /**
+   * Node of the path tree. Leaves have the index of their path
+   */
+  private static class Node {
+    final Map<String, Node> children = new HashMap<>();
+    int index = -1;
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ 
+package ai.api;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one service call between identical queries made at the same time.
+ * <p>
+ * The first query with a given key makes the call, queries with the same key arriving before it
+ * completes wait for its result instead of calling the service. Each waiter parses its own copy of
+ * the response. Completed calls are not cached.
+ * <p>
+ * Queries from different sessions are coalesced unless the coalescer is session scoped. The
+ * service stores output contexts only for the session of the query which made the call, so
+ * agents relying on server side contexts should use a session scoped coalescer.
+ * <p>
+ * One instance should be shared by all services calling the same agent.
+ */
+public class QueryCoalescer {
+
+  private final ConcurrentMap<String, InFlightCall> calls = new ConcurrentHashMap<>();
+
+  private volatile boolean sessionScoped;
+
+  private final AtomicLong callCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * Make the call or wait for the identical one already in flight
+   *
+   * @param key Identity of the query. Cannot be <code>null</code>
+   * @param call Service call made if no identical call is in flight. Cannot be <code>null</code>
+   * @return Response body of the shared call
+   * @throws AIServiceException Exception of the shared call, the same instance is thrown to all
+   *         waiters
+   */
+  public String execute(final String key, final Call call)
+      throws MalformedURLException, AIServiceException {
+    return execute(key, null, call);
+  }
+
+  /**
+   * Make the call or wait for the identical one already in flight until the deadline
+   *
+   * @param key Identity of the query. Cannot be <code>null</code>
+   * @param deadline Deadline of waiting for the identical call. <code>null</code> if not limited
+   * @param call Service call made if no identical call is in flight. Cannot be <code>null</code>
+   * @return Response body of the shared call
+   * @throws AIServiceTimeoutException If the identical call did not complete before the deadline
+   * @throws AIServiceException Exception of the shared call, the same instance is thrown to all
+   *         waiters
+   */
+  public String execute(final String key, final Deadline deadline, final Call call)
+      throws MalformedURLException, AIServiceException {
+    if (key == null) {
+      throw new IllegalArgumentException("key must not be null");
+    }
+    final InFlightCall newCall = new InFlightCall();
+    final InFlightCall existingCall = calls.putIfAbsent(key, newCall);
+    if (existingCall != null) {
+      coalescedCount.incrementAndGet();
+      return existingCall.await(deadline);
+    }
+
+    callCount.incrementAndGet();
+    try {
+      newCall.response = call.execute();
+    } catch (final MalformedURLException e) {
+      newCall.error = e;
+      throw e;
+    } catch (final AIServiceException e) {
+      newCall.error = e;
+      throw e;
+    } catch (final RuntimeException e) {
+      newCall.error = e;
+      throw e;
+    } finally {
+      calls.remove(key, newCall);
+      newCall.done.countDown();
+    }
+    return newCall.response;
+  }
+
+  public boolean isSessionScoped() {
+    return sessionScoped;
+  }
+
+  /**
+   * @param sessionScoped If <code>true</code> then only queries of the same session are coalesced
+   */
+  public void setSessionScoped(final boolean sessionScoped) {
+    this.sessionScoped = sessionScoped;
+  }
+
+  /**
+   * @return Count of calls made to the service
+   */
+  public long getCallCount() {
+    return callCount.get();
+  }
+
+  /**
+   * @return Count of queries served by a call made for another query
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return Count of calls currently in flight
+   */
+  public int getInFlightCount() {
+    return calls.size();
+  }
+
+  /**
+   * Service call shared between identical queries
+   */
+  public interface Call {
+    String execute() throws MalformedURLException, AIServiceException;
+  }
+
+  private static class InFlightCall {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Written before <code>done</code> is released
+     */
+    private String response;
+
+    /**
+     * Written before <code>done</code> is released
+     */
+    private Exception error;
+
+    String await(final Deadline deadline) throws MalformedURLException, AIServiceException {
+      try {
+        if (deadline == null) {
+          done.await();
+        } else if (!done.await(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS)) {
+          throw new AIServiceTimeoutException(
+              "Identical request did not complete before the deadline", null);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AIServiceException("Interrupted while waiting for identical request", e);
+      }
+      if (error instanceof MalformedURLException) {
+        throw (MalformedURLException) error;
+      }
+      if (error instanceof AIServiceException) {
+        throw (AIServiceException) error;
+      }
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      return response;
+    }
+  }
+}
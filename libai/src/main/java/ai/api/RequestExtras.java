@@ -37,6 +37,8 @@ public class RequestExtras {
 
     private Location location;
 
+    private Deadline deadline;
+
     public RequestExtras() {
         contexts = null;
         entities = null;
@@ -91,6 +93,19 @@ public class RequestExtras {
         this.location = location;
     }
 
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Deadline of the call, including retries. If the configured request timeout ends earlier,
+     * then the earlier one applies.
+     * @param deadline If <code>null</code> then only the configured request timeout applies
+     */
+    public void setDeadline(final Deadline deadline) {
+        this.deadline = deadline;
+    }
+
     public boolean hasContexts() {
         if (contexts != null && !contexts.isEmpty()) {
             return true;
@@ -0,0 +1,316 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+/**
+ * Uploads user entities sending only what changed since the last upload to the session.
+ * <p>
+ * The entries uploaded to each session are remembered. When an entity is synchronized again, new
+ * entries are sent with <code>extend</code> set. The service cannot remove single entries, so an
+ * entity is replaced as a whole if entries were removed or their synonyms changed, and also if
+ * more than the configured share of its entries is new. Unchanged entities are not sent.
+ * <p>
+ * User entities live as long as the session on the service side. Call {@link #forget} when a
+ * session expires or is reset, otherwise entities missing on the service would not be sent.
+ * Entities not passed to {@link #sync} are left as they are. Calls for one session are
+ * serialized, calls for different sessions run in parallel.
+ */
+public class UserEntitiesSync {
+
+  private static final double DEFAULT_REPLACE_RATIO = 0.5;
+
+  private final AIDataService dataService;
+
+  private final ConcurrentMap<String, SessionSnapshot> sessions = new ConcurrentHashMap<>();
+
+  private volatile double replaceRatio = DEFAULT_REPLACE_RATIO;
+
+  private final AtomicLong sentEntryCount = new AtomicLong();
+  private final AtomicLong skippedEntryCount = new AtomicLong();
+  private final AtomicLong replacedEntityCount = new AtomicLong();
+
+  /**
+   * @param dataService Service uploading the entities. Cannot be <code>null</code>
+   */
+  public UserEntitiesSync(final AIDataService dataService) {
+    if (dataService == null) {
+      throw new IllegalArgumentException("dataService should not be null");
+    }
+    this.dataService = dataService;
+  }
+
+  /**
+   * Synchronize user entities of the default session of the data service
+   *
+   * @see #sync(Collection, AIServiceContext)
+   */
+  public AIResponse sync(final Collection<Entity> userEntities) throws AIServiceException {
+    return sync(userEntities, null);
+  }
+
+  /**
+   * Upload changes of user entities since the last synchronization of the session
+   *
+   * @param userEntities Entities with all their entries, or only new entries if
+   *        <code>extend</code> is set. Cannot be empty
+   * @param serviceContext Custom service context that should be used instead of the default
+   * @return Response of the upload. <code>null</code> if nothing changed and no request was made
+   * @throws AIServiceException If the upload failed. The session is then synchronized again in
+   *         full, since the service may have applied a part of the changes
+   */
+  public AIResponse sync(final Collection<Entity> userEntities,
+      final AIServiceContext serviceContext) throws AIServiceException {
+    if (userEntities == null || userEntities.isEmpty()) {
+      throw new AIServiceException("Empty entities list");
+    }
+    final String sessionId = getSessionId(serviceContext);
+    SessionSnapshot session = sessions.get(sessionId);
+    if (session == null) {
+      final SessionSnapshot created = new SessionSnapshot();
+      session = sessions.putIfAbsent(sessionId, created);
+      if (session == null) {
+        session = created;
+      }
+    }
+
+    session.lock.lock();
+    try {
+      final List<Entity> changes = new ArrayList<>();
+      final Map<String, EntitySnapshot> updated = new LinkedHashMap<>();
+      for (final Entity entity : userEntities) {
+        final EntitySnapshot previous = session.entities.get(entity.getName());
+        final EntitySnapshot target = EntitySnapshot.of(entity,
+            Boolean.TRUE.equals(entity.getExtend()) ? previous : null);
+        final Entity change =
+            diff(previous, target, entity.getName(), Boolean.TRUE.equals(entity.getExtend()));
+        if (change != null) {
+          changes.add(change);
+        }
+        updated.put(entity.getName(), target);
+      }
+      if (changes.isEmpty()) {
+        return null;
+      }
+
+      final AIResponse response;
+      try {
+        response = dataService.uploadUserEntities(changes, serviceContext);
+      } catch (final AIServiceException e) {
+        for (final String name : updated.keySet()) {
+          session.entities.remove(name);
+        }
+        throw e;
+      }
+      session.entities.putAll(updated);
+      return response;
+    } finally {
+      session.lock.unlock();
+    }
+  }
+
+  /**
+   * Forget entities uploaded to the session, so the next synchronization sends them in full
+   *
+   * @param serviceContext Context of the session. If <code>null</code> then the default session
+   *        of the data service
+   */
+  public void forget(final AIServiceContext serviceContext) {
+    sessions.remove(getSessionId(serviceContext));
+  }
+
+  /**
+   * Forget entities uploaded to all sessions
+   */
+  public void clear() {
+    sessions.clear();
+  }
+
+  /**
+   * Get share of new entries of an entity above which the entity is replaced instead of extended
+   */
+  public double getReplaceRatio() {
+    return replaceRatio;
+  }
+
+  /**
+   * Set share of new entries of an entity above which the entity is replaced instead of
+   * extended. A replace sends all entries, but no longer relies on the entries held by the
+   * service.
+   *
+   * @param replaceRatio Value from <code>0</code> (always replace) to <code>1</code>
+   */
+  public void setReplaceRatio(final double replaceRatio) {
+    if (replaceRatio < 0 || replaceRatio > 1) {
+      throw new IllegalArgumentException("replaceRatio must be between 0 and 1");
+    }
+    this.replaceRatio = replaceRatio;
+  }
+
+  /**
+   * @return Count of entries sent
+   */
+  public long getSentEntryCount() {
+    return sentEntryCount.get();
+  }
+
+  /**
+   * @return Count of entries not sent because the session already had them
+   */
+  public long getSkippedEntryCount() {
+    return skippedEntryCount.get();
+  }
+
+  /**
+   * @return Count of entities sent as a whole although they were uploaded before
+   */
+  public long getReplacedEntityCount() {
+    return replacedEntityCount.get();
+  }
+
+  public AIDataService getDataService() {
+    return dataService;
+  }
+
+  /**
+   * @param previous Entity as uploaded to the session. <code>null</code> if not uploaded
+   * @param extend <code>true</code> if the entity was passed to extend the entity on the service
+   * @return Entity to upload. <code>null</code> if the session has the target entity already
+   */
+  private Entity diff(final EntitySnapshot previous, final EntitySnapshot target,
+      final String name, final boolean extend) {
+    if (previous == null) {
+      // Entries the service may have from other uploads are kept if the caller asked for it
+      sentEntryCount.addAndGet(target.entries.size());
+      return target.toEntity(name, target.entries, extend);
+    }
+
+    boolean replace = !equal(previous.isEnum, target.isEnum);
+    final Map<String, List<String>> added = new LinkedHashMap<>();
+    for (final Map.Entry<String, List<String>> entry : target.entries.entrySet()) {
+      final List<String> synonyms = previous.entries.get(entry.getKey());
+      if (synonyms == null) {
+        added.put(entry.getKey(), entry.getValue());
+      } else if (!synonyms.equals(entry.getValue())) {
+        replace = true;
+      }
+    }
+    if (!replace) {
+      for (final String value : previous.entries.keySet()) {
+        if (!target.entries.containsKey(value)) {
+          replace = true;
+          break;
+        }
+      }
+    }
+    if (!replace && added.size() > replaceRatio * target.entries.size()) {
+      replace = true;
+    }
+
+    if (replace) {
+      replacedEntityCount.incrementAndGet();
+      sentEntryCount.addAndGet(target.entries.size());
+      return target.toEntity(name, target.entries, false);
+    }
+    skippedEntryCount.addAndGet(target.entries.size() - added.size());
+    if (added.isEmpty()) {
+      return null;
+    }
+    sentEntryCount.addAndGet(added.size());
+    return target.toEntity(name, added, true);
+  }
+
+  private String getSessionId(final AIServiceContext serviceContext) {
+    return serviceContext != null ? serviceContext.getSessionId()
+        : dataService.getContext().getSessionId();
+  }
+
+  private static boolean equal(final Object first, final Object second) {
+    return first == null ? second == null : first.equals(second);
+  }
+
+  /**
+   * Entities uploaded to a session. Guarded by <code>lock</code>
+   */
+  private static class SessionSnapshot {
+    /**
+     * Not a monitor, a virtual thread holding a monitor during the upload would pin its carrier
+     */
+    final ReentrantLock lock = new ReentrantLock();
+    final Map<String, EntitySnapshot> entities = new LinkedHashMap<>();
+  }
+
+  /**
+   * Entity as uploaded, entries by value
+   */
+  private static class EntitySnapshot {
+
+    final Boolean isEnum;
+    final Map<String, List<String>> entries;
+
+    private EntitySnapshot(final Boolean isEnum, final Map<String, List<String>> entries) {
+      this.isEnum = isEnum;
+      this.entries = entries;
+    }
+
+    /**
+     * @param base Entity extended by the given one. <code>null</code> if it is not extended
+     */
+    static EntitySnapshot of(final Entity entity, final EntitySnapshot base) {
+      final Map<String, List<String>> entries = base != null
+          ? new LinkedHashMap<>(base.entries)
+          : new LinkedHashMap<String, List<String>>();
+      if (entity.getEntries() != null) {
+        for (final EntityEntry entry : entity.getEntries()) {
+          final List<String> synonyms = entry.getSynonyms() != null
+              ? new ArrayList<>(entry.getSynonyms())
+              : new ArrayList<String>();
+          entries.put(entry.getValue(), synonyms);
+        }
+      }
+      final Boolean isEnum =
+          entity.isEnum() == null && base != null ? base.isEnum : entity.isEnum();
+      return new EntitySnapshot(isEnum, entries);
+    }
+
+    Entity toEntity(final String name, final Map<String, List<String>> entries,
+        final boolean extend) {
+      final Entity entity = new Entity(name);
+      entity.setIsEnum(isEnum);
+      entity.setExtend(extend);
+      final List<EntityEntry> entityEntries = new ArrayList<>(entries.size());
+      for (final Map.Entry<String, List<String>> entry : entries.entrySet()) {
+        entityEntries.add(new EntityEntry(entry.getKey(), entry.getValue()));
+      }
+      entity.setEntries(entityEntries);
+      return entity;
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+import ai.api.util.VirtualThreads;
+
+/**
+ * Uploads large sets of user entities in several requests of bounded size sent in parallel.
+ * <p>
+ * Entities with more entries than a request may hold are split: the first part keeps the
+ * <code>extend</code> flag of the entity, the other parts extend it. All first parts are uploaded
+ * before any extending part, so a replaced entity is not cleared after it was extended.
+ * <p>
+ * Each request body is written to the connection while it is serialized, with chunked transfer
+ * encoding, if the configured transport supports it (the default transport does). Requests pass
+ * through the retry policy, limiters and circuit breaker of the configuration.
+ */
+public class UserEntitiesUploader {
+
+  private static final int DEFAULT_MAX_ENTRIES_PER_REQUEST = 1000;
+  private static final int DEFAULT_PARALLELISM = 4;
+
+  private final AIDataService dataService;
+  private final ExecutorService executor;
+
+  private volatile int maxEntriesPerRequest = DEFAULT_MAX_ENTRIES_PER_REQUEST;
+  private volatile int parallelism = DEFAULT_PARALLELISM;
+
+  /**
+   * Create uploader sending requests from virtual threads if available
+   *
+   * @param dataService Service making the requests. Cannot be <code>null</code>
+   */
+  public UserEntitiesUploader(final AIDataService dataService) {
+    this(dataService, VirtualThreads.newThreadPerTaskExecutor("libai-upload-"));
+  }
+
+  /**
+   * @param dataService Service making the requests. Cannot be <code>null</code>
+   * @param executor Executor sending the requests. Cannot be <code>null</code>
+   */
+  public UserEntitiesUploader(final AIDataService dataService, final ExecutorService executor) {
+    if (dataService == null) {
+      throw new IllegalArgumentException("dataService should not be null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor should not be null");
+    }
+    this.dataService = dataService;
+    this.executor = executor;
+  }
+
+  /**
+   * Upload user entities to the default session of the data service
+   *
+   * @see #upload(Collection, AIServiceContext)
+   */
+  public List<AIResponse> upload(final Collection<Entity> userEntities)
+      throws AIServiceException {
+    return upload(userEntities, null);
+  }
+
+  /**
+   * Upload user entities, waiting for all requests to complete
+   *
+   * @param userEntities Entities to upload. Cannot be empty
+   * @param serviceContext Custom service context that should be used instead of the default
+   * @return Responses of all requests. Never <code>null</code>
+   * @throws AIServiceException If a request failed. Requests not yet sent are not sent, so the
+   *         session may hold a part of the entities
+   */
+  public List<AIResponse> upload(final Collection<Entity> userEntities,
+      final AIServiceContext serviceContext) throws AIServiceException {
+    if (userEntities == null || userEntities.isEmpty()) {
+      throw new AIServiceException("Empty entities list");
+    }
+
+    final int maxEntries = maxEntriesPerRequest;
+    final List<Entity> firstParts = new ArrayList<>();
+    final List<Entity> extendingParts = new ArrayList<>();
+    for (final Entity entity : userEntities) {
+      split(entity, maxEntries, firstParts, extendingParts);
+    }
+
+    final List<AIResponse> responses = new ArrayList<>();
+    responses.addAll(sendAll(pack(firstParts, maxEntries), serviceContext));
+    responses.addAll(sendAll(pack(extendingParts, maxEntries), serviceContext));
+    return responses;
+  }
+
+  /**
+   * Get maximal count of entries sent in one request
+   */
+  public int getMaxEntriesPerRequest() {
+    return maxEntriesPerRequest;
+  }
+
+  /**
+   * Set maximal count of entries sent in one request. An entity with more entries is split.
+   */
+  public void setMaxEntriesPerRequest(final int maxEntriesPerRequest) {
+    if (maxEntriesPerRequest < 1) {
+      throw new IllegalArgumentException("maxEntriesPerRequest must be positive");
+    }
+    this.maxEntriesPerRequest = maxEntriesPerRequest;
+  }
+
+  /**
+   * Get maximal count of requests in progress at the same time
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Set maximal count of requests in progress at the same time
+   */
+  public void setParallelism(final int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    this.parallelism = parallelism;
+  }
+
+  public AIDataService getDataService() {
+    return dataService;
+  }
+
+  /**
+   * Split entity into parts of at most <code>maxEntries</code> entries
+   */
+  private static void split(final Entity entity, final int maxEntries,
+      final List<Entity> firstParts, final List<Entity> extendingParts) {
+    final List<EntityEntry> entries = entity.getEntries();
+    if (entries == null || entries.size() <= maxEntries) {
+      firstParts.add(entity);
+      return;
+    }
+    for (int start = 0; start < entries.size(); start += maxEntries) {
+      final Entity part = new Entity(entity.getName());
+      part.setIsEnum(entity.isEnum());
+      part.setEntries(entries.subList(start, Math.min(start + maxEntries, entries.size())));
+      if (start > 0) {
+        part.setExtend(true);
+        extendingParts.add(part);
+      } else {
+        if (entity.getExtend() != null) {
+          part.setExtend(entity.getExtend());
+        }
+        firstParts.add(part);
+      }
+    }
+  }
+
+  /**
+   * Group entities into requests of at most <code>maxEntries</code> entries
+   */
+  private static List<List<Entity>> pack(final List<Entity> entities, final int maxEntries) {
+    final List<List<Entity>> requests = new ArrayList<>();
+    List<Entity> request = new ArrayList<>();
+    int requestEntries = 0;
+    for (final Entity entity : entities) {
+      final int entries = entity.getEntries() != null ? entity.getEntries().size() : 0;
+      if (!request.isEmpty() && requestEntries + entries > maxEntries) {
+        requests.add(request);
+        request = new ArrayList<>();
+        requestEntries = 0;
+      }
+      request.add(entity);
+      requestEntries += entries;
+    }
+    if (!request.isEmpty()) {
+      requests.add(request);
+    }
+    return requests;
+  }
+
+  /**
+   * Send requests from at most <code>parallelism</code> tasks and wait for them
+   */
+  private List<AIResponse> sendAll(final List<List<Entity>> requests,
+      final AIServiceContext serviceContext) throws AIServiceException {
+    if (requests.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final Queue<List<Entity>> pending = new ConcurrentLinkedQueue<>(requests);
+    final List<Future<List<AIResponse>>> tasks = new ArrayList<>();
+    final int taskCount = Math.min(parallelism, requests.size());
+    for (int i = 0; i < taskCount; i++) {
+      tasks.add(executor.submit(new Callable<List<AIResponse>>() {
+        @Override
+        public List<AIResponse> call() throws AIServiceException {
+          final List<AIResponse> responses = new ArrayList<>();
+          List<Entity> request;
+          while ((request = pending.poll()) != null) {
+            try {
+              responses.add(dataService.uploadUserEntitiesStreamed(request, serviceContext));
+            } catch (final AIServiceException e) {
+              pending.clear();
+              throw e;
+            }
+          }
+          return responses;
+        }
+      }));
+    }
+
+    final List<AIResponse> responses = new ArrayList<>(requests.size());
+    AIServiceException error = null;
+    try {
+      for (final Future<List<AIResponse>> task : tasks) {
+        try {
+          responses.addAll(task.get());
+        } catch (final ExecutionException e) {
+          if (error == null) {
+            error = e.getCause() instanceof AIServiceException
+                ? (AIServiceException) e.getCause()
+                : new AIServiceException("User entities upload failed", e.getCause());
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      pending.clear();
+      for (final Future<List<AIResponse>> task : tasks) {
+        task.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new AIServiceException("Interrupted while uploading user entities", e);
+    }
+    if (error != null) {
+      throw error;
+    }
+    return responses;
+  }
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ai.api.model.Status;
+
+/**
+ * Stops calling the API.AI service while it keeps failing.
+ * <p>
+ * Every service url has its own circuit. A circuit is <b>closed</b> while the service is healthy
+ * and all calls pass. Outcomes of the last calls are kept in a sliding window; when the share of
+ * failed (no response, 429 or 5xx codes) or slow calls in the window reaches the threshold, the
+ * circuit becomes <b>open</b> and all calls are rejected immediately. After the open duration the
+ * circuit becomes <b>half-open</b> and lets a few trial calls through: if they all succeed the
+ * circuit is closed again, otherwise it is opened for another period.
+ * <p>
+ * One instance should be shared by all services calling the same agent.
+ */
+public class CircuitBreaker {
+
+  private static final int DEFAULT_WINDOW_SIZE = 20;
+  private static final int DEFAULT_MINIMUM_CALLS = 10;
+  private static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+  private static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+  private static final long DEFAULT_SLOW_CALL_DURATION_MILLIS = 5000;
+  private static final long DEFAULT_OPEN_DURATION_MILLIS = 30000;
+  private static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+  /**
+   * Circuit state
+   */
+  public enum State {
+    /** Calls pass, outcomes are recorded */
+    CLOSED,
+    /** Calls are rejected */
+    OPEN,
+    /** Limited count of trial calls pass */
+    HALF_OPEN
+  }
+
+  private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  private final int windowSize;
+  private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+  private volatile double failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+  private volatile double slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+  private volatile long slowCallDurationNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_CALL_DURATION_MILLIS);
+  private volatile long openDurationNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_DURATION_MILLIS);
+  private volatile int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong openedCount = new AtomicLong();
+
+  /**
+   * Create circuit breaker with default settings
+   */
+  public CircuitBreaker() {
+    this(DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Create circuit breaker with given sliding window size
+   *
+   * @param windowSize Count of last calls used to compute failure and slow call rates. Must be
+   *        positive
+   */
+  public CircuitBreaker(final int windowSize) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("windowSize must be positive");
+    }
+    this.windowSize = windowSize;
+    this.minimumCalls = Math.min(DEFAULT_MINIMUM_CALLS, windowSize);
+  }
+
+  /**
+   * Ask for permission to call the service. Every permitted call must be followed by
+   * {@link #onResult(String, long, int)}.
+   *
+   * @param serviceUrl Called service url. Cannot be <code>null</code>
+   * @return <code>false</code> if the circuit is open and the call must not be made
+   */
+  public boolean tryAcquire(final String serviceUrl) {
+    final Circuit circuit = getCircuit(serviceUrl);
+    final boolean permitted = circuit.tryAcquire();
+    if (!permitted) {
+      rejectedCount.incrementAndGet();
+    }
+    return permitted;
+  }
+
+  /**
+   * Record outcome of a permitted call
+   *
+   * @param serviceUrl Called service url. Cannot be <code>null</code>
+   * @param latencyNanos Time spent by the call
+   * @param responseCode HTTP response code or {@link ConcurrencyLimiter#NO_RESPONSE_CODE} if call
+   *        failed without response
+   */
+  public void onResult(final String serviceUrl, final long latencyNanos, final int responseCode) {
+    final boolean failed = responseCode == ConcurrencyLimiter.NO_RESPONSE_CODE
+        || Status.fromResponseCode(responseCode).isTemporaryError();
+    final boolean slow = latencyNanos > slowCallDurationNanos;
+    getCircuit(serviceUrl).onResult(failed, slow);
+  }
+
+  /**
+   * Return permission of a call which was not made
+   *
+   * @param serviceUrl Service url passed to {@link #tryAcquire(String)}. Cannot be
+   *        <code>null</code>
+   */
+  public void onCancel(final String serviceUrl) {
+    getCircuit(serviceUrl).onCancel();
+  }
+
+  /**
+   * @param serviceUrl Service url. Cannot be <code>null</code>
+   * @return Current state of the service url circuit
+   */
+  public State getState(final String serviceUrl) {
+    return getCircuit(serviceUrl).getState();
+  }
+
+  private Circuit getCircuit(final String serviceUrl) {
+    if (serviceUrl == null) {
+      throw new IllegalArgumentException("serviceUrl must not be null");
+    }
+    Circuit circuit = circuits.get(serviceUrl);
+    if (circuit == null) {
+      final Circuit newCircuit = new Circuit();
+      circuit = circuits.putIfAbsent(serviceUrl, newCircuit);
+      if (circuit == null) {
+        circuit = newCircuit;
+      }
+    }
+    return circuit;
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  public int getMinimumCalls() {
+    return minimumCalls;
+  }
+
+  /**
+   * @param minimumCalls Count of recorded calls required before rates are evaluated
+   */
+  public void setMinimumCalls(final int minimumCalls) {
+    if (minimumCalls < 1 || minimumCalls > windowSize) {
+      throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+    }
+    this.minimumCalls = minimumCalls;
+  }
+
+  public double getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  /**
+   * @param failureRateThreshold Share of failed calls in the window opening the circuit
+   */
+  public void setFailureRateThreshold(final double failureRateThreshold) {
+    this.failureRateThreshold = failureRateThreshold;
+  }
+
+  public double getSlowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+
+  /**
+   * @param slowCallRateThreshold Share of slow calls in the window opening the circuit
+   */
+  public void setSlowCallRateThreshold(final double slowCallRateThreshold) {
+    this.slowCallRateThreshold = slowCallRateThreshold;
+  }
+
+  public long getSlowCallDurationMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(slowCallDurationNanos);
+  }
+
+  /**
+   * @param slowCallDurationMillis Calls taking longer are considered slow
+   */
+  public void setSlowCallDurationMillis(final long slowCallDurationMillis) {
+    this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+  }
+
+  public long getOpenDurationMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(openDurationNanos);
+  }
+
+  /**
+   * @param openDurationMillis How long the circuit stays open before trial calls are made
+   */
+  public void setOpenDurationMillis(final long openDurationMillis) {
+    this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+  }
+
+  public int getHalfOpenCalls() {
+    return halfOpenCalls;
+  }
+
+  /**
+   * @param halfOpenCalls Count of successful trial calls required to close the circuit
+   */
+  public void setHalfOpenCalls(final int halfOpenCalls) {
+    if (halfOpenCalls < 1) {
+      throw new IllegalArgumentException("halfOpenCalls must be positive");
+    }
+    this.halfOpenCalls = halfOpenCalls;
+  }
+
+  /**
+   * @return Count of calls rejected by open circuits
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return Count of times circuits were opened
+   */
+  public long getOpenedCount() {
+    return openedCount.get();
+  }
+
+  /**
+   * State of a single service url
+   */
+  private class Circuit {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Written under <code>lock</code>, read without it to reject calls quickly
+     */
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+
+    private final boolean[] failures = new boolean[windowSize];
+    private final boolean[] slowCalls = new boolean[windowSize];
+    private int position;
+    private int recordedCalls;
+    private int failedCalls;
+    private int slowCallCount;
+
+    private int trialCalls;
+    private int successfulTrialCalls;
+
+    boolean tryAcquire() {
+      if (state == State.OPEN && System.nanoTime() - openedAt < openDurationNanos) {
+        return false;
+      }
+      lock.lock();
+      try {
+        if (state == State.OPEN) {
+          if (System.nanoTime() - openedAt < openDurationNanos) {
+            return false;
+          }
+          state = State.HALF_OPEN;
+          trialCalls = 0;
+          successfulTrialCalls = 0;
+        }
+        if (state == State.HALF_OPEN) {
+          if (trialCalls >= halfOpenCalls) {
+            return false;
+          }
+          trialCalls++;
+        }
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void onResult(final boolean failed, final boolean slow) {
+      lock.lock();
+      try {
+        switch (state) {
+          case HALF_OPEN:
+            if (failed || slow) {
+              open();
+            } else if (++successfulTrialCalls >= halfOpenCalls) {
+              close();
+            }
+            break;
+          case CLOSED:
+            record(failed, slow);
+            if (recordedCalls >= minimumCalls
+                && (failedCalls >= failureRateThreshold * recordedCalls
+                    || slowCallCount >= slowCallRateThreshold * recordedCalls)) {
+              open();
+            }
+            break;
+          default:
+            // The call was made before the circuit was opened
+            break;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void onCancel() {
+      lock.lock();
+      try {
+        if (state == State.HALF_OPEN && trialCalls > 0) {
+          trialCalls--;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    State getState() {
+      return state;
+    }
+
+    private void record(final boolean failed, final boolean slow) {
+      if (recordedCalls == windowSize) {
+        if (failures[position]) {
+          failedCalls--;
+        }
+        if (slowCalls[position]) {
+          slowCallCount--;
+        }
+      } else {
+        recordedCalls++;
+      }
+      failures[position] = failed;
+      slowCalls[position] = slow;
+      if (failed) {
+        failedCalls++;
+      }
+      if (slow) {
+        slowCallCount++;
+      }
+      position = (position + 1) % windowSize;
+    }
+
+    private void open() {
+      openedAt = System.nanoTime();
+      state = State.OPEN;
+      openedCount.incrementAndGet();
+    }
+
+    private void close() {
+      position = 0;
+      recordedCalls = 0;
+      failedCalls = 0;
+      slowCallCount = 0;
+      state = State.CLOSED;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of request and response bodies.
+ * <p>
+ * Responses are always requested with gzip or deflate encoding and decompressed while they are
+ * read. Request bodies are compressed with gzip only when this object is configured and they are
+ * at least the threshold size, because a compressed body is worth its CPU time only when it is
+ * large and the service accepts it.
+ * <p>
+ * Sizes of bodies and of the bytes sent and received for them are counted to report the
+ * compression ratio. One instance should be shared by all services calling the same agent.
+ */
+public class Compression {
+
+  /**
+   * Value of the <code>Accept-Encoding</code> request header
+   */
+  public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  private static final String ENCODING_GZIP = "gzip";
+  private static final String ENCODING_DEFLATE = "deflate";
+  private static final String ENCODING_IDENTITY = "identity";
+
+  private static final int DEFAULT_REQUEST_THRESHOLD = 1024;
+  private static final int BUFFER_SIZE = 4096;
+
+  private volatile int requestThreshold = DEFAULT_REQUEST_THRESHOLD;
+
+  private final AtomicLong compressedRequestCount = new AtomicLong();
+  private final AtomicLong requestBodyBytes = new AtomicLong();
+  private final AtomicLong requestSentBytes = new AtomicLong();
+  private final AtomicLong responseBodyBytes = new AtomicLong();
+  private final AtomicLong responseReceivedBytes = new AtomicLong();
+
+  /**
+   * @param bodyLength Size of the request body in bytes
+   * @return <code>true</code> if the body should be sent compressed
+   */
+  public boolean shouldCompress(final int bodyLength) {
+    return bodyLength >= requestThreshold;
+  }
+
+  /**
+   * Count a sent request body
+   *
+   * @param bodyBytes Size of the body
+   * @param sentBytes Size of the body as sent, after compression
+   */
+  public void onRequest(final long bodyBytes, final long sentBytes) {
+    if (sentBytes < bodyBytes) {
+      compressedRequestCount.incrementAndGet();
+    }
+    requestBodyBytes.addAndGet(bodyBytes);
+    requestSentBytes.addAndGet(sentBytes);
+  }
+
+  /**
+   * Count a received response body
+   *
+   * @param bodyBytes Size of the body after decompression
+   * @param receivedBytes Size of the body as received
+   */
+  public void onResponse(final long bodyBytes, final long receivedBytes) {
+    responseBodyBytes.addAndGet(bodyBytes);
+    responseReceivedBytes.addAndGet(receivedBytes);
+  }
+
+  /**
+   * Get minimal size of request bodies sent compressed
+   */
+  public int getRequestThreshold() {
+    return requestThreshold;
+  }
+
+  /**
+   * Set minimal size of request bodies sent compressed
+   *
+   * @param requestThreshold Size in bytes. If {@link Integer#MAX_VALUE} then requests are not
+   *        compressed
+   */
+  public void setRequestThreshold(final int requestThreshold) {
+    if (requestThreshold < 0) {
+      throw new IllegalArgumentException("requestThreshold must not be negative");
+    }
+    this.requestThreshold = requestThreshold;
+  }
+
+  /**
+   * @return Count of request bodies sent compressed
+   */
+  public long getCompressedRequestCount() {
+    return compressedRequestCount.get();
+  }
+
+  /**
+   * @return Total size of request bodies divided by the bytes sent for them. <code>1</code> if no
+   *         request was sent
+   */
+  public double getRequestCompressionRatio() {
+    return ratio(requestBodyBytes.get(), requestSentBytes.get());
+  }
+
+  /**
+   * @return Total size of response bodies divided by the bytes received for them.
+   *         <code>1</code> if no response was received
+   */
+  public double getResponseCompressionRatio() {
+    return ratio(responseBodyBytes.get(), responseReceivedBytes.get());
+  }
+
+  /**
+   * @return Total bytes of request and response bodies not transferred thanks to compression
+   */
+  public long getSavedBytes() {
+    return requestBodyBytes.get() - requestSentBytes.get() + responseBodyBytes.get()
+        - responseReceivedBytes.get();
+  }
+
+  /**
+   * Compress request body with gzip
+   */
+  public static byte[] gzip(final byte[] body) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream(body.length / 4 + 32);
+    try (GZIPOutputStream outputStream = new GZIPOutputStream(result, BUFFER_SIZE)) {
+      outputStream.write(body);
+    }
+    return result.toByteArray();
+  }
+
+  /**
+   * Wrap response stream to decompress it while it is read
+   *
+   * @param inputStream Stream of the response body as received
+   * @param contentEncoding Value of the <code>Content-Encoding</code> response header. May be
+   *        <code>null</code>
+   * @return Stream of the decompressed body
+   * @throws IOException If the encoding is not supported
+   */
+  public static InputStream decode(final InputStream inputStream, final String contentEncoding)
+      throws IOException {
+    if (contentEncoding == null) {
+      return inputStream;
+    }
+    final String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+    if (encoding.isEmpty() || ENCODING_IDENTITY.equals(encoding)) {
+      return inputStream;
+    }
+    if (ENCODING_GZIP.equals(encoding) || "x-gzip".equals(encoding)) {
+      return new GZIPInputStream(inputStream, BUFFER_SIZE);
+    }
+    if (ENCODING_DEFLATE.equals(encoding)) {
+      // Some servers send raw deflate data without the zlib header the standard requires
+      final PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, 1);
+      final int first = pushbackStream.read();
+      if (first != -1) {
+        pushbackStream.unread(first);
+      }
+      final boolean zlib = (first & 0x0F) == 8 && (first >> 4) <= 7;
+      final Inflater inflater = new Inflater(!zlib);
+      return new InflaterInputStream(pushbackStream, inflater, BUFFER_SIZE) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            inflater.end();
+          }
+        }
+      };
+    }
+    throw new IOException("Unsupported response content encoding: " + contentEncoding);
+  }
+
+  private static double ratio(final long bodyBytes, final long transferredBytes) {
+    return transferredBytes > 0 ? (double) bodyBytes / transferredBytes : 1;
+  }
+
+  /**
+   * Stream counting bytes read through it
+   */
+  public static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    public CountingInputStream(final InputStream inputStream) {
+      super(inputStream);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int result = super.read();
+      if (result != -1) {
+        count++;
+      }
+      return result;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      final int result = super.read(buffer, offset, length);
+      if (result > 0) {
+        count += result;
+      }
+      return result;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final long result = super.skip(n);
+      count += result;
+      return result;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Stream counting bytes written through it
+   */
+  static class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(final OutputStream outputStream) {
+      super(outputStream);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(final byte[] buffer, final int offset, final int length)
+        throws IOException {
+      out.write(buffer, offset, length);
+      count += length;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ai.api.model.Status;
+
+/**
+ * Adaptive limit of simultaneous requests to the API.AI service.
+ * <p>
+ * The limit follows AIMD (additive increase, multiplicative decrease) rule: every successful
+ * request that completes faster than the latency threshold grows the limit by
+ * <code>1 / limit</code>, every throttled (429), failed (5xx), timed out or too slow request
+ * multiplies the limit by the backoff ratio. Requests exceeding the current limit wait for a free
+ * slot up to the max queue time and are rejected after that.
+ * <p>
+ * One instance should be shared by all services calling the same agent.
+ */
+public class ConcurrencyLimiter {
+
+  private static final int DEFAULT_INITIAL_LIMIT = 20;
+  private static final int DEFAULT_MIN_LIMIT = 1;
+  private static final int DEFAULT_MAX_LIMIT = 200;
+  private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+  private static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 2000;
+  private static final long DEFAULT_MAX_QUEUE_TIME_MILLIS = 0;
+
+  /**
+   * Response code used when request failed before any response was received
+   */
+  public static final int NO_RESPONSE_CODE = -1;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitReleased = lock.newCondition();
+
+  private final int minLimit;
+  private final int maxLimit;
+
+  /**
+   * Guarded by <code>lock</code>
+   */
+  private double limit;
+
+  /**
+   * Guarded by <code>lock</code>
+   */
+  private int inFlight;
+
+  private volatile double backoffRatio = DEFAULT_BACKOFF_RATIO;
+  private volatile long latencyThresholdNanos =
+      TimeUnit.MILLISECONDS.toNanos(DEFAULT_LATENCY_THRESHOLD_MILLIS);
+  private volatile long maxQueueTimeMillis = DEFAULT_MAX_QUEUE_TIME_MILLIS;
+
+  private final AtomicLong acquiredCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  /**
+   * Create limiter with default settings
+   */
+  public ConcurrencyLimiter() {
+    this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+  }
+
+  /**
+   * Create limiter with given limit bounds
+   *
+   * @param initialLimit Limit value used until first responses are received
+   * @param minLimit The limit never goes below this value. Must be positive
+   * @param maxLimit The limit never goes above this value
+   * @throws IllegalArgumentException If bounds are inconsistent
+   */
+  public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+    if (minLimit < 1) {
+      throw new IllegalArgumentException("minLimit must be positive");
+    }
+    if (maxLimit < minLimit) {
+      throw new IllegalArgumentException("maxLimit must not be less than minLimit");
+    }
+    if (initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+    }
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * Take a request slot. Waits up to the max queue time if all slots are busy.
+   * Every successful call must be followed by {@link #release(long, int)}.
+   *
+   * @return <code>false</code> if no slot became free in time
+   * @throws InterruptedException If thread was interrupted while waiting
+   */
+  public boolean acquire() throws InterruptedException {
+    return acquire(TimeUnit.MILLISECONDS.toNanos(maxQueueTimeMillis));
+  }
+
+  /**
+   * Take a request slot. Waits up to the given time if all slots are busy.
+   * Every successful call must be followed by {@link #release(long, int)}.
+   *
+   * @param maxWaitNanos Longest acceptable wait
+   * @return <code>false</code> if no slot became free in time
+   * @throws InterruptedException If thread was interrupted while waiting
+   */
+  public boolean acquire(final long maxWaitNanos) throws InterruptedException {
+    long remainingNanos = maxWaitNanos;
+    lock.lockInterruptibly();
+    try {
+      while (inFlight >= (int) limit) {
+        if (remainingNanos <= 0) {
+          rejectedCount.incrementAndGet();
+          return false;
+        }
+        remainingNanos = permitReleased.awaitNanos(remainingNanos);
+      }
+      inFlight++;
+      acquiredCount.incrementAndGet();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Return a request slot and adjust the limit according to the request outcome
+   *
+   * @param latencyNanos Time spent by the request
+   * @param responseCode HTTP response code or {@link #NO_RESPONSE_CODE} if request failed without
+   *        response
+   */
+  public void release(final long latencyNanos, final int responseCode) {
+    final boolean dropped = isDropped(latencyNanos, responseCode);
+    if (dropped) {
+      droppedCount.incrementAndGet();
+    }
+    lock.lock();
+    try {
+      final int usedSlots = inFlight--;
+      if (dropped) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+      } else if (usedSlots * 2 >= (int) limit) {
+        // Grow only while the limit is really used, otherwise it inflates during quiet periods
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      }
+      permitReleased.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isDropped(final long latencyNanos, final int responseCode) {
+    if (responseCode == NO_RESPONSE_CODE) {
+      return true;
+    }
+    if (Status.fromResponseCode(responseCode).isTemporaryError()) {
+      return true;
+    }
+    return latencyNanos > latencyThresholdNanos;
+  }
+
+  /**
+   * @return Current count of simultaneous requests allowed
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Count of requests currently holding a slot
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public double getBackoffRatio() {
+    return backoffRatio;
+  }
+
+  /**
+   * @param backoffRatio Multiplier applied to the limit after a failed or slow request. Must be
+   *        between 0 and 1
+   */
+  public void setBackoffRatio(final double backoffRatio) {
+    if (backoffRatio <= 0 || backoffRatio >= 1) {
+      throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+    }
+    this.backoffRatio = backoffRatio;
+  }
+
+  public long getLatencyThresholdMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(latencyThresholdNanos);
+  }
+
+  /**
+   * @param latencyThresholdMillis Requests slower than this value decrease the limit as failed
+   *        ones do
+   */
+  public void setLatencyThresholdMillis(final long latencyThresholdMillis) {
+    this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+  }
+
+  public long getMaxQueueTimeMillis() {
+    return maxQueueTimeMillis;
+  }
+
+  /**
+   * @param maxQueueTimeMillis How long a request waits for a free slot. Zero means that requests
+   *        over the limit are rejected immediately
+   */
+  public void setMaxQueueTimeMillis(final long maxQueueTimeMillis) {
+    this.maxQueueTimeMillis = maxQueueTimeMillis;
+  }
+
+  /**
+   * @return Count of requests which got a slot
+   */
+  public long getAcquiredCount() {
+    return acquiredCount.get();
+  }
+
+  /**
+   * @return Count of requests rejected because no slot became free in time
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return Count of requests which decreased the limit
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+}
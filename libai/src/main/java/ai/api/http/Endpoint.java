@@ -0,0 +1,64 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+/**
+ * API.AI service endpoints called by the SDK
+ */
+public enum Endpoint {
+  /** Text and voice queries */
+  QUERY("query"),
+  /** Active contexts management */
+  CONTEXTS("contexts"),
+  /** User entities upload */
+  USER_ENTITIES("userEntities");
+
+  private final String path;
+
+  Endpoint(final String path) {
+    assert path != null;
+    this.path = path;
+  }
+
+  /**
+   * @return Endpoint path relative to the service url
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Detect endpoint of a request url
+   *
+   * @param url Full request url. Cannot be <code>null</code>
+   * @return <code>null</code> if url does not point to a known endpoint
+   */
+  public static Endpoint fromUrl(final String url) {
+    if (url == null) {
+      throw new IllegalArgumentException("url must not be null");
+    }
+    final int queryStart = url.indexOf('?');
+    final String urlPath = queryStart >= 0 ? url.substring(0, queryStart) : url;
+    for (final Endpoint endpoint : values()) {
+      final String segment = "/" + endpoint.path;
+      if (urlPath.endsWith(segment) || urlPath.contains(segment + "/")) {
+        return endpoint;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Sends JSON requests to the API.AI service.
+ * <p>
+ * Text queries, contexts and user entities requests of <code>AIDataService</code> go through the
+ * transport configured in <code>AIConfiguration</code>. {@link UrlConnectionTransport} is used by
+ * default. Implementations must be thread safe.
+ */
+public interface HttpTransport {
+
+  /**
+   * Send a request and read the whole response
+   *
+   * @param method HTTP request method. Cannot be <code>null</code>
+   * @param url Request url. Cannot be <code>null</code>
+   * @param headers Request headers. Cannot be <code>null</code>
+   * @param body Request body. <code>null</code> if the request has no body
+   * @param timeoutMillis Time to connect and receive the response. <code>0</code> if not limited
+   * @return Response with any status code, including error codes. Never <code>null</code>
+   * @throws IOException If no response was received, including timeouts
+   */
+  Response execute(String method, URL url, Map<String, String> headers, String body,
+      int timeoutMillis) throws IOException;
+
+  /**
+   * HTTP response with the body read
+   */
+  class Response {
+
+    private final int code;
+    private final String body;
+
+    /**
+     * @param code HTTP response code
+     * @param body Response body. <code>null</code> if the response had no body
+     */
+    public Response(final int code, final String body) {
+      this.code = code;
+      this.body = body;
+    }
+
+    public int getCode() {
+      return code;
+    }
+
+    public String getBody() {
+      return body;
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Client side limit of request rate matching the agent quotas.
+ * <p>
+ * Every api key has a separate token bucket for each {@link Endpoint}. A bucket holds up to
+ * <code>burst</code> tokens and is refilled at the configured rate; every request takes one token.
+ * Requests finding the bucket empty wait until a token is added, or are rejected if that takes
+ * longer than the max wait time. Endpoints without configured rate are not limited.
+ * <p>
+ * Buckets are lock-free: each one is a single atomic value holding the time when the bucket will
+ * be full again (generic cell rate algorithm), so taking a token is one compare-and-set.
+ * <p>
+ * One instance should be shared by all services calling the same agent.
+ */
+public class RateLimiter {
+
+  private static final long DEFAULT_MAX_WAIT_MILLIS = 0;
+
+  /**
+   * Returned by {@link #reserve(String, Endpoint, long)} if request must be rejected
+   */
+  public static final long REJECTED = -1;
+
+  private static final Endpoint[] ENDPOINTS = Endpoint.values();
+
+  /**
+   * Interval between tokens in nanoseconds per endpoint, zero if endpoint is not limited
+   */
+  private final AtomicLongArray intervals = new AtomicLongArray(ENDPOINTS.length);
+
+  /**
+   * Bucket capacity per endpoint
+   */
+  private final AtomicLongArray bursts = new AtomicLongArray(ENDPOINTS.length);
+
+  private final ConcurrentMap<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+
+  private volatile long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WAIT_MILLIS);
+
+  private final AtomicLong acquiredCount = new AtomicLong();
+  private final AtomicLong delayedCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxObservedWaitNanos = new AtomicLong();
+
+  /**
+   * Set rate limit of an endpoint
+   *
+   * @param endpoint Limited endpoint. Cannot be <code>null</code>
+   * @param requestsPerMinute Sustained request rate. Zero removes the limit
+   * @param burst Count of requests which may be made at once after a quiet period. Must be
+   *        positive
+   */
+  public void setRate(final Endpoint endpoint, final double requestsPerMinute, final int burst) {
+    if (endpoint == null) {
+      throw new IllegalArgumentException("endpoint must not be null");
+    }
+    if (requestsPerMinute < 0) {
+      throw new IllegalArgumentException("requestsPerMinute must not be negative");
+    }
+    if (burst < 1) {
+      throw new IllegalArgumentException("burst must be positive");
+    }
+    final long interval =
+        requestsPerMinute > 0 ? (long) (TimeUnit.MINUTES.toNanos(1) / requestsPerMinute) : 0;
+    bursts.set(endpoint.ordinal(), burst);
+    intervals.set(endpoint.ordinal(), interval);
+  }
+
+  /**
+   * @return Sustained request rate of the endpoint, zero if endpoint is not limited
+   */
+  public double getRequestsPerMinute(final Endpoint endpoint) {
+    final long interval = intervals.get(endpoint.ordinal());
+    return interval > 0 ? (double) TimeUnit.MINUTES.toNanos(1) / interval : 0;
+  }
+
+  /**
+   * Take a token, waiting up to the max wait time if the bucket is empty
+   *
+   * @param apiKey Agent api key. Cannot be <code>null</code>
+   * @param endpoint Called endpoint. <code>null</code> for unknown endpoints, they are not limited
+   * @return <code>false</code> if token would not be available in time
+   * @throws InterruptedException If thread was interrupted while waiting, the token is spent
+   */
+  public boolean acquire(final String apiKey, final Endpoint endpoint)
+      throws InterruptedException {
+    return acquire(apiKey, endpoint, maxWaitNanos);
+  }
+
+  /**
+   * Take a token, waiting up to the given time if the bucket is empty
+   *
+   * @param apiKey Agent api key. Cannot be <code>null</code>
+   * @param endpoint Called endpoint. <code>null</code> for unknown endpoints, they are not limited
+   * @param maxWaitNanos Longest acceptable wait
+   * @return <code>false</code> if token would not be available in time
+   * @throws InterruptedException If thread was interrupted while waiting, the token is spent
+   */
+  public boolean acquire(final String apiKey, final Endpoint endpoint, final long maxWaitNanos)
+      throws InterruptedException {
+    final long waitNanos = reserve(apiKey, endpoint, maxWaitNanos);
+    if (waitNanos == REJECTED) {
+      return false;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+    return true;
+  }
+
+  /**
+   * Take a token without waiting for it
+   *
+   * @param apiKey Agent api key. Cannot be <code>null</code>
+   * @param endpoint Called endpoint. <code>null</code> for unknown endpoints, they are not limited
+   * @param maxWaitNanos Longest acceptable wait
+   * @return Time in nanoseconds the caller must wait before making the request, or
+   *         {@link #REJECTED} if it is longer than <code>maxWaitNanos</code>. The token is not
+   *         taken in the latter case
+   */
+  public long reserve(final String apiKey, final Endpoint endpoint, final long maxWaitNanos) {
+    if (apiKey == null) {
+      throw new IllegalArgumentException("apiKey must not be null");
+    }
+    if (endpoint == null) {
+      return 0;
+    }
+    final int index = endpoint.ordinal();
+    final long interval = intervals.get(index);
+    if (interval == 0) {
+      return 0;
+    }
+    final long capacity = interval * bursts.get(index);
+    final AtomicLongArray bucket = getBucket(apiKey);
+
+    long waitNanos;
+    while (true) {
+      final long now = System.nanoTime();
+      final long fullAt = bucket.get(index);
+      // The bucket is full when fullAt is in the past. Saved as absolute time, so it is compared
+      // by difference to stay correct on nanoTime overflow
+      final long base = fullAt - now > 0 ? fullAt : now;
+      final long nextFullAt = base + interval;
+      waitNanos = Math.max(0, nextFullAt - now - capacity);
+      if (waitNanos > maxWaitNanos) {
+        rejectedCount.incrementAndGet();
+        return REJECTED;
+      }
+      if (bucket.compareAndSet(index, fullAt, nextFullAt)) {
+        break;
+      }
+    }
+
+    acquiredCount.incrementAndGet();
+    if (waitNanos > 0) {
+      delayedCount.incrementAndGet();
+      totalWaitNanos.addAndGet(waitNanos);
+      long observed;
+      do {
+        observed = maxObservedWaitNanos.get();
+      } while (waitNanos > observed && !maxObservedWaitNanos.compareAndSet(observed, waitNanos));
+    }
+    return waitNanos;
+  }
+
+  private AtomicLongArray getBucket(final String apiKey) {
+    AtomicLongArray bucket = buckets.get(apiKey);
+    if (bucket == null) {
+      final AtomicLongArray newBucket = new AtomicLongArray(ENDPOINTS.length);
+      final long now = System.nanoTime();
+      for (int i = 0; i < ENDPOINTS.length; i++) {
+        // Start with full buckets
+        newBucket.set(i, now);
+      }
+      bucket = buckets.putIfAbsent(apiKey, newBucket);
+      if (bucket == null) {
+        bucket = newBucket;
+      }
+    }
+    return bucket;
+  }
+
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+  }
+
+  /**
+   * @param maxWaitMillis How long a request may wait for a token. Zero means that requests finding
+   *        the bucket empty are rejected immediately
+   */
+  public void setMaxWaitMillis(final long maxWaitMillis) {
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+  }
+
+  /**
+   * @return Count of requests which got a token
+   */
+  public long getAcquiredCount() {
+    return acquiredCount.get();
+  }
+
+  /**
+   * @return Count of requests which had to wait for a token
+   */
+  public long getDelayedCount() {
+    return delayedCount.get();
+  }
+
+  /**
+   * @return Count of requests rejected because no token would be available in time
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * @return Total time requests waited for tokens in milliseconds
+   */
+  public long getTotalWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+  }
+
+  /**
+   * @return Longest time a request waited for a token in milliseconds
+   */
+  public long getMaxObservedWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxObservedWaitNanos.get());
+  }
+}
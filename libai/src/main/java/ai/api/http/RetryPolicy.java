@@ -0,0 +1,312 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.ProtocolException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a failed request to the API.AI service should be repeated.
+ * <p>
+ * Failures are retried with exponential backoff and full jitter: the delay before attempt
+ * <code>n + 1</code> is a random value between zero and
+ * <code>min(maxDelay, baseDelay * 2^(n - 1))</code>.
+ * <p>
+ * Retries are limited by a token bucket budget. Every request adds a share of a token to the
+ * bucket and every retry takes a whole token, so retries never exceed the configured share of
+ * live traffic and do not multiply the load during service incidents.
+ * <p>
+ * Requests which could not reach the service (connection refused, unknown host) and requests
+ * rejected with 503 code are retried for all endpoints. Other failures (connection reset, 502,
+ * 504 codes) are retried only for idempotent endpoints, because the service may have already
+ * processed the request. GET and DELETE requests are always idempotent.
+ * <p>
+ * One instance should be shared by all services calling the same agent.
+ */
+public class RetryPolicy {
+
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_BASE_DELAY_MILLIS = 100;
+  private static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+  private static final double DEFAULT_BUDGET_RATIO = 0.1;
+  private static final int DEFAULT_MAX_BUDGET_TOKENS = 10;
+
+  /**
+   * Budget is kept in thousandths of a token to stay with integer arithmetic
+   */
+  private static final long TOKEN = 1000;
+
+  private static final String REQUEST_METHOD_GET = "GET";
+  private static final String REQUEST_METHOD_DELETE = "DELETE";
+
+  private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+  private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+  private volatile double budgetRatio = DEFAULT_BUDGET_RATIO;
+  private volatile long maxBudget = DEFAULT_MAX_BUDGET_TOKENS * TOKEN;
+
+  /**
+   * Guarded by <code>this</code>
+   */
+  private final Map<Endpoint, Boolean> idempotentEndpoints = new EnumMap<>(Endpoint.class);
+
+  private final AtomicLong budget = new AtomicLong(maxBudget);
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong budgetExhaustedCount = new AtomicLong();
+  private final AtomicLong attemptsExhaustedCount = new AtomicLong();
+
+  /**
+   * Create policy with default settings: three attempts, user entities and contexts endpoints are
+   * idempotent, query endpoint is not.
+   */
+  public RetryPolicy() {
+    idempotentEndpoints.put(Endpoint.QUERY, false);
+    idempotentEndpoints.put(Endpoint.CONTEXTS, true);
+    idempotentEndpoints.put(Endpoint.USER_ENTITIES, true);
+  }
+
+  /**
+   * Register a new request in the retry budget. Must be called once per request, not per attempt.
+   */
+  public void onRequest() {
+    requestCount.incrementAndGet();
+    final long deposit = (long) (budgetRatio * TOKEN);
+    long current;
+    long updated;
+    do {
+      current = budget.get();
+      updated = Math.min(maxBudget, current + deposit);
+    } while (current < updated && !budget.compareAndSet(current, updated));
+  }
+
+  /**
+   * Decide if a failed attempt should be repeated. Takes a token from the retry budget if so.
+   *
+   * @param endpoint Called endpoint. <code>null</code> for unknown endpoints, they are never
+   *        considered idempotent
+   * @param method HTTP request method
+   * @param attempt Number of the failed attempt, starting from 1
+   * @param responseCode HTTP response code or {@link ConcurrencyLimiter#NO_RESPONSE_CODE} if no
+   *        response was received
+   * @param error Connection error. <code>null</code> if response was received
+   * @return <code>true</code> if request should be repeated
+   */
+  public boolean shouldRetry(final Endpoint endpoint, final String method, final int attempt,
+      final int responseCode, final IOException error) {
+    final boolean safeToRetry;
+    if (responseCode == ConcurrencyLimiter.NO_RESPONSE_CODE) {
+      if (error == null || isConfigurationError(error)) {
+        return false;
+      }
+      safeToRetry = isConnectError(error) || isIdempotent(endpoint, method);
+    } else if (responseCode == 503) {
+      safeToRetry = true;
+    } else if (responseCode == 502 || responseCode == 504) {
+      safeToRetry = isIdempotent(endpoint, method);
+    } else {
+      return false;
+    }
+
+    if (!safeToRetry) {
+      return false;
+    }
+    if (attempt >= maxAttempts) {
+      attemptsExhaustedCount.incrementAndGet();
+      return false;
+    }
+    if (!withdrawToken()) {
+      budgetExhaustedCount.incrementAndGet();
+      return false;
+    }
+    retryCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * @param attempt Number of the failed attempt, starting from 1
+   * @return Random delay in milliseconds to wait before the next attempt
+   */
+  public long getBackoffMillis(final int attempt) {
+    final int exponent = Math.min(Math.max(attempt - 1, 0), 30);
+    final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << exponent);
+    if (ceiling <= 0) {
+      return 0;
+    }
+    return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+  }
+
+  /**
+   * Check if a request may be safely repeated after the service could have processed it
+   */
+  public boolean isIdempotent(final Endpoint endpoint, final String method) {
+    if (REQUEST_METHOD_GET.equals(method) || REQUEST_METHOD_DELETE.equals(method)) {
+      return true;
+    }
+    if (endpoint == null) {
+      return false;
+    }
+    synchronized (this) {
+      final Boolean idempotent = idempotentEndpoints.get(endpoint);
+      return idempotent != null && idempotent;
+    }
+  }
+
+  /**
+   * Mark POST requests to the endpoint as safe or unsafe to repeat
+   */
+  public synchronized void setIdempotent(final Endpoint endpoint, final boolean idempotent) {
+    if (endpoint == null) {
+      throw new IllegalArgumentException("endpoint must not be null");
+    }
+    idempotentEndpoints.put(endpoint, idempotent);
+  }
+
+  private boolean withdrawToken() {
+    long current;
+    do {
+      current = budget.get();
+      if (current < TOKEN) {
+        return false;
+      }
+    } while (!budget.compareAndSet(current, current - TOKEN));
+    return true;
+  }
+
+  private static boolean isConfigurationError(final IOException error) {
+    return error instanceof MalformedURLException || error instanceof ProtocolException;
+  }
+
+  private static boolean isConnectError(final IOException error) {
+    return error instanceof ConnectException || error instanceof NoRouteToHostException
+        || error instanceof UnknownHostException;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param maxAttempts Total count of attempts including the first one. Must be positive
+   */
+  public void setMaxAttempts(final int maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be positive");
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  public long getBaseDelayMillis() {
+    return baseDelayMillis;
+  }
+
+  /**
+   * @param baseDelayMillis Backoff ceiling before the second attempt, doubled for every next one
+   */
+  public void setBaseDelayMillis(final long baseDelayMillis) {
+    this.baseDelayMillis = baseDelayMillis;
+  }
+
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  /**
+   * @param maxDelayMillis Upper bound of backoff delay
+   */
+  public void setMaxDelayMillis(final long maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  public double getBudgetRatio() {
+    return budgetRatio;
+  }
+
+  /**
+   * @param budgetRatio Share of requests which may be retried, e.g. 0.1 allows one retry per ten
+   *        requests
+   */
+  public void setBudgetRatio(final double budgetRatio) {
+    if (budgetRatio < 0) {
+      throw new IllegalArgumentException("budgetRatio must not be negative");
+    }
+    this.budgetRatio = budgetRatio;
+  }
+
+  public int getMaxBudgetTokens() {
+    return (int) (maxBudget / TOKEN);
+  }
+
+  /**
+   * @param maxBudgetTokens Count of retries which may be accumulated during quiet periods and
+   *        spent in a burst
+   */
+  public void setMaxBudgetTokens(final int maxBudgetTokens) {
+    if (maxBudgetTokens < 0) {
+      throw new IllegalArgumentException("maxBudgetTokens must not be negative");
+    }
+    this.maxBudget = maxBudgetTokens * TOKEN;
+    long current;
+    do {
+      current = budget.get();
+    } while (current > maxBudget && !budget.compareAndSet(current, maxBudget));
+  }
+
+  /**
+   * @return Count of whole retries currently available in the budget
+   */
+  public int getAvailableRetries() {
+    return (int) (budget.get() / TOKEN);
+  }
+
+  /**
+   * @return Count of requests registered by {@link #onRequest()}
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return Count of retries made
+   */
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * @return Count of failures not retried because the retry budget was empty
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhaustedCount.get();
+  }
+
+  /**
+   * @return Count of failures not retried because all attempts were used
+   */
+  public long getAttemptsExhaustedCount() {
+    return attemptsExhaustedCount.get();
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Transport able to send a request body while it is being written, without holding it in memory.
+ * <p>
+ * Used for large user entities uploads. With other transports the body is written to a string
+ * first.
+ */
+public interface StreamingHttpTransport extends HttpTransport {
+
+  /**
+   * Send a request writing its body to the connection and read the whole response
+   *
+   * @param method HTTP request method. Cannot be <code>null</code>
+   * @param url Request url. Cannot be <code>null</code>
+   * @param headers Request headers. Cannot be <code>null</code>
+   * @param body Writer of the request body. May be called again if the request is retried. Cannot
+   *        be <code>null</code>
+   * @param timeoutMillis Time to connect and receive the response. <code>0</code> if not limited
+   * @return Response with any status code, including error codes. Never <code>null</code>
+   * @throws IOException If no response was received, including timeouts
+   */
+  Response executeStreaming(String method, URL url, Map<String, String> headers, BodyWriter body,
+      int timeoutMillis) throws IOException;
+
+  /**
+   * Writes a request body
+   */
+  interface BodyWriter {
+
+    /**
+     * @param outputStream Stream of the body. Must not be closed
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+  }
+}
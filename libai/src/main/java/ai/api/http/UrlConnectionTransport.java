@@ -0,0 +1,235 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import ai.api.util.IOUtils;
+
+/**
+ * Transport based on {@link HttpURLConnection}. Works on Java 7 and Android, uses HTTP/1.1 with
+ * the platform keep-alive connection cache.
+ * <p>
+ * The timeout is used as read timeout and as connect timeout unless the connect timeout of the
+ * transport is shorter. The read timeout limits each wait for data, so a response trickling
+ * slowly may take longer.
+ * <p>
+ * Responses are requested compressed and decompressed while they are read. Request bodies are
+ * compressed if a {@link Compression} is passed to the constructor. Streamed bodies are sent with
+ * chunked transfer encoding.
+ */
+public class UrlConnectionTransport implements StreamingHttpTransport {
+
+  private static final String REQUEST_METHOD_POST = "POST";
+  private static final int FIRST_ERROR_CODE = 400;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int BUFFER_SIZE = 4096;
+  private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+  private final Proxy proxy;
+  private final Compression compression;
+  private final int connectTimeoutMillis;
+
+  /**
+   * Create transport with direct connections
+   */
+  public UrlConnectionTransport() {
+    this(null);
+  }
+
+  /**
+   * @param proxy If <code>null</code> then direct connection would be used
+   */
+  public UrlConnectionTransport(final Proxy proxy) {
+    this(proxy, null);
+  }
+
+  /**
+   * @param proxy If <code>null</code> then direct connection would be used
+   * @param compression Compression of request bodies and counter of compressed sizes. If
+   *        <code>null</code> then request bodies are not compressed
+   */
+  public UrlConnectionTransport(final Proxy proxy, final Compression compression) {
+    this(proxy, compression, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param proxy If <code>null</code> then direct connection would be used
+   * @param compression Compression of request bodies and counter of compressed sizes. If
+   *        <code>null</code> then request bodies are not compressed
+   * @param connectTimeoutMillis Time limit of opening a connection. If <code>0</code> then only
+   *        the request timeout limits connecting
+   */
+  public UrlConnectionTransport(final Proxy proxy, final Compression compression,
+      final int connectTimeoutMillis) {
+    if (connectTimeoutMillis < 0) {
+      throw new IllegalArgumentException("connectTimeoutMillis must not be negative");
+    }
+    this.proxy = proxy;
+    this.compression = compression;
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  @Override
+  public Response execute(final String method, final URL url, final Map<String, String> headers,
+      final String body, final int timeoutMillis) throws IOException {
+    final HttpURLConnection connection = openConnection(method, url, headers, timeoutMillis);
+    try {
+      byte[] content = null;
+      if (body != null) {
+        final byte[] bodyBytes = body.getBytes(UTF_8);
+        content = bodyBytes;
+        if (compression != null && compression.shouldCompress(bodyBytes.length)) {
+          content = Compression.gzip(bodyBytes);
+          connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        connection.setFixedLengthStreamingMode(content.length);
+        if (compression != null) {
+          compression.onRequest(bodyBytes.length, content.length);
+        }
+      }
+
+      connection.connect();
+
+      if (content != null) {
+        final BufferedOutputStream outputStream =
+            new BufferedOutputStream(connection.getOutputStream());
+        outputStream.write(content);
+        outputStream.close();
+      }
+
+      return readResponse(connection);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Send the body with chunked transfer encoding. The body is compressed if compression is
+   * configured, regardless of its threshold, since the size is not known in advance.
+   */
+  @Override
+  public Response executeStreaming(final String method, final URL url,
+      final Map<String, String> headers, final BodyWriter body, final int timeoutMillis)
+      throws IOException {
+    final HttpURLConnection connection = openConnection(method, url, headers, timeoutMillis);
+    try {
+      connection.setDoOutput(true);
+      connection.setChunkedStreamingMode(0);
+      if (compression != null) {
+        connection.setRequestProperty("Content-Encoding", "gzip");
+      }
+
+      connection.connect();
+
+      final Compression.CountingOutputStream sentStream = new Compression.CountingOutputStream(
+          new BufferedOutputStream(connection.getOutputStream()));
+      final Compression.CountingOutputStream bodyStream = new Compression.CountingOutputStream(
+          compression != null ? new GZIPOutputStream(sentStream, BUFFER_SIZE) : sentStream);
+      // Not closed on failure: the last chunk must not be sent after a partial body
+      body.writeTo(bodyStream);
+      bodyStream.close();
+      if (compression != null) {
+        compression.onRequest(bodyStream.getCount(), sentStream.getCount());
+      }
+
+      return readResponse(connection);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private HttpURLConnection openConnection(final String method, final URL url,
+      final Map<String, String> headers, final int timeoutMillis) throws IOException {
+    final HttpURLConnection connection;
+    if (proxy != null) {
+      connection = (HttpURLConnection) url.openConnection(proxy);
+    } else {
+      connection = (HttpURLConnection) url.openConnection();
+    }
+
+    connection.setConnectTimeout(getConnectTimeout(connectTimeoutMillis, timeoutMillis));
+    connection.setReadTimeout(timeoutMillis);
+    connection.setRequestMethod(method);
+    if (REQUEST_METHOD_POST.equals(method)) {
+      connection.setDoOutput(true);
+    }
+    if (!headers.containsKey("Accept-Encoding")) {
+      connection.setRequestProperty("Accept-Encoding", Compression.ACCEPT_ENCODING);
+    }
+    for (final Map.Entry<String, String> entry : headers.entrySet()) {
+      connection.addRequestProperty(entry.getKey(), entry.getValue());
+    }
+    return connection;
+  }
+
+  private Response readResponse(final HttpURLConnection connection) throws IOException {
+    final int responseCode = connection.getResponseCode();
+    final InputStream responseStream = responseCode < FIRST_ERROR_CODE
+        ? connection.getInputStream()
+        : connection.getErrorStream();
+    if (responseStream == null) {
+      return new Response(responseCode, null);
+    }
+    final Compression.CountingInputStream receivedStream =
+        new Compression.CountingInputStream(new BufferedInputStream(responseStream));
+    final Compression.CountingInputStream bodyStream = new Compression.CountingInputStream(
+        Compression.decode(receivedStream, connection.getContentEncoding()));
+    try {
+      final String responseBody = IOUtils.readAll(bodyStream);
+      if (compression != null) {
+        compression.onResponse(bodyStream.getCount(), receivedStream.getCount());
+      }
+      return new Response(responseCode, responseBody);
+    } finally {
+      bodyStream.close();
+    }
+  }
+
+  public Proxy getProxy() {
+    return proxy;
+  }
+
+  public Compression getCompression() {
+    return compression;
+  }
+
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  /**
+   * @param connectTimeoutMillis Connect timeout, <code>0</code> if not limited
+   * @param timeoutMillis Request timeout, <code>0</code> if not limited
+   * @return The shorter of the timeouts, <code>0</code> if neither is limited
+   */
+  public static int getConnectTimeout(final int connectTimeoutMillis, final int timeoutMillis) {
+    if (connectTimeoutMillis == 0) {
+      return timeoutMillis;
+    }
+    return timeoutMillis == 0 ? connectTimeoutMillis : Math.min(connectTimeoutMillis, timeoutMillis);
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.api.RequestExtras;
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+/**
+ * Answers queries consisting of one entity synonym, e.g. a store name typed in a kiosk, with an
+ * intent configured for the entity.
+ * <p>
+ * The response has the intent name, action and speech, and a parameter named after the entity
+ * with the matched entry value. Other queries are sent to the service. If a match context name is
+ * set, synonyms found in them are sent as parameters of that context, so the agent gets them
+ * already resolved.
+ * <pre>
+ * EntityIntentResponder responder = new EntityIntentResponder(new EntityMatcher(stores), "en");
+ * responder.addIntent("store", "open.store", "store.open", "Opening the store");
+ * config.setLocalResponder(responder);
+ * </pre>
+ */
+public class EntityIntentResponder implements LocalResponder {
+
+  private final EntityMatcher matcher;
+  private final String language;
+  private final Map<String, Intent> intents = new ConcurrentHashMap<>();
+
+  private volatile String matchContextName;
+
+  private final AtomicLong answeredCount = new AtomicLong();
+  private final AtomicLong annotatedCount = new AtomicLong();
+
+  /**
+   * @param matcher Matcher of the entities. Cannot be <code>null</code>
+   * @param language Language of the entities as sent in requests, e.g. <code>en</code>. If
+   *        <code>null</code> then queries of any language are matched
+   */
+  public EntityIntentResponder(final EntityMatcher matcher, final String language) {
+    if (matcher == null) {
+      throw new IllegalArgumentException("matcher should not be null");
+    }
+    this.matcher = matcher;
+    this.language = language;
+  }
+
+  /**
+   * Answer queries matching a synonym of the entity exactly
+   *
+   * @param entityName Name of the entity. Cannot be <code>null</code>
+   * @param intentName Intent name of the response
+   * @param action Action of the response
+   * @param speech Speech of the response
+   */
+  public void addIntent(final String entityName, final String intentName, final String action,
+      final String speech) {
+    if (entityName == null) {
+      throw new IllegalArgumentException("entityName should not be null");
+    }
+    intents.put(entityName, new Intent(intentName, action, speech));
+  }
+
+  /**
+   * Stop answering queries matching the entity
+   */
+  public void removeIntent(final String entityName) {
+    intents.remove(entityName);
+  }
+
+  @Override
+  public AIResponse respond(final AIRequest request, final RequestExtras requestExtras) {
+    final String query = LocalResponses.getQueryText(request);
+    if (query == null || (language != null && !language.equals(request.getLanguage()))) {
+      return null;
+    }
+
+    for (final EntityMatch match : matcher.matchExact(query)) {
+      final Intent intent = intents.get(match.getEntityName());
+      if (intent != null) {
+        answeredCount.incrementAndGet();
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put(match.getEntityName(), match.getValue());
+        return LocalResponses.create(request, query, intent.name, intent.action, intent.speech,
+            parameters);
+      }
+    }
+
+    final String contextName = matchContextName;
+    if (contextName != null) {
+      final List<EntityMatch> matches = matcher.find(query);
+      if (!matches.isEmpty()) {
+        final Map<String, String> parameters = new HashMap<>();
+        for (final EntityMatch match : matches) {
+          if (!parameters.containsKey(match.getEntityName())) {
+            parameters.put(match.getEntityName(), match.getValue());
+          }
+        }
+        final AIContext context = new AIContext(contextName);
+        context.setParameters(parameters);
+        context.setLifespan(1);
+        request.addContext(context);
+        annotatedCount.incrementAndGet();
+      }
+    }
+    return null;
+  }
+
+  public EntityMatcher getMatcher() {
+    return matcher;
+  }
+
+  public String getMatchContextName() {
+    return matchContextName;
+  }
+
+  /**
+   * Set name of the context carrying synonyms found in queries sent to the service. The first
+   * match of each entity is sent as a parameter named after the entity.
+   *
+   * @param matchContextName If <code>null</code> then queries are sent unchanged
+   */
+  public void setMatchContextName(final String matchContextName) {
+    this.matchContextName = matchContextName;
+  }
+
+  /**
+   * @return Count of queries answered locally
+   */
+  public long getAnsweredCount() {
+    return answeredCount.get();
+  }
+
+  /**
+   * @return Count of queries sent with the match context
+   */
+  public long getAnnotatedCount() {
+    return annotatedCount.get();
+  }
+
+  /**
+   * Response to queries of an entity
+   */
+  private static class Intent {
+
+    final String name;
+    final String action;
+    final String speech;
+
+    Intent(final String name, final String action, final String speech) {
+      this.name = name;
+      this.action = action;
+      this.speech = speech;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+/**
+ * Occurrence of an entity synonym in a text
+ */
+public class EntityMatch {
+
+  private final String entityName;
+  private final String value;
+  private final String text;
+  private final int start;
+  private final int end;
+
+  EntityMatch(final String entityName, final String value, final String text, final int start,
+      final int end) {
+    this.entityName = entityName;
+    this.value = value;
+    this.text = text;
+    this.start = start;
+    this.end = end;
+  }
+
+  public String getEntityName() {
+    return entityName;
+  }
+
+  /**
+   * @return Reference value of the matched entry
+   */
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @return Matched part of the text as written
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @return Index of the first matched character
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * @return Index after the last matched character
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("EntityMatch{entity='%s', value='%s', text='%s', start=%d, end=%d}",
+        entityName, value, text, start, end);
+  }
+}
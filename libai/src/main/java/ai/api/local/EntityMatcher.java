@@ -0,0 +1,347 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+/**
+ * Finds entity synonyms in texts with an Aho-Corasick automaton built from entity entries.
+ * <p>
+ * A text is scanned once whatever the number of synonyms. Matching ignores case, and a match must
+ * start and end at word boundaries. Entry values are matched as synonyms of themselves. The
+ * matcher is immutable and thread safe, build a new one when entities change.
+ */
+public class EntityMatcher {
+
+  private final Node root;
+  private final int synonymCount;
+
+  /**
+   * @param entities Entities to match. Entities without entries are ignored
+   */
+  public EntityMatcher(final Collection<Entity> entities) {
+    final BuildNode buildRoot = new BuildNode(0);
+    int count = 0;
+    for (final Entity entity : entities) {
+      if (entity.getEntries() == null) {
+        continue;
+      }
+      for (final EntityEntry entry : entity.getEntries()) {
+        if (entry.getValue() == null) {
+          continue;
+        }
+        final Target target = new Target(entity.getName(), entry.getValue());
+        if (add(buildRoot, entry.getValue(), target)) {
+          count++;
+        }
+        if (entry.getSynonyms() != null) {
+          for (final String synonym : entry.getSynonyms()) {
+            if (synonym != null && add(buildRoot, synonym, target)) {
+              count++;
+            }
+          }
+        }
+      }
+    }
+    synonymCount = count;
+    root = freeze(buildRoot);
+  }
+
+  /**
+   * @return Count of distinct synonyms of all entities
+   */
+  public int getSynonymCount() {
+    return synonymCount;
+  }
+
+  /**
+   * Find all synonym occurrences, including overlapping ones
+   *
+   * @return Matches ordered by end, then by length descending. Never <code>null</code>
+   */
+  public List<EntityMatch> findAll(final String text) {
+    final List<EntityMatch> matches = new ArrayList<>();
+    Node node = root;
+    for (int i = 0; i < text.length(); i++) {
+      node = next(node, normalize(text.charAt(i)));
+      for (Node output = node.targets != null ? node : node.outputLink; output != null;
+          output = output.outputLink) {
+        final int start = i + 1 - output.depth;
+        if (isBoundary(text, start - 1) && isBoundary(text, i + 1)) {
+          for (final Target target : output.targets) {
+            matches.add(new EntityMatch(target.entityName, target.value,
+                text.substring(start, i + 1), start, i + 1));
+          }
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Find synonym occurrences not overlapping each other, preferring the leftmost and then the
+   * longest one. A synonym of several entities gives a match for each of them.
+   *
+   * @return Matches ordered by start. Never <code>null</code>
+   */
+  public List<EntityMatch> find(final String text) {
+    final List<EntityMatch> all = findAll(text);
+    if (all.isEmpty()) {
+      return all;
+    }
+    final EntityMatch[] sorted = all.toArray(new EntityMatch[all.size()]);
+    Arrays.sort(sorted, new Comparator<EntityMatch>() {
+      @Override
+      public int compare(final EntityMatch first, final EntityMatch second) {
+        if (first.getStart() != second.getStart()) {
+          return first.getStart() < second.getStart() ? -1 : 1;
+        }
+        return first.getEnd() > second.getEnd() ? -1 : first.getEnd() == second.getEnd() ? 0 : 1;
+      }
+    });
+    final List<EntityMatch> result = new ArrayList<>();
+    int end = 0;
+    int selectedStart = -1;
+    int selectedEnd = -1;
+    for (final EntityMatch match : sorted) {
+      if (match.getStart() == selectedStart && match.getEnd() == selectedEnd) {
+        result.add(match);
+      } else if (match.getStart() >= end) {
+        result.add(match);
+        selectedStart = match.getStart();
+        selectedEnd = match.getEnd();
+        end = selectedEnd;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Match the whole text against synonyms, ignoring surrounding whitespace and repeated inner
+   * whitespace
+   *
+   * @return Matches of the text, one for each entity having it as a synonym. Empty if the text is
+   *         not a synonym
+   */
+  public List<EntityMatch> matchExact(final String text) {
+    final String trimmed = text.trim();
+    Node node = root;
+    boolean space = false;
+    for (int i = 0; i < trimmed.length(); i++) {
+      final char c = trimmed.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+      if (space) {
+        node = child(node, ' ');
+        space = false;
+        if (node == null) {
+          return Collections.emptyList();
+        }
+      }
+      node = child(node, normalize(c));
+      if (node == null) {
+        return Collections.emptyList();
+      }
+    }
+    if (node == root || node.targets == null) {
+      return Collections.emptyList();
+    }
+    final List<EntityMatch> result = new ArrayList<>(node.targets.length);
+    for (final Target target : node.targets) {
+      result.add(new EntityMatch(target.entityName, target.value, trimmed, 0, trimmed.length()));
+    }
+    return result;
+  }
+
+  private static char normalize(final char c) {
+    return Character.isWhitespace(c) ? ' ' : Character.toLowerCase(c);
+  }
+
+  private static boolean isBoundary(final String text, final int index) {
+    return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+  }
+
+  /**
+   * Follow the goto function, falling back along failure links
+   */
+  private Node next(final Node node, final char c) {
+    for (Node current = node;; current = current.failure) {
+      final Node child = child(current, c);
+      if (child != null) {
+        return child;
+      }
+      if (current == root) {
+        return root;
+      }
+    }
+  }
+
+  private static Node child(final Node node, final char c) {
+    final int index = Arrays.binarySearch(node.labels, c);
+    return index >= 0 ? node.children[index] : null;
+  }
+
+  /**
+   * @return <code>false</code> if the synonym is empty or already added for the target
+   */
+  private static boolean add(final BuildNode root, final String synonym, final Target target) {
+    final String trimmed = synonym.trim();
+    if (trimmed.isEmpty()) {
+      return false;
+    }
+    BuildNode node = root;
+    boolean space = false;
+    for (int i = 0; i < trimmed.length(); i++) {
+      final char c = trimmed.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = true;
+        continue;
+      }
+      if (space) {
+        node = node.child(' ');
+        space = false;
+      }
+      node = node.child(normalize(c));
+    }
+    for (final Target existing : node.targets) {
+      if (existing.entityName.equals(target.entityName) && existing.value.equals(target.value)) {
+        return false;
+      }
+    }
+    node.targets.add(target);
+    return true;
+  }
+
+  /**
+   * Convert the trie into compact nodes and link them breadth first
+   */
+  private static Node freeze(final BuildNode buildRoot) {
+    final Node root = buildRoot.toNode();
+    root.failure = root;
+    final Queue<Node> queue = new ArrayDeque<>();
+    for (final Node child : root.children) {
+      child.failure = root;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      final Node node = queue.remove();
+      for (int i = 0; i < node.labels.length; i++) {
+        final Node child = node.children[i];
+        Node failure = node.failure;
+        Node target = child(failure, node.labels[i]);
+        while (target == null && failure != root) {
+          failure = failure.failure;
+          target = child(failure, node.labels[i]);
+        }
+        child.failure = target != null ? target : root;
+        child.outputLink = child.failure.targets != null ? child.failure : child.failure.outputLink;
+        queue.add(child);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Entry of an entity
+   */
+  private static class Target {
+
+    final String entityName;
+    final String value;
+
+    Target(final String entityName, final String value) {
+      this.entityName = entityName;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Automaton state with children sorted by label
+   */
+  private static class Node {
+
+    final int depth;
+    final char[] labels;
+    final Node[] children;
+    /**
+     * Entries of the synonym ending here. <code>null</code> if no synonym ends here
+     */
+    final Target[] targets;
+    Node failure;
+    /**
+     * Longest proper suffix state where a synonym ends
+     */
+    Node outputLink;
+
+    Node(final int depth, final char[] labels, final Node[] children, final Target[] targets) {
+      this.depth = depth;
+      this.labels = labels;
+      this.children = children;
+      this.targets = targets;
+    }
+  }
+
+  /**
+   * Trie node used while adding synonyms
+   */
+  private static class BuildNode {
+
+    final int depth;
+    final Map<Character, BuildNode> children = new TreeMap<>();
+    final List<Target> targets = new ArrayList<>(1);
+
+    BuildNode(final int depth) {
+      this.depth = depth;
+    }
+
+    BuildNode child(final char c) {
+      BuildNode child = children.get(c);
+      if (child == null) {
+        child = new BuildNode(depth + 1);
+        children.put(c, child);
+      }
+      return child;
+    }
+
+    Node toNode() {
+      final char[] labels = new char[children.size()];
+      final Node[] nodes = new Node[children.size()];
+      int i = 0;
+      for (final Map.Entry<Character, BuildNode> entry : children.entrySet()) {
+        labels[i] = entry.getKey();
+        nodes[i] = entry.getValue().toNode();
+        i++;
+      }
+      return new Node(depth, labels, nodes,
+          targets.isEmpty() ? null : targets.toArray(new Target[targets.size()]));
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import ai.api.GsonFactory;
+import ai.api.RequestExtras;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Fulfillment;
+import ai.api.model.Result;
+import ai.api.util.StringUtils;
+
+/**
+ * Answers known questions with static answers without a request to the service.
+ * <p>
+ * Questions are looked up by language and normalized text: Unicode NFKC, lower case, punctuation
+ * removed and whitespace collapsed, so <code>"What are your hours?"</code> and
+ * <code>"what are your  hours"</code> are the same question. The index is loaded from a JSON
+ * snapshot, an array of answers:
+ * <pre>
+ * [{"language": "en", "intentName": "faq.hours", "action": "faq.hours",
+ *   "speech": "We are open from 9 to 5.",
+ *   "questions": ["What are your opening hours?", "When are you open?"]}]
+ * </pre>
+ * An answer may have a full <code>fulfillment</code> object instead of <code>speech</code>. An
+ * answer without language matches questions of any language. An answer without intent name is
+ * returned without one and its hits are counted under its action, or under
+ * {@link #DEFAULT_INTENT_NAME} if it has no action either.
+ * <p>
+ * Loading a snapshot replaces the index atomically, queries in progress use the previous one.
+ * {@link #reloadIfModified()} reloads the snapshot file when it changes and may be scheduled
+ * periodically.
+ */
+public class FaqResponder implements LocalResponder {
+
+  private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+  private static final Pattern PUNCTUATION = Pattern.compile("[\\p{P}\\p{S}]+");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final String ANY_LANGUAGE = "";
+
+  /**
+   * Key of {@link #getIntentHitCounts()} for answers without intent name and action
+   */
+  public static final String DEFAULT_INTENT_NAME = "faq";
+
+  private final File snapshotFile;
+
+  private volatile Index index = new Index(Collections.<String, Map<String, JsonElement>>emptyMap(),
+      0);
+  private volatile long loadedModified;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final ConcurrentMap<String, AtomicLong> intentHitCounts = new ConcurrentHashMap<>();
+
+  /**
+   * Create responder with an empty index, loaded later by {@link #load(Reader)}
+   */
+  public FaqResponder() {
+    this.snapshotFile = null;
+  }
+
+  /**
+   * Create responder loading the snapshot file
+   *
+   * @param snapshotFile UTF-8 JSON file. Cannot be <code>null</code>
+   * @throws IOException If the file cannot be read or parsed
+   */
+  public FaqResponder(final File snapshotFile) throws IOException {
+    if (snapshotFile == null) {
+      throw new IllegalArgumentException("snapshotFile should not be null");
+    }
+    this.snapshotFile = snapshotFile;
+    reload();
+  }
+
+  @Override
+  public AIResponse respond(final AIRequest request, final RequestExtras requestExtras) {
+    final String query = LocalResponses.getQueryText(request);
+    if (query == null) {
+      return null;
+    }
+    final Index current = index;
+    final String question = normalize(query);
+    JsonElement answer = find(current, request.getLanguage(), question);
+    if (answer == null) {
+      answer = find(current, ANY_LANGUAGE, question);
+    }
+    if (answer == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+
+    final AIResponse response = GSON.fromJson(answer, AIResponse.class);
+    response.setId(UUID.randomUUID().toString());
+    response.setTimestamp(new Date());
+    response.setLang(request.getLanguage());
+    response.setSessionId(request.getSessionId());
+    response.getResult().setResolvedQuery(query);
+
+    hitCount.incrementAndGet();
+    final Result result = response.getResult();
+    final String intentName = result.getMetadata() != null
+        ? result.getMetadata().getIntentName() : null;
+    if (intentName != null) {
+      countIntentHit(intentName);
+    } else {
+      countIntentHit(!StringUtils.isEmpty(result.getAction()) ? result.getAction()
+          : DEFAULT_INTENT_NAME);
+    }
+    return response;
+  }
+
+  private void countIntentHit(final String intentName) {
+    AtomicLong intentHits = intentHitCounts.get(intentName);
+    if (intentHits == null) {
+      final AtomicLong created = new AtomicLong();
+      intentHits = intentHitCounts.putIfAbsent(intentName, created);
+      if (intentHits == null) {
+        intentHits = created;
+      }
+    }
+    intentHits.incrementAndGet();
+  }
+
+  /**
+   * Replace the index with a snapshot
+   *
+   * @param reader Reader of the JSON snapshot. Not closed
+   * @return Count of questions loaded
+   * @throws IOException If the snapshot cannot be read or parsed. The index is kept then
+   */
+  public int load(final Reader reader) throws IOException {
+    final List<Answer> answers;
+    try {
+      answers = GSON.fromJson(reader, new TypeToken<List<Answer>>() {}.getType());
+    } catch (final JsonParseException e) {
+      throw new IOException("Wrong FAQ snapshot format", e);
+    }
+
+    final Map<String, Map<String, JsonElement>> languages = new HashMap<>();
+    int questionCount = 0;
+    if (answers != null) {
+      for (final Answer answer : answers) {
+        if (answer.questions == null) {
+          continue;
+        }
+        final String language = answer.language != null ? answer.language : ANY_LANGUAGE;
+        Map<String, JsonElement> questions = languages.get(language);
+        if (questions == null) {
+          questions = new HashMap<>();
+          languages.put(language, questions);
+        }
+        final JsonElement response = GSON.toJsonTree(LocalResponses.create(new AIRequest(), null,
+            answer.intentName, answer.action, answer.speech, answer.parameters));
+        if (answer.fulfillment != null) {
+          response.getAsJsonObject().getAsJsonObject("result")
+              .add("fulfillment", GSON.toJsonTree(answer.fulfillment));
+        }
+        for (final String question : answer.questions) {
+          if (question != null && questions.put(normalize(question), response) == null) {
+            questionCount++;
+          }
+        }
+      }
+    }
+    index = new Index(languages, questionCount);
+    return questionCount;
+  }
+
+  /**
+   * Load the snapshot file again
+   *
+   * @return Count of questions loaded
+   * @throws IOException If the snapshot cannot be read or parsed. The index is kept then
+   */
+  public int reload() throws IOException {
+    if (snapshotFile == null) {
+      throw new IllegalStateException("Responder has no snapshot file");
+    }
+    final long lastModified = snapshotFile.lastModified();
+    final int questionCount;
+    try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), "UTF-8")) {
+      questionCount = load(reader);
+    }
+    loadedModified = lastModified;
+    return questionCount;
+  }
+
+  /**
+   * Load the snapshot file again if it was modified since it was loaded
+   *
+   * @return <code>true</code> if the file was loaded
+   * @throws IOException If the snapshot cannot be read or parsed. The index is kept then
+   */
+  public boolean reloadIfModified() throws IOException {
+    if (snapshotFile == null) {
+      throw new IllegalStateException("Responder has no snapshot file");
+    }
+    if (snapshotFile.lastModified() == loadedModified) {
+      return false;
+    }
+    reload();
+    return true;
+  }
+
+  /**
+   * Normalize question text as it is looked up in the index
+   */
+  public static String normalize(final String text) {
+    String result = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    result = PUNCTUATION.matcher(result).replaceAll(" ");
+    return WHITESPACE.matcher(result).replaceAll(" ").trim();
+  }
+
+  /**
+   * @return Count of questions in the index
+   */
+  public int getQuestionCount() {
+    return index.questionCount;
+  }
+
+  /**
+   * @return Count of queries answered
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return Count of queries not found in the index
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return Count of queries answered by intent name
+   */
+  public Map<String, Long> getIntentHitCounts() {
+    final Map<String, Long> result = new HashMap<>();
+    for (final Map.Entry<String, AtomicLong> entry : intentHitCounts.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().get());
+    }
+    return result;
+  }
+
+  public File getSnapshotFile() {
+    return snapshotFile;
+  }
+
+  private static JsonElement find(final Index index, final String language,
+      final String question) {
+    final Map<String, JsonElement> questions =
+        index.languages.get(language != null ? language : ANY_LANGUAGE);
+    return questions != null ? questions.get(question) : null;
+  }
+
+  /**
+   * Responses by normalized question by language. Never changed after it is built
+   */
+  private static class Index {
+
+    final Map<String, Map<String, JsonElement>> languages;
+    final int questionCount;
+
+    Index(final Map<String, Map<String, JsonElement>> languages, final int questionCount) {
+      this.languages = languages;
+      this.questionCount = questionCount;
+    }
+  }
+
+  /**
+   * Answer of the snapshot
+   */
+  private static class Answer {
+    String language;
+    String intentName;
+    String action;
+    String speech;
+    Fulfillment fulfillment;
+    Map<String, String> parameters;
+    List<String> questions;
+  }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import ai.api.RequestExtras;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+/**
+ * Answers text queries on the client without a request to the service.
+ * <p>
+ * Configured with <code>AIConfiguration.setLocalResponder</code>, it is asked before every text
+ * query is sent. Implementations must be thread safe and should not block.
+ */
+public interface LocalResponder {
+
+  /**
+   * @param request Query with language, session and extras filled in. May be changed to
+   *        influence the request sent to the service
+   * @param requestExtras Extras passed with the query. May be <code>null</code>
+   * @return Response to return instead of asking the service. <code>null</code> to send the
+   *         query to the service
+   */
+  AIResponse respond(AIRequest request, RequestExtras requestExtras);
+}
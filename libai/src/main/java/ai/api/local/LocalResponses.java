@@ -0,0 +1,95 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Fulfillment;
+import ai.api.model.Metadata;
+import ai.api.model.Result;
+import ai.api.model.Status;
+
+/**
+ * Builds responses of local responders
+ */
+final class LocalResponses {
+
+  /**
+   * Value of the result source of local responses
+   */
+  static final String SOURCE = "local";
+
+  private LocalResponses() {
+  }
+
+  /**
+   * @param parameters Result parameters. May be <code>null</code>
+   */
+  static AIResponse create(final AIRequest request, final String query, final String intentName,
+      final String action, final String speech, final Map<String, String> parameters) {
+    final Metadata metadata = new Metadata();
+    metadata.setIntentName(intentName);
+
+    final Fulfillment fulfillment = new Fulfillment();
+    fulfillment.setSpeech(speech != null ? speech : "");
+
+    final HashMap<String, JsonElement> resultParameters = new HashMap<>();
+    if (parameters != null) {
+      for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+        resultParameters.put(parameter.getKey(), new JsonPrimitive(parameter.getValue()));
+      }
+    }
+
+    final Result result = new Result();
+    result.setSource(SOURCE);
+    result.setResolvedQuery(query);
+    result.setAction(action);
+    result.setScore(1);
+    result.setMetadata(metadata);
+    result.setFulfillment(fulfillment);
+    result.setParameters(resultParameters);
+
+    final AIResponse response = new AIResponse();
+    response.setId(UUID.randomUUID().toString());
+    response.setTimestamp(new Date());
+    response.setLang(request.getLanguage());
+    response.setSessionId(request.getSessionId());
+    response.setResult(result);
+    response.setStatus(Status.fromResponseCode(200));
+    return response;
+  }
+
+  /**
+   * @return The only query text of the request. <code>null</code> if the request has no query,
+   *         several query variants or an event
+   */
+  static String getQueryText(final AIRequest request) {
+    final String[] query = request.getQuery();
+    if (query == null || query.length != 1 || request.getEvent() != null) {
+      return null;
+    }
+    return query[0];
+  }
+}
@@ -22,6 +22,8 @@ import com.google.gson.annotations.SerializedName;
 import java.io.Serializable;
 import java.util.Map;
 
+import ai.api.util.StringPool;
+
 public class AIOutputContext implements Serializable {
 
 	private static final long serialVersionUID = 1L;
@@ -66,4 +68,16 @@ public class AIOutputContext implements Serializable {
     public void setLifespan(final Integer lifespan) {
         this.lifespan = lifespan;
     }
+
+    /**
+     * Replace strings with their pooled instances, parameters are copied into a compact map
+     */
+    void internStrings(final StringPool pool) {
+        name = pool.intern(name);
+        if (parameters != null) {
+            final ParameterMap pooledParameters = new ParameterMap(parameters);
+            pooledParameters.internKeys(pool);
+            parameters = pooledParameters;
+        }
+    }
 }
@@ -53,6 +53,13 @@ public class AIRequest extends QuestionMetadata implements Serializable {
         setQuery(query);
     }
 
+    /**
+     * @return Query variants. <code>null</code> if the request has no query
+     */
+    public String[] getQuery() {
+        return query;
+    }
+
     public void setQuery(final String query) {
         this.query = StringUtils.isEmpty(query) ? null : new String[]{query};
         confidence = null;
@@ -104,6 +111,10 @@ public class AIRequest extends QuestionMetadata implements Serializable {
     }
 
 
+    public AIEvent getEvent() {
+        return event;
+    }
+
     public void setEvent(AIEvent event) {
         this.event = event;
     }
@@ -21,6 +21,8 @@ import com.google.gson.annotations.SerializedName;
 import java.io.Serializable;
 import java.util.Date;
 
+import ai.api.util.StringPool;
+
 public class AIResponse implements Serializable {
 
 	private static final long serialVersionUID = 1L;
@@ -140,4 +142,11 @@ public class AIResponse implements Serializable {
             result.trimParameters();
         }
     }
+
+    /**
+     * Replace strings with their pooled instances
+     */
+    void internStrings(final StringPool pool) {
+        lang = pool.intern(lang);
+    }
 }
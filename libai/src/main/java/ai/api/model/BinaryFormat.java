@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import java.nio.charset.Charset;
+
+/**
+ * Constants of the binary response format of {@link BinaryResponseWriter}.
+ * <p>
+ * A stream starts with {@link #MAGIC} and the varint format version, followed by responses, each
+ * starting with {@link #RECORD}. Integers are unsigned or zigzag encoded varints, floats are four
+ * bytes. Strings are varint references: {@link #NULL}, {@link #NEW_STRING} for a string added to
+ * the string table of the stream, {@link #INLINE_STRING} for a string not added, or the table
+ * index plus {@link #FIRST_STRING_INDEX}. New and inline strings are followed by the length and
+ * UTF-8 bytes. Lists and maps start with their size plus one, or {@link #NULL}.
+ */
+final class BinaryFormat {
+
+    static final byte[] MAGIC = {'A', 'I', 'R', 'B'};
+    static final int VERSION = 1;
+
+    static final int RECORD = 1;
+
+    static final int NULL = 0;
+    static final int NEW_STRING = 1;
+    static final int INLINE_STRING = 2;
+    static final int FIRST_STRING_INDEX = 3;
+
+    /**
+     * Strings longer than this are never added to the string table
+     */
+    static final int MAX_TABLE_STRING_LENGTH = 64;
+    static final int MAX_TABLE_SIZE = 1 << 16;
+
+    static final int JSON_MISSING = 0;
+    static final int JSON_NULL = 1;
+    static final int JSON_TRUE = 2;
+    static final int JSON_FALSE = 3;
+    static final int JSON_STRING = 4;
+    static final int JSON_NUMBER = 5;
+    static final int JSON_INTEGER = 6;
+    static final int JSON_ARRAY = 7;
+    static final int JSON_OBJECT = 8;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryFormat() {
+    }
+}
@@ -0,0 +1,389 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static ai.api.model.BinaryFormat.*;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.api.GsonFactory;
+
+/**
+ * Reads responses written by {@link BinaryResponseWriter}. Not thread safe.
+ * <pre>
+ * try (BinaryResponseReader reader = new BinaryResponseReader(new FileInputStream(file))) {
+ *     AIResponse response;
+ *     while ((response = reader.read()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class BinaryResponseReader implements Closeable {
+
+    private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+    /**
+     * Largest buffer or list allocated before its content is read. Sizes in the stream are not
+     * trusted, so a corrupt size fails with {@link EOFException} instead of exhausting memory
+     */
+    private static final int MAX_PREALLOCATED = 8192;
+
+    private final InputStream in;
+    private final int version;
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Create reader and read the format header
+     *
+     * @param in Stream of the responses. Buffered by the reader. Cannot be <code>null</code>
+     * @throws IOException If the stream is not in the binary format or its version is not
+     *         supported
+     */
+    public BinaryResponseReader(final InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("in should not be null");
+        }
+        this.in = new BufferedInputStream(in);
+        final byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = (byte) readByte();
+        }
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Stream is not in the binary response format");
+        }
+        version = readVarint();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported binary response format version " + version);
+        }
+    }
+
+    /**
+     * @return Next response or <code>null</code> at the end of the stream
+     * @throws IOException If the stream is broken
+     */
+    public AIResponse read() throws IOException {
+        final int tag = in.read();
+        if (tag < 0) {
+            return null;
+        }
+        if (tag != RECORD) {
+            throw new IOException("Unexpected record tag " + tag);
+        }
+        final AIResponse response = new AIResponse();
+        response.setId(readString());
+        response.setTimestamp(readDate());
+        response.setLang(readString());
+        response.setResult(readResult());
+        response.setStatus(readStatus());
+        response.setSessionId(readString());
+        return response;
+    }
+
+    /**
+     * @return Format version of the stream
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Result readResult() throws IOException {
+        if (!readPresence()) {
+            return null;
+        }
+        final Result result = new Result();
+        result.setAction(readString());
+        result.setScore(readFloat());
+        result.setSource(readString());
+        result.setParameterMap(readJsonMap());
+        result.setContexts(readContexts());
+        result.setMetadata(readMetadata());
+        result.setResolvedQuery(readString());
+        result.setFulfillment(readFulfillment());
+        result.setActionIncomplete(readPresence());
+        return result;
+    }
+
+    private Status readStatus() throws IOException {
+        if (!readPresence()) {
+            return null;
+        }
+        final Status status = new Status();
+        status.setCode(readInteger());
+        status.setErrorType(readString());
+        status.setErrorDetails(readString());
+        status.setErrorID(readString());
+        return status;
+    }
+
+    private Metadata readMetadata() throws IOException {
+        if (!readPresence()) {
+            return null;
+        }
+        final Metadata metadata = new Metadata();
+        metadata.setIntentName(readString());
+        metadata.setIntentId(readString());
+        metadata.setWebhookUsedValue(readString());
+        return metadata;
+    }
+
+    private List<AIOutputContext> readContexts() throws IOException {
+        final int size = readSize();
+        if (size < 0) {
+            return null;
+        }
+        final List<AIOutputContext> contexts = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+        for (int i = 0; i < size; i++) {
+            if (!readPresence()) {
+                contexts.add(null);
+                continue;
+            }
+            final AIOutputContext context = new AIOutputContext();
+            context.setName(readString());
+            context.setParameters(readJsonMap());
+            context.setLifespan(readInteger());
+            contexts.add(context);
+        }
+        return contexts;
+    }
+
+    private Fulfillment readFulfillment() throws IOException {
+        if (!readPresence()) {
+            return null;
+        }
+        final Fulfillment fulfillment = new Fulfillment();
+        fulfillment.setSpeech(readString());
+        fulfillment.setMessages(readMessages());
+        fulfillment.setDisplayText(readString());
+        fulfillment.setData(readJsonMap());
+        fulfillment.setSource(readString());
+        fulfillment.setContextOut(readContexts());
+        if (readPresence()) {
+            final AIEvent event = new AIEvent(readString());
+            final int size = readSize();
+            if (size >= 0) {
+                final Map<String, String> data = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    final String key = readString();
+                    data.put(key, readString());
+                }
+                event.setData(data);
+            }
+            fulfillment.setFollowupEvent(event);
+        }
+        return fulfillment;
+    }
+
+    private List<ResponseMessage> readMessages() throws IOException {
+        final int size = readSize();
+        if (size < 0) {
+            return null;
+        }
+        final List<ResponseMessage> messages = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+        for (int i = 0; i < size; i++) {
+            final int tag = readVarint();
+            if (tag == NULL) {
+                messages.add(null);
+                continue;
+            }
+            final ResponseMessage.MessageType type = ResponseMessage.MessageType.fromCode(tag - 1);
+            if (type == null) {
+                throw new IOException("Unknown message type code " + (tag - 1));
+            }
+            final JsonObject json = readJson().getAsJsonObject();
+            json.addProperty("type", type.getCode());
+            try {
+                messages.add(GSON.<ResponseMessage>fromJson(json, type.getType()));
+            } catch (final JsonParseException e) {
+                throw new IOException("Wrong message of type " + type.getName(), e);
+            }
+        }
+        return messages;
+    }
+
+    private ParameterMap readJsonMap() throws IOException {
+        final int size = readSize();
+        if (size < 0) {
+            return null;
+        }
+        final ParameterMap map = new ParameterMap();
+        for (int i = 0; i < size; i++) {
+            final String key = readString();
+            map.put(key, readJson());
+        }
+        return map;
+    }
+
+    private JsonElement readJson() throws IOException {
+        final int tag = readVarint();
+        switch (tag) {
+            case JSON_MISSING:
+                return null;
+            case JSON_NULL:
+                return JsonNull.INSTANCE;
+            case JSON_TRUE:
+                return new JsonPrimitive(true);
+            case JSON_FALSE:
+                return new JsonPrimitive(false);
+            case JSON_STRING:
+                return new JsonPrimitive(readString());
+            case JSON_NUMBER:
+                return new JsonPrimitive(new BigDecimal(readString()));
+            case JSON_INTEGER:
+                return new JsonPrimitive(unzigzag(readVarlong()));
+            case JSON_ARRAY: {
+                final int size = readVarint();
+                final JsonArray array = new JsonArray();
+                for (int i = 0; i < size; i++) {
+                    array.add(readJson());
+                }
+                return array;
+            }
+            case JSON_OBJECT: {
+                final int size = readVarint();
+                final JsonObject object = new JsonObject();
+                for (int i = 0; i < size; i++) {
+                    final String key = readString();
+                    object.add(key, readJson());
+                }
+                return object;
+            }
+            default:
+                throw new IOException("Unknown JSON value tag " + tag);
+        }
+    }
+
+    private String readString() throws IOException {
+        final int reference = readVarint();
+        switch (reference) {
+            case NULL:
+                return null;
+            case NEW_STRING: {
+                final String value = readBytes();
+                strings.add(value);
+                return value;
+            }
+            case INLINE_STRING:
+                return readBytes();
+            default:
+                final int index = reference - FIRST_STRING_INDEX;
+                if (index >= strings.size()) {
+                    throw new IOException("Unknown string reference " + index);
+                }
+                return strings.get(index);
+        }
+    }
+
+    private String readBytes() throws IOException {
+        final int length = readVarint();
+        byte[] bytes = new byte[Math.min(length, MAX_PREALLOCATED)];
+        int offset = 0;
+        while (offset < length) {
+            if (offset == bytes.length) {
+                // Grow with the data actually read
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            final int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    private Date readDate() throws IOException {
+        return readPresence() ? new Date(unzigzag(readVarlong())) : null;
+    }
+
+    private Integer readInteger() throws IOException {
+        final long value = readVarlong();
+        return value == NULL ? null : (int) unzigzag(value - 1);
+    }
+
+    private float readFloat() throws IOException {
+        final int bits = readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        return Float.intBitsToFloat(bits);
+    }
+
+    private boolean readPresence() throws IOException {
+        return readByte() != 0;
+    }
+
+    /**
+     * @return Size of a collection or <code>-1</code> if it is <code>null</code>
+     */
+    private int readSize() throws IOException {
+        return readVarint() - 1;
+    }
+
+    private int readVarint() throws IOException {
+        final long value = readVarlong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Value out of range " + value);
+        }
+        return (int) value;
+    }
+
+    private long readVarlong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        final int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
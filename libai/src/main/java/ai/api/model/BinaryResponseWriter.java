@@ -0,0 +1,351 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static ai.api.model.BinaryFormat.*;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.api.GsonFactory;
+
+/**
+ * Writes responses in a compact binary format, read back by {@link BinaryResponseReader}.
+ * <p>
+ * Repeated strings such as actions, intent names and parameter names are written once per stream
+ * and referenced by index later. Rich messages are tagged with their
+ * {@link ResponseMessage.MessageType} code. Not thread safe.
+ * <pre>
+ * try (BinaryResponseWriter writer = new BinaryResponseWriter(new FileOutputStream(file))) {
+ *     writer.write(response);
+ * }
+ * </pre>
+ */
+public class BinaryResponseWriter implements Closeable, Flushable {
+
+    private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+    private final OutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private long count;
+
+    /**
+     * Create writer and write the format header
+     *
+     * @param out Stream of the responses. Buffered by the writer. Cannot be <code>null</code>
+     */
+    public BinaryResponseWriter(final OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out should not be null");
+        }
+        this.out = new BufferedOutputStream(out);
+        this.out.write(MAGIC);
+        writeVarint(VERSION);
+    }
+
+    /**
+     * Write a response. Lazily read sub-trees are decoded
+     *
+     * @param response Response. Cannot be <code>null</code>
+     */
+    public void write(final AIResponse response) throws IOException {
+        if (response == null) {
+            throw new IllegalArgumentException("response should not be null");
+        }
+        writeVarint(RECORD);
+        writeString(response.getId(), false);
+        writeDate(response.getTimestamp());
+        writeString(response.getLang(), true);
+        writeResult(response.getResult());
+        writeStatus(response.getStatus());
+        writeString(response.getSessionId(), false);
+        count++;
+    }
+
+    /**
+     * @return Count of responses written
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeResult(final Result result) throws IOException {
+        if (!writePresence(result)) {
+            return;
+        }
+        writeString(result.getActionValue(), true);
+        writeFloat(result.getScore());
+        writeString(result.getSource(), true);
+        writeJsonMap(result.getParameterMap());
+        writeContexts(result.getContexts());
+        writeMetadata(result.getMetadata());
+        writeString(result.getResolvedQuery(), false);
+        writeFulfillment(result.getFulfillment());
+        writeBoolean(result.isActionIncomplete());
+    }
+
+    private void writeStatus(final Status status) throws IOException {
+        if (!writePresence(status)) {
+            return;
+        }
+        writeInteger(status.getCode());
+        writeString(status.getErrorType(), true);
+        writeString(status.getErrorDetailsValue(), false);
+        writeString(status.getErrorID(), false);
+    }
+
+    private void writeMetadata(final Metadata metadata) throws IOException {
+        if (!writePresence(metadata)) {
+            return;
+        }
+        writeString(metadata.getIntentName(), true);
+        writeString(metadata.getIntentId(), true);
+        writeString(metadata.getWebhookUsedValue(), true);
+    }
+
+    private void writeContexts(final List<AIOutputContext> contexts) throws IOException {
+        if (!writeSize(contexts == null ? -1 : contexts.size())) {
+            return;
+        }
+        for (final AIOutputContext context : contexts) {
+            if (writePresence(context)) {
+                writeString(context.getName(), true);
+                writeJsonMap(context.getParameters());
+                writeInteger(context.getLifespan());
+            }
+        }
+    }
+
+    private void writeFulfillment(final Fulfillment fulfillment) throws IOException {
+        if (!writePresence(fulfillment)) {
+            return;
+        }
+        writeString(fulfillment.getSpeech(), false);
+        writeMessages(fulfillment.getMessages());
+        writeString(fulfillment.getDisplayText(), false);
+        writeJsonMap(fulfillment.getData());
+        writeString(fulfillment.getSource(), true);
+        writeContexts(fulfillment.getContextOut());
+        final AIEvent event = fulfillment.getFollowupEvent();
+        if (writePresence(event)) {
+            writeString(event.getName(), true);
+            final Map<String, String> data = event.getData();
+            if (writeSize(data == null ? -1 : data.size())) {
+                for (final Map.Entry<String, String> entry : data.entrySet()) {
+                    writeString(entry.getKey(), true);
+                    writeString(entry.getValue(), false);
+                }
+            }
+        }
+    }
+
+    private void writeMessages(final List<ResponseMessage> messages) throws IOException {
+        if (!writeSize(messages == null ? -1 : messages.size())) {
+            return;
+        }
+        for (final ResponseMessage message : messages) {
+            if (message == null) {
+                writeVarint(NULL);
+                continue;
+            }
+            writeVarint(message.getType().getCode() + 1);
+            final JsonObject json = GSON.toJsonTree(message).getAsJsonObject();
+            // The tag replaces the type field
+            json.remove("type");
+            writeJson(json);
+        }
+    }
+
+    private void writeJsonMap(final Map<String, JsonElement> map) throws IOException {
+        if (!writeSize(map == null ? -1 : map.size())) {
+            return;
+        }
+        for (final Map.Entry<String, JsonElement> entry : map.entrySet()) {
+            writeString(entry.getKey(), true);
+            writeJson(entry.getValue());
+        }
+    }
+
+    private void writeJson(final JsonElement json) throws IOException {
+        if (json == null) {
+            writeVarint(JSON_MISSING);
+        } else if (json.isJsonNull()) {
+            writeVarint(JSON_NULL);
+        } else if (json.isJsonPrimitive()) {
+            final JsonPrimitive primitive = json.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                writeVarint(primitive.getAsBoolean() ? JSON_TRUE : JSON_FALSE);
+            } else if (primitive.isNumber()) {
+                final String text = primitive.getAsString();
+                if (isLong(text)) {
+                    writeVarint(JSON_INTEGER);
+                    writeVarlong(zigzag(Long.parseLong(text)));
+                } else {
+                    writeVarint(JSON_NUMBER);
+                    writeString(text, false);
+                }
+            } else {
+                writeVarint(JSON_STRING);
+                writeString(primitive.getAsString(), true);
+            }
+        } else if (json.isJsonArray()) {
+            final JsonArray array = json.getAsJsonArray();
+            writeVarint(JSON_ARRAY);
+            writeVarint(array.size());
+            for (final JsonElement element : array) {
+                writeJson(element);
+            }
+        } else {
+            final JsonObject object = json.getAsJsonObject();
+            writeVarint(JSON_OBJECT);
+            writeVarint(object.size());
+            for (final Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeString(entry.getKey(), true);
+                writeJson(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param repeated If <code>true</code> then the string is added to the string table
+     */
+    private void writeString(final String value, final boolean repeated) throws IOException {
+        if (value == null) {
+            writeVarint(NULL);
+            return;
+        }
+        if (repeated && value.length() <= MAX_TABLE_STRING_LENGTH) {
+            final Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(index + FIRST_STRING_INDEX);
+                return;
+            }
+            if (strings.size() < MAX_TABLE_SIZE) {
+                strings.put(value, strings.size());
+                writeVarint(NEW_STRING);
+                writeBytes(value);
+                return;
+            }
+        }
+        writeVarint(INLINE_STRING);
+        writeBytes(value);
+    }
+
+    private void writeBytes(final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeDate(final Date date) throws IOException {
+        if (writePresence(date)) {
+            writeVarlong(zigzag(date.getTime()));
+        }
+    }
+
+    private void writeInteger(final Integer value) throws IOException {
+        writeVarlong(value == null ? NULL : zigzag(value) + 1);
+    }
+
+    private void writeFloat(final float value) throws IOException {
+        final int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    private void writeBoolean(final boolean value) throws IOException {
+        out.write(value ? 1 : 0);
+    }
+
+    /**
+     * @return <code>true</code> if the object is not <code>null</code> and should be written
+     */
+    private boolean writePresence(final Object value) throws IOException {
+        out.write(value != null ? 1 : 0);
+        return value != null;
+    }
+
+    /**
+     * @param size Size of a collection or <code>-1</code> if it is <code>null</code>
+     * @return <code>true</code> if the collection is not <code>null</code>
+     */
+    private boolean writeSize(final int size) throws IOException {
+        writeVarint(size + 1);
+        return size >= 0;
+    }
+
+    private void writeVarint(final int value) throws IOException {
+        writeVarlong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarlong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @return <code>true</code> if the number text is a long written without leading zeros, so it
+     *         is read back as the same text
+     */
+    private static boolean isLong(final String text) {
+        final int start = text.startsWith("-") ? 1 : 0;
+        final int length = text.length() - start;
+        if (length == 0 || length > 18 || (text.charAt(start) == '0' && length > 1)
+                || (start == 1 && length == 1 && text.charAt(1) == '0')) {
+            return false;
+        }
+        for (int i = start; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -18,10 +18,14 @@ package ai.api.model;
 
 import com.google.gson.JsonElement;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
 
 import ai.api.util.StringUtils;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +37,10 @@ import java.util.Map;
 public class Fulfillment implements Serializable {
   private static final long serialVersionUID = 1L;
 
+  private static final Type MESSAGE_LIST_TYPE = new TypeToken<List<ResponseMessage>>() {}.getType();
+  private static final Type DATA_TYPE = new TypeToken<Map<String, JsonElement>>() {}.getType();
+  private static final Type CONTEXT_LIST_TYPE = new TypeToken<List<AIOutputContext>>() {}.getType();
+
   @SerializedName("speech")
   private String speech;
 
@@ -54,6 +62,11 @@ public class Fulfillment implements Serializable {
   @SerializedName("followupEvent")
   private AIEvent followupEvent;
 
+  /**
+   * Sub-trees not decoded yet, see {@link LazyDecodingAdapterFactory}
+   */
+  private transient volatile RawFields rawFields;
+
   /** Get voice response to the request */
   public String getSpeech() {
     return speech;
@@ -66,11 +79,23 @@ public class Fulfillment implements Serializable {
 
   /** Get list of {@link ResponseMessage} objects */
   public List<ResponseMessage> getMessages() {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      synchronized (rawFields) {
+        if (rawFields.has(LazyDecodingAdapterFactory.MESSAGES)) {
+          messages = rawFields.decode(LazyDecodingAdapterFactory.MESSAGES, MESSAGE_LIST_TYPE);
+        }
+      }
+    }
     return messages;
   }
 
   /** Set list of {@link ResponseMessage} objects */
   public void setMessages(List<ResponseMessage> messages) {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      rawFields.discard(LazyDecodingAdapterFactory.MESSAGES);
+    }
     this.messages = messages;
   }
   
@@ -90,11 +115,23 @@ public class Fulfillment implements Serializable {
 
   /** Get additional data required for performing the action on the client side. */
   public Map<String, JsonElement> getData() {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      synchronized (rawFields) {
+        if (rawFields.has(LazyDecodingAdapterFactory.DATA)) {
+          data = rawFields.decode(LazyDecodingAdapterFactory.DATA, DATA_TYPE);
+        }
+      }
+    }
     return data;
   }
 
   /** Set additional data required for performing the action on the client side. */
   public void setData(final Map<String, JsonElement> data) {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      rawFields.discard(LazyDecodingAdapterFactory.DATA);
+    }
     this.data = data;
   }
 
@@ -120,6 +157,14 @@ public class Fulfillment implements Serializable {
 
   /** Get list of context objects set after intent completion. */
   public List<AIOutputContext> getContextOut() {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      synchronized (rawFields) {
+        if (rawFields.has(LazyDecodingAdapterFactory.CONTEXT_OUT)) {
+          contextOut = rawFields.decode(LazyDecodingAdapterFactory.CONTEXT_OUT, CONTEXT_LIST_TYPE);
+        }
+      }
+    }
     return contextOut;
   }
 
@@ -129,6 +174,7 @@ public class Fulfillment implements Serializable {
       throw new IllegalArgumentException("name argument must be not empty");
     }
 
+    final List<AIOutputContext> contextOut = getContextOut();
     if (contextOut == null) {
       return null;
     }
@@ -144,6 +190,10 @@ public class Fulfillment implements Serializable {
 
   /** Set list of context objects set after intent completion. */
   public void setContextOut(final List<AIOutputContext> contextOut) {
+    final RawFields rawFields = this.rawFields;
+    if (rawFields != null) {
+      rawFields.discard(LazyDecodingAdapterFactory.CONTEXT_OUT);
+    }
     this.contextOut = contextOut;
   }
   
@@ -161,4 +211,25 @@ public class Fulfillment implements Serializable {
   public void setFollowupEvent(AIEvent followupEvent) {
     this.followupEvent = followupEvent;
   }
+
+  void setRawFields(final RawFields rawFields) {
+    this.rawFields = rawFields;
+  }
+
+  /**
+   * Decode all sub-trees read lazily
+   */
+  void decodeRawFields() {
+    if (rawFields != null) {
+      getMessages();
+      getData();
+      getContextOut();
+      rawFields = null;
+    }
+  }
+
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    decodeRawFields();
+    out.defaultWriteObject();
+  }
 }
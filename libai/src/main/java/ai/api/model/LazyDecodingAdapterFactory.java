@@ -0,0 +1,237 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the large sub-trees of {@link Result} and {@link Fulfillment} lazily.
+ * <p>
+ * Scalar fields, result parameters and fulfillment scalars are bound while the response is read.
+ * Contexts and metadata of a result and messages, data and output contexts of a fulfillment are
+ * copied as JSON text without building objects and are decoded by the first call of their getter.
+ * Concurrent readers of a lazy object decode each sub-tree once. Writing an object decodes them.
+ *
+ * @see ai.api.GsonFactory#getLazyGson()
+ */
+public final class LazyDecodingAdapterFactory implements TypeAdapterFactory {
+
+    static final String CONTEXTS = "contexts";
+    static final String METADATA = "metadata";
+    static final String FULFILLMENT = "fulfillment";
+    static final String MESSAGES = "messages";
+    static final String DATA = "data";
+    static final String CONTEXT_OUT = "contextOut";
+
+    private static final Set<String> RESULT_FIELDS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(CONTEXTS, METADATA)));
+
+    private static final Set<String> FULFILLMENT_FIELDS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(MESSAGES, DATA, CONTEXT_OUT)));
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        final Class<? super T> rawType = type.getRawType();
+        if (rawType == Result.class) {
+            final TypeAdapter<Fulfillment> fulfillmentAdapter = gson.getAdapter(Fulfillment.class);
+            return (TypeAdapter<T>) new LazyAdapter<Result>(gson,
+                    gson.getDelegateAdapter(this, TypeToken.get(Result.class)), RESULT_FIELDS,
+                    Collections.<String, TypeAdapter<?>>singletonMap(FULFILLMENT, fulfillmentAdapter)) {
+                @Override
+                void setRawFields(final Result value, final RawFields rawFields) {
+                    value.setRawFields(rawFields);
+                }
+
+                @Override
+                void setNestedField(final Result value, final String name, final Object nested) {
+                    value.setFulfillment((Fulfillment) nested);
+                }
+
+                @Override
+                void decodeRawFields(final Result value) {
+                    value.decodeRawFields();
+                }
+            };
+        }
+        if (rawType == Fulfillment.class) {
+            return (TypeAdapter<T>) new LazyAdapter<Fulfillment>(gson,
+                    gson.getDelegateAdapter(this, TypeToken.get(Fulfillment.class)), FULFILLMENT_FIELDS,
+                    Collections.<String, TypeAdapter<?>>emptyMap()) {
+                @Override
+                void setRawFields(final Fulfillment value, final RawFields rawFields) {
+                    value.setRawFields(rawFields);
+                }
+
+                @Override
+                void decodeRawFields(final Fulfillment value) {
+                    value.decodeRawFields();
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Copy the next value of the reader as JSON text
+     */
+    static String copy(final JsonReader in) throws IOException {
+        final StringWriter text = new StringWriter();
+        final JsonWriter out = new JsonWriter(text);
+        out.setSerializeNulls(true);
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    out.jsonValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    throw new IOException("Unexpected end of JSON at " + in.getPath());
+            }
+        } while (depth > 0);
+        out.flush();
+        return text.toString();
+    }
+
+    private abstract static class LazyAdapter<T> extends TypeAdapter<T> {
+
+        private final Gson gson;
+        private final TypeAdapter<T> delegate;
+        private final TypeAdapter<JsonElement> elementAdapter;
+        private final Set<String> lazyFields;
+        private final Map<String, TypeAdapter<?>> nestedAdapters;
+
+        /**
+         * @param nestedAdapters Adapters of fields read directly from the stream, so their own
+         *        sub-trees can be read lazily
+         */
+        LazyAdapter(final Gson gson, final TypeAdapter<T> delegate, final Set<String> lazyFields,
+                final Map<String, TypeAdapter<?>> nestedAdapters) {
+            this.gson = gson;
+            this.delegate = delegate;
+            this.elementAdapter = gson.getAdapter(JsonElement.class);
+            this.lazyFields = lazyFields;
+            this.nestedAdapters = nestedAdapters;
+        }
+
+        @Override
+        public void write(final JsonWriter out, final T value) throws IOException {
+            if (value != null) {
+                decodeRawFields(value);
+            }
+            delegate.write(out, value);
+        }
+
+        @Override
+        public T read(final JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                return delegate.read(in);
+            }
+            final JsonObject eagerFields = new JsonObject();
+            Map<String, String> rawFields = null;
+            Map<String, Object> nestedFields = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                final TypeAdapter<?> nestedAdapter = nestedAdapters.get(name);
+                if (lazyFields.contains(name) && in.peek() != JsonToken.NULL) {
+                    if (rawFields == null) {
+                        rawFields = new HashMap<>();
+                    }
+                    rawFields.put(name, copy(in));
+                } else if (nestedAdapter != null) {
+                    if (nestedFields == null) {
+                        nestedFields = new HashMap<>();
+                    }
+                    nestedFields.put(name, nestedAdapter.read(in));
+                } else {
+                    eagerFields.add(name, elementAdapter.read(in));
+                }
+            }
+            in.endObject();
+
+            final T value = delegate.fromJsonTree(eagerFields);
+            if (nestedFields != null) {
+                for (final Map.Entry<String, Object> nested : nestedFields.entrySet()) {
+                    setNestedField(value, nested.getKey(), nested.getValue());
+                }
+            }
+            if (rawFields != null) {
+                setRawFields(value, new RawFields(gson, rawFields));
+            }
+            return value;
+        }
+
+        abstract void setRawFields(T value, RawFields rawFields);
+
+        void setNestedField(final T value, final String name, final Object nested) {
+            throw new IllegalStateException("No nested field " + name);
+        }
+
+        abstract void decodeRawFields(T value);
+    }
+}
@@ -20,6 +20,8 @@ import com.google.gson.annotations.SerializedName;
 
 import java.io.Serializable;
 
+import ai.api.util.StringPool;
+
 public class Metadata implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
@@ -74,4 +76,24 @@ public class Metadata implements Serializable {
     public void setWebhookUsed(boolean webhookUsed) {
     	this.webhookUsed = Boolean.toString(webhookUsed);
     }
+
+    /**
+     * Value of the webhook flag as received. May be <code>null</code>
+     */
+    String getWebhookUsedValue() {
+        return webhookUsed;
+    }
+
+    void setWebhookUsedValue(final String webhookUsed) {
+        this.webhookUsed = webhookUsed;
+    }
+
+    /**
+     * Replace strings with their pooled instances
+     */
+    void internStrings(final StringPool pool) {
+        intentName = pool.intern(intentName);
+        intentId = pool.intern(intentId);
+        webhookUsed = pool.intern(webhookUsed);
+    }
 }
@@ -0,0 +1,644 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ai.api.util.StringPool;
+
+/**
+ * Compact map of result parameters.
+ * <p>
+ * Keys and values are kept in open addressing arrays with linear probing, without an entry object
+ * per parameter. String values are kept as strings and wrapped in a {@link JsonPrimitive} when
+ * read as an element. Values converted by the typed getters of {@link Result} are cached in the
+ * slot of the parameter until it is replaced or removed.
+ * <p>
+ * Not thread safe for writes, like {@link java.util.HashMap}. Concurrent typed reads are safe.
+ */
+final class ParameterMap extends AbstractMap<String, JsonElement> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int INT = 1;
+    static final int FLOAT = 2;
+    static final int DATE = 3;
+    static final int DATE_TIME = 4;
+    static final int TIME = 5;
+
+    private static final int MIN_CAPACITY = 4;
+
+    /**
+     * Key of a removed parameter, kept until the arrays are rebuilt so probing continues past it
+     */
+    private static final String REMOVED = new String("");
+
+    private transient String[] keys;
+    /**
+     * {@link String} or {@link JsonElement}
+     */
+    private transient Object[] values;
+    private transient Decoded[] decoded;
+    private transient int size;
+    private transient int removed;
+
+    private transient EntrySet entrySet;
+    private transient HashMapView hashMapView;
+
+    ParameterMap() {
+    }
+
+    ParameterMap(final Map<String, ? extends JsonElement> parameters) {
+        if (parameters.size() > 0) {
+            allocate(capacityFor(parameters.size()));
+        }
+        putAll(parameters);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public JsonElement get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        return index >= 0 ? elementAt(index) : null;
+    }
+
+    @Override
+    public JsonElement put(final String key, final JsonElement value) {
+        if (key == null) {
+            throw new NullPointerException("Parameter name must not be null");
+        }
+        final int index = indexOf(key);
+        if (index >= 0) {
+            final JsonElement previous = elementAt(index);
+            values[index] = compact(value);
+            if (decoded != null) {
+                decoded[index] = null;
+            }
+            return previous;
+        }
+        if (keys == null || (size + removed + 1) * 4 > keys.length * 3) {
+            resize(capacityFor(size + 1));
+        }
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = compact(value);
+        size++;
+        return null;
+    }
+
+    @Override
+    public JsonElement remove(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int index = indexOf((String) key);
+        if (index < 0) {
+            return null;
+        }
+        final JsonElement previous = elementAt(index);
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        keys = null;
+        values = null;
+        decoded = null;
+        size = 0;
+        removed = 0;
+    }
+
+    @Override
+    public Set<Entry<String, JsonElement>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    /**
+     * @return {@link HashMap} reading and writing through to this map
+     */
+    HashMap<String, JsonElement> asHashMap() {
+        if (hashMapView == null) {
+            hashMapView = new HashMapView(this);
+        }
+        return hashMapView;
+    }
+
+    /**
+     * @return Copy with string values kept as {@link String}, which is serializable unlike
+     *         {@link JsonPrimitive}
+     */
+    HashMap<String, Object> toSerializableMap() {
+        final HashMap<String, Object> map = new HashMap<>(capacityFor(size));
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && keys[i] != REMOVED) {
+                    map.put(keys[i], values[i]);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @param map Map written by {@link #toSerializableMap()} or a map of elements
+     */
+    static ParameterMap fromSerializableMap(final Map<String, ?> map) {
+        final ParameterMap parameters = new ParameterMap();
+        for (final Map.Entry<String, ?> entry : map.entrySet()) {
+            final Object value = entry.getValue();
+            parameters.put(entry.getKey(),
+                    value instanceof String ? new JsonPrimitive((String) value) : (JsonElement) value);
+        }
+        return parameters;
+    }
+
+    /**
+     * @return Slot of the parameter or <code>-1</code> if there is no such parameter
+     */
+    int indexOf(final String key) {
+        if (keys == null) {
+            return -1;
+        }
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        String current;
+        while ((current = keys[slot]) != null) {
+            if (current != REMOVED && current.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Value of the slot as {@link JsonElement#getAsString()} returns it
+     */
+    String stringAt(final int index) {
+        final Object value = values[index];
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return value != null ? ((JsonElement) value).getAsString() : null;
+    }
+
+    /**
+     * @return Cached value of the slot converted to the kind or <code>null</code>
+     */
+    Object decodedAt(final int index, final int kind) {
+        final Decoded[] current = decoded;
+        if (current == null) {
+            return null;
+        }
+        final Decoded value = current[index];
+        return value != null && value.kind == kind ? value.value : null;
+    }
+
+    void cacheDecoded(final int index, final int kind, final Object value) {
+        if (decoded == null) {
+            decoded = new Decoded[keys.length];
+        }
+        decoded[index] = new Decoded(kind, value);
+    }
+
+    /**
+     * Replace keys with their pooled instances
+     */
+    void internKeys(final StringPool pool) {
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && keys[i] != REMOVED) {
+                    keys[i] = pool.intern(keys[i]);
+                }
+            }
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && keys[i] != REMOVED) {
+                    out.writeObject(keys[i]);
+                    out.writeObject(values[i]);
+                }
+            }
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final String key = (String) in.readObject();
+            final Object value = in.readObject();
+            put(key, value instanceof String ? new JsonPrimitive((String) value) : (JsonElement) value);
+        }
+    }
+
+    private JsonElement elementAt(final int index) {
+        final Object value = values[index];
+        if (value instanceof String) {
+            return new JsonPrimitive((String) value);
+        }
+        return (JsonElement) value;
+    }
+
+    private void removeAt(final int index) {
+        keys[index] = REMOVED;
+        values[index] = null;
+        if (decoded != null) {
+            decoded[index] = null;
+        }
+        size--;
+        removed++;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    private void resize(final int capacity) {
+        final String[] oldKeys = keys;
+        final Object[] oldValues = values;
+        final Decoded[] oldDecoded = decoded;
+        allocate(capacity);
+        decoded = oldDecoded != null ? new Decoded[capacity] : null;
+        removed = 0;
+        if (oldKeys == null) {
+            return;
+        }
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            final String key = oldKeys[i];
+            if (key == null || key == REMOVED) {
+                continue;
+            }
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+            if (oldDecoded != null) {
+                decoded[slot] = oldDecoded[i];
+            }
+        }
+    }
+
+    private static Object compact(final JsonElement value) {
+        if (value instanceof JsonPrimitive && ((JsonPrimitive) value).isString()) {
+            return value.getAsString();
+        }
+        return value;
+    }
+
+    private static int capacityFor(final int count) {
+        int capacity = MIN_CAPACITY;
+        while (count * 4 > capacity * 3) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Value converted by a typed getter
+     */
+    private static final class Decoded {
+        final int kind;
+        final Object value;
+
+        Decoded(final int kind, final Object value) {
+            this.kind = kind;
+            this.value = value;
+        }
+    }
+
+    /**
+     * {@link HashMap} for the API typed with it. Its own table stays empty, all methods work on the
+     * parameter map. Methods added to {@link Map} in Java 8 are overridden too and only called on
+     * Java 8 or later. Serialized as a copy.
+     */
+    private static final class HashMapView extends HashMap<String, JsonElement> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ParameterMap parameters;
+
+        HashMapView(final ParameterMap parameters) {
+            super(0);
+            this.parameters = parameters;
+        }
+
+        @Override
+        public int size() {
+            return parameters.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return parameters.isEmpty();
+        }
+
+        @Override
+        public JsonElement get(final Object key) {
+            return parameters.get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return parameters.containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(final Object value) {
+            return parameters.containsValue(value);
+        }
+
+        @Override
+        public JsonElement put(final String key, final JsonElement value) {
+            return parameters.put(key, value);
+        }
+
+        @Override
+        public void putAll(final Map<? extends String, ? extends JsonElement> map) {
+            parameters.putAll(map);
+        }
+
+        @Override
+        public JsonElement remove(final Object key) {
+            return parameters.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            parameters.clear();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return parameters.keySet();
+        }
+
+        @Override
+        public Collection<JsonElement> values() {
+            return parameters.values();
+        }
+
+        @Override
+        public Set<Entry<String, JsonElement>> entrySet() {
+            return parameters.entrySet();
+        }
+
+        public JsonElement getOrDefault(final Object key, final JsonElement defaultValue) {
+            final JsonElement value = parameters.get(key);
+            return value != null || parameters.containsKey(key) ? value : defaultValue;
+        }
+
+        public JsonElement putIfAbsent(final String key, final JsonElement value) {
+            final JsonElement current = parameters.get(key);
+            return current != null ? current : parameters.put(key, value);
+        }
+
+        public boolean remove(final Object key, final Object value) {
+            if (parameters.containsKey(key) && equal(parameters.get(key), value)) {
+                parameters.remove(key);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean replace(final String key, final JsonElement oldValue, final JsonElement newValue) {
+            if (parameters.containsKey(key) && equal(parameters.get(key), oldValue)) {
+                parameters.put(key, newValue);
+                return true;
+            }
+            return false;
+        }
+
+        public JsonElement replace(final String key, final JsonElement value) {
+            return parameters.containsKey(key) ? parameters.put(key, value) : null;
+        }
+
+        public JsonElement computeIfAbsent(final String key,
+                final Function<? super String, ? extends JsonElement> function) {
+            return parameters.computeIfAbsent(key, function);
+        }
+
+        public JsonElement computeIfPresent(final String key,
+                final BiFunction<? super String, ? super JsonElement, ? extends JsonElement> function) {
+            return parameters.computeIfPresent(key, function);
+        }
+
+        public JsonElement compute(final String key,
+                final BiFunction<? super String, ? super JsonElement, ? extends JsonElement> function) {
+            return parameters.compute(key, function);
+        }
+
+        public JsonElement merge(final String key, final JsonElement value,
+                final BiFunction<? super JsonElement, ? super JsonElement, ? extends JsonElement> function) {
+            return parameters.merge(key, value, function);
+        }
+
+        public void forEach(final BiConsumer<? super String, ? super JsonElement> action) {
+            parameters.forEach(action);
+        }
+
+        public void replaceAll(
+                final BiFunction<? super String, ? super JsonElement, ? extends JsonElement> function) {
+            parameters.replaceAll(function);
+        }
+
+        @Override
+        public Object clone() {
+            return new HashMap<>(parameters);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return parameters.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return parameters.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return parameters.toString();
+        }
+
+        private Object writeReplace() {
+            return new HashMap<>(parameters);
+        }
+
+        private static boolean equal(final Object a, final Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, JsonElement>> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            ParameterMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<String, JsonElement>> iterator() {
+            return new Iterator<Entry<String, JsonElement>>() {
+                private final String[] iteratedKeys = keys;
+                private int next = advance(0);
+                private int current = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Entry<String, JsonElement> next() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    current = next;
+                    next = advance(next + 1);
+                    return new ParameterEntry(current);
+                }
+
+                @Override
+                public void remove() {
+                    if (current < 0 || iteratedKeys != keys) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(current);
+                    current = -1;
+                }
+
+                private int advance(final int from) {
+                    if (iteratedKeys == null) {
+                        return -1;
+                    }
+                    for (int i = from; i < iteratedKeys.length; i++) {
+                        if (iteratedKeys[i] != null && iteratedKeys[i] != REMOVED) {
+                            return i;
+                        }
+                    }
+                    return -1;
+                }
+            };
+        }
+    }
+
+    private final class ParameterEntry implements Entry<String, JsonElement> {
+
+        private final int index;
+        private final String key;
+
+        ParameterEntry(final int index) {
+            this.index = index;
+            this.key = keys[index];
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public JsonElement getValue() {
+            return elementAt(index);
+        }
+
+        @Override
+        public JsonElement setValue(final JsonElement value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry<?, ?> entry = (Entry<?, ?>) o;
+            final JsonElement value = getValue();
+            return key.equals(entry.getKey())
+                    && (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            final JsonElement value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Sub-trees of a model object kept as JSON text until their getter is called.
+ * <p>
+ * Getters call {@link #has(String)} and {@link #decode(String, Type)} and assign the decoded value
+ * while holding the lock of this object, so concurrent readers decode a field once and all see the
+ * decoded value.
+ */
+final class RawFields {
+
+    private final Gson gson;
+    private final Map<String, String> fields;
+
+    RawFields(final Gson gson, final Map<String, String> fields) {
+        this.gson = gson;
+        this.fields = fields;
+    }
+
+    boolean has(final String name) {
+        return fields.containsKey(name);
+    }
+
+    /**
+     * Decode the field and forget its text
+     */
+    <T> T decode(final String name, final Type type) {
+        final String json = fields.remove(name);
+        return json != null ? gson.<T>fromJson(json, type) : null;
+    }
+
+    /**
+     * Forget the text of a field set by its setter
+     */
+    synchronized void discard(final String name) {
+        fields.remove(name);
+    }
+}
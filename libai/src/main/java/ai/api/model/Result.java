@@ -20,14 +20,22 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import ai.api.util.StringPool;
 import ai.api.util.StringUtils;
 
 import ai.api.util.ParametersConverter;
@@ -36,6 +44,24 @@ public class Result implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
 
+    /**
+     * Serialized form of earlier versions, with parameters in a {@link HashMap}. String values are
+     * written as {@link String}, other values as {@link JsonElement}
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("action", String.class),
+            new ObjectStreamField("score", float.class),
+            new ObjectStreamField("source", String.class),
+            new ObjectStreamField("parameters", HashMap.class),
+            new ObjectStreamField("contexts", List.class),
+            new ObjectStreamField("metadata", Metadata.class),
+            new ObjectStreamField("resolvedQuery", String.class),
+            new ObjectStreamField("fulfillment", Fulfillment.class),
+            new ObjectStreamField("actionIncomplete", boolean.class)
+    };
+
+    private static final Type CONTEXT_LIST_TYPE = new TypeToken<List<AIOutputContext>>() {}.getType();
+
     private static final String DATE_FORMAT_ERROR_MESSAGE = "'%s' parameter has value '%s' and can't be parsed as a Date or Time";
 
     @SerializedName("action")
@@ -48,10 +74,10 @@ public class Result implements Serializable {
     private String source;
 
     /**
-     * This field will be deserialized as hashMap container with all parameters and it's values
+     * This field will be deserialized as a compact map with all parameters and their values
      */
     @SerializedName("parameters")
-    private HashMap<String, JsonElement> parameters;
+    private ParameterMap parameters;
 
     /**
      * Currently active contexts
@@ -78,6 +104,11 @@ public class Result implements Serializable {
     @SerializedName("actionIncomplete")
     private boolean actionIncomplete;
 
+    /**
+     * Sub-trees not decoded yet, see {@link LazyDecodingAdapterFactory}
+     */
+    private transient volatile RawFields rawFields;
+
     public String getAction() {
         if (action == null) {
             return "";
@@ -85,6 +116,13 @@ public class Result implements Serializable {
         return action;
     }
 
+    /**
+     * Action as received, <code>null</code> if missing
+     */
+    String getActionValue() {
+        return action;
+    }
+
     public void setAction(final String action) {
         this.action = action;
     }
@@ -106,25 +144,62 @@ public class Result implements Serializable {
     }
 
     public Metadata getMetadata() {
+        final RawFields rawFields = this.rawFields;
+        if (rawFields != null) {
+            synchronized (rawFields) {
+                if (rawFields.has(LazyDecodingAdapterFactory.METADATA)) {
+                    metadata = rawFields.decode(LazyDecodingAdapterFactory.METADATA, Metadata.class);
+                }
+            }
+        }
         return metadata;
     }
 
     public void setMetadata(final Metadata metadata) {
+        final RawFields rawFields = this.rawFields;
+        if (rawFields != null) {
+            rawFields.discard(LazyDecodingAdapterFactory.METADATA);
+        }
         this.metadata = metadata;
     }
 
+    /**
+     * @return Parameters as a {@link HashMap} reading and writing through to the result.
+     *         <code>null</code> if the result has no parameters
+     */
     public HashMap<String, JsonElement> getParameters() {
+        return parameters != null ? parameters.asHashMap() : null;
+    }
+
+    /**
+     * @return Live map of the parameters. <code>null</code> if the result has no parameters
+     */
+    public Map<String, JsonElement> getParameterMap() {
         return parameters;
     }
 
+    /**
+     * @param parameters Parameters copied into the result. May be <code>null</code>
+     */
+    public void setParameters(final Map<String, JsonElement> parameters) {
+        this.parameters = parameters != null ? new ParameterMap(parameters) : null;
+    }
+
+    /**
+     * Set parameters without copying them
+     */
+    void setParameterMap(final ParameterMap parameters) {
+        this.parameters = parameters;
+    }
+
     public String getStringParameter(final String name) {
         return getStringParameter(name, "");
     }
 
     public String getStringParameter(final String name, final String defaultValue) {
-        if (parameters.containsKey(name)) {
-            final String parameterValue = parameters.get(name).getAsString();
-            return parameterValue;
+        final int index = indexOfParameter(name);
+        if (index >= 0) {
+            return parameters.stringAt(index);
         }
         return defaultValue;
     }
@@ -134,21 +209,8 @@ public class Result implements Serializable {
     }
 
     public Date getDateParameter(final String name, final Date defaultValue) throws IllegalArgumentException {
-        if (parameters.containsKey(name)) {
-            final String parameterStringValue = parameters.get(name).getAsString();
-
-            if (StringUtils.isEmpty(parameterStringValue)) {
-                return defaultValue;
-            }
-
-            try {
-                return ParametersConverter.parseDate(parameterStringValue);
-            } catch (final ParseException pe) {
-                throw new IllegalArgumentException(String.format(DATE_FORMAT_ERROR_MESSAGE, name, parameterStringValue), pe);
-            }
-
-        }
-        return defaultValue;
+        final Date value = (Date) decodeParameter(name, ParameterMap.DATE);
+        return value != null ? new Date(value.getTime()) : defaultValue;
     }
 
     public Date getDateTimeParameter(final String name) throws IllegalArgumentException {
@@ -156,21 +218,8 @@ public class Result implements Serializable {
     }
 
     public Date getDateTimeParameter(final String name, final Date defaultValue) throws IllegalArgumentException {
-        if (parameters.containsKey(name)) {
-            final String parameterStringValue = parameters.get(name).getAsString();
-
-            if (StringUtils.isEmpty(parameterStringValue)) {
-                return defaultValue;
-            }
-
-            try {
-                return ParametersConverter.parseDateTime(parameterStringValue);
-            } catch (final ParseException pe) {
-                throw new IllegalArgumentException(String.format(DATE_FORMAT_ERROR_MESSAGE, name, parameterStringValue), pe);
-            }
-
-        }
-        return defaultValue;
+        final Date value = (Date) decodeParameter(name, ParameterMap.DATE_TIME);
+        return value != null ? new Date(value.getTime()) : defaultValue;
     }
 
     public Date getTimeParameter(final String name) throws IllegalArgumentException {
@@ -178,21 +227,8 @@ public class Result implements Serializable {
     }
 
     public Date getTimeParameter(final String name, final Date defaultValue) throws IllegalArgumentException {
-        if (parameters.containsKey(name)) {
-            final String parameterStringValue = parameters.get(name).getAsString();
-
-            if (StringUtils.isEmpty(parameterStringValue)) {
-                return defaultValue;
-            }
-
-            try {
-                return ParametersConverter.parseTime(parameterStringValue);
-            } catch (final ParseException pe) {
-                throw new IllegalArgumentException(String.format(DATE_FORMAT_ERROR_MESSAGE, name, parameterStringValue), pe);
-            }
-
-        }
-        return defaultValue;
+        final Date value = (Date) decodeParameter(name, ParameterMap.TIME);
+        return value != null ? new Date(value.getTime()) : defaultValue;
     }
 
     public int getIntParameter(final String name) {
@@ -200,16 +236,8 @@ public class Result implements Serializable {
     }
 
     public int getIntParameter(final String name, final int defaultValue) {
-        if (parameters.containsKey(name)) {
-            final String parameterStringValue = parameters.get(name).getAsString();
-
-            if (StringUtils.isEmpty(parameterStringValue)) {
-                return defaultValue;
-            }
-
-            return ParametersConverter.parseInteger(parameterStringValue);
-        }
-        return defaultValue;
+        final Integer value = (Integer) decodeParameter(name, ParameterMap.INT);
+        return value != null ? value : defaultValue;
     }
 
     public float getFloatParameter(final String name) {
@@ -217,19 +245,12 @@ public class Result implements Serializable {
     }
 
     public float getFloatParameter(final String name, final float defaultValue) {
-        if (parameters.containsKey(name)) {
-            final String parameterStringValue = parameters.get(name).getAsString();
-
-            if (StringUtils.isEmpty(parameterStringValue)) {
-                return defaultValue;
-            }
-
-            return ParametersConverter.parseFloat(parameterStringValue);
-        }
-        return defaultValue;
+        final Float value = (Float) decodeParameter(name, ParameterMap.FLOAT);
+        return value != null ? value : defaultValue;
     }
+
     public JsonObject getComplexParameter(final String name, final JsonObject defaultValue) {
-        if (parameters.containsKey(name)) {
+        if (parameters != null && parameters.containsKey(name)) {
             final JsonObject jsonObject = parameters.get(name).getAsJsonObject();
 
             if (jsonObject == null) {
@@ -246,14 +267,31 @@ public class Result implements Serializable {
     }
 
     public List<AIOutputContext> getContexts() {
+        final RawFields rawFields = this.rawFields;
+        if (rawFields != null) {
+            synchronized (rawFields) {
+                if (rawFields.has(LazyDecodingAdapterFactory.CONTEXTS)) {
+                    contexts = rawFields.decode(LazyDecodingAdapterFactory.CONTEXTS, CONTEXT_LIST_TYPE);
+                }
+            }
+        }
         return contexts;
     }
 
+    void setContexts(final List<AIOutputContext> contexts) {
+        final RawFields rawFields = this.rawFields;
+        if (rawFields != null) {
+            rawFields.discard(LazyDecodingAdapterFactory.CONTEXTS);
+        }
+        this.contexts = contexts;
+    }
+
     public AIOutputContext getContext(final String name) {
         if (StringUtils.isEmpty(name)) {
             throw new IllegalArgumentException("name argument must be not empty");
         }
 
+        final List<AIOutputContext> contexts = getContexts();
         if (contexts == null) {
             return null;
         }
@@ -294,21 +332,118 @@ public class Result implements Serializable {
         this.actionIncomplete = actionIncomplete;
     }
 
+    void setRawFields(final RawFields rawFields) {
+        this.rawFields = rawFields;
+    }
+
+    /**
+     * Decode all sub-trees read lazily
+     */
+    void decodeRawFields() {
+        if (rawFields != null) {
+            getContexts();
+            getMetadata();
+            rawFields = null;
+        }
+        if (fulfillment != null) {
+            fulfillment.decodeRawFields();
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        decodeRawFields();
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("action", action);
+        fields.put("score", score);
+        fields.put("source", source);
+        fields.put("parameters", parameters != null ? parameters.toSerializableMap() : null);
+        fields.put("contexts", contexts);
+        fields.put("metadata", metadata);
+        fields.put("resolvedQuery", resolvedQuery);
+        fields.put("fulfillment", fulfillment);
+        fields.put("actionIncomplete", actionIncomplete);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        final ObjectInputStream.GetField fields = in.readFields();
+        action = (String) fields.get("action", null);
+        score = fields.get("score", 0f);
+        source = (String) fields.get("source", null);
+        final Map<String, ?> parameters = (Map<String, ?>) fields.get("parameters", null);
+        this.parameters = parameters != null ? ParameterMap.fromSerializableMap(parameters) : null;
+        contexts = (List<AIOutputContext>) fields.get("contexts", null);
+        metadata = (Metadata) fields.get("metadata", null);
+        resolvedQuery = (String) fields.get("resolvedQuery", null);
+        fulfillment = (Fulfillment) fields.get("fulfillment", null);
+        actionIncomplete = fields.get("actionIncomplete", false);
+    }
+
     void trimParameters() {
         if (parameters != null) {
-            final List<String> parametersToTrim = new LinkedList<String>();
-            for (final String key : parameters.keySet()) {
-                final JsonElement jsonElement = parameters.get(key);
+            final Iterator<Map.Entry<String, JsonElement>> iterator = parameters.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final JsonElement jsonElement = iterator.next().getValue();
                 if (jsonElement != null && jsonElement.isJsonPrimitive()) {
                     if (((JsonPrimitive) jsonElement).isString() && StringUtils.isEmpty(jsonElement.getAsString())) {
-                        parametersToTrim.add(key);
+                        iterator.remove();
                     }
                 }
             }
-            for (final String key : parametersToTrim) {
-                parameters.remove(key);
+        }
+    }
+
+    /**
+     * @return Slot of the parameter or <code>-1</code> if there is no such parameter
+     */
+    private int indexOfParameter(final String name) {
+        return parameters != null ? parameters.indexOf(name) : -1;
+    }
+
+    /**
+     * Convert a parameter value once and cache it for later calls
+     *
+     * @return Converted value or <code>null</code> if the parameter is missing or empty
+     */
+    private Object decodeParameter(final String name, final int kind) throws IllegalArgumentException {
+        final int index = indexOfParameter(name);
+        if (index < 0) {
+            return null;
+        }
+        final Object cached = parameters.decodedAt(index, kind);
+        if (cached != null) {
+            return cached;
+        }
+        final String parameterStringValue = parameters.stringAt(index);
+        if (StringUtils.isEmpty(parameterStringValue)) {
+            return null;
+        }
+
+        final Object value;
+        try {
+            switch (kind) {
+                case ParameterMap.INT:
+                    value = ParametersConverter.parseInteger(parameterStringValue);
+                    break;
+                case ParameterMap.FLOAT:
+                    value = ParametersConverter.parseFloat(parameterStringValue);
+                    break;
+                case ParameterMap.DATE:
+                    value = ParametersConverter.parseDate(parameterStringValue);
+                    break;
+                case ParameterMap.DATE_TIME:
+                    value = ParametersConverter.parseDateTime(parameterStringValue);
+                    break;
+                default:
+                    value = ParametersConverter.parseTime(parameterStringValue);
+                    break;
             }
+        } catch (final ParseException pe) {
+            throw new IllegalArgumentException(String.format(DATE_FORMAT_ERROR_MESSAGE, name, parameterStringValue), pe);
         }
+        parameters.cacheDecoded(index, kind, value);
+        return value;
     }
 
     @Override
@@ -317,4 +452,15 @@ public class Result implements Serializable {
                 action,
                 resolvedQuery);
     }
+
+    /**
+     * Replace strings with their pooled instances. Sub-trees are interned by their own adapters
+     */
+    void internStrings(final StringPool pool) {
+        action = pool.intern(action);
+        source = pool.intern(source);
+        if (parameters != null) {
+            parameters.internKeys(pool);
+        }
+    }
 }
@@ -28,7 +28,7 @@ public class Status implements Serializable {
 	
     private static final Map<Integer, String> errorDescriptions = new HashMap<>();
     private static final Map<Integer, String> errorTypes = new HashMap<>();
-    {
+    static {
         errorDescriptions.put(400,"Some required parameter is missing or has wrong value. Details will be in the errorDetails field.");
         errorTypes.put(400,"bad_request");
 
@@ -46,6 +46,12 @@ public class Status implements Serializable {
 
         errorDescriptions.put(409,"The request could not be completed due to a conflict with the current state of the resource. This code is only allowed in situations where it is expected that the user might be able to resolve the conflict and resubmit the request.");
         errorTypes.put(409,"conflict");
+
+        errorTypes.put(429,"too_many_requests");
+        errorTypes.put(500,"internal_server_error");
+        errorTypes.put(502,"bad_gateway");
+        errorTypes.put(503,"service_unavailable");
+        errorTypes.put(504,"gateway_timeout");
     }
 
     public static Status fromResponseCode(final int responseCode) {
@@ -127,6 +133,14 @@ public class Status implements Serializable {
         this.code = code;
     }
 
+    /**
+     * Check if the request failed because of service quota or service side problems (429 and 5xx
+     * codes), so the same request may succeed later
+     */
+    public boolean isTemporaryError() {
+        return code != null && (code == 429 || code >= 500);
+    }
+
     public String getErrorType() {
         return errorType;
     }
@@ -143,6 +157,13 @@ public class Status implements Serializable {
         return errorDetails;
     }
 
+    /**
+     * Error details as received, without the description of the code
+     */
+    String getErrorDetailsValue() {
+        return errorDetails;
+    }
+
     public void setErrorDetails(final String errorDetails) {
         this.errorDetails = errorDetails;
     }
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import ai.api.util.StringPool;
+
+/**
+ * Replaces repeated strings of responses with pooled instances while they are read.
+ * <p>
+ * Language of responses, action, source and parameter names of results, intent name and id of
+ * metadata and names and parameter names of output contexts are pooled. Sub-trees read lazily by
+ * {@link LazyDecodingAdapterFactory} are pooled when they are decoded, if both factories are
+ * registered in the same {@link Gson}.
+ *
+ * @see ai.api.GsonFactory#createGson(boolean, StringPool)
+ */
+public final class StringPoolAdapterFactory implements TypeAdapterFactory {
+
+    private final StringPool pool;
+
+    /**
+     * @param pool Pool of strings. Cannot be <code>null</code>
+     */
+    public StringPoolAdapterFactory(final StringPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool should not be null");
+        }
+        this.pool = pool;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        final Class<? super T> rawType = type.getRawType();
+        if (rawType == AIResponse.class) {
+            return (TypeAdapter<T>) new InterningAdapter<AIResponse>(
+                    gson.getDelegateAdapter(this, TypeToken.get(AIResponse.class))) {
+                @Override
+                void intern(final AIResponse value) {
+                    value.internStrings(pool);
+                }
+            };
+        }
+        if (rawType == Result.class) {
+            return (TypeAdapter<T>) new InterningAdapter<Result>(
+                    gson.getDelegateAdapter(this, TypeToken.get(Result.class))) {
+                @Override
+                void intern(final Result value) {
+                    value.internStrings(pool);
+                }
+            };
+        }
+        if (rawType == Metadata.class) {
+            return (TypeAdapter<T>) new InterningAdapter<Metadata>(
+                    gson.getDelegateAdapter(this, TypeToken.get(Metadata.class))) {
+                @Override
+                void intern(final Metadata value) {
+                    value.internStrings(pool);
+                }
+            };
+        }
+        if (rawType == AIOutputContext.class) {
+            return (TypeAdapter<T>) new InterningAdapter<AIOutputContext>(
+                    gson.getDelegateAdapter(this, TypeToken.get(AIOutputContext.class))) {
+                @Override
+                void intern(final AIOutputContext value) {
+                    value.internStrings(pool);
+                }
+            };
+        }
+        return null;
+    }
+
+    public StringPool getPool() {
+        return pool;
+    }
+
+    private abstract static class InterningAdapter<T> extends TypeAdapter<T> {
+
+        private final TypeAdapter<T> delegate;
+
+        InterningAdapter(final TypeAdapter<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(final JsonWriter out, final T value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public T read(final JsonReader in) throws IOException {
+            final T value = delegate.read(in);
+            if (value != null) {
+                intern(value);
+            }
+            return value;
+        }
+
+        abstract void intern(T value);
+    }
+}
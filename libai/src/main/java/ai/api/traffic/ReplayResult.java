@@ -0,0 +1,124 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies of recorded queries and of their replay. Only successful queries are counted in
+ * latency distributions.
+ */
+public class ReplayResult {
+
+  private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9, 100};
+
+  private final long[] originalLatencies;
+
+  /**
+   * Guarded by <code>this</code>
+   */
+  private long[] replayLatencies;
+  private int replayedCount;
+  private int failedCount;
+
+  ReplayResult(final List<TrafficRecord> records) {
+    final long[] latencies = new long[records.size()];
+    int count = 0;
+    for (final TrafficRecord record : records) {
+      if (!record.isFailed()) {
+        latencies[count++] = record.getLatencyNanos();
+      }
+    }
+    originalLatencies = Arrays.copyOf(latencies, count);
+    Arrays.sort(originalLatencies);
+    replayLatencies = new long[records.size()];
+  }
+
+  synchronized void addReplayed(final long latencyNanos) {
+    replayLatencies[replayedCount++] = latencyNanos;
+  }
+
+  synchronized void addFailed() {
+    failedCount++;
+  }
+
+  /**
+   * @return Count of queries replayed successfully
+   */
+  public synchronized int getReplayedCount() {
+    return replayedCount;
+  }
+
+  /**
+   * @return Count of replayed queries answered with an error status or failed without response
+   */
+  public synchronized int getFailedCount() {
+    return failedCount;
+  }
+
+  /**
+   * @param percentile Value from 0 to 100
+   * @return Latency of recorded queries at the percentile, 0 if there were no successful queries
+   */
+  public double getOriginalLatencyMillis(final double percentile) {
+    return getPercentileMillis(originalLatencies, percentile);
+  }
+
+  /**
+   * @param percentile Value from 0 to 100
+   * @return Latency of replayed queries at the percentile, 0 if there were no successful queries
+   */
+  public double getReplayLatencyMillis(final double percentile) {
+    final long[] latencies;
+    synchronized (this) {
+      latencies = Arrays.copyOf(replayLatencies, replayedCount);
+    }
+    Arrays.sort(latencies);
+    return getPercentileMillis(latencies, percentile);
+  }
+
+  /**
+   * @return Table of original and replay latency percentiles
+   */
+  @Override
+  public String toString() {
+    final StringBuilder result = new StringBuilder();
+    result.append(String.format("%d queries replayed, %d failed%n", getReplayedCount(),
+        getFailedCount()));
+    result.append(String.format("%10s %12s %12s%n", "percentile", "original ms", "replay ms"));
+    for (final double percentile : REPORTED_PERCENTILES) {
+      result.append(String.format("%10s %12.2f %12.2f%n", percentile,
+          getOriginalLatencyMillis(percentile), getReplayLatencyMillis(percentile)));
+    }
+    return result.toString();
+  }
+
+  private static double getPercentileMillis(final long[] sortedLatencies,
+      final double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    if (sortedLatencies.length == 0) {
+      return 0;
+    }
+    final int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+    final long latency = sortedLatencies[Math.max(rank - 1, 0)];
+    return latency / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
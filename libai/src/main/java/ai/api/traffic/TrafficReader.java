@@ -0,0 +1,118 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads records written by {@link TrafficRecorder}. An incomplete last record is ignored.
+ */
+public class TrafficReader implements Closeable {
+
+  private final DataInputStream inputStream;
+
+  public TrafficReader(final InputStream inputStream) throws IOException {
+    this.inputStream = new DataInputStream(inputStream);
+
+    final byte[] magic = new byte[TrafficRecorder.MAGIC.length];
+    try {
+      this.inputStream.readFully(magic);
+    } catch (final EOFException e) {
+      throw new IOException("Not a traffic record stream", e);
+    }
+    if (!Arrays.equals(magic, TrafficRecorder.MAGIC)) {
+      throw new IOException("Not a traffic record stream");
+    }
+    final int version = this.inputStream.read();
+    if (version != TrafficRecorder.FORMAT_VERSION) {
+      throw new IOException("Unsupported traffic record format version " + version);
+    }
+  }
+
+  /**
+   * Read all records of the file
+   */
+  public static List<TrafficRecord> readAll(final File file) throws IOException {
+    final List<TrafficRecord> records = new ArrayList<>();
+    try (TrafficReader reader =
+        new TrafficReader(new BufferedInputStream(new FileInputStream(file)))) {
+      TrafficRecord record;
+      while (null != (record = reader.read())) {
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * @return Next record or <code>null</code> if no complete records left
+   */
+  public TrafficRecord read() throws IOException {
+    final byte[] frame;
+    try {
+      frame = new byte[inputStream.readInt()];
+      inputStream.readFully(frame);
+    } catch (final EOFException e) {
+      return null;
+    }
+
+    try (DataInputStream data =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(frame)))) {
+      final long timestampMillis = data.readLong();
+      final long latencyNanos = data.readLong();
+      final String sessionId = readString(data);
+      final String requestJson = readString(data);
+      final int headerCount = data.readInt();
+      final Map<String, String> additionalHeaders = new LinkedHashMap<>();
+      for (int i = 0; i < headerCount; i++) {
+        additionalHeaders.put(readString(data), readString(data));
+      }
+      final String responseBody = readString(data);
+      return new TrafficRecord(timestampMillis, latencyNanos, sessionId, requestJson,
+          additionalHeaders, responseBody);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    inputStream.close();
+  }
+
+  private static String readString(final DataInputStream data) throws IOException {
+    final int length = data.readInt();
+    if (length == TrafficRecorder.NULL_LENGTH) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    return new String(bytes, TrafficRecorder.UTF8);
+  }
+}
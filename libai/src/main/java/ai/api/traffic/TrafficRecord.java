@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recorded text query with its response and timing
+ */
+public class TrafficRecord {
+
+  private final long timestampMillis;
+  private final long latencyNanos;
+  private final String sessionId;
+  private final String requestJson;
+  private final Map<String, String> additionalHeaders;
+  private final String responseBody;
+
+  /**
+   * @param timestampMillis Wall clock time the query was started at
+   * @param latencyNanos Time spent waiting for the response, including retries
+   * @param sessionId Query session
+   * @param requestJson Serialized <code>AIRequest</code>. Cannot be <code>null</code>
+   * @param additionalHeaders Extra request headers. May be <code>null</code>
+   * @param responseBody Received response. <code>null</code> if the query failed
+   */
+  public TrafficRecord(final long timestampMillis, final long latencyNanos,
+      final String sessionId, final String requestJson,
+      final Map<String, String> additionalHeaders, final String responseBody) {
+    if (requestJson == null) {
+      throw new IllegalArgumentException("requestJson must not be null");
+    }
+    this.timestampMillis = timestampMillis;
+    this.latencyNanos = latencyNanos;
+    this.sessionId = sessionId;
+    this.requestJson = requestJson;
+    this.additionalHeaders = additionalHeaders != null && !additionalHeaders.isEmpty()
+        ? Collections.unmodifiableMap(new LinkedHashMap<>(additionalHeaders))
+        : Collections.<String, String>emptyMap();
+    this.responseBody = responseBody;
+  }
+
+  public long getTimestampMillis() {
+    return timestampMillis;
+  }
+
+  public long getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  public String getSessionId() {
+    return sessionId;
+  }
+
+  public String getRequestJson() {
+    return requestJson;
+  }
+
+  /**
+   * @return Never <code>null</code>
+   */
+  public Map<String, String> getAdditionalHeaders() {
+    return additionalHeaders;
+  }
+
+  public String getResponseBody() {
+    return responseBody;
+  }
+
+  /**
+   * @return <code>true</code> if no response was received
+   */
+  public boolean isFailed() {
+    return responseBody == null;
+  }
+}
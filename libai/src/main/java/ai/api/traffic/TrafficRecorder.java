@@ -0,0 +1,182 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends text queries made by <code>AIDataService</code> to a file for later replay by
+ * {@link TrafficReplayer}.
+ * <p>
+ * Every record is compressed separately and written with a single write, so a file stays readable
+ * up to the last complete record if the process stops while writing. Existing files are appended
+ * to. Failures to write are logged and counted, they never fail the query.
+ * <p>
+ * Records contain request and response bodies and extra headers, which may include personal data
+ * and credentials. The api key is not recorded.
+ */
+public class TrafficRecorder implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+  static final byte[] MAGIC = {'A', 'I', 'T', 'R'};
+  static final int FORMAT_VERSION = 1;
+  static final int NULL_LENGTH = -1;
+
+  /**
+   * Guarded by <code>lock</code>. Not <code>this</code>, a virtual thread holding a monitor during
+   * a write would pin its carrier thread
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+  private final OutputStream outputStream;
+  private boolean closed;
+
+  private final AtomicLong recordCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  /**
+   * Create recorder appending to the file
+   *
+   * @param file Created if does not exist
+   */
+  public TrafficRecorder(final File file) throws IOException {
+    this(new BufferedOutputStream(new FileOutputStream(file, true)), file.length() == 0);
+  }
+
+  /**
+   * Create recorder writing a new record stream
+   */
+  public TrafficRecorder(final OutputStream outputStream) throws IOException {
+    this(outputStream, true);
+  }
+
+  private TrafficRecorder(final OutputStream outputStream, final boolean writeHeader)
+      throws IOException {
+    this.outputStream = outputStream;
+    if (writeHeader) {
+      outputStream.write(MAGIC);
+      outputStream.write(FORMAT_VERSION);
+      outputStream.flush();
+    }
+  }
+
+  /**
+   * Append the record. Thread safe.
+   */
+  public void record(final TrafficRecord record) {
+    try {
+      final byte[] frame = encode(record);
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        outputStream.write(frame);
+        outputStream.flush();
+      } finally {
+        lock.unlock();
+      }
+      recordCount.incrementAndGet();
+    } catch (final IOException e) {
+      failedCount.incrementAndGet();
+      logger.warn("Can't record traffic", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (!closed) {
+        closed = true;
+        outputStream.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Count of records written
+   */
+  public long getRecordCount() {
+    return recordCount.get();
+  }
+
+  /**
+   * @return Count of records which could not be written
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
+  private static byte[] encode(final TrafficRecord record) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      final DataOutputStream data =
+          new DataOutputStream(new DeflaterOutputStream(compressed, deflater));
+      data.writeLong(record.getTimestampMillis());
+      data.writeLong(record.getLatencyNanos());
+      writeString(data, record.getSessionId());
+      writeString(data, record.getRequestJson());
+      data.writeInt(record.getAdditionalHeaders().size());
+      for (final Map.Entry<String, String> header : record.getAdditionalHeaders().entrySet()) {
+        writeString(data, header.getKey());
+        writeString(data, header.getValue());
+      }
+      writeString(data, record.getResponseBody());
+      data.close();
+    } finally {
+      deflater.end();
+    }
+
+    final ByteArrayOutputStream frame = new ByteArrayOutputStream(compressed.size() + 4);
+    final DataOutputStream frameData = new DataOutputStream(frame);
+    frameData.writeInt(compressed.size());
+    compressed.writeTo(frameData);
+    return frame.toByteArray();
+  }
+
+  private static void writeString(final DataOutputStream data, final String value)
+      throws IOException {
+    if (value == null) {
+      data.writeInt(NULL_LENGTH);
+      return;
+    }
+    final byte[] bytes = value.getBytes(UTF8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+}
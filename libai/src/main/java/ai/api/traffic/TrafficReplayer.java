@@ -0,0 +1,171 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceContextBuilder;
+import ai.api.AIServiceException;
+import ai.api.GsonFactory;
+import ai.api.model.AIResponse;
+import ai.api.model.Status;
+
+/**
+ * Sends recorded text queries again, keeping their original pacing, and compares latencies.
+ * <p>
+ * Queries start at their recorded offsets from the first query, divided by the speed factor. They
+ * are sent with their recorded sessions and extra headers to the service url and with the access
+ * token of the given configuration. Limiters, retry policy and other settings of the configuration
+ * apply as well. Queries answered with a status other than 2xx or failed with any exception are
+ * counted as failed.
+ */
+public class TrafficReplayer {
+
+  private static final int DEFAULT_THREADS = 16;
+
+  private final AIConfiguration config;
+  private volatile double speed = 1;
+  private volatile int threads = DEFAULT_THREADS;
+
+  /**
+   * @param config Configuration of the target service. Cannot be <code>null</code>
+   */
+  public TrafficReplayer(final AIConfiguration config) {
+    if (config == null) {
+      throw new IllegalArgumentException("config should not be null");
+    }
+    this.config = config;
+  }
+
+  /**
+   * Replay the records and wait for all responses
+   *
+   * @param records Recorded queries, in any order. Cannot be <code>null</code>
+   * @return Latencies of the original and replayed queries
+   */
+  public ReplayResult replay(final List<TrafficRecord> records) throws InterruptedException {
+    final List<TrafficRecord> schedule = new ArrayList<>(records);
+    // Records are written when queries complete, so they are not ordered by start time
+    Collections.sort(schedule, new Comparator<TrafficRecord>() {
+      @Override
+      public int compare(final TrafficRecord first, final TrafficRecord second) {
+        return Long.compare(first.getTimestampMillis(), second.getTimestampMillis());
+      }
+    });
+
+    final ReplayResult result = new ReplayResult(schedule);
+    if (schedule.isEmpty()) {
+      return result;
+    }
+
+    final ReplayDataService dataService = new ReplayDataService(config);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final long firstTimestampMillis = schedule.get(0).getTimestampMillis();
+      final long startNanos = System.nanoTime();
+      for (final TrafficRecord record : schedule) {
+        final long offsetNanos = (long) (TimeUnit.MILLISECONDS
+            .toNanos(record.getTimestampMillis() - firstTimestampMillis) / speed);
+        TimeUnit.NANOSECONDS.sleep(startNanos + offsetNanos - System.nanoTime());
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            final long queryStartNanos = System.nanoTime();
+            try {
+              dataService.send(record);
+              result.addReplayed(System.nanoTime() - queryStartNanos);
+            } catch (final MalformedURLException | AIServiceException | RuntimeException e) {
+              result.addFailed();
+            }
+          }
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    return result;
+  }
+
+  public double getSpeed() {
+    return speed;
+  }
+
+  /**
+   * @param speed Replay speed factor, e.g. 2 sends queries twice as fast as recorded.
+   *        {@link Double#POSITIVE_INFINITY} sends them as fast as threads allow. Must be positive
+   */
+  public void setSpeed(final double speed) {
+    if (!(speed > 0)) {
+      throw new IllegalArgumentException("speed must be positive");
+    }
+    this.speed = speed;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * @param threads Maximum count of simultaneous queries. Must be positive
+   */
+  public void setThreads(final int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    this.threads = threads;
+  }
+
+  private static class ReplayDataService extends AIDataService {
+
+    private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+    ReplayDataService(final AIConfiguration config) {
+      super(config);
+    }
+
+    /**
+     * @throws AIServiceException Also if the service answered with an error status
+     */
+    void send(final TrafficRecord record) throws MalformedURLException, AIServiceException {
+      final String response = doTextRequest(record.getRequestJson(),
+          record.getAdditionalHeaders(),
+          AIServiceContextBuilder.buildFromSessionId(record.getSessionId()));
+      final AIResponse aiResponse = GSON.fromJson(response, AIResponse.class);
+      if (aiResponse == null) {
+        throw new AIServiceException("Replayed query got an empty response");
+      }
+      final Status status = aiResponse.getStatus();
+      if (status != null && status.getCode() != null
+          && (status.getCode() < 200 || status.getCode() >= 300)) {
+        throw new AIServiceException(aiResponse);
+      }
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of weakly referenced strings, returning one instance for equal strings.
+ * <p>
+ * Responses repeat a few hundred distinct actions, intent names and parameter names, so pooling
+ * them saves a copy of each per retained response. Strings are referenced weakly and leave the
+ * pool when no response uses them. When the pool is full or a string is too long the string is
+ * returned as is. Pools are thread safe.
+ */
+public class StringPool {
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+  public static final int DEFAULT_MAX_LENGTH = 128;
+
+  private final int maxSize;
+  private final int maxLength;
+
+  private final ConcurrentMap<Object, PooledString> strings = new ConcurrentHashMap<>();
+  private final ReferenceQueue<String> clearedStrings = new ReferenceQueue<>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  public StringPool() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * @param maxSize Maximum count of pooled strings. Must be positive
+   * @param maxLength Maximum length of pooled strings. Must be positive
+   */
+  public StringPool(final int maxSize, final int maxLength) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize should be positive");
+    }
+    if (maxLength <= 0) {
+      throw new IllegalArgumentException("maxLength should be positive");
+    }
+    this.maxSize = maxSize;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * @return Pooled string equal to the value, the value itself if it is added to the pool or
+   *         cannot be pooled. <code>null</code> if the value is <code>null</code>
+   */
+  public String intern(final String value) {
+    if (value == null || value.length() > maxLength) {
+      return value;
+    }
+    removeClearedStrings();
+
+    final PooledString existing = strings.get(new Lookup(value));
+    if (existing != null) {
+      final String pooled = existing.get();
+      if (pooled != null) {
+        hitCount.incrementAndGet();
+        return pooled;
+      }
+    }
+    missCount.incrementAndGet();
+    if (strings.size() >= maxSize) {
+      return value;
+    }
+    final PooledString added = new PooledString(value, clearedStrings);
+    final PooledString previous = strings.putIfAbsent(added, added);
+    if (previous != null) {
+      final String pooled = previous.get();
+      if (pooled != null) {
+        return pooled;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return Count of strings in the pool, including strings not yet removed after they were
+   *         collected
+   */
+  public int size() {
+    return strings.size();
+  }
+
+  /**
+   * Remove all strings. Strings already returned stay shared
+   */
+  public void clear() {
+    strings.clear();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * @return Count of values found in the pool
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return Count of values not found in the pool, whether they were added or not
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  private void removeClearedStrings() {
+    Reference<? extends String> cleared;
+    while ((cleared = clearedStrings.poll()) != null) {
+      strings.remove(cleared);
+    }
+  }
+
+  /**
+   * Key and value of a pooled string. Equal to another key only while the string is referenced
+   */
+  private static final class PooledString extends WeakReference<String> {
+
+    private final int hash;
+
+    PooledString(final String value, final ReferenceQueue<String> queue) {
+      super(value, queue);
+      this.hash = value.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (o == this) {
+        return true;
+      }
+      final String value = get();
+      if (value == null) {
+        return false;
+      }
+      if (o instanceof PooledString) {
+        return value.equals(((PooledString) o).get());
+      }
+      return o instanceof Lookup && value.equals(((Lookup) o).value);
+    }
+  }
+
+  /**
+   * Key looking up a string without creating a reference
+   */
+  private static final class Lookup {
+
+    private final String value;
+
+    Lookup(final String value) {
+      this.value = value;
+    }
+
+    @Override
+    public int hashCode() {
+      return value.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof PooledString && value.equals(((PooledString) o).get());
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors running each task on a new virtual thread when the runtime supports them,
+ * i.e. on Java 21 and newer. The library is compiled for Java 7, so the factory is looked up by
+ * reflection.
+ */
+public class VirtualThreads {
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findExecutorFactory();
+
+  /**
+   * @return <code>true</code> if the runtime supports virtual threads
+   */
+  public static boolean isAvailable() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Create executor starting a new virtual thread for each task
+   *
+   * @throws UnsupportedOperationException If the runtime does not support virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or newer");
+    }
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+    } catch (final IllegalAccessException e) {
+      throw new UnsupportedOperationException("Virtual threads are not accessible", e);
+    } catch (final InvocationTargetException e) {
+      throw new UnsupportedOperationException("Can't create virtual thread executor",
+          e.getCause());
+    }
+  }
+
+  /**
+   * Create executor starting a new virtual thread for each task, or reusing cached daemon platform
+   * threads if the runtime does not support virtual threads
+   *
+   * @param threadNamePrefix Name prefix of platform threads
+   */
+  public static ExecutorService newThreadPerTaskExecutor(final String threadNamePrefix) {
+    if (isAvailable()) {
+      return newVirtualThreadPerTaskExecutor();
+    }
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable task) {
+        final Thread thread = new Thread(task, threadNamePrefix + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private static Method findExecutorFactory() {
+    try {
+      final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      // Preview builds of Java 19 and 20 throw if preview features are disabled
+      ((ExecutorService) method.invoke(null)).shutdown();
+      return method;
+    } catch (final NoSuchMethodException e) {
+      return null;
+    } catch (final IllegalAccessException e) {
+      return null;
+    } catch (final InvocationTargetException e) {
+      return null;
+    }
+  }
+}
@@ -18,16 +18,43 @@ package ai.api;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.http.CircuitBreaker;
+import ai.api.http.ConcurrencyLimiter;
+import ai.api.http.Endpoint;
+import ai.api.http.HttpTransport;
+import ai.api.http.RateLimiter;
+import ai.api.http.RetryPolicy;
+import ai.api.http.UrlConnectionTransport;
 import ai.api.model.AIOriginalRequest;
 import ai.api.model.AIRequest;
 import ai.api.model.AIResponse;
+import ai.api.model.Status;
 
 public class AIDataServiceTest {
 
@@ -98,6 +125,364 @@ public class AIDataServiceTest {
     assertTrue(dataService.requestJsonValue.indexOf("\"originalRequest\":{}") > 0);
   }
 
+  @Test
+  public void testRetryOnServiceUnavailable() throws Exception {
+    final AtomicInteger callCount = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        if (callCount.incrementAndGet() < 3) {
+          respond(exchange, 503, "Service Unavailable");
+        } else {
+          respond(exchange, 200, "{\"status\":{\"code\":200}}");
+        }
+      }
+    });
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      RetryPolicy retryPolicy = new RetryPolicy();
+      retryPolicy.setBaseDelayMillis(1);
+      config.setRetryPolicy(retryPolicy);
+
+      AIResponse response = new AIDataService(config).request(new AIRequest("Hello"));
+      assertEquals(200, (int) response.getStatus().getCode());
+      assertEquals(3, callCount.get());
+      assertEquals(2, retryPolicy.getRetryCount());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testCircuitBreakerFallback() throws Exception {
+    final AtomicInteger callCount = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        callCount.incrementAndGet();
+        respond(exchange, 503, "{\"status\":{\"code\":503}}");
+      }
+    });
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      CircuitBreaker breaker = new CircuitBreaker(2);
+      config.setCircuitBreaker(breaker);
+      AIDataService dataService = new AIDataService(config);
+
+      for (int i = 0; i < 2; i++) {
+        try {
+          dataService.request(new AIRequest("Hello"));
+          fail("Service error expected");
+        } catch (AIServiceException e) {
+          assertFalse(e instanceof CircuitBreakerOpenException);
+        }
+      }
+      assertEquals(2, callCount.get());
+
+      try {
+        dataService.request(new AIRequest("Hello"));
+        fail("Rejection expected");
+      } catch (CircuitBreakerOpenException e) {
+        assertEquals(503, (int) e.getResponse().getStatus().getCode());
+      }
+
+      AIResponse fallback = new AIResponse();
+      fallback.setStatus(Status.fromResponseCode(200));
+      config.setFallbackResponse(fallback);
+      dataService = new AIDataService(config);
+
+      AIResponse response = dataService.request(new AIRequest("Hello"));
+      assertEquals(200, (int) response.getStatus().getCode());
+      assertNotSame(fallback, response);
+      assertEquals(2, callCount.get());
+      assertEquals(2, breaker.getRejectedCount());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        try {
+          Thread.sleep(2000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, "{\"status\":{\"code\":200}}");
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      config.setRequestTimeoutMillis(100);
+
+      long start = System.nanoTime();
+      try {
+        new AIDataService(config).request(new AIRequest("Hello"));
+        fail("Timeout expected");
+      } catch (AIServiceTimeoutException e) {
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+      }
+
+      AIResponse fallback = new AIResponse();
+      fallback.setStatus(Status.fromResponseCode(200));
+      config.setFallbackResponse(fallback);
+      RequestExtras extras = new RequestExtras();
+      extras.setDeadline(Deadline.after(50, TimeUnit.MILLISECONDS));
+
+      AIResponse response = new AIDataService(config).request(new AIRequest("Hello"), extras);
+      assertEquals(200, (int) response.getStatus().getCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testAttemptTimeout() throws Exception {
+    final List<Integer> timeouts = new ArrayList<>();
+    AIConfiguration config = new AIConfiguration("");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        timeouts.add(timeoutMillis);
+        return new Response(200, "{\"status\":{\"code\":200}}");
+      }
+    });
+    AIDataService dataService = new AIDataService(config);
+
+    dataService.request(new AIRequest("Hello"));
+    assertEquals(30000, (int) timeouts.get(0));
+
+    RequestExtras extras = new RequestExtras();
+    extras.setDeadline(Deadline.after(1000, TimeUnit.MILLISECONDS));
+    dataService.request(new AIRequest("Hello"), extras);
+    assertTrue(timeouts.get(1) > 0 && timeouts.get(1) <= 1000);
+
+    config.setAttemptTimeoutMillis(0);
+    new AIDataService(config).request(new AIRequest("Hello"));
+    assertEquals(0, (int) timeouts.get(2));
+
+    assertEquals(10000, config.getConnectTimeoutMillis());
+    assertEquals(10000, UrlConnectionTransport.getConnectTimeout(10000, 0));
+    assertEquals(500, UrlConnectionTransport.getConnectTimeout(10000, 500));
+    assertEquals(500, UrlConnectionTransport.getConnectTimeout(0, 500));
+    assertEquals(0, UrlConnectionTransport.getConnectTimeout(0, 0));
+  }
+
+  @Test
+  public void testNoRetryPastDeadline() throws Exception {
+    final AtomicInteger callCount = new AtomicInteger();
+    AIConfiguration config = new AIConfiguration("");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        assertTrue(timeoutMillis > 0 && timeoutMillis <= 100);
+        callCount.incrementAndGet();
+        try {
+          Thread.sleep(150);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return new Response(503, "{\"status\":{\"code\":503}}");
+      }
+    });
+    RetryPolicy retryPolicy = new RetryPolicy();
+    retryPolicy.setBaseDelayMillis(1);
+    config.setRetryPolicy(retryPolicy);
+    RequestExtras extras = new RequestExtras();
+    extras.setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+
+    try {
+      new AIDataService(config).request(new AIRequest("Hello"), extras);
+      fail("Service error expected");
+    } catch (AIServiceException e) {
+      assertFalse(e instanceof AIServiceTimeoutException);
+    }
+    assertEquals(1, callCount.get());
+    assertEquals(0, retryPolicy.getRetryCount());
+  }
+
+  @Test
+  public void testLimiterWaitEndsAtDeadline() throws Exception {
+    AIConfiguration config = new AIConfiguration("");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        return new Response(200, "{\"status\":{\"code\":200}}");
+      }
+    });
+    RateLimiter rateLimiter = new RateLimiter();
+    rateLimiter.setRate(Endpoint.QUERY, 1, 1);
+    rateLimiter.setMaxWaitMillis(120000);
+    config.setRateLimiter(rateLimiter);
+    AIDataService dataService = new AIDataService(config);
+    dataService.request(new AIRequest("Hello"));
+
+    RequestExtras extras = new RequestExtras();
+    extras.setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+    long start = System.nanoTime();
+    try {
+      dataService.request(new AIRequest("Hello"), extras);
+      fail("Timeout expected");
+    } catch (AIServiceTimeoutException e) {
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    config.setRateLimiter(null);
+    ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(1, 1, 1);
+    concurrencyLimiter.setMaxQueueTimeMillis(10000);
+    config.setConcurrencyLimiter(concurrencyLimiter);
+    assertTrue(concurrencyLimiter.acquire());
+
+    extras.setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+    start = System.nanoTime();
+    try {
+      new AIDataService(config).request(new AIRequest("Hello"), extras);
+      fail("Timeout expected");
+    } catch (AIServiceTimeoutException e) {
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+    assertEquals(1, concurrencyLimiter.getInFlight());
+  }
+
+  @Test
+  public void testRetryBodilessErrorResponse() throws Exception {
+    final int[] responseCode = {503};
+    final AtomicInteger callCount = new AtomicInteger();
+    AIConfiguration config = new AIConfiguration("");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        callCount.incrementAndGet();
+        return new Response(responseCode[0], null);
+      }
+    });
+    RetryPolicy retryPolicy = new RetryPolicy();
+    retryPolicy.setBaseDelayMillis(1);
+    config.setRetryPolicy(retryPolicy);
+    AIDataService dataService = new AIDataService(config);
+
+    try {
+      dataService.request(new AIRequest("Hello"));
+      fail("Service error expected");
+    } catch (AIServiceException e) {
+      assertEquals(503, e.getResponse().getStatus().getCode().intValue());
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertEquals(3, callCount.get());
+
+    responseCode[0] = 401;
+    callCount.set(0);
+    try {
+      dataService.getActiveContexts();
+      fail("Service error expected");
+    } catch (AIServiceException e) {
+      assertEquals(401, e.getResponse().getStatus().getCode().intValue());
+    }
+    assertEquals(1, callCount.get());
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    final int connections = 3;
+    final CyclicBarrier allConnected = new CyclicBarrier(connections);
+    final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        assertEquals("GET", exchange.getRequestMethod());
+        assertEquals("/contexts", exchange.getRequestURI().getPath());
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        try {
+          allConnected.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+          respond(exchange, 500, "Not concurrent");
+          return;
+        }
+        respond(exchange, 200, "[]");
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      config.setWarmUpConnections(connections);
+      AIDataService dataService = new AIDataService(config);
+      assertFalse(dataService.isReady());
+
+      assertEquals(connections, dataService.warmUp());
+      assertTrue(dataService.isReady());
+      assertEquals(connections, clientPorts.size());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testCustomTransport() throws Exception {
+    final Map<String, String> sentHeaders = new HashMap<>();
+    final List<String> sentRequests = new ArrayList<>();
+    AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        sentHeaders.putAll(headers);
+        sentRequests.add(method + " " + url.getPath());
+        if (body == null) {
+          return new Response(404, null);
+        }
+        return new Response(200, "{\"id\":\"1\",\"status\":{\"code\":200}}");
+      }
+    });
+    AIDataService dataService = new AIDataService(config);
+    RequestExtras extras = new RequestExtras();
+    extras.setAdditionalHeaders(Collections.singletonMap("X-Header", "value"));
+
+    AIResponse response = dataService.request(new AIRequest("Hello"), extras);
+    assertEquals("1", response.getId());
+    assertEquals("Bearer token", sentHeaders.get("Authorization"));
+    assertEquals("value", sentHeaders.get("X-Header"));
+
+    try {
+      dataService.getActiveContexts();
+      fail("Service error expected");
+    } catch (AIServiceException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertEquals(Arrays.asList("POST /v1/query", "GET /v1/contexts"), sentRequests);
+  }
+
+  private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+    byte[] data = body.getBytes("UTF-8");
+    exchange.sendResponseHeaders(code, data.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(data);
+    }
+  }
+
   private static String getNonDefaultTimeZoneID() {
     final String defaultID = TimeZone.getDefault().getID();
     for (String result : TimeZone.getAvailableIDs()) {
@@ -16,12 +16,22 @@
  
 package ai.api;
 
+import ai.api.http.CircuitBreakerTest;
+import ai.api.http.CompressionTest;
+import ai.api.http.ConcurrencyLimiterTest;
+import ai.api.http.RateLimiterTest;
+import ai.api.http.RetryPolicyTest;
+import ai.api.local.EntityIntentResponderTest;
+import ai.api.local.FaqResponderTest;
+import ai.api.local.EntityMatcherTest;
 import ai.api.model.*;
+import ai.api.traffic.TrafficRecorderTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import ai.api.util.ParametersConverterTest;
+import ai.api.util.StringPoolTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
@@ -34,7 +44,26 @@ import ai.api.util.ParametersConverterTest;
 	ResponseMessageTest.class,
 	ParamsDateTest.class,
 	AIEventTest.class,
-	AIDataServiceTest.class
+	AIDataServiceTest.class,
+	ConcurrencyLimiterTest.class,
+	RetryPolicyTest.class,
+	CircuitBreakerTest.class,
+	QueryCoalescerTest.class,
+	RateLimiterTest.class,
+	TrafficRecorderTest.class,
+	AsyncAIDataServiceTest.class,
+	CompressionTest.class,
+	UserEntitiesUploaderTest.class,
+	UserEntitiesSyncTest.class,
+	EntityMatcherTest.class,
+	EntityIntentResponderTest.class,
+	FaqResponderTest.class,
+	ParameterMapTest.class,
+	LazyDecodingTest.class,
+	ProjectionTest.class,
+	StringPoolTest.class,
+	StringPoolAdapterFactoryTest.class,
+	BinaryResponseCodecTest.class
 	})
 public class AllUnitTests {
 
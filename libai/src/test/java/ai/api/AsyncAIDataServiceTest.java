@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import ai.api.http.HttpTransport;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.util.VirtualThreads;
+
+public class AsyncAIDataServiceTest {
+
+  @Test
+  public void testRequest() throws Exception {
+    final AsyncAIDataService service =
+        createService(200, "{\"id\":\"1\",\"status\":{\"code\":200}}");
+    final AtomicReference<AIResponse> callbackResponse = new AtomicReference<>();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    final Future<AIResponse> future = service.request(new AIRequest("Hello"), null, null,
+        new AIServiceCallback<AIResponse>() {
+          @Override
+          public void onSuccess(AIResponse result) {
+            callbackResponse.set(result);
+            done.countDown();
+          }
+
+          @Override
+          public void onError(AIServiceException error) {
+            done.countDown();
+          }
+        });
+
+    assertEquals("1", future.get(5, TimeUnit.SECONDS).getId());
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertSame(future.get(), callbackResponse.get());
+    service.shutdown();
+  }
+
+  @Test
+  public void testServiceError() throws Exception {
+    final AsyncAIDataService service = createService(500, null);
+    final AtomicReference<AIServiceException> callbackError = new AtomicReference<>();
+
+    final Future<Void> future = service.resetActiveContexts(null,
+        new AIServiceCallback<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+          }
+
+          @Override
+          public void onError(AIServiceException error) {
+            callbackError.set(error);
+          }
+        });
+
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Service error expected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof AIServiceException);
+      assertSame(e.getCause(), callbackError.get());
+    }
+    service.shutdown();
+  }
+
+  @Test
+  public void testThreadPerTaskExecutor() throws Exception {
+    final ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        thread.set(Thread.currentThread());
+      }
+    }).get(5, TimeUnit.SECONDS);
+    executor.shutdown();
+
+    // Virtual threads are always daemon threads
+    assertTrue(thread.get().isDaemon());
+    assertNotSame(Thread.currentThread(), thread.get());
+  }
+
+  private static AsyncAIDataService createService(final int code, final String body) {
+    final AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers,
+          String requestBody, int timeoutMillis) {
+        return new Response(code, body);
+      }
+    });
+    return new AsyncAIDataService(new AIDataService(config));
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.JsonNull;
+
+import ai.api.http.HttpTransport;
+import ai.api.local.LocalResponder;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Metadata;
+import ai.api.model.Result;
+import ai.api.model.Status;
+
+public class ProjectionTest {
+
+  private static final String RESPONSE = "{\"id\":\"1\",\"lang\":\"en\",\"result\":{"
+      + "\"action\":\"weather\",\"score\":0.75,\"parameters\":{\"city\":\"Rome\"},"
+      + "\"metadata\":{\"intentName\":\"weather.forecast\",\"intentId\":null},"
+      + "\"fulfillment\":{\"speech\":\"Sunny\",\"messages\":[{\"type\":0,\"speech\":\"Sunny\"},"
+      + "{\"type\":4,\"payload\":{\"rain\":false}}]}},"
+      + "\"status\":{\"code\":200,\"errorType\":\"success\"},\"sessionId\":\"session\"}";
+
+  @Test
+  public void testRead() {
+    Projection projection = Projection.of("result.metadata.intentName", "result.score",
+        "result.metadata.intentId", "result.fulfillment.messages.1.payload", "result.missing",
+        "sessionId");
+    ProjectedResponse response = projection.read(RESPONSE);
+
+    assertEquals("weather.forecast", response.getString("result.metadata.intentName"));
+    assertEquals(0.75f, response.getFloat("result.score", 0), 0);
+    assertEquals(200, response.getStatusCode());
+    assertTrue(response.has("result.metadata.intentId"));
+    assertNull(response.getString("result.metadata.intentId"));
+    assertEquals(JsonNull.INSTANCE, response.getElement("result.metadata.intentId"));
+    assertFalse(response.has("result.missing"));
+    assertEquals("default", response.getString("result.missing", "default"));
+    assertFalse(response.getElement("result.fulfillment.messages.1.payload").getAsJsonObject()
+        .get("rain").getAsBoolean());
+    assertEquals("session", response.getString("sessionId"));
+  }
+
+  @Test
+  public void testStopsWhenAllPathsFound() {
+    ProjectedResponse response = Projection.of("id", "status.code")
+        .read("{\"id\":\"1\",\"status\":{\"code\":200},\"result\":{\"action\":");
+    assertEquals("1", response.getString("id"));
+  }
+
+  @Test
+  public void testWholeStatus() {
+    Projection projection = Projection.of("result.score", "status");
+    assertEquals(2, projection.getPaths().size());
+    assertEquals(-1, projection.indexOf("status.code"));
+
+    ProjectedResponse response = projection.read(RESPONSE);
+    assertEquals(200, response.getStatusCode());
+    assertEquals("success", response.getElement("status").getAsJsonObject()
+        .get("errorType").getAsString());
+    assertEquals(0, projection.read("{\"result\":{\"score\":1}}").getStatusCode());
+  }
+
+  @Test
+  public void testPaths() {
+    assertEquals(2, Projection.of("result.score", "result.score").getPaths().size());
+    assertEquals(-1, Projection.of("result.score").indexOf("result.action"));
+    try {
+      Projection.of("result.score").read(RESPONSE).getString("result.action");
+      fail("Path not in the projection should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Projection.of("result", "result.score");
+      fail("Overlapping paths should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Projection.of("result..score");
+      fail("Empty segment should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRequest() throws AIServiceException {
+    final String[] body = {RESPONSE};
+    AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String request,
+          int timeoutMillis) {
+        return new Response(200, body[0]);
+      }
+    });
+    AIDataService dataService = new AIDataService(config);
+    Projection projection = Projection.of("result.metadata.intentName", "result.score");
+
+    ProjectedResponse response = dataService.request(new AIRequest("weather"), projection);
+    assertEquals("weather.forecast", response.getString("result.metadata.intentName"));
+
+    body[0] = "{\"status\":{\"code\":401,\"errorType\":\"unauthorized\"}}";
+    try {
+      dataService.request(new AIRequest("weather"), projection);
+      fail("Error response should be thrown");
+    } catch (AIServiceException e) {
+      assertEquals(401, e.getResponse().getStatus().getCode().intValue());
+    }
+    try {
+      dataService.request(new AIRequest("weather"), Projection.of("status"));
+      fail("Error response should be thrown");
+    } catch (AIServiceException e) {
+      assertEquals(401, e.getResponse().getStatus().getCode().intValue());
+    }
+  }
+
+  @Test
+  public void testLocalResponse() throws AIServiceException {
+    AIConfiguration config = new AIConfiguration("token");
+    config.setLocalResponder(new LocalResponder() {
+      @Override
+      public AIResponse respond(AIRequest request, RequestExtras requestExtras) {
+        Metadata metadata = new Metadata();
+        metadata.setIntentName("local.intent");
+        Result result = new Result();
+        result.setMetadata(metadata);
+        result.setScore(1);
+        AIResponse response = new AIResponse();
+        response.setResult(result);
+        response.setStatus(Status.fromResponseCode(200));
+        return response;
+      }
+    });
+    ProjectedResponse response = new AIDataService(config).request(new AIRequest("hello"),
+        Projection.of("result.metadata.intentName", "result.score"));
+    assertEquals("local.intent", response.getString("result.metadata.intentName"));
+    assertEquals(1f, response.getFloat("result.score", 0), 0);
+  }
+}
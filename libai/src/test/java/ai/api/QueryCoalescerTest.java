@@ -0,0 +1,225 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ 
+package ai.api;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+public class QueryCoalescerTest {
+
+  private static final int QUERY_COUNT = 5;
+
+  @Test
+  public void testIdenticalQueriesShareCall() throws Exception {
+    QueryCoalescer coalescer = new QueryCoalescer();
+    BlockingDataService dataService = new BlockingDataService(coalescer);
+
+    List<Future<AIResponse>> responses = startQueries(dataService, "Hello", QUERY_COUNT);
+    assertTrue(dataService.started.await(5, TimeUnit.SECONDS));
+    waitForWaiters(coalescer, QUERY_COUNT - 1);
+    dataService.release.countDown();
+
+    AIResponse first = responses.get(0).get(5, TimeUnit.SECONDS);
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      AIResponse response = responses.get(i).get(5, TimeUnit.SECONDS);
+      assertEquals("Hello", response.getResult().getResolvedQuery());
+      assertEquals("session" + i, response.getSessionId());
+      if (i > 0) {
+        assertNotSame(first, response);
+        assertNotSame(first.getResult(), response.getResult());
+      }
+    }
+    assertEquals(1, dataService.callCount.get());
+    assertEquals(1, coalescer.getCallCount());
+    assertEquals(QUERY_COUNT - 1, coalescer.getCoalescedCount());
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  @Test
+  public void testSessionScoped() throws Exception {
+    QueryCoalescer coalescer = new QueryCoalescer();
+    coalescer.setSessionScoped(true);
+    BlockingDataService dataService = new BlockingDataService(coalescer);
+    dataService.release.countDown();
+
+    List<Future<AIResponse>> responses = startQueries(dataService, "Hello", 2);
+    for (Future<AIResponse> response : responses) {
+      response.get(5, TimeUnit.SECONDS);
+    }
+    assertEquals(2, dataService.callCount.get());
+    assertEquals(0, coalescer.getCoalescedCount());
+  }
+
+  @Test
+  public void testErrorIsShared() throws Exception {
+    final QueryCoalescer coalescer = new QueryCoalescer();
+    final CountDownLatch release = new CountDownLatch(1);
+    final AIServiceException error = new AIServiceException("Failed");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return coalescer.execute("key", new QueryCoalescer.Call() {
+              @Override
+              public String execute() throws AIServiceException {
+                try {
+                  release.await();
+                } catch (InterruptedException e) {
+                  throw new AIServiceException("Interrupted", e);
+                }
+                throw error;
+              }
+            });
+          }
+        }));
+      }
+      waitForWaiters(coalescer, 1);
+      release.countDown();
+      for (Future<String> result : results) {
+        try {
+          result.get(5, TimeUnit.SECONDS);
+          fail("Exception expected");
+        } catch (ExecutionException e) {
+          assertSame(error, e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testWaiterDeadline() throws Exception {
+    final QueryCoalescer coalescer = new QueryCoalescer();
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> first = executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return coalescer.execute("key", new QueryCoalescer.Call() {
+            @Override
+            public String execute() throws AIServiceException {
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                throw new AIServiceException("Interrupted", e);
+              }
+              return "response";
+            }
+          });
+        }
+      });
+      while (coalescer.getInFlightCount() == 0) {
+        Thread.sleep(1);
+      }
+      try {
+        coalescer.execute("key", Deadline.after(50, TimeUnit.MILLISECONDS),
+            new QueryCoalescer.Call() {
+              @Override
+              public String execute() {
+                throw new AssertionError("Identical call is in flight");
+              }
+            });
+        fail("Timeout expected");
+      } catch (AIServiceTimeoutException e) {
+        // expected
+      }
+      release.countDown();
+      assertEquals("response", first.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<Future<AIResponse>> startQueries(final AIDataService dataService,
+      final String query, int count) {
+    ExecutorService executor = Executors.newFixedThreadPool(count);
+    List<Future<AIResponse>> responses = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final AIServiceContext context =
+          new AIServiceContextBuilder().setSessionId("session" + i).build();
+      responses.add(executor.submit(new Callable<AIResponse>() {
+        @Override
+        public AIResponse call() throws Exception {
+          return dataService.request(new AIRequest(query), context);
+        }
+      }));
+    }
+    executor.shutdown();
+    return responses;
+  }
+
+  private static void waitForWaiters(QueryCoalescer coalescer, int count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (coalescer.getCoalescedCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, coalescer.getCoalescedCount());
+  }
+
+  private static class BlockingDataService extends AIDataService {
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger callCount = new AtomicInteger();
+
+    BlockingDataService(QueryCoalescer coalescer) {
+      super(createConfiguration(coalescer));
+    }
+
+    private static AIConfiguration createConfiguration(QueryCoalescer coalescer) {
+      AIConfiguration config = new AIConfiguration("");
+      config.setQueryCoalescer(coalescer);
+      return config;
+    }
+
+    @Override
+    protected String doTextRequest(String endpoint, String requestJson,
+        Map<String, String> additionalHeaders) throws MalformedURLException, AIServiceException {
+      callCount.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new AIServiceException("Interrupted", e);
+      }
+      return "{\"result\":{\"resolvedQuery\":\"Hello\"},\"status\":{\"code\":200}}";
+    }
+  }
+}
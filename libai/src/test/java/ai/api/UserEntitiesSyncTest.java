@@ -0,0 +1,158 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import ai.api.http.HttpTransport;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+public class UserEntitiesSyncTest {
+
+  private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+  private static final Type ENTITY_LIST_TYPE = new TypeToken<List<Entity>>() {}.getType();
+
+  private final List<List<Entity>> uploads = new ArrayList<>();
+  private int responseCode;
+  private UserEntitiesSync sync;
+
+  @Before
+  public void setUp() {
+    responseCode = 200;
+    AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        uploads.add(GSON.<List<Entity>>fromJson(body, ENTITY_LIST_TYPE));
+        return new Response(responseCode,
+            "{\"status\":{\"code\":" + responseCode + ",\"errorType\":\"error\"}}");
+      }
+    });
+    sync = new UserEntitiesSync(new AIDataService(config));
+  }
+
+  @Test
+  public void testSendsChangesOnly() throws AIServiceException {
+    assertNotNull(sync.sync(entities(entity("a", "b", "c", "d"))));
+    assertEquals(1, uploads.size());
+    assertEquals(Arrays.asList("a", "b", "c", "d"), values(lastUpload()));
+    assertFalse(lastUpload().getExtend());
+
+    assertNull(sync.sync(entities(entity("a", "b", "c", "d"))));
+    assertEquals(1, uploads.size());
+
+    assertNotNull(sync.sync(entities(entity("a", "b", "c", "d", "e"))));
+    assertEquals(2, uploads.size());
+    assertEquals(Collections.singletonList("e"), values(lastUpload()));
+    assertTrue(lastUpload().getExtend());
+
+    Entity extension = entity("f");
+    extension.setExtend(true);
+    sync.sync(entities(extension));
+    assertEquals(Collections.singletonList("f"), values(lastUpload()));
+    assertTrue(lastUpload().getExtend());
+
+    assertEquals(6, sync.getSentEntryCount());
+    assertEquals(13, sync.getSkippedEntryCount());
+    assertEquals(0, sync.getReplacedEntityCount());
+  }
+
+  @Test
+  public void testReplaces() throws AIServiceException {
+    sync.sync(entities(entity("a", "b", "c", "d")));
+
+    // Removed entry
+    sync.sync(entities(entity("a", "b", "c")));
+    assertEquals(Arrays.asList("a", "b", "c"), values(lastUpload()));
+    assertFalse(lastUpload().getExtend());
+
+    // Changed synonyms
+    Entity changed = entity("a", "b", "c");
+    changed.getEntries().get(0).setSynonyms(Arrays.asList("a", "alpha"));
+    sync.sync(entities(changed));
+    assertEquals(3, lastUpload().getEntries().size());
+    assertFalse(lastUpload().getExtend());
+
+    // Mostly new entries
+    sync.sync(entities(entity("a", "b", "c", "d", "e", "f", "g")));
+    assertEquals(7, lastUpload().getEntries().size());
+    assertFalse(lastUpload().getExtend());
+    assertEquals(3, sync.getReplacedEntityCount());
+  }
+
+  @Test
+  public void testFailureForgetsEntity() throws AIServiceException {
+    sync.sync(entities(entity("a", "b")));
+    responseCode = 400;
+    try {
+      sync.sync(entities(entity("a", "b", "c")));
+      fail("Service error expected");
+    } catch (AIServiceException e) {
+      // expected
+    }
+    responseCode = 200;
+    sync.sync(entities(entity("a", "b", "c")));
+    assertEquals(Arrays.asList("a", "b", "c"), values(lastUpload()));
+    assertFalse(lastUpload().getExtend());
+
+    sync.forget(null);
+    sync.sync(entities(entity("a", "b", "c")));
+    assertEquals(4, uploads.size());
+  }
+
+  private Entity lastUpload() {
+    List<Entity> upload = uploads.get(uploads.size() - 1);
+    assertEquals(1, upload.size());
+    return upload.get(0);
+  }
+
+  private static List<Entity> entities(Entity... entities) {
+    return Arrays.asList(entities);
+  }
+
+  private static Entity entity(String... values) {
+    Entity entity = new Entity("letters");
+    for (String value : values) {
+      entity.addEntry(new EntityEntry(value, new String[] {value}));
+    }
+    return entity;
+  }
+
+  private static List<String> values(Entity entity) {
+    List<String> result = new ArrayList<>();
+    for (EntityEntry entry : entity.getEntries()) {
+      result.add(entry.getValue());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+public class UserEntitiesUploaderTest {
+
+  private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+  @Test
+  public void testSplitUpload() throws Exception {
+    final List<List<Entity>> requests = Collections.synchronizedList(new ArrayList<List<Entity>>());
+    final Set<String> transferEncodings = Collections.synchronizedSet(new HashSet<String>());
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        transferEncodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+        List<Entity> entities;
+        try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), "UTF-8")) {
+          entities = GSON.fromJson(reader, new TypeToken<List<Entity>>() {}.getType());
+        }
+        requests.add(entities);
+        byte[] data = "{\"status\":{\"code\":200}}".getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(data);
+        }
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      UserEntitiesUploader uploader = new UserEntitiesUploader(new AIDataService(config));
+      uploader.setMaxEntriesPerRequest(10);
+      uploader.setParallelism(2);
+
+      Entity products = createEntity("products", 25);
+      Entity colors = createEntity("colors", 3);
+      colors.setExtend(true);
+      List<AIResponse> responses = uploader.upload(Arrays.asList(products, colors));
+
+      // products 0-9 and colors first, then products 10-19 and 20-24 extending them
+      assertEquals(4, responses.size());
+      assertEquals(4, requests.size());
+      assertEquals(Collections.singleton("chunked"), transferEncodings);
+
+      for (List<Entity> request : requests.subList(0, 2)) {
+        assertEquals(1, request.size());
+        Entity entity = request.get(0);
+        if (entity.getName().equals("products")) {
+          assertNull(entity.getExtend());
+          assertEquals(10, entity.getEntries().size());
+        } else {
+          assertEquals("colors", entity.getName());
+          assertTrue(entity.getExtend());
+          assertEquals(3, entity.getEntries().size());
+        }
+      }
+
+      Set<String> values = new HashSet<>();
+      for (List<Entity> request : requests.subList(2, 4)) {
+        assertEquals(1, request.size());
+        assertEquals("products", request.get(0).getName());
+        assertTrue(request.get(0).getExtend());
+        for (EntityEntry entry : request.get(0).getEntries()) {
+          values.add(entry.getValue());
+        }
+      }
+      assertEquals(15, values.size());
+      assertTrue(values.contains("product10"));
+      assertTrue(values.contains("product24"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static Entity createEntity(String name, int entryCount) {
+    Entity entity = new Entity(name);
+    for (int i = 0; i < entryCount; i++) {
+      String value = name.substring(0, name.length() - 1) + i;
+      entity.addEntry(new EntityEntry(value, new String[] {value, value.toUpperCase()}));
+    }
+    return entity;
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ai.api.http.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+  private static final String URL = "https://api.api.ai/v1/";
+  private static final String OTHER_URL = "http://localhost/";
+  private static final long FAST = 1000000;
+  private static final int NO_RESPONSE = ConcurrencyLimiter.NO_RESPONSE_CODE;
+
+  @Test
+  public void testOpensOnFailureRate() {
+    CircuitBreaker breaker = new CircuitBreaker(10);
+    breaker.setMinimumCalls(4);
+
+    callAndRecord(breaker, 200);
+    callAndRecord(breaker, 400);
+    callAndRecord(breaker, 503);
+    assertEquals(State.CLOSED, breaker.getState(URL));
+
+    callAndRecord(breaker, NO_RESPONSE);
+    assertEquals(State.OPEN, breaker.getState(URL));
+    assertFalse(breaker.tryAcquire(URL));
+    assertEquals(1, breaker.getRejectedCount());
+
+    // circuits are kept per service url
+    assertEquals(State.CLOSED, breaker.getState(OTHER_URL));
+    assertTrue(breaker.tryAcquire(OTHER_URL));
+  }
+
+  @Test
+  public void testOpensOnSlowCallRate() {
+    CircuitBreaker breaker = new CircuitBreaker(4);
+    breaker.setSlowCallDurationMillis(100);
+    breaker.setSlowCallRateThreshold(0.5);
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(breaker.tryAcquire(URL));
+      breaker.onResult(URL, FAST, 200);
+    }
+    assertTrue(breaker.tryAcquire(URL));
+    breaker.onResult(URL, 200 * FAST, 200);
+    assertEquals(State.CLOSED, breaker.getState(URL));
+    assertTrue(breaker.tryAcquire(URL));
+    breaker.onResult(URL, 200 * FAST, 200);
+    assertEquals(State.OPEN, breaker.getState(URL));
+  }
+
+  @Test
+  public void testSlidingWindow() {
+    CircuitBreaker breaker = new CircuitBreaker(4);
+    breaker.setMinimumCalls(4);
+
+    callAndRecord(breaker, 500);
+    for (int i = 0; i < 10; i++) {
+      callAndRecord(breaker, 200);
+    }
+    // the old failure left the window
+    callAndRecord(breaker, 500);
+    assertEquals(State.CLOSED, breaker.getState(URL));
+    callAndRecord(breaker, 500);
+    assertEquals(State.OPEN, breaker.getState(URL));
+  }
+
+  @Test
+  public void testHalfOpen() throws InterruptedException {
+    CircuitBreaker breaker = new CircuitBreaker(2);
+    breaker.setOpenDurationMillis(10);
+    breaker.setHalfOpenCalls(2);
+
+    callAndRecord(breaker, 503);
+    callAndRecord(breaker, 503);
+    assertEquals(State.OPEN, breaker.getState(URL));
+    assertEquals(1, breaker.getOpenedCount());
+
+    Thread.sleep(20);
+
+    // failed trial call opens the circuit again
+    assertTrue(breaker.tryAcquire(URL));
+    assertEquals(State.HALF_OPEN, breaker.getState(URL));
+    breaker.onResult(URL, FAST, 502);
+    assertEquals(State.OPEN, breaker.getState(URL));
+    assertEquals(2, breaker.getOpenedCount());
+
+    Thread.sleep(20);
+
+    assertTrue(breaker.tryAcquire(URL));
+    assertTrue(breaker.tryAcquire(URL));
+    assertFalse(breaker.tryAcquire(URL));
+    breaker.onCancel(URL);
+    assertTrue(breaker.tryAcquire(URL));
+    breaker.onResult(URL, FAST, 200);
+    assertEquals(State.HALF_OPEN, breaker.getState(URL));
+    breaker.onResult(URL, FAST, 200);
+    assertEquals(State.CLOSED, breaker.getState(URL));
+    assertTrue(breaker.tryAcquire(URL));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongMinimumCalls() {
+    new CircuitBreaker(5).setMinimumCalls(6);
+  }
+
+  private static void callAndRecord(CircuitBreaker breaker, int responseCode) {
+    assertTrue(breaker.tryAcquire(URL));
+    breaker.onResult(URL, FAST, responseCode);
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.util.IOUtils;
+
+public class CompressionTest {
+
+  private static final String BODY = createBody();
+
+  @Test
+  public void testDecode() throws IOException {
+    byte[] data = BODY.getBytes("UTF-8");
+    assertEquals(BODY, read(Compression.decode(stream(data), null)));
+    assertEquals(BODY, read(Compression.decode(stream(data), "identity")));
+    assertEquals(BODY, read(Compression.decode(stream(Compression.gzip(data)), "gzip")));
+    assertEquals(BODY, read(Compression.decode(stream(deflate(data, false)), "deflate")));
+    assertEquals(BODY, read(Compression.decode(stream(deflate(data, true)), "Deflate")));
+    try {
+      Compression.decode(stream(data), "br");
+      fail("Unsupported encoding expected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testTransport() throws Exception {
+    final Map<String, String> received = new HashMap<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        received.put("Accept-Encoding", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        received.put("Content-Encoding", encoding);
+        received.put("body", read(Compression.decode(exchange.getRequestBody(), encoding)));
+
+        byte[] data = Compression.gzip(BODY.getBytes("UTF-8"));
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(data);
+        }
+      }
+    });
+    server.start();
+    try {
+      URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/query");
+      Map<String, String> headers = Collections.emptyMap();
+      Compression compression = new Compression();
+      compression.setRequestThreshold(BODY.length());
+      HttpTransport transport = new UrlConnectionTransport(null, compression);
+
+      HttpTransport.Response response = transport.execute("POST", url, headers, "{}", 0);
+      assertEquals(BODY, response.getBody());
+      assertEquals("{}", received.get("body"));
+      assertNull(received.get("Content-Encoding"));
+      assertEquals(Compression.ACCEPT_ENCODING, received.get("Accept-Encoding"));
+
+      response = transport.execute("POST", url, headers, BODY, 0);
+      assertEquals(BODY, response.getBody());
+      assertEquals(BODY, received.get("body"));
+      assertEquals("gzip", received.get("Content-Encoding"));
+
+      assertEquals(1, compression.getCompressedRequestCount());
+      assertTrue(compression.getRequestCompressionRatio() > 1);
+      assertTrue(compression.getResponseCompressionRatio() > 1);
+      assertTrue(compression.getSavedBytes() > 0);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static String createBody() {
+    StringBuilder result = new StringBuilder("[");
+    for (int i = 0; i < 100; i++) {
+      result.append(i > 0 ? "," : "").append("{\"type\":0,\"speech\":\"Message ").append(i)
+          .append("\"}");
+    }
+    return result.append("]").toString();
+  }
+
+  private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+    try (DeflaterOutputStream outputStream = new DeflaterOutputStream(result, deflater)) {
+      outputStream.write(data);
+    }
+    deflater.end();
+    return result.toByteArray();
+  }
+
+  private static InputStream stream(byte[] data) {
+    return new ByteArrayInputStream(data);
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    try {
+      return IOUtils.readAll(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.SECONDS.toNanos(10);
+
+  @Test
+  public void testRejectWhenLimitReached() throws InterruptedException {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+    assertTrue(limiter.acquire());
+    assertTrue(limiter.acquire());
+    assertFalse(limiter.acquire());
+    assertEquals(2, limiter.getInFlight());
+    assertEquals(1, limiter.getRejectedCount());
+
+    limiter.release(FAST, 200);
+    assertTrue(limiter.acquire());
+  }
+
+  @Test
+  public void testMultiplicativeDecrease() throws InterruptedException {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10);
+    limiter.setBackoffRatio(0.5);
+
+    assertTrue(limiter.acquire());
+    limiter.release(FAST, 429);
+    assertEquals(5, limiter.getLimit());
+
+    assertTrue(limiter.acquire());
+    limiter.release(FAST, 503);
+    assertEquals(2, limiter.getLimit());
+
+    assertTrue(limiter.acquire());
+    limiter.release(FAST, ConcurrencyLimiter.NO_RESPONSE_CODE);
+    assertEquals(1, limiter.getLimit());
+
+    assertTrue(limiter.acquire());
+    limiter.release(SLOW, 200);
+    assertEquals(1, limiter.getLimit());
+    assertEquals(4, limiter.getDroppedCount());
+  }
+
+  @Test
+  public void testAdditiveIncrease() throws InterruptedException {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 3);
+    for (int i = 0; i < 20; i++) {
+      assertTrue(limiter.acquire());
+      limiter.release(FAST, 200);
+    }
+    assertEquals(3, limiter.getLimit());
+
+    // client errors do not depend on the service load
+    assertTrue(limiter.acquire());
+    limiter.release(FAST, 400);
+    assertEquals(3, limiter.getLimit());
+  }
+
+  @Test
+  public void testQueueWaitsForReleasedSlot() throws InterruptedException {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+    limiter.setMaxQueueTimeMillis(5000);
+    assertTrue(limiter.acquire());
+
+    Thread releaser = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          return;
+        }
+        limiter.release(FAST, 200);
+      }
+    });
+    releaser.start();
+
+    assertTrue(limiter.acquire());
+    releaser.join();
+    assertEquals(1, limiter.getInFlight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongBounds() {
+    new ConcurrencyLimiter(5, 1, 3);
+  }
+}
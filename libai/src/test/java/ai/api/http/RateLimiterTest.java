@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  private static final String KEY = "key";
+  private static final long NO_WAIT = 0;
+
+  @Test
+  public void testBurstAndReject() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.setRate(Endpoint.QUERY, 60, 3);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, limiter.reserve(KEY, Endpoint.QUERY, NO_WAIT));
+    }
+    assertEquals(RateLimiter.REJECTED, limiter.reserve(KEY, Endpoint.QUERY, NO_WAIT));
+    assertEquals(3, limiter.getAcquiredCount());
+    assertEquals(1, limiter.getRejectedCount());
+  }
+
+  @Test
+  public void testSeparateBuckets() {
+    RateLimiter limiter = new RateLimiter();
+    limiter.setRate(Endpoint.QUERY, 60, 1);
+    limiter.setRate(Endpoint.CONTEXTS, 60, 1);
+
+    assertEquals(0, limiter.reserve(KEY, Endpoint.QUERY, NO_WAIT));
+    assertEquals(RateLimiter.REJECTED, limiter.reserve(KEY, Endpoint.QUERY, NO_WAIT));
+
+    // other endpoint and other api key have their own buckets
+    assertEquals(0, limiter.reserve(KEY, Endpoint.CONTEXTS, NO_WAIT));
+    assertEquals(0, limiter.reserve("otherKey", Endpoint.QUERY, NO_WAIT));
+
+    // not limited endpoints
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, limiter.reserve(KEY, Endpoint.USER_ENTITIES, NO_WAIT));
+      assertEquals(0, limiter.reserve(KEY, null, NO_WAIT));
+    }
+  }
+
+  @Test
+  public void testQueueWithDeadline() {
+    RateLimiter limiter = new RateLimiter();
+    // one token per second
+    limiter.setRate(Endpoint.QUERY, 60, 1);
+    long second = TimeUnit.SECONDS.toNanos(1);
+
+    assertEquals(0, limiter.reserve(KEY, Endpoint.QUERY, 5 * second));
+    long firstWait = limiter.reserve(KEY, Endpoint.QUERY, 5 * second);
+    assertTrue(firstWait > second / 2 && firstWait <= second);
+    long secondWait = limiter.reserve(KEY, Endpoint.QUERY, 5 * second);
+    assertTrue(secondWait > firstWait && secondWait <= 2 * second);
+
+    // would need to wait about three seconds
+    assertEquals(RateLimiter.REJECTED, limiter.reserve(KEY, Endpoint.QUERY, 2 * second));
+    assertEquals(2, limiter.getDelayedCount());
+    assertTrue(limiter.getMaxObservedWaitMillis() > 1000);
+    assertTrue(limiter.getTotalWaitMillis() > 1500);
+  }
+
+  @Test
+  public void testAcquireWaits() throws InterruptedException {
+    RateLimiter limiter = new RateLimiter();
+    // one token per 50 ms
+    limiter.setRate(Endpoint.QUERY, 1200, 1);
+    limiter.setMaxWaitMillis(1000);
+
+    assertTrue(limiter.acquire(KEY, Endpoint.QUERY));
+    long start = System.nanoTime();
+    assertTrue(limiter.acquire(KEY, Endpoint.QUERY));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    assertEquals(1200, limiter.getRequestsPerMinute(Endpoint.QUERY), 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongBurst() {
+    new RateLimiter().setRate(Endpoint.QUERY, 60, 0);
+  }
+}
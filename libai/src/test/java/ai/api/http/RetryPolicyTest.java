@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.http;
+
+import static org.junit.Assert.*;
+
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+  private static final int NO_RESPONSE = ConcurrencyLimiter.NO_RESPONSE_CODE;
+
+  @Test
+  public void testEndpointFromUrl() {
+    assertEquals(Endpoint.QUERY, Endpoint.fromUrl("https://api.api.ai/v1/query?v=1&sessionId=s"));
+    assertEquals(Endpoint.CONTEXTS, Endpoint.fromUrl("https://api.api.ai/v1/contexts?sessionId=s"));
+    assertEquals(Endpoint.CONTEXTS,
+        Endpoint.fromUrl("https://api.api.ai/v1/contexts/name?sessionId=s"));
+    assertEquals(Endpoint.USER_ENTITIES,
+        Endpoint.fromUrl("http://localhost/userEntities?sessionId=query"));
+    assertNull(Endpoint.fromUrl("http://localhost/other"));
+  }
+
+  @Test
+  public void testIdempotencyAware() {
+    RetryPolicy policy = new RetryPolicy();
+
+    // the service did not get the request
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, NO_RESPONSE,
+        new ConnectException()));
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+
+    // the service could process the request
+    assertFalse(policy.shouldRetry(Endpoint.QUERY, "POST", 1, NO_RESPONSE,
+        new SocketException("Connection reset")));
+    assertFalse(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 502, null));
+    assertTrue(policy.shouldRetry(Endpoint.USER_ENTITIES, "POST", 1, 502, null));
+    assertTrue(policy.shouldRetry(Endpoint.CONTEXTS, "GET", 1, NO_RESPONSE,
+        new SocketException("Connection reset")));
+
+    policy.setIdempotent(Endpoint.QUERY, true);
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 504, null));
+
+    // not transient failures
+    assertFalse(policy.shouldRetry(Endpoint.CONTEXTS, "GET", 1, 400, null));
+    assertFalse(policy.shouldRetry(Endpoint.CONTEXTS, "GET", 1, 200, null));
+    assertFalse(policy.shouldRetry(Endpoint.CONTEXTS, "GET", 1, NO_RESPONSE,
+        new MalformedURLException()));
+  }
+
+  @Test
+  public void testMaxAttempts() {
+    RetryPolicy policy = new RetryPolicy();
+    policy.setMaxAttempts(2);
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+    assertFalse(policy.shouldRetry(Endpoint.QUERY, "POST", 2, 503, null));
+    assertEquals(1, policy.getRetryCount());
+    assertEquals(1, policy.getAttemptsExhaustedCount());
+  }
+
+  @Test
+  public void testRetryBudget() {
+    RetryPolicy policy = new RetryPolicy();
+    policy.setMaxBudgetTokens(2);
+    policy.setBudgetRatio(0.5);
+    assertEquals(2, policy.getAvailableRetries());
+
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+    assertFalse(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+    assertEquals(1, policy.getBudgetExhaustedCount());
+
+    policy.onRequest();
+    assertEquals(0, policy.getAvailableRetries());
+    policy.onRequest();
+    assertEquals(1, policy.getAvailableRetries());
+    assertTrue(policy.shouldRetry(Endpoint.QUERY, "POST", 1, 503, null));
+
+    for (int i = 0; i < 100; i++) {
+      policy.onRequest();
+    }
+    assertEquals(2, policy.getAvailableRetries());
+  }
+
+  @Test
+  public void testBackoffWithJitter() {
+    RetryPolicy policy = new RetryPolicy();
+    policy.setBaseDelayMillis(100);
+    policy.setMaxDelayMillis(300);
+    for (int i = 0; i < 100; i++) {
+      long first = policy.getBackoffMillis(1);
+      assertTrue(first >= 0 && first < 100);
+      long third = policy.getBackoffMillis(3);
+      assertTrue(third >= 0 && third < 300);
+      long tenth = policy.getBackoffMillis(100);
+      assertTrue(tenth >= 0 && tenth < 300);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceException;
+import ai.api.http.HttpTransport;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+public class EntityIntentResponderTest {
+
+  @Test
+  public void testAnswersExactMatch() throws AIServiceException {
+    final List<String> sentRequests = new ArrayList<>();
+    AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        sentRequests.add(body);
+        return new Response(200, "{\"status\":{\"code\":200}}");
+      }
+    });
+    Entity stores = new Entity("store");
+    stores.addEntry(new EntityEntry("store-1", new String[] {"Main Street Store"}));
+    EntityIntentResponder responder =
+        new EntityIntentResponder(new EntityMatcher(Collections.singletonList(stores)), "en");
+    responder.addIntent("store", "open.store", "store.open", "Opening the store");
+    responder.setMatchContextName("matched-entities");
+    config.setLocalResponder(responder);
+    AIDataService dataService = new AIDataService(config);
+
+    AIResponse response = dataService.request(new AIRequest("main street store"));
+    assertTrue(sentRequests.isEmpty());
+    assertEquals("open.store", response.getResult().getMetadata().getIntentName());
+    assertEquals("store.open", response.getResult().getAction());
+    assertEquals("Opening the store", response.getResult().getFulfillment().getSpeech());
+    assertEquals("store-1", response.getResult().getStringParameter("store"));
+    assertEquals("local", response.getResult().getSource());
+    assertEquals(dataService.getContext().getSessionId(), response.getSessionId());
+    assertEquals(200, (int) response.getStatus().getCode());
+
+    dataService.request(new AIRequest("directions to main street store"));
+    assertEquals(1, sentRequests.size());
+    assertTrue(sentRequests.get(0).contains("\"matched-entities\""));
+    assertTrue(sentRequests.get(0).contains("\"store\":\"store-1\""));
+    assertEquals(1, responder.getAnsweredCount());
+    assertEquals(1, responder.getAnnotatedCount());
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ai.api.model.Entity;
+import ai.api.model.EntityEntry;
+
+public class EntityMatcherTest {
+
+  private static final EntityMatcher MATCHER = new EntityMatcher(Arrays.asList(
+      entity("city", new EntityEntry("New York", new String[] {"new york", "NYC", "big apple"}),
+          new EntityEntry("York", new String[] {"york"})),
+      entity("fruit", new EntityEntry("apple", new String[] {"apple", "apples"})),
+      entity("company", new EntityEntry("Apple Inc.", new String[] {"apple"}))));
+
+  @Test
+  public void testFindAll() {
+    List<EntityMatch> matches = MATCHER.findAll("Flights to New York");
+    assertEquals(Arrays.asList("city:New York:New York", "city:York:York"), describe(matches));
+    assertEquals(11, matches.get(0).getStart());
+    assertEquals(19, matches.get(0).getEnd());
+  }
+
+  @Test
+  public void testFindLongestAndBoundaries() {
+    assertEquals(Arrays.asList("city:New York:new york", "fruit:apple:apples"),
+        describe(MATCHER.find("new york apples")));
+    assertEquals(Arrays.asList("city:New York:Big Apple"),
+        describe(MATCHER.find("the Big Apple!")));
+    // Synonyms inside words do not match
+    assertTrue(MATCHER.find("pineapple yorkshire").isEmpty());
+  }
+
+  @Test
+  public void testMatchExact() {
+    assertEquals(Arrays.asList("fruit:apple:Apple", "company:Apple Inc.:Apple"),
+        describe(MATCHER.matchExact(" Apple ")));
+    assertEquals(Arrays.asList("city:New York:NEW   york"),
+        describe(MATCHER.matchExact("NEW   york")));
+    assertTrue(MATCHER.matchExact("apple pie").isEmpty());
+    assertTrue(MATCHER.matchExact("").isEmpty());
+    assertEquals(8, MATCHER.getSynonymCount());
+  }
+
+  private static Entity entity(String name, EntityEntry... entries) {
+    Entity entity = new Entity(name);
+    entity.setEntries(Arrays.asList(entries));
+    return entity;
+  }
+
+  private static List<String> describe(List<EntityMatch> matches) {
+    List<String> result = new ArrayList<>();
+    for (EntityMatch match : matches) {
+      result.add(match.getEntityName() + ":" + match.getValue() + ":" + match.getText());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.local;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+public class FaqResponderTest {
+
+  private static final String SNAPSHOT = "["
+      + "{\"language\":\"en\",\"intentName\":\"faq.hours\",\"action\":\"faq.hours\","
+      + "\"speech\":\"We are open from 9 to 5.\","
+      + "\"questions\":[\"What are your opening hours?\",\"When are you open?\"]},"
+      + "{\"language\":\"de\",\"intentName\":\"faq.hours\",\"speech\":\"Von 9 bis 5.\","
+      + "\"questions\":[\"Wann haben Sie geöffnet?\"]},"
+      + "{\"intentName\":\"faq.ping\",\"fulfillment\":{\"speech\":\"pong\",\"source\":\"faq\"},"
+      + "\"questions\":[\"ping\"]}]";
+
+  @Test
+  public void testNormalize() {
+    assertEquals("what are your opening hours",
+        FaqResponder.normalize("  What are your\topening hours?! "));
+    assertEquals("abc 12", FaqResponder.normalize("ＡＢＣ １２"));
+    assertEquals("café", FaqResponder.normalize("Café"));
+  }
+
+  @Test
+  public void testAnswersNormalizedQuestion() throws IOException {
+    FaqResponder responder = new FaqResponder();
+    assertEquals(4, responder.load(new StringReader(SNAPSHOT)));
+
+    AIRequest request = new AIRequest("what are your   OPENING hours");
+    request.setLanguage("en");
+    request.setSessionId("session");
+    AIResponse response = responder.respond(request, null);
+    assertNotNull(response);
+    assertEquals("We are open from 9 to 5.", response.getResult().getFulfillment().getSpeech());
+    assertEquals("faq.hours", response.getResult().getMetadata().getIntentName());
+    assertEquals("faq.hours", response.getResult().getAction());
+    assertEquals("what are your   OPENING hours", response.getResult().getResolvedQuery());
+    assertEquals("session", response.getSessionId());
+    assertEquals("en", response.getLang());
+    assertEquals(200, response.getStatus().getCode().intValue());
+
+    AIResponse second = responder.respond(request, null);
+    assertNotSame(response, second);
+    assertNotEquals(response.getId(), second.getId());
+  }
+
+  @Test
+  public void testLanguage() throws IOException {
+    FaqResponder responder = new FaqResponder();
+    responder.load(new StringReader(SNAPSHOT));
+
+    AIRequest request = new AIRequest("Wann haben Sie geöffnet");
+    request.setLanguage("en");
+    assertNull(responder.respond(request, null));
+    request.setLanguage("de");
+    assertEquals("Von 9 bis 5.",
+        responder.respond(request, null).getResult().getFulfillment().getSpeech());
+
+    AIRequest ping = new AIRequest("PING");
+    ping.setLanguage("fr");
+    AIResponse response = responder.respond(ping, null);
+    assertEquals("pong", response.getResult().getFulfillment().getSpeech());
+    assertEquals("faq", response.getResult().getFulfillment().getSource());
+  }
+
+  @Test
+  public void testStatistics() throws IOException {
+    FaqResponder responder = new FaqResponder();
+    responder.load(new StringReader(SNAPSHOT));
+
+    AIRequest request = new AIRequest("When are you open?");
+    request.setLanguage("en");
+    responder.respond(request, null);
+    responder.respond(request, null);
+    responder.respond(new AIRequest("Something else"), null);
+
+    assertEquals(2, responder.getHitCount());
+    assertEquals(1, responder.getMissCount());
+    assertEquals(Long.valueOf(2), responder.getIntentHitCounts().get("faq.hours"));
+  }
+
+  @Test
+  public void testAnswerWithoutIntentName() throws IOException {
+    FaqResponder responder = new FaqResponder();
+    responder.load(new StringReader("[{\"language\":\"en\",\"speech\":\"9 to 5\","
+        + "\"questions\":[\"When are you open?\"]},"
+        + "{\"action\":\"faq.ping\",\"speech\":\"pong\",\"questions\":[\"ping\"]}]"));
+
+    AIRequest request = new AIRequest("When are you open?");
+    request.setLanguage("en");
+    AIResponse response = responder.respond(request, null);
+    assertEquals("9 to 5", response.getResult().getFulfillment().getSpeech());
+    assertNull(response.getResult().getMetadata().getIntentName());
+    AIResponse ping = responder.respond(new AIRequest("ping"), null);
+    assertNull(ping.getResult().getMetadata().getIntentName());
+    assertEquals("faq.ping", ping.getResult().getAction());
+
+    assertEquals(Long.valueOf(1), responder.getIntentHitCounts().get(FaqResponder.DEFAULT_INTENT_NAME));
+    assertEquals(Long.valueOf(1), responder.getIntentHitCounts().get("faq.ping"));
+  }
+
+  @Test
+  public void testReloadIfModified() throws IOException {
+    File file = File.createTempFile("faq", ".json");
+    file.deleteOnExit();
+    Files.write(file.toPath(), SNAPSHOT.getBytes(StandardCharsets.UTF_8));
+    FaqResponder responder = new FaqResponder(file);
+    assertEquals(4, responder.getQuestionCount());
+    assertFalse(responder.reloadIfModified());
+
+    Files.write(file.toPath(), ("[{\"intentName\":\"faq.ping\",\"speech\":\"pong\","
+        + "\"questions\":[\"ping\"]}]").getBytes(StandardCharsets.UTF_8));
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    assertTrue(responder.reloadIfModified());
+    assertEquals(1, responder.getQuestionCount());
+    assertNull(responder.respond(new AIRequest("When are you open?"), null));
+
+    Files.write(file.toPath(), "{broken".getBytes(StandardCharsets.UTF_8));
+    assertTrue(file.setLastModified(file.lastModified() + 10000));
+    try {
+      responder.reloadIfModified();
+      fail("Broken snapshot should not be loaded");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals(1, responder.getQuestionCount());
+    assertNotNull(responder.respond(new AIRequest("ping"), null));
+  }
+}
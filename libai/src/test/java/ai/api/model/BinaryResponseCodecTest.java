@@ -0,0 +1,213 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import ai.api.GsonFactory;
+
+public class BinaryResponseCodecTest {
+
+    private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+
+    private static final String RESPONSE = "{\"id\":\"3a2c\",\"timestamp\":\"2017-06-01T10:15:30.123Z\","
+            + "\"lang\":\"en\",\"result\":{\"source\":\"agent\",\"resolvedQuery\":\"weather in Rome\","
+            + "\"action\":\"weather\",\"actionIncomplete\":true,\"score\":0.87,"
+            + "\"parameters\":{\"city\":\"Rome\",\"days\":3,\"temperature\":-2.5,\"big\":12345678901234567890,"
+            + "\"units\":[\"C\",null,true],\"date\":{\"from\":\"2017-06-01\"},\"empty\":null},"
+            + "\"contexts\":[{\"name\":\"weather\",\"lifespan\":5,\"parameters\":{\"city\":\"Rome\"}},"
+            + "{\"name\":\"generic\"}],"
+            + "\"metadata\":{\"intentId\":\"42\",\"webhookUsed\":\"true\",\"intentName\":\"weather.forecast\"},"
+            + "\"fulfillment\":{\"speech\":\"Sunny\",\"displayText\":\"Sunny in Rome\",\"source\":\"webhook\","
+            + "\"messages\":[{\"type\":0,\"speech\":\"Sunny\"},"
+            + "{\"type\":\"simple_response\",\"platform\":\"google\",\"textToSpeech\":\"Sunny\"},"
+            + "{\"type\":4,\"payload\":{\"rating\":5}}],"
+            + "\"data\":{\"score\":-7},"
+            + "\"contextOut\":[{\"name\":\"followup\",\"lifespan\":-1}],"
+            + "\"followupEvent\":{\"name\":\"retry\",\"data\":{\"reason\":\"timeout\"}}}},"
+            + "\"status\":{\"code\":400,\"errorType\":\"bad_request\",\"errorDetails\":\"Missing query\","
+            + "\"errorID\":\"e-1\"},\"sessionId\":\"session-1\"}";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final AIResponse response = GSON.fromJson(RESPONSE, AIResponse.class);
+        final AIResponse read = readAll(write(response, response))[1];
+
+        assertEquals(GSON.toJsonTree(response), GSON.toJsonTree(read));
+        assertEquals("Missing query", read.getStatus().getErrorDetailsValue());
+        assertEquals(3, read.getResult().getIntParameter("days"));
+        assertEquals("12345678901234567890", read.getResult().getParameterMap().get("big").getAsString());
+        assertTrue(read.getResult().getFulfillment().getMessages().get(1)
+                instanceof GoogleAssistantResponseMessages.ResponseChatBubble);
+        assertEquals("timeout", read.getResult().getFulfillment().getFollowupEvent().getData().get("reason"));
+    }
+
+    @Test
+    public void testRoundTripOfEmptyResponse() throws IOException {
+        final AIResponse read = readAll(write(new AIResponse()))[0];
+
+        assertNull(read.getId());
+        assertNull(read.getTimestamp());
+        assertNull(read.getResult());
+        assertNull(read.getStatus());
+    }
+
+    @Test
+    public void testReadsUntilEnd() throws IOException {
+        final AIResponse response = GSON.fromJson(RESPONSE, AIResponse.class);
+        final BinaryResponseReader reader = new BinaryResponseReader(
+                new ByteArrayInputStream(write(response, response, response)));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("session-1", reader.read().getSessionId());
+        }
+        assertNull(reader.read());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void testRepeatedStringsWrittenOnce() throws IOException {
+        final AIResponse response = GSON.fromJson(RESPONSE, AIResponse.class);
+        final int one = write(response).length;
+        final int two = write(response, response).length;
+
+        assertTrue(two - one < one / 2);
+        assertTrue(one < RESPONSE.length());
+    }
+
+    @Test
+    public void testWrongMagic() {
+        try {
+            new BinaryResponseReader(new ByteArrayInputStream(RESPONSE.getBytes()));
+            fail();
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("format"));
+        }
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws IOException {
+        final byte[] data = write();
+        data[BinaryFormat.MAGIC.length] = BinaryFormat.VERSION + 1;
+        try {
+            new BinaryResponseReader(new ByteArrayInputStream(data));
+            fail();
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void testTruncatedStream() throws IOException {
+        final byte[] data = write(GSON.fromJson(RESPONSE, AIResponse.class));
+        final BinaryResponseReader reader = new BinaryResponseReader(
+                new ByteArrayInputStream(data, 0, data.length - 10));
+        try {
+            reader.read();
+            fail();
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMissingActionStaysMissing() throws IOException {
+        final AIResponse response = new AIResponse();
+        response.setResult(new Result());
+        final AIResponse read = readAll(write(response))[0];
+
+        assertNull(read.getResult().getActionValue());
+        assertFalse(GSON.toJsonTree(read.getResult()).getAsJsonObject().has("action"));
+    }
+
+    @Test
+    public void testCorruptSizes() throws IOException {
+        final byte[] maxVarint = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        // Response id of the largest length
+        assertCorrupt(BinaryFormat.RECORD, BinaryFormat.INLINE_STRING, maxVarint);
+        // Result with the largest number of contexts
+        assertCorrupt(BinaryFormat.RECORD, BinaryFormat.NULL, 0, BinaryFormat.NULL, 1,
+                BinaryFormat.NULL, new byte[4], BinaryFormat.NULL, 0, maxVarint);
+        // Negative length
+        assertCorrupt(BinaryFormat.RECORD, BinaryFormat.INLINE_STRING, new byte[] {(byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01});
+    }
+
+    @Test
+    public void testLazyResponse() throws IOException {
+        final Gson lazyGson = GsonFactory.getDefaultFactory().getLazyGson();
+        final AIResponse response = lazyGson.fromJson(RESPONSE, AIResponse.class);
+        final AIResponse read = readAll(write(response))[0];
+
+        assertEquals(GSON.toJson(GSON.fromJson(RESPONSE, AIResponse.class)), GSON.toJson(read));
+    }
+
+    /**
+     * @param parts Single bytes as integers and byte arrays following the stream header
+     */
+    private static void assertCorrupt(final Object... parts) throws IOException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(write());
+        for (final Object part : parts) {
+            if (part instanceof byte[]) {
+                data.write((byte[]) part);
+            } else {
+                data.write((Integer) part);
+            }
+        }
+        final BinaryResponseReader reader = new BinaryResponseReader(new ByteArrayInputStream(data.toByteArray()));
+        try {
+            reader.read();
+            fail();
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] write(final AIResponse... responses) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BinaryResponseWriter writer = new BinaryResponseWriter(out);
+        for (final AIResponse response : responses) {
+            writer.write(response);
+        }
+        assertEquals(responses.length, writer.getCount());
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static AIResponse[] readAll(final byte[] data) throws IOException {
+        final BinaryResponseReader reader = new BinaryResponseReader(new ByteArrayInputStream(data));
+        final List<AIResponse> responses = new ArrayList<>();
+        AIResponse response;
+        while ((response = reader.read()) != null) {
+            responses.add(response);
+        }
+        reader.close();
+        return responses.toArray(new AIResponse[responses.size()]);
+    }
+}
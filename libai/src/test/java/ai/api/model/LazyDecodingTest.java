@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import ai.api.GsonFactory;
+
+public class LazyDecodingTest {
+
+    private static final Gson gson = GsonFactory.getDefaultFactory().getGson();
+    private static final Gson lazyGson = GsonFactory.getDefaultFactory().getLazyGson();
+
+    private static final String RESPONSE = "{\"id\":\"1\",\"timestamp\":\"2017-01-01T00:00:00.000Z\","
+            + "\"lang\":\"en\",\"result\":{"
+            + "\"action\":\"weather\",\"score\":0.5,\"parameters\":{\"city\":\"Rome\",\"days\":3},"
+            + "\"contexts\":[{\"name\":\"weather\",\"lifespan\":2,\"parameters\":{\"city\":\"Rome\"}}],"
+            + "\"metadata\":{\"intentName\":\"weather.forecast\",\"intentId\":\"42\"},"
+            + "\"fulfillment\":{\"speech\":\"Sunny\",\"source\":\"agent\","
+            + "\"messages\":[{\"type\":0,\"speech\":\"Sunny\"},"
+            + "{\"type\":4,\"payload\":{\"temperature\":25.50,\"unit\":null,\"rain\":false}}],"
+            + "\"data\":{\"icon\":\"sun\"}}},"
+            + "\"status\":{\"code\":200,\"errorType\":\"success\"},\"sessionId\":\"session\"}";
+
+    @Test
+    public void testReadsSameValues() {
+        final AIResponse response = lazyGson.fromJson(RESPONSE, AIResponse.class);
+        final Result result = response.getResult();
+        assertEquals("weather", result.getAction());
+        assertEquals(3, result.getIntParameter("days"));
+        assertEquals("weather.forecast", result.getMetadata().getIntentName());
+        assertEquals(2, result.getContext("weather").getLifespan().intValue());
+        assertEquals("Sunny", result.getFulfillment().getSpeech());
+        assertEquals(2, result.getFulfillment().getMessages().size());
+        assertTrue(result.getFulfillment().getMessages().get(0) instanceof ResponseMessage.ResponseSpeech);
+        assertEquals("sun", result.getFulfillment().getData().get("icon").getAsString());
+
+        final AIResponse eager = gson.fromJson(RESPONSE, AIResponse.class);
+        final JsonParser parser = new JsonParser();
+        assertEquals(parser.parse(gson.toJson(eager)), parser.parse(gson.toJson(response)));
+    }
+
+    @Test
+    public void testDecodesOnFirstAccess() {
+        final String response = RESPONSE.replace("{\"type\":0,", "{\"type\":99,");
+        try {
+            gson.fromJson(response, AIResponse.class);
+            fail("Unknown message type should not be read");
+        } catch (final JsonParseException e) {
+            // expected
+        }
+
+        final Fulfillment fulfillment = lazyGson.fromJson(response, AIResponse.class).getResult().getFulfillment();
+        assertEquals("Sunny", fulfillment.getSpeech());
+        assertEquals("sun", fulfillment.getData().get("icon").getAsString());
+        try {
+            fulfillment.getMessages();
+            fail("Unknown message type should not be read");
+        } catch (final JsonParseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final int threadCount = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int i = 0; i < 200; i++) {
+                final Result result = lazyGson.fromJson(RESPONSE, AIResponse.class).getResult();
+                final CyclicBarrier start = new CyclicBarrier(threadCount);
+                final List<Future<Boolean>> readers = new ArrayList<>();
+                for (int j = 0; j < threadCount; j++) {
+                    readers.add(executor.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            start.await();
+                            return result.getMetadata() != null && result.getContexts() != null
+                                    && result.getFulfillment().getMessages() != null
+                                    && result.getFulfillment().getData() != null;
+                        }
+                    }));
+                }
+                for (final Future<Boolean> reader : readers) {
+                    assertTrue(reader.get(5, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSetterReplacesRawField() {
+        final Result result = lazyGson.fromJson(RESPONSE, AIResponse.class).getResult();
+        result.setMetadata(null);
+        assertNull(result.getMetadata());
+
+        final Fulfillment fulfillment = result.getFulfillment();
+        fulfillment.setMessages(new ResponseMessage.ResponseSpeech());
+        assertEquals(1, fulfillment.getMessages().size());
+
+        final JsonObject json = lazyGson.toJsonTree(result).getAsJsonObject();
+        assertFalse(json.has("metadata"));
+        assertEquals(1, json.getAsJsonObject("fulfillment").getAsJsonArray("messages").size());
+        assertEquals("weather", json.getAsJsonArray("contexts").get(0).getAsJsonObject().get("name").getAsString());
+    }
+}
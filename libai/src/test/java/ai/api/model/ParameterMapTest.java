@@ -0,0 +1,201 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import ai.api.GsonFactory;
+
+public class ParameterMapTest {
+
+    private static final Gson gson = GsonFactory.getDefaultFactory().getGson();
+
+    private static final String RESULT = "{\"parameters\": {"
+            + "\"number\": \"42\", \"float\": 1.5, \"date\": \"2016-04-01\","
+            + "\"empty\": \"\", \"complex\": {\"key\": \"value\"}}}";
+
+    @Test
+    public void testDeserialize() {
+        final Result result = gson.fromJson(RESULT, Result.class);
+        final Map<String, JsonElement> parameters = result.getParameterMap();
+        assertTrue(parameters instanceof ParameterMap);
+        assertEquals(5, parameters.size());
+        assertEquals(new JsonPrimitive("42"), parameters.get("number"));
+        assertEquals(new JsonPrimitive(1.5), parameters.get("float"));
+        assertEquals("value", result.getComplexParameter("complex").get("key").getAsString());
+        assertNull(parameters.get("missing"));
+
+        final JsonObject json = gson.toJsonTree(result).getAsJsonObject().getAsJsonObject("parameters");
+        assertEquals(gson.fromJson(RESULT, JsonObject.class).getAsJsonObject("parameters"), json);
+    }
+
+    @Test
+    public void testTypedGetters() {
+        final Result result = gson.fromJson(RESULT, Result.class);
+        assertEquals(42, result.getIntParameter("number"));
+        assertEquals(42, result.getIntParameter("number"));
+        assertEquals("42", result.getStringParameter("number"));
+        assertEquals(42f, result.getFloatParameter("number"), 0);
+        assertEquals(1.5f, result.getFloatParameter("float"), 0);
+        assertEquals(7, result.getIntParameter("empty", 7));
+        assertEquals(7, result.getIntParameter("missing", 7));
+        assertEquals("default", result.getStringParameter("missing", "default"));
+
+        final Date date = result.getDateParameter("date");
+        assertNotNull(date);
+        date.setTime(0);
+        assertNotEquals(0, result.getDateParameter("date").getTime());
+
+        result.getParameterMap().put("number", new JsonPrimitive("43"));
+        assertEquals(43, result.getIntParameter("number"));
+
+        try {
+            result.getDateTimeParameter("number");
+            fail("Number should not be parsed as a date");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParametersWriteThrough() {
+        final Result result = new Result();
+        final Map<String, JsonElement> parameters = new HashMap<>();
+        parameters.put("city", new JsonPrimitive("Rome"));
+        result.setParameters(parameters);
+
+        final HashMap<String, JsonElement> view = result.getParameters();
+        assertSame(view, result.getParameters());
+        assertEquals(result.getParameterMap(), view);
+        view.put("city", new JsonPrimitive("Paris"));
+        view.put("days", new JsonPrimitive(3));
+        assertEquals("Paris", result.getStringParameter("city"));
+        assertEquals(3, result.getIntParameter("days"));
+
+        view.remove("days");
+        assertFalse(result.getParameterMap().containsKey("days"));
+        result.getParameterMap().put("country", new JsonPrimitive("Italy"));
+        assertEquals("Italy", view.get("country").getAsString());
+        assertEquals(2, view.size());
+    }
+
+    @Test
+    public void testNoParameters() {
+        final Result result = new Result();
+        assertNull(result.getParameterMap());
+        assertNull(result.getParameters());
+        assertEquals(3, result.getIntParameter("number", 3));
+        assertNull(result.getComplexParameter("complex"));
+    }
+
+    @Test
+    public void testMapOperations() {
+        final ParameterMap parameters = new ParameterMap();
+        final Map<String, JsonElement> expected = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            assertNull(parameters.put("key" + i, new JsonPrimitive(i)));
+            expected.put("key" + i, new JsonPrimitive(i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals(new JsonPrimitive(i), parameters.remove("key" + i));
+            expected.remove("key" + i);
+        }
+        assertEquals(expected, parameters);
+        assertEquals(expected.hashCode(), parameters.hashCode());
+
+        final Iterator<Map.Entry<String, JsonElement>> iterator = parameters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().getAsInt() % 3 == 0) {
+                iterator.remove();
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1 && i % 3 != 0, parameters.containsKey("key" + i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            parameters.put("key" + i, new JsonPrimitive("value" + i));
+        }
+        assertEquals(100, parameters.size());
+        assertEquals("value99", parameters.get("key99").getAsString());
+
+        parameters.clear();
+        assertTrue(parameters.isEmpty());
+        assertFalse(parameters.containsKey("key1"));
+    }
+
+    @Test
+    public void testJavaSerialization() throws IOException, ClassNotFoundException {
+        final ParameterMap parameters = new ParameterMap();
+        parameters.put("first", new JsonPrimitive("one"));
+        parameters.put("second", new JsonPrimitive("two"));
+        parameters.remove("first");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(parameters);
+        }
+        final Object copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = in.readObject();
+        }
+        assertEquals(parameters, copy);
+    }
+
+    @Test
+    public void testResultJavaSerialization() throws IOException, ClassNotFoundException {
+        final Result result = new Result();
+        final Map<String, JsonElement> parameters = new HashMap<>();
+        parameters.put("city", new JsonPrimitive("Rome"));
+        parameters.put("country", new JsonPrimitive("Italy"));
+        result.setParameters(parameters);
+        result.setAction("weather");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        }
+        final Result copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Result) in.readObject();
+        }
+        assertEquals("weather", copy.getAction());
+        assertEquals(parameters, copy.getParameterMap());
+        assertEquals("Rome", copy.getStringParameter("city"));
+
+        // Streams written before parameters were kept in a ParameterMap still read
+        assertEquals(HashMap.class, ObjectStreamClass.lookup(Result.class).getField("parameters").getType());
+    }
+}
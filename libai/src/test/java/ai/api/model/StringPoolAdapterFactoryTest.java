@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import ai.api.AIConfiguration;
+import ai.api.GsonFactory;
+import ai.api.util.StringPool;
+
+public class StringPoolAdapterFactoryTest {
+
+    private static final String RESPONSE = "{\"id\":\"1\",\"lang\":\"en\",\"result\":{"
+            + "\"action\":\"weather\",\"source\":\"agent\",\"parameters\":{\"city\":\"Rome\"},"
+            + "\"contexts\":[{\"name\":\"weather\",\"parameters\":{\"city\":\"Rome\"}}],"
+            + "\"metadata\":{\"intentName\":\"weather.forecast\",\"intentId\":\"42\"}},"
+            + "\"sessionId\":\"session\"}";
+
+    @Test
+    public void testPoolsStrings() {
+        final StringPool pool = new StringPool();
+        final Gson gson = GsonFactory.getDefaultFactory().createGson(false, pool);
+        final AIResponse first = gson.fromJson(RESPONSE, AIResponse.class);
+        final AIResponse second = gson.fromJson(RESPONSE, AIResponse.class);
+
+        assertSame(first.getLang(), second.getLang());
+        assertSame(first.getResult().getAction(), second.getResult().getAction());
+        assertSame(first.getResult().getSource(), second.getResult().getSource());
+        assertSame(first.getResult().getMetadata().getIntentName(),
+                second.getResult().getMetadata().getIntentName());
+        assertSame(first.getResult().getMetadata().getIntentId(),
+                second.getResult().getMetadata().getIntentId());
+        assertSame(first.getResult().getContexts().get(0).getName(),
+                second.getResult().getContexts().get(0).getName());
+        assertSame(firstKey(first.getResult().getParameterMap().keySet().iterator()),
+                firstKey(second.getResult().getParameterMap().keySet().iterator()));
+        assertSame(firstKey(first.getResult().getContexts().get(0).getParameters().keySet().iterator()),
+                firstKey(second.getResult().getContexts().get(0).getParameters().keySet().iterator()));
+        assertNotSame(first.getSessionId(), second.getSessionId());
+        assertEquals("Rome", first.getResult().getContexts().get(0).getParameters().get("city").getAsString());
+    }
+
+    @Test
+    public void testPoolsLazySubTrees() {
+        final StringPool pool = new StringPool();
+        final Gson gson = GsonFactory.getDefaultFactory().createGson(true, pool);
+        final Result first = gson.fromJson(RESPONSE, AIResponse.class).getResult();
+        final Result second = gson.fromJson(RESPONSE, AIResponse.class).getResult();
+
+        assertSame(first.getAction(), second.getAction());
+        assertSame(first.getMetadata().getIntentName(), second.getMetadata().getIntentName());
+    }
+
+    @Test
+    public void testWithoutPool() {
+        assertSame(GsonFactory.getDefaultFactory().getGson(),
+                GsonFactory.getDefaultFactory().createGson(false, null));
+        assertSame(GsonFactory.getDefaultFactory().getLazyGson(),
+                GsonFactory.getDefaultFactory().createGson(true, null));
+    }
+
+    private static String firstKey(final Iterator<String> keys) {
+        return keys.next();
+    }
+
+    @Test
+    public void testResponseGson() {
+        final AIConfiguration config = new AIConfiguration("token");
+        final GsonFactory factory = GsonFactory.getDefaultFactory();
+        assertSame(factory.getGson(), factory.getResponseGson(config));
+
+        config.setStringPool(new StringPool());
+        final Gson pooled = factory.getResponseGson(config);
+        assertNotSame(factory.getGson(), pooled);
+        assertSame(pooled, factory.getResponseGson(config.clone()));
+
+        config.setLazyDecoding(true);
+        assertNotSame(pooled, factory.getResponseGson(config));
+        config.setStringPool(null);
+        assertSame(factory.getLazyGson(), factory.getResponseGson(config));
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.traffic;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceException;
+import ai.api.RequestExtras;
+import ai.api.model.AIRequest;
+import ai.api.util.IOUtils;
+
+public class TrafficRecorderTest {
+
+  private static final String RESPONSE = "{\"id\":\"1\",\"status\":{\"code\":200}}";
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TrafficRecorder recorder = new TrafficRecorder(output);
+    recorder.record(new TrafficRecord(1000, 2000000, "session", "{\"query\":[\"Привет\"]}",
+        Collections.singletonMap("X-Header", "value"), RESPONSE));
+    recorder.record(new TrafficRecord(1001, 3000000, "session", "{}", null, null));
+    recorder.close();
+    assertEquals(2, recorder.getRecordCount());
+
+    byte[] data = output.toByteArray();
+    // the last record is incomplete
+    TrafficReader reader =
+        new TrafficReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 1)));
+    TrafficRecord record = reader.read();
+    assertEquals(1000, record.getTimestampMillis());
+    assertEquals(2000000, record.getLatencyNanos());
+    assertEquals("session", record.getSessionId());
+    assertEquals("{\"query\":[\"Привет\"]}", record.getRequestJson());
+    assertEquals("value", record.getAdditionalHeaders().get("X-Header"));
+    assertEquals(RESPONSE, record.getResponseBody());
+    assertNull(reader.read());
+
+    reader = new TrafficReader(new ByteArrayInputStream(data));
+    reader.read();
+    record = reader.read();
+    assertTrue(record.isFailed());
+    assertTrue(record.getAdditionalHeaders().isEmpty());
+    assertNull(reader.read());
+  }
+
+  @Test
+  public void testAppendToFile() throws IOException {
+    File file = File.createTempFile("traffic", ".bin");
+    try {
+      for (int i = 0; i < 2; i++) {
+        TrafficRecorder recorder = new TrafficRecorder(file);
+        recorder.record(new TrafficRecord(i, i, "session", "{}", null, RESPONSE));
+        recorder.close();
+      }
+      List<TrafficRecord> records = TrafficReader.readAll(file);
+      assertEquals(2, records.size());
+      assertEquals(1, records.get(1).getTimestampMillis());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testRecordAndReplay() throws Exception {
+    final AtomicInteger callCount = new AtomicInteger();
+    final AtomicInteger headerCount = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().close();
+        callCount.incrementAndGet();
+        if ("value".equals(exchange.getRequestHeaders().getFirst("X-Header"))) {
+          headerCount.incrementAndGet();
+        }
+        byte[] data = RESPONSE.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(data);
+        }
+      }
+    });
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      TrafficRecorder recorder = new TrafficRecorder(output);
+      config.setTrafficRecorder(recorder);
+      AIDataService dataService = new AIDataService(config);
+
+      RequestExtras extras = new RequestExtras();
+      Map<String, String> headers = Collections.singletonMap("X-Header", "value");
+      extras.setAdditionalHeaders(headers);
+      for (int i = 0; i < 3; i++) {
+        dataService.request(new AIRequest("Hello " + i), extras);
+      }
+      recorder.close();
+
+      TrafficReader reader = new TrafficReader(new ByteArrayInputStream(output.toByteArray()));
+      TrafficRecord record = reader.read();
+      assertEquals(dataService.getContext().getSessionId(), record.getSessionId());
+      assertTrue(record.getRequestJson().contains("Hello 0"));
+      assertEquals(headers, record.getAdditionalHeaders());
+      assertEquals(RESPONSE, record.getResponseBody());
+      assertTrue(record.getLatencyNanos() > 0);
+      List<TrafficRecord> records = Arrays.asList(record, reader.read(), reader.read());
+      assertNull(reader.read());
+
+      TrafficReplayer replayer = new TrafficReplayer(config);
+      replayer.setSpeed(Double.POSITIVE_INFINITY);
+      ReplayResult result = replayer.replay(records);
+      assertEquals(3, result.getReplayedCount());
+      assertEquals(0, result.getFailedCount());
+      assertEquals(6, callCount.get());
+      assertEquals(6, headerCount.get());
+      assertTrue(result.getReplayLatencyMillis(100) > 0);
+      assertTrue(result.getOriginalLatencyMillis(50) <= result.getOriginalLatencyMillis(100));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testReplayCountsErrorResponses() throws Exception {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String body = IOUtils.readAll(exchange.getRequestBody());
+        String response;
+        int code;
+        if (body.contains("error")) {
+          code = 400;
+          response = "{\"status\":{\"code\":400,\"errorType\":\"bad_request\"}}";
+        } else if (body.contains("broken")) {
+          code = 200;
+          response = "[broken";
+        } else {
+          code = 200;
+          response = RESPONSE;
+        }
+        byte[] data = response.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(data);
+        }
+      }
+    });
+    server.start();
+    try {
+      AIConfiguration config = new AIConfiguration("");
+      config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+      List<TrafficRecord> records = Arrays.asList(
+          new TrafficRecord(1000, 1000000, "session", "{\"query\":[\"ok\"]}", null, RESPONSE),
+          new TrafficRecord(1001, 1000000, "session", "{\"query\":[\"error\"]}", null, RESPONSE),
+          new TrafficRecord(1002, 1000000, "session", "{\"query\":[\"broken\"]}", null, RESPONSE));
+
+      TrafficReplayer replayer = new TrafficReplayer(config);
+      replayer.setSpeed(Double.POSITIVE_INFINITY);
+      ReplayResult result = replayer.replay(records);
+      assertEquals(1, result.getReplayedCount());
+      assertEquals(2, result.getFailedCount());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testFailedQueryRecorded() throws Exception {
+    AIConfiguration config = new AIConfiguration("");
+    config.setServiceUrl("http://localhost:1/");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    config.setTrafficRecorder(new TrafficRecorder(output));
+    try {
+      new AIDataService(config).request(new AIRequest("Hello"));
+      fail("Connection error expected");
+    } catch (AIServiceException e) {
+      // expected
+    }
+    TrafficReader reader = new TrafficReader(new ByteArrayInputStream(output.toByteArray()));
+    assertTrue(reader.read().isFailed());
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+
+  @Test
+  public void testIntern() {
+    StringPool pool = new StringPool();
+    String first = new String("weather.forecast");
+    String second = new String("weather.forecast");
+    assertSame(first, pool.intern(first));
+    assertSame(first, pool.intern(second));
+    assertNull(pool.intern(null));
+    assertEquals(1, pool.size());
+    assertEquals(1, pool.getHitCount());
+    assertEquals(1, pool.getMissCount());
+  }
+
+  @Test
+  public void testBounds() {
+    StringPool pool = new StringPool(2, 5);
+    String longValue = new String("longer");
+    assertSame(longValue, pool.intern(longValue));
+    assertNotSame(longValue, pool.intern(new String("longer")));
+    assertEquals(0, pool.size());
+
+    pool.intern("a");
+    pool.intern("b");
+    String third = new String("c");
+    assertSame(third, pool.intern(third));
+    assertNotSame(third, pool.intern(new String("c")));
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  public void testCollectedStringsLeavePool() throws InterruptedException {
+    StringPool pool = new StringPool(1, 100);
+    pool.intern(new String("collected"));
+    String kept = new String("kept");
+    boolean pooled = false;
+    for (int i = 0; i < 50 && !pooled; i++) {
+      System.gc();
+      Thread.sleep(10);
+      pool.intern(kept);
+      pooled = pool.intern(new String("kept")) == kept;
+    }
+    assertTrue(pooled);
+    assertEquals(1, pool.size());
+  }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.reactive;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import ai.api.AIDataService;
+import ai.api.AIServiceContext;
+import ai.api.RequestExtras;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+/**
+ * Subscription of a conversation subscriber, subscribed itself to the requests of the
+ * conversation.
+ * <p>
+ * All signals only record an event and call {@link #drain()}. The drain loop runs on one thread
+ * at a time, it alone starts turns and signals the subscriber and the upstream subscription.
+ */
+class ConversationSubscription implements Subscription, Subscriber<AIRequest> {
+
+  private final AIDataService dataService;
+  private final ExecutorService executor;
+  private final RequestExtras requestExtras;
+  private final AIServiceContext serviceContext;
+  private final Subscriber<? super AIResponse> downstream;
+
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  private final AtomicLong demand = new AtomicLong();
+
+  private volatile Subscription upstream;
+  private volatile AIRequest pendingRequest;
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamError;
+  private volatile Turn completedTurn;
+  private volatile Throwable protocolError;
+  private volatile boolean cancelled;
+
+  /**
+   * Accessed by the drain loop only
+   */
+  private boolean upstreamRequested;
+  private boolean upstreamCancelled;
+  private Future<?> turnInProgress;
+  private boolean terminated;
+
+  ConversationSubscription(final AIDataService dataService, final ExecutorService executor,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext,
+      final Subscriber<? super AIResponse> downstream) {
+    this.dataService = dataService;
+    this.executor = executor;
+    this.requestExtras = requestExtras;
+    this.serviceContext = serviceContext;
+    this.downstream = downstream;
+  }
+
+  @Override
+  public void request(final long n) {
+    if (n <= 0) {
+      protocolError = new IllegalArgumentException("Requested count must be positive: " + n);
+    } else {
+      long current;
+      long updated;
+      do {
+        current = demand.get();
+        updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!demand.compareAndSet(current, updated));
+    }
+    drain();
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(final Subscription subscription) {
+    if (subscription == null) {
+      throw new NullPointerException("subscription must not be null");
+    }
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(final AIRequest request) {
+    if (request == null) {
+      throw new NullPointerException("request must not be null");
+    }
+    pendingRequest = request;
+    drain();
+  }
+
+  @Override
+  public void onError(final Throwable error) {
+    if (error == null) {
+      throw new NullPointerException("error must not be null");
+    }
+    upstreamError = error;
+    upstreamDone = true;
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    drain();
+  }
+
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      drainLoop();
+      missed = drainRequests.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void drainLoop() {
+    if (terminated) {
+      // The upstream may subscribe after the conversation ended
+      cancelUpstream();
+      return;
+    }
+    if (cancelled) {
+      stop();
+      return;
+    }
+    if (protocolError != null) {
+      stop();
+      downstream.onError(protocolError);
+      return;
+    }
+    if (upstreamError != null) {
+      stop();
+      downstream.onError(upstreamError);
+      return;
+    }
+
+    final Turn turn = completedTurn;
+    if (turn != null) {
+      completedTurn = null;
+      turnInProgress = null;
+      if (turn.error != null) {
+        stop();
+        downstream.onError(turn.error);
+        return;
+      }
+      if (demand.get() != Long.MAX_VALUE) {
+        demand.decrementAndGet();
+      }
+      downstream.onNext(turn.response);
+      if (terminated || cancelled) {
+        return;
+      }
+    }
+
+    if (turnInProgress != null) {
+      return;
+    }
+    final AIRequest request = pendingRequest;
+    if (request != null) {
+      pendingRequest = null;
+      upstreamRequested = false;
+      startTurn(request);
+      return;
+    }
+    if (upstreamDone) {
+      terminated = true;
+      downstream.onComplete();
+      return;
+    }
+    final Subscription subscription = upstream;
+    if (!upstreamRequested && subscription != null && demand.get() > 0) {
+      upstreamRequested = true;
+      subscription.request(1);
+    }
+  }
+
+  private void startTurn(final AIRequest request) {
+    final Turn turn = new Turn();
+    try {
+      turnInProgress = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            turn.response = dataService.request(request, requestExtras, serviceContext);
+          } catch (final Throwable e) {
+            turn.error = e;
+          }
+          completedTurn = turn;
+          drain();
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      stop();
+      downstream.onError(e);
+    }
+  }
+
+  /**
+   * Cancel the upstream and the turn in progress
+   */
+  private void stop() {
+    terminated = true;
+    cancelUpstream();
+    if (turnInProgress != null) {
+      turnInProgress.cancel(true);
+      turnInProgress = null;
+    }
+  }
+
+  private void cancelUpstream() {
+    final Subscription subscription = upstream;
+    if (subscription != null && !upstreamCancelled) {
+      upstreamCancelled = true;
+      subscription.cancel();
+    }
+  }
+
+  /**
+   * Result of a blocking call, published by the volatile write of <code>completedTurn</code>
+   */
+  private static class Turn {
+    AIResponse response;
+    Throwable error;
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.reactive;
+
+import java.util.concurrent.ExecutorService;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import ai.api.AIDataService;
+import ai.api.AIServiceContext;
+import ai.api.RequestExtras;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.util.VirtualThreads;
+
+/**
+ * Reactive Streams API of {@link AIDataService}.
+ * <p>
+ * A conversation publisher takes the requests of one session and emits a response for each of
+ * them in the same order. A request is taken from upstream only when the subscriber has demand
+ * for its response, and the next one only after the previous turn completed, so turns of a
+ * session never overlap. Requests fail the conversation with
+ * {@link ai.api.AIServiceException} in the same cases the blocking call throws it.
+ * <p>
+ * Turns run as blocking calls on an executor, by default one virtual thread per turn on Java 21
+ * and newer. Cancelling the subscription cancels the upstream and interrupts the turn in
+ * progress. <code>NettyTransport</code> and <code>JdkHttpClientTransport</code> abort the
+ * request on interruption, the default transport lets it finish and drops the response.
+ * <p>
+ * <pre>
+ * ReactiveAIDataService service = new ReactiveAIDataService(new AIDataService(config));
+ * Flux&lt;AIResponse&gt; responses = Flux.from(service.conversation(requests, null, sessionContext));
+ * </pre>
+ */
+public class ReactiveAIDataService {
+
+  private static final String THREAD_NAME_PREFIX = "libai-reactive-";
+
+  private final AIDataService dataService;
+  private final ExecutorService executor;
+  private final boolean ownExecutor;
+
+  /**
+   * Create service running turns on virtual threads if available
+   *
+   * @param dataService Service making blocking calls. Cannot be <code>null</code>
+   */
+  public ReactiveAIDataService(final AIDataService dataService) {
+    this(dataService, VirtualThreads.newThreadPerTaskExecutor(THREAD_NAME_PREFIX), true);
+  }
+
+  /**
+   * @param dataService Service making blocking calls. Cannot be <code>null</code>
+   * @param executor Executor running the turns. Not shut down by {@link #shutdown()}. Cannot be
+   *        <code>null</code>
+   */
+  public ReactiveAIDataService(final AIDataService dataService, final ExecutorService executor) {
+    this(dataService, executor, false);
+  }
+
+  private ReactiveAIDataService(final AIDataService dataService, final ExecutorService executor,
+      final boolean ownExecutor) {
+    if (dataService == null) {
+      throw new IllegalArgumentException("dataService should not be null");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("executor should not be null");
+    }
+    this.dataService = dataService;
+    this.executor = executor;
+    this.ownExecutor = ownExecutor;
+  }
+
+  /**
+   * Create publisher of a single turn
+   *
+   * @param request Request object to the service. Cannot be <code>null</code>
+   * @return Publisher emitting the response and completing. Each subscription makes a new request
+   */
+  public Publisher<AIResponse> request(final AIRequest request) {
+    return request(request, null, null);
+  }
+
+  /**
+   * Create publisher of a single turn
+   *
+   * @param request Request object to the service. Cannot be <code>null</code>
+   * @param requestExtras Object that can hold additional contexts, entities and headers
+   * @param serviceContext Custom service context that should be used instead of the default
+   * @return Publisher emitting the response and completing. Each subscription makes a new request
+   */
+  public Publisher<AIResponse> request(final AIRequest request, final RequestExtras requestExtras,
+      final AIServiceContext serviceContext) {
+    if (request == null) {
+      throw new IllegalArgumentException("Request argument must not be null");
+    }
+    return conversation(new SingleRequestPublisher(request), requestExtras, serviceContext);
+  }
+
+  /**
+   * Create publisher of a conversation in the default context of the data service
+   *
+   * @param requests Requests of the conversation. Cannot be <code>null</code>
+   * @return Publisher emitting a response for each request. Each subscription subscribes to the
+   *         requests again
+   */
+  public Publisher<AIResponse> conversation(final Publisher<AIRequest> requests) {
+    return conversation(requests, null, null);
+  }
+
+  /**
+   * Create publisher of a conversation
+   *
+   * @param requests Requests of the conversation. Cannot be <code>null</code>
+   * @param requestExtras Object that can hold additional contexts, entities and headers sent with
+   *        every request
+   * @param serviceContext Context of the session. If <code>null</code> then the default context
+   *        of the data service is used
+   * @return Publisher emitting a response for each request. Each subscription subscribes to the
+   *         requests again
+   */
+  public Publisher<AIResponse> conversation(final Publisher<AIRequest> requests,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext) {
+    if (requests == null) {
+      throw new IllegalArgumentException("requests should not be null");
+    }
+    return new Publisher<AIResponse>() {
+      @Override
+      public void subscribe(final Subscriber<? super AIResponse> subscriber) {
+        if (subscriber == null) {
+          throw new NullPointerException("subscriber must not be null");
+        }
+        final ConversationSubscription subscription = new ConversationSubscription(dataService,
+            executor, requestExtras, serviceContext, subscriber);
+        subscriber.onSubscribe(subscription);
+        requests.subscribe(subscription);
+      }
+    };
+  }
+
+  public AIDataService getDataService() {
+    return dataService;
+  }
+
+  /**
+   * Stop starting turns. Turns in progress complete, conversations waiting for their next turn
+   * fail with {@link java.util.concurrent.RejectedExecutionException}. Does nothing if the
+   * executor was passed to the constructor.
+   */
+  public void shutdown() {
+    if (ownExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Publisher of one request
+   */
+  private static class SingleRequestPublisher implements Publisher<AIRequest> {
+
+    private final AIRequest request;
+
+    SingleRequestPublisher(final AIRequest request) {
+      this.request = request;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super AIRequest> subscriber) {
+      if (subscriber == null) {
+        throw new NullPointerException("subscriber must not be null");
+      }
+      subscriber.onSubscribe(new Subscription() {
+        private boolean done;
+
+        @Override
+        public void request(final long n) {
+          if (done) {
+            return;
+          }
+          done = true;
+          if (n <= 0) {
+            subscriber.onError(
+                new IllegalArgumentException("Requested count must be positive: " + n));
+            return;
+          }
+          subscriber.onNext(request);
+          subscriber.onComplete();
+        }
+
+        @Override
+        public void cancel() {
+          done = true;
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.reactive;
+
+import java.io.IOException;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+
+import ai.api.model.AIResponse;
+
+/**
+ * Reactive Streams specification rules of the conversation publisher
+ */
+public class ConversationPublisherTest extends PublisherVerification<AIResponse> {
+
+  private final ReactiveAIDataService service =
+      new ReactiveAIDataService(ReactiveAIDataServiceTest.createDataService());
+
+  public ConversationPublisherTest() {
+    super(new TestEnvironment(500));
+  }
+
+  @AfterClass
+  public void shutdownService() {
+    service.shutdown();
+  }
+
+  @Override
+  public Publisher<AIResponse> createPublisher(final long elements) {
+    return service.conversation(new RequestPublisher(elements));
+  }
+
+  @Override
+  public Publisher<AIResponse> createFailedPublisher() {
+    return service.conversation(new RequestPublisher(new IOException("Upstream failed")));
+  }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.reactive;
+
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceException;
+import ai.api.http.HttpTransport;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+
+public class ReactiveAIDataServiceTest {
+
+  private static final String RESPONSE = "{\"id\":\"1\",\"result\":{\"action\":\"weather\"},"
+      + "\"status\":{\"code\":200,\"errorType\":\"success\"}}";
+
+  private ExecutorService executor;
+
+  @BeforeMethod
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    ReactiveAIDataService service = new ReactiveAIDataService(createDataService(), executor);
+    RequestPublisher requests = new RequestPublisher(3);
+    TestSubscriber subscriber = new TestSubscriber();
+    service.conversation(requests).subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    subscriber.awaitResponses(1);
+    Thread.sleep(100);
+    assertEquals(subscriber.getResponses().size(), 1);
+    assertEquals(requests.getRequestedCount(), 1);
+    assertFalse(subscriber.isDone());
+
+    subscriber.subscription.request(2);
+    assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+    assertEquals(subscriber.getResponses().size(), 3);
+    assertNull(subscriber.error);
+    assertEquals(subscriber.getResponses().get(0).getResult().getAction(), "weather");
+  }
+
+  @Test
+  public void testCancelTurn() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    ReactiveAIDataService service = new ReactiveAIDataService(
+        createDataService(new HttpTransport() {
+          @Override
+          public Response execute(String method, URL url, Map<String, String> headers,
+              String body, int timeoutMillis) throws IOException {
+            started.countDown();
+            try {
+              Thread.sleep(10000);
+            } catch (InterruptedException e) {
+              interrupted.countDown();
+              throw new InterruptedIOException();
+            }
+            return new Response(200, RESPONSE);
+          }
+        }), executor);
+    RequestPublisher requests = new RequestPublisher(2);
+    TestSubscriber subscriber = new TestSubscriber();
+    service.conversation(requests).subscribe(subscriber);
+
+    subscriber.subscription.request(2);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    subscriber.subscription.cancel();
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    assertTrue(requests.isCancelled());
+    Thread.sleep(100);
+    assertTrue(subscriber.getResponses().isEmpty());
+    assertFalse(subscriber.isDone());
+  }
+
+  @Test
+  public void testUpstreamError() throws Exception {
+    ReactiveAIDataService service = new ReactiveAIDataService(createDataService(), executor);
+    IOException error = new IOException("Upstream failed");
+    TestSubscriber subscriber = new TestSubscriber();
+    service.conversation(new RequestPublisher(error)).subscribe(subscriber);
+
+    assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+    assertSame(subscriber.error, error);
+    assertTrue(subscriber.getResponses().isEmpty());
+  }
+
+  @Test
+  public void testServiceError() throws Exception {
+    ReactiveAIDataService service = new ReactiveAIDataService(
+        createDataService(new HttpTransport() {
+          @Override
+          public Response execute(String method, URL url, Map<String, String> headers,
+              String body, int timeoutMillis) {
+            return new Response(400, "{\"status\":{\"code\":400,\"errorType\":\"bad_request\"}}");
+          }
+        }), executor);
+    RequestPublisher requests = new RequestPublisher(2);
+    TestSubscriber subscriber = new TestSubscriber();
+    service.conversation(requests).subscribe(subscriber);
+    subscriber.subscription.request(2);
+
+    assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+    assertTrue(subscriber.error instanceof AIServiceException);
+    assertTrue(requests.isCancelled());
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    ReactiveAIDataService service = new ReactiveAIDataService(createDataService());
+    service.shutdown();
+    TestSubscriber subscriber = new TestSubscriber();
+    service.request(new AIRequest("Hello")).subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+    assertTrue(subscriber.error instanceof RejectedExecutionException);
+
+    new ReactiveAIDataService(createDataService(), executor).shutdown();
+    assertFalse(executor.isShutdown());
+  }
+
+  static AIDataService createDataService() {
+    return createDataService(new HttpTransport() {
+      @Override
+      public Response execute(String method, URL url, Map<String, String> headers, String body,
+          int timeoutMillis) {
+        return new Response(200, RESPONSE);
+      }
+    });
+  }
+
+  static AIDataService createDataService(HttpTransport transport) {
+    AIConfiguration config = new AIConfiguration("token");
+    config.setTransport(transport);
+    return new AIDataService(config);
+  }
+
+  /**
+   * Subscriber recording the signals of a conversation
+   */
+  private static class TestSubscriber implements Subscriber<AIResponse> {
+
+    private final List<AIResponse> responses = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Subscription subscription;
+    private volatile Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public synchronized void onNext(AIResponse response) {
+      responses.add(response);
+      notifyAll();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+
+    synchronized List<AIResponse> getResponses() {
+      return new ArrayList<>(responses);
+    }
+
+    synchronized void awaitResponses(int count) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (responses.size() < count) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        assertTrue(remaining > 0, "Responses not received in time");
+        wait(remaining);
+      }
+    }
+
+    boolean isDone() {
+      return done.getCount() == 0;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import ai.api.model.AIRequest;
+
+/**
+ * Upstream of a test conversation emitting the given number of requests or failing right away
+ */
+class RequestPublisher implements Publisher<AIRequest> {
+
+  private final long count;
+  private final Throwable error;
+
+  private final AtomicLong requestedCount = new AtomicLong();
+  private volatile boolean cancelled;
+
+  RequestPublisher(final long count) {
+    this.count = count;
+    this.error = null;
+  }
+
+  RequestPublisher(final Throwable error) {
+    this.count = 0;
+    this.error = error;
+  }
+
+  /**
+   * @return Total count of requests asked for by the conversation
+   */
+  long getRequestedCount() {
+    return requestedCount.get();
+  }
+
+  boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public void subscribe(final Subscriber<? super AIRequest> subscriber) {
+    final RequestSubscription subscription = new RequestSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    if (error != null) {
+      subscription.done = true;
+      subscriber.onError(error);
+    } else if (count == 0) {
+      subscription.done = true;
+      subscriber.onComplete();
+    }
+  }
+
+  private class RequestSubscription implements Subscription {
+
+    private final Subscriber<? super AIRequest> subscriber;
+
+    private volatile boolean done;
+    private long demand;
+    private long emitted;
+    private boolean emitting;
+
+    RequestSubscription(final Subscriber<? super AIRequest> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public synchronized void request(final long n) {
+      if (done) {
+        return;
+      }
+      requestedCount.addAndGet(n);
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      if (emitting) {
+        // Requested again from onNext
+        return;
+      }
+      emitting = true;
+      while (!done && demand > 0 && emitted < count) {
+        demand--;
+        emitted++;
+        subscriber.onNext(new AIRequest("Turn " + emitted));
+      }
+      if (!done && emitted == count) {
+        done = true;
+        subscriber.onComplete();
+      }
+      emitting = false;
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+      cancelled = true;
+    }
+  }
+}
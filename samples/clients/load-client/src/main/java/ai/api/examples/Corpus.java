@@ -0,0 +1,85 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utterances sent by the load client, grouped into conversation flows.
+ * <p>
+ * Corpus file contains one utterance per line. Flows are separated by blank lines, every flow is
+ * sent in order within one session, so the agent contexts work as in a real conversation. Lines
+ * starting with <code>#</code> are ignored.
+ */
+public class Corpus {
+
+  private final List<List<String>> flows;
+  private final AtomicInteger nextFlow = new AtomicInteger();
+
+  public Corpus(final List<List<String>> flows) {
+    if (flows.isEmpty()) {
+      throw new IllegalArgumentException("Corpus contains no utterances");
+    }
+    this.flows = flows;
+  }
+
+  /**
+   * Read corpus from a text source
+   */
+  public static Corpus read(final Reader source) throws IOException {
+    final List<List<String>> flows = new ArrayList<>();
+    List<String> flow = new ArrayList<>();
+    final BufferedReader reader = new BufferedReader(source);
+    String line;
+    while (null != (line = reader.readLine())) {
+      line = line.trim();
+      if (line.startsWith("#")) {
+        continue;
+      }
+      if (line.isEmpty()) {
+        if (!flow.isEmpty()) {
+          flows.add(Collections.unmodifiableList(flow));
+          flow = new ArrayList<>();
+        }
+      } else {
+        flow.add(line);
+      }
+    }
+    if (!flow.isEmpty()) {
+      flows.add(Collections.unmodifiableList(flow));
+    }
+    return new Corpus(flows);
+  }
+
+  /**
+   * Get the next flow. Flows are handed out round robin to all virtual users.
+   */
+  public List<String> nextFlow() {
+    final int index = (nextFlow.getAndIncrement() & Integer.MAX_VALUE) % flows.size();
+    return flows.get(index);
+  }
+
+  public int getFlowCount() {
+    return flows.size();
+  }
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.examples;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import ai.api.AIConfiguration;
+import ai.api.AIDataService;
+import ai.api.AIServiceContext;
+import ai.api.AIServiceContextBuilder;
+import ai.api.AIServiceException;
+import ai.api.model.AIRequest;
+
+/**
+ * Load client sends utterances from a corpus file to the agent with a fixed arrival rate.
+ * <p>
+ * The load is open-loop: request start times are scheduled in advance and do not depend on
+ * response times. A request which could not be started in time because all virtual users were
+ * busy is measured from its scheduled start, so a slow service is not hidden by a slow client
+ * (coordinated omission).
+ * <p>
+ * Every virtual user is a thread with its own session. It sends the utterances of a corpus flow
+ * one by one and starts a new session with the next flow when the current one is finished.
+ */
+public class LoadClientApplication {
+
+  /**
+   * Default exit code in case of error
+   */
+  private static final int ERROR_EXIT_CODE = 1;
+
+  private static final int DEFAULT_RATE = 10;
+  private static final int DEFAULT_DURATION_SECONDS = 60;
+  private static final int DEFAULT_USERS = 32;
+  private static final int REPORT_INTERVAL_SECONDS = 1;
+  private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+  private static final double MICROS_PER_MILLI = 1000.0;
+
+  private final AIDataService dataService;
+  private final Corpus corpus;
+  private final int users;
+
+  private final Recorder responseTimeRecorder = new Recorder(3);
+  private final Recorder serviceTimeRecorder = new Recorder(3);
+  private final AtomicLong errorCount = new AtomicLong();
+  private volatile long measureStartNanos;
+
+  private final ThreadLocal<VirtualUser> virtualUsers = new ThreadLocal<VirtualUser>() {
+    @Override
+    protected VirtualUser initialValue() {
+      return new VirtualUser();
+    }
+  };
+
+  public LoadClientApplication(final AIDataService dataService, final Corpus corpus,
+      final int users) {
+    this.dataService = dataService;
+    this.corpus = corpus;
+    this.users = users;
+  }
+
+  /**
+   * @param args List of parameters:<br>
+   *        First parameter should be valid api key<br>
+   *        The following parameters are options, see {@link #showHelp(String, int)}
+   */
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      showHelp("Please specify API key", ERROR_EXIT_CODE);
+    }
+
+    final Map<String, String> options = new HashMap<>();
+    for (int i = 1; i < args.length; i += 2) {
+      if (!args[i].startsWith("--") || i + 1 >= args.length) {
+        showHelp("Unexpected argument: " + args[i], ERROR_EXIT_CODE);
+      }
+      options.put(args[i].substring(2), args[i + 1]);
+    }
+    if (!options.containsKey("corpus")) {
+      showHelp("Please specify corpus file", ERROR_EXIT_CODE);
+    }
+
+    final int users = getInt(options, "users", DEFAULT_USERS);
+    if (System.getProperty("http.maxConnections") == null) {
+      // Keep-alive cache holds 5 connections by default, the rest would be reopened every time
+      System.setProperty("http.maxConnections", Integer.toString(users));
+    }
+
+    AIConfiguration configuration = new AIConfiguration(args[0]);
+    if (options.containsKey("url")) {
+      configuration.setServiceUrl(options.get("url"));
+    }
+
+    HistogramLogWriter logWriter = null;
+    try (InputStreamReader reader = new InputStreamReader(
+        new FileInputStream(new File(options.get("corpus"))), StandardCharsets.UTF_8)) {
+      final Corpus corpus = Corpus.read(reader);
+      if (options.containsKey("hdr-log")) {
+        logWriter = new HistogramLogWriter(new File(options.get("hdr-log")));
+      }
+
+      LoadClientApplication application =
+          new LoadClientApplication(new AIDataService(configuration), corpus, users);
+      application.run(getInt(options, "rate", DEFAULT_RATE), getInt(options, "warmup", 0),
+          getInt(options, "duration", DEFAULT_DURATION_SECONDS), logWriter, System.out);
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      System.exit(ERROR_EXIT_CODE);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (logWriter != null) {
+        logWriter.close();
+      }
+    }
+  }
+
+  /**
+   * Send requests with the given rate and print latency statistics
+   *
+   * @param rate Requests per second
+   * @param warmupSeconds Time at the start of the run which is not measured
+   * @param durationSeconds Measured time
+   * @param logWriter If not <code>null</code>, interval histograms are written there
+   * @param out Report destination
+   */
+  public void run(final int rate, final int warmupSeconds, final int durationSeconds,
+      final HistogramLogWriter logWriter, final PrintStream out) throws InterruptedException {
+    if (rate < 1) {
+      throw new IllegalArgumentException("rate must be positive");
+    }
+
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(users, users, 0,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new VirtualUserThreadFactory());
+
+    final double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / rate;
+    final long startNanos = System.nanoTime();
+    measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+    final long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+    final long reportIntervalNanos = TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+
+    final Report report = new Report(warmupSeconds, logWriter, out);
+    out.printf("Sending %d requests per second with %d virtual users, %d flows in corpus%n", rate,
+        users, corpus.getFlowCount());
+
+    long nextReportNanos = measureStartNanos + reportIntervalNanos;
+    for (long i = 0;; i++) {
+      final long intendedStartNanos = startNanos + (long) (i * intervalNanos);
+      if (intendedStartNanos >= endNanos) {
+        break;
+      }
+      long now;
+      while ((now = System.nanoTime()) < intendedStartNanos) {
+        if (now >= nextReportNanos) {
+          report.interval(executor.getQueue().size());
+          nextReportNanos += reportIntervalNanos;
+        }
+        LockSupport.parkNanos(Math.min(intendedStartNanos, nextReportNanos) - now);
+      }
+      executor.execute(new Arrival(intendedStartNanos));
+    }
+
+    executor.shutdown();
+    if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      out.println("Some requests did not complete in " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+      executor.shutdownNow();
+    }
+    report.interval(0);
+    report.summary();
+  }
+
+  private static int getInt(final Map<String, String> options, final String name,
+      final int defaultValue) {
+    final String value = options.get(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  /**
+   * Session and flow position of a virtual user
+   */
+  private class VirtualUser {
+
+    private List<String> flow;
+    private int position;
+    private AIServiceContext serviceContext;
+
+    String nextUtterance() {
+      if (flow == null || position >= flow.size()) {
+        flow = corpus.nextFlow();
+        position = 0;
+        serviceContext = AIServiceContextBuilder.buildFromSessionId(UUID.randomUUID().toString());
+      }
+      return flow.get(position++);
+    }
+  }
+
+  /**
+   * Request scheduled to start at a given time
+   */
+  private class Arrival implements Runnable {
+
+    private final long intendedStartNanos;
+
+    Arrival(final long intendedStartNanos) {
+      this.intendedStartNanos = intendedStartNanos;
+    }
+
+    @Override
+    public void run() {
+      final VirtualUser user = virtualUsers.get();
+      final AIRequest request = new AIRequest(user.nextUtterance());
+      final long startNanos = System.nanoTime();
+      boolean failed = false;
+      try {
+        dataService.request(request, user.serviceContext);
+      } catch (AIServiceException | RuntimeException e) {
+        failed = true;
+      }
+      final long endNanos = System.nanoTime();
+
+      if (intendedStartNanos < measureStartNanos) {
+        return;
+      }
+      responseTimeRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(endNanos - intendedStartNanos));
+      serviceTimeRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+      if (failed) {
+        errorCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Collects interval histograms and prints them
+   */
+  private class Report {
+
+    private final HistogramLogWriter logWriter;
+    private final PrintStream out;
+
+    private final Histogram totalResponseTime = new Histogram(3);
+    private final Histogram totalServiceTime = new Histogram(3);
+    private Histogram intervalResponseTime;
+    private Histogram intervalServiceTime;
+    private final long measureStartMillis;
+    private long reportedErrors;
+
+    Report(final int warmupSeconds, final HistogramLogWriter logWriter, final PrintStream out) {
+      this.logWriter = logWriter;
+      this.out = out;
+      final long now = System.currentTimeMillis();
+      measureStartMillis = now + TimeUnit.SECONDS.toMillis(warmupSeconds);
+      if (logWriter != null) {
+        logWriter.outputLogFormatVersion();
+        logWriter.outputStartTime(now);
+        logWriter.setBaseTime(now);
+        logWriter.outputLegend();
+      }
+    }
+
+    void interval(final int backlog) {
+      intervalResponseTime = responseTimeRecorder.getIntervalHistogram(intervalResponseTime);
+      intervalServiceTime = serviceTimeRecorder.getIntervalHistogram(intervalServiceTime);
+      totalResponseTime.add(intervalResponseTime);
+      totalServiceTime.add(intervalServiceTime);
+      if (logWriter != null) {
+        logWriter.outputIntervalHistogram(intervalResponseTime);
+      }
+
+      final long errors = errorCount.get();
+      out.printf("%6d requests %5d errors   p50 %8.2f ms   p99 %8.2f ms   max %8.2f ms"
+          + "   backlog %d%n",
+          intervalResponseTime.getTotalCount(), errors - reportedErrors,
+          intervalResponseTime.getValueAtPercentile(50) / MICROS_PER_MILLI,
+          intervalResponseTime.getValueAtPercentile(99) / MICROS_PER_MILLI,
+          intervalResponseTime.getMaxValue() / MICROS_PER_MILLI, backlog);
+      reportedErrors = errors;
+    }
+
+    void summary() {
+      final double seconds = (System.currentTimeMillis() - measureStartMillis) / 1000.0;
+      out.println();
+      out.printf("%d requests, %d errors, %.1f requests per second%n",
+          totalResponseTime.getTotalCount(), errorCount.get(),
+          seconds > 0 ? totalResponseTime.getTotalCount() / seconds : 0);
+      out.printf("Service time, ms: p50 %.2f, p99 %.2f, max %.2f%n",
+          totalServiceTime.getValueAtPercentile(50) / MICROS_PER_MILLI,
+          totalServiceTime.getValueAtPercentile(99) / MICROS_PER_MILLI,
+          totalServiceTime.getMaxValue() / MICROS_PER_MILLI);
+      out.println();
+      out.println("Response time from scheduled start, ms:");
+      totalResponseTime.outputPercentileDistribution(out, MICROS_PER_MILLI);
+    }
+  }
+
+  private static class VirtualUserThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "virtual-user-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Output application usage information to stdout and exit. No return from function.
+   *
+   * @param errorMessage Extra error message. Would be printed to stderr if not null and not empty.
+   *
+   */
+  private static void showHelp(String errorMessage, int exitCode) {
+    if (errorMessage != null && errorMessage.length() > 0) {
+      System.err.println(errorMessage);
+      System.err.println();
+    }
+
+    System.out.println("Usage: APIKEY --corpus FILE [OPTIONS]");
+    System.out.println();
+    System.out.println("APIKEY              Your unique application key");
+    System.out.println("                    See https://docs.api.ai/docs/key-concepts for details");
+    System.out.println("--corpus FILE       Utterances, one per line. Blank lines separate");
+    System.out.println("                    conversation flows sent within one session");
+    System.out.println("--rate N            Requests per second, " + DEFAULT_RATE + " by default");
+    System.out.println("--duration SECONDS  Measured time, " + DEFAULT_DURATION_SECONDS
+        + " by default");
+    System.out.println("--warmup SECONDS    Time before measuring starts, 0 by default");
+    System.out.println("--users N           Count of virtual users, " + DEFAULT_USERS
+        + " by default");
+    System.out.println("--url URL           Service url, e.g. of a local stub server");
+    System.out.println("--hdr-log FILE      Write interval latency histograms in HdrHistogram");
+    System.out.println("                    log format");
+    System.out.println();
+    System.exit(exitCode);
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.transport.jdk11;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import ai.api.http.Compression;
+import ai.api.http.HttpTransport;
+import ai.api.util.IOUtils;
+
+/**
+ * Transport based on {@link HttpClient} of Java 11.
+ * <p>
+ * HTTP/2 is negotiated with the service, so simultaneous requests from all threads are multiplexed
+ * over a few connections instead of holding a connection each. Plain http urls, e.g. of local
+ * test servers, fall back to HTTP/1.1.
+ * <p>
+ * Responses are requested compressed and decompressed by the transport, the client does not
+ * decompress them itself. Request bodies are compressed and sizes are counted if a
+ * {@link Compression} is set by {@link #setCompression(Compression)}.
+ * <p>
+ * <pre>
+ * AIConfiguration config = new AIConfiguration(accessToken);
+ * config.setTransport(new JdkHttpClientTransport());
+ * </pre>
+ */
+public class JdkHttpClientTransport implements HttpTransport {
+
+  private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+  /**
+   * Headers set by the client itself, it rejects requests with them
+   */
+  private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(
+      Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+
+  private final HttpClient client;
+  private final Duration requestTimeout;
+  private volatile Compression compression;
+
+  /**
+   * Create transport with a new HTTP/2 client
+   */
+  public JdkHttpClientTransport() {
+    this(HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(DEFAULT_CONNECT_TIMEOUT)
+        .build(), null);
+  }
+
+  /**
+   * @param client Configured client, e.g. with a proxy selector or an executor. Cannot be
+   *        <code>null</code>
+   * @param requestTimeout Time to wait for a response. If <code>null</code> then requests have no
+   *        timeout except the call deadline
+   */
+  public JdkHttpClientTransport(final HttpClient client, final Duration requestTimeout) {
+    if (client == null) {
+      throw new IllegalArgumentException("client should not be null");
+    }
+    this.client = client;
+    this.requestTimeout = requestTimeout;
+  }
+
+  @Override
+  public Response execute(final String method, final URL url, final Map<String, String> headers,
+      final String body, final int timeoutMillis) throws IOException {
+    try {
+      return toResponse(client.send(createRequest(method, url, headers, body, timeoutMillis),
+          HttpResponse.BodyHandlers.ofInputStream()));
+    } catch (final UncheckedIOException e) {
+      throw e.getCause();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      final InterruptedIOException error = new InterruptedIOException("Request interrupted");
+      error.initCause(e);
+      throw error;
+    }
+  }
+
+  /**
+   * Send a request without blocking the calling thread
+   *
+   * @see #execute(String, URL, Map, String, int)
+   * @return Future completed with the response, or exceptionally with {@link IOException} if no
+   *         response was received
+   */
+  public CompletableFuture<Response> executeAsync(final String method, final URL url,
+      final Map<String, String> headers, final String body, final int timeoutMillis)
+      throws IOException {
+    return client.sendAsync(createRequest(method, url, headers, body, timeoutMillis),
+        HttpResponse.BodyHandlers.ofByteArray())
+        .thenCompose(response -> {
+          try {
+            return CompletableFuture.completedFuture(toResponse(response.statusCode(),
+                response.headers(), new ByteArrayInputStream(response.body())));
+          } catch (final UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+          }
+        });
+  }
+
+  public HttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * Get compression of request bodies and counter of compressed sizes
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Set compression of request bodies and counter of compressed sizes, usually the one of
+   * <code>AIConfiguration</code>. Responses are requested compressed regardless of it.
+   *
+   * @param compression If <code>null</code> then request bodies are sent uncompressed
+   */
+  public void setCompression(final Compression compression) {
+    this.compression = compression;
+  }
+
+  private HttpRequest createRequest(final String method, final URL url,
+      final Map<String, String> headers, final String body, final int timeoutMillis)
+      throws IOException {
+    final HttpRequest.Builder builder;
+    try {
+      builder = HttpRequest.newBuilder(url.toURI());
+    } catch (final URISyntaxException e) {
+      throw new IOException("Invalid request url " + url, e);
+    }
+    final Compression compression = this.compression;
+    if (body != null) {
+      final byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+      byte[] content = bodyBytes;
+      if (compression != null && compression.shouldCompress(bodyBytes.length)) {
+        content = Compression.gzip(bodyBytes);
+        builder.header("Content-Encoding", "gzip");
+      }
+      if (compression != null) {
+        compression.onRequest(bodyBytes.length, content.length);
+      }
+      builder.method(method, HttpRequest.BodyPublishers.ofByteArray(content));
+    } else {
+      builder.method(method, HttpRequest.BodyPublishers.noBody());
+    }
+    if (!headers.containsKey("Accept-Encoding")) {
+      builder.header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+    }
+    for (final Map.Entry<String, String> header : headers.entrySet()) {
+      if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+        builder.header(header.getKey(), header.getValue());
+      }
+    }
+    Duration timeout = requestTimeout;
+    if (timeoutMillis > 0) {
+      final Duration callTimeout = Duration.ofMillis(timeoutMillis);
+      timeout = timeout == null || callTimeout.compareTo(timeout) < 0 ? callTimeout : timeout;
+    }
+    if (timeout != null) {
+      builder.timeout(timeout);
+    }
+    return builder.build();
+  }
+
+  private Response toResponse(final HttpResponse<InputStream> response) {
+    return toResponse(response.statusCode(), response.headers(), response.body());
+  }
+
+  /**
+   * @throws UncheckedIOException If the body could not be read or decompressed
+   */
+  private Response toResponse(final int code, final HttpHeaders headers,
+      final InputStream bodyStream) {
+    final Compression.CountingInputStream receivedStream =
+        new Compression.CountingInputStream(bodyStream);
+    try (Compression.CountingInputStream inputStream = new Compression.CountingInputStream(
+        Compression.decode(receivedStream, headers.firstValue("Content-Encoding").orElse(null)))) {
+      final String body = IOUtils.readAll(inputStream, StandardCharsets.UTF_8);
+      final Compression compression = this.compression;
+      if (compression != null) {
+        compression.onResponse(inputStream.getCount(), receivedStream.getCount());
+      }
+      return new Response(code, body.isEmpty() ? null : body);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
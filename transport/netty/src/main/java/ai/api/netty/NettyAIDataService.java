@@ -0,0 +1,527 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.netty;
+
+import java.lang.reflect.Type;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import ai.api.AIConfiguration;
+import ai.api.AIServiceContext;
+import ai.api.AIServiceContextBuilder;
+import ai.api.AIServiceException;
+import ai.api.AIServiceTimeoutException;
+import ai.api.Deadline;
+import ai.api.GsonFactory;
+import ai.api.RequestExtras;
+import ai.api.http.HttpTransport.Response;
+import ai.api.local.LocalResponder;
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import ai.api.model.Entity;
+import ai.api.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * Non-blocking counterpart of <code>AIDataService</code>. Every call returns immediately with a
+ * future completed on an event loop of the {@link NettyTransport}, failed with
+ * {@link AIServiceException} in the same cases the blocking call throws it. Cancelling a future
+ * closes the connection of its request.
+ * <p>
+ * Listeners run on event loop threads and must not block. Retry policy, limiters and circuit
+ * breaker of the configuration are not applied, they work with blocking calls only. The request
+ * timeout of the configuration and the deadline of request extras are applied, futures fail with
+ * <code>AIServiceTimeoutException</code> when they pass. The fallback response is not used.
+ */
+public class NettyAIDataService {
+
+  private static final Gson GSON = GsonFactory.getDefaultFactory().getGson();
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final Type CONTEXT_LIST_TYPE = new TypeToken<List<AIContext>>() {}.getType();
+
+  private static final String REQUEST_METHOD_POST = "POST";
+  private static final String REQUEST_METHOD_DELETE = "DELETE";
+  private static final String REQUEST_METHOD_GET = "GET";
+  private static final int NOT_FOUND_CODE = 404;
+
+  private final AIConfiguration config;
+  private final NettyTransport transport;
+  private final AIServiceContext defaultServiceContext;
+
+  /**
+   * Create new service with unique context
+   *
+   * @param config Service configuration data. Cannot be <code>null</code>
+   * @param transport Shared transport. Cannot be <code>null</code>
+   */
+  public NettyAIDataService(final AIConfiguration config, final NettyTransport transport) {
+    this(config, transport, null);
+  }
+
+  /**
+   * @param config Service configuration data. Cannot be <code>null</code>
+   * @param transport Shared transport. Cannot be <code>null</code>
+   * @param serviceContext Service context. If <code>null</code> then new context will be created
+   */
+  public NettyAIDataService(final AIConfiguration config, final NettyTransport transport,
+      final AIServiceContext serviceContext) {
+    if (config == null) {
+      throw new IllegalArgumentException("config should not be null");
+    }
+    if (transport == null) {
+      throw new IllegalArgumentException("transport should not be null");
+    }
+    this.config = config.clone();
+    this.transport = transport;
+    this.defaultServiceContext = serviceContext != null ? serviceContext
+        : new AIServiceContextBuilder().generateSessionId().build();
+  }
+
+  /**
+   * @return Current context used in each request. Never <code>null</code>
+   */
+  public AIServiceContext getContext() {
+    return defaultServiceContext;
+  }
+
+  /**
+   * Make request to the AI service
+   *
+   * @param request request object to the service. Cannot be <code>null</code>
+   */
+  public Future<AIResponse> request(final AIRequest request) {
+    return request(request, null, null);
+  }
+
+  /**
+   * Make request to the AI service
+   *
+   * @param request request object to the service. Cannot be <code>null</code>
+   * @param requestExtras object that can hold additional contexts, entities and headers
+   * @param serviceContext custom service context that should be used instead of the default context
+   */
+  public Future<AIResponse> request(final AIRequest request, final RequestExtras requestExtras,
+      final AIServiceContext serviceContext) {
+    if (request == null) {
+      throw new IllegalArgumentException("Request argument must not be null");
+    }
+    if (StringUtils.isEmpty(request.getLanguage())) {
+      request.setLanguage(config.getApiAiLanguage());
+    }
+    if (StringUtils.isEmpty(request.getSessionId())) {
+      request.setSessionId(getSessionId(serviceContext));
+    }
+    if (StringUtils.isEmpty(request.getTimezone())) {
+      request.setTimezone(getTimeZone(serviceContext));
+    }
+    fillRequest(request, requestExtras);
+
+    final LocalResponder localResponder = config.getLocalResponder();
+    if (localResponder != null) {
+      final AIResponse localResponse = localResponder.respond(request, requestExtras);
+      if (localResponse != null) {
+        return transport.<AIResponse>newPromise().setSuccess(localResponse);
+      }
+    }
+
+    return call(REQUEST_METHOD_POST, config.getQuestionUrl(request.getSessionId()),
+        createHeaders(requestExtras, "application/json; charset=utf-8"),
+        toBuffer(GSON.toJson(request)), createDeadline(requestExtras),
+        new QueryResponseConverter(getResponseGson()));
+  }
+
+  /**
+   * Make request to the AI service with voice data
+   *
+   * @param voiceData Recorded voice in wav format. Cannot be <code>null</code>
+   */
+  public Future<AIResponse> voiceRequest(final byte[] voiceData) {
+    return voiceRequest(voiceData, null, null);
+  }
+
+  /**
+   * Make request to the AI service with voice data
+   *
+   * @param voiceData Recorded voice in wav format. Cannot be <code>null</code>
+   * @param requestExtras object that can hold additional contexts, entities and headers
+   * @param serviceContext custom service context that should be used instead of the default context
+   */
+  public Future<AIResponse> voiceRequest(final byte[] voiceData,
+      final RequestExtras requestExtras, final AIServiceContext serviceContext) {
+    if (voiceData == null) {
+      throw new IllegalArgumentException("voiceData must not be null");
+    }
+    final AIRequest request = new AIRequest();
+    request.setLanguage(config.getApiAiLanguage());
+    request.setSessionId(getSessionId(serviceContext));
+    request.setTimezone(getTimeZone(serviceContext));
+    fillRequest(request, requestExtras);
+
+    final String boundary = "SwA" + Long.toString(System.currentTimeMillis()) + "SwA";
+    final ByteBuf content = transport.getAllocator().directBuffer();
+    ByteBufUtil.writeUtf8(content, "--" + boundary + "\r\n"
+        + "Content-Type: application/json\r\n"
+        + "Content-Disposition: form-data; name=\"request\"\r\n"
+        + "\r\n" + GSON.toJson(request) + "\r\n"
+        + "--" + boundary + "\r\n"
+        + "Content-Disposition: form-data; name=\"voiceData\"; filename=\"voice.wav\"\r\n"
+        + "Content-Type: audio/wav\r\n"
+        + "\r\n");
+    content.writeBytes(voiceData);
+    ByteBufUtil.writeUtf8(content, "\r\n--" + boundary + "--\r\n");
+
+    return call(REQUEST_METHOD_POST, config.getQuestionUrl(request.getSessionId()),
+        createHeaders(requestExtras, "multipart/form-data; boundary=" + boundary), content,
+        createDeadline(requestExtras), new QueryResponseConverter(getResponseGson()));
+  }
+
+  /**
+   * Retrieves the list of all currently active contexts for a session
+   *
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @return Future of contexts list, empty if there is no any active contexts
+   */
+  public Future<List<AIContext>> getActiveContexts(final AIServiceContext serviceContext) {
+    return call(REQUEST_METHOD_GET, config.getContextsUrl(getSessionId(serviceContext)), null,
+        new ServiceResponseConverter<List<AIContext>>() {
+          @Override
+          List<AIContext> convert(final String body) {
+            return GSON.fromJson(body, CONTEXT_LIST_TYPE);
+          }
+        });
+  }
+
+  /**
+   * Retrieves the specified context for a session
+   *
+   * @param contextName The context name
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @return Future of the context, completed with <code>null</code> if context not found
+   */
+  public Future<AIContext> getActiveContext(final String contextName,
+      final AIServiceContext serviceContext) {
+    return call(REQUEST_METHOD_GET,
+        config.getContextsUrl(getSessionId(serviceContext), contextName), null,
+        new ServiceResponseConverter<AIContext>() {
+          @Override
+          AIContext convert(final String body) {
+            return GSON.fromJson(body, AIContext.class);
+          }
+
+          @Override
+          AIContext convertNotFound(final AIResponse aiResponse) {
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Adds new active contexts for a session
+   *
+   * @param contexts Iterable collection of contexts
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @return Future of added context names list
+   */
+  public Future<List<String>> addActiveContext(final Iterable<AIContext> contexts,
+      final AIServiceContext serviceContext) {
+    return call(REQUEST_METHOD_POST, config.getContextsUrl(getSessionId(serviceContext)),
+        GSON.toJson(contexts), new ServiceResponseConverter<List<String>>() {
+          @Override
+          List<String> convert(final String body) {
+            return GSON.fromJson(body, ContextNamesResponse.class).names;
+          }
+        });
+  }
+
+  /**
+   * Deletes all active contexts for a session
+   *
+   * @param serviceContext custom service context that should be used instead of the default context
+   */
+  public Future<Void> resetActiveContexts(final AIServiceContext serviceContext) {
+    return call(REQUEST_METHOD_DELETE, config.getContextsUrl(getSessionId(serviceContext)), null,
+        new ServiceResponseConverter<Void>() {
+          @Override
+          Void convert(final String body) {
+            return null;
+          }
+        });
+  }
+
+  /**
+   * Deletes the specified context for a session
+   *
+   * @param contextName The context name
+   * @param serviceContext custom service context that should be used instead of the default context
+   * @return Future completed with <code>false</code> if context was not found
+   */
+  public Future<Boolean> removeActiveContext(final String contextName,
+      final AIServiceContext serviceContext) {
+    return call(REQUEST_METHOD_DELETE,
+        config.getContextsUrl(getSessionId(serviceContext), contextName), null,
+        new ServiceResponseConverter<Boolean>() {
+          @Override
+          Boolean convert(final String body) {
+            return true;
+          }
+
+          @Override
+          Boolean convertNotFound(final AIResponse aiResponse) {
+            return false;
+          }
+        });
+  }
+
+  /**
+   * Add a list of new entities to an agent entity list
+   *
+   * @param userEntities list of new entities data. Cannot be <code>null</code> or empty
+   * @param serviceContext custom service context that should be used instead of the default context
+   */
+  public Future<AIResponse> uploadUserEntities(final Collection<Entity> userEntities,
+      final AIServiceContext serviceContext) {
+    if (userEntities == null || userEntities.isEmpty()) {
+      final Promise<AIResponse> promise = transport.newPromise();
+      return promise.setFailure(new AIServiceException("Empty entities list"));
+    }
+    return call(REQUEST_METHOD_POST,
+        config.getUserEntitiesEndpoint(getSessionId(serviceContext)),
+        createHeaders(null, "application/json; charset=utf-8"),
+        toBuffer(GSON.toJson(userEntities)), createDeadline(null), new QueryResponseConverter(GSON));
+  }
+
+  private <T> Future<T> call(final String method, final String endpoint, final String body,
+      final ResponseConverter<T> converter) {
+    return call(method, endpoint, createHeaders(null, "application/json; charset=utf-8"),
+        body != null ? toBuffer(body) : Unpooled.EMPTY_BUFFER, createDeadline(null), converter);
+  }
+
+  private <T> Future<T> call(final String method, final String endpoint,
+      final Map<String, String> headers, final ByteBuf content, final Deadline deadline,
+      final ResponseConverter<T> converter) {
+    final Promise<T> promise = transport.newPromise();
+    final URL url;
+    try {
+      url = new URL(endpoint);
+    } catch (final MalformedURLException e) {
+      content.release();
+      return promise.setFailure(new AIServiceException(
+          "Wrong configuration. Please, connect to API.AI Service support", e));
+    }
+
+    int timeoutMillis = config.getAttemptTimeoutMillis();
+    if (deadline != null) {
+      final long remainingMillis = deadline.getRemainingMillis();
+      if (remainingMillis <= 0) {
+        content.release();
+        return promise.setFailure(new AIServiceTimeoutException(
+            "Deadline passed before request to " + endpoint + " was sent", null));
+      }
+      timeoutMillis = (int) (timeoutMillis > 0
+          ? Math.min(remainingMillis, timeoutMillis)
+          : Math.min(remainingMillis, Integer.MAX_VALUE));
+    }
+
+    final Future<Response> responseFuture =
+        transport.executeAsync(method, url, headers, content, timeoutMillis);
+    responseFuture.addListener(new FutureListener<Response>() {
+      @Override
+      public void operationComplete(final Future<Response> future) {
+        if (!future.isSuccess()) {
+          if (deadline != null && deadline.isExpired()) {
+            promise.tryFailure(new AIServiceTimeoutException(
+                "Request to the api.ai service did not complete before the deadline",
+                future.cause()));
+          } else {
+            promise.tryFailure(
+                new AIServiceException("Can't connect to the api.ai service.", future.cause()));
+          }
+          return;
+        }
+        try {
+          promise.trySuccess(converter.convert(future.getNow()));
+        } catch (final AIServiceException e) {
+          promise.tryFailure(e);
+        } catch (final JsonParseException e) {
+          promise.tryFailure(new AIServiceException(
+              "Wrong service answer format. Please, connect to API.AI Service support", e));
+        }
+      }
+    });
+    promise.addListener(new FutureListener<T>() {
+      @Override
+      public void operationComplete(final Future<T> future) {
+        if (future.isCancelled()) {
+          responseFuture.cancel(false);
+        }
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * @return Gson reading query responses as the configuration sets
+   */
+  private Gson getResponseGson() {
+    return GsonFactory.getDefaultFactory().getResponseGson(config);
+  }
+
+  /**
+   * @return The earliest of the request extras deadline and the configured request timeout.
+   *         <code>null</code> if the call is not limited
+   */
+  private Deadline createDeadline(final RequestExtras requestExtras) {
+    final Deadline configured = config.getRequestTimeoutMillis() > 0
+        ? Deadline.after(config.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS)
+        : null;
+    return Deadline.earliest(requestExtras != null ? requestExtras.getDeadline() : null,
+        configured);
+  }
+
+  private Map<String, String> createHeaders(final RequestExtras requestExtras,
+      final String contentType) {
+    final Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("Authorization", "Bearer " + config.getApiKey());
+    headers.put("Content-Type", contentType);
+    headers.put("Accept", "application/json");
+    if (requestExtras != null && requestExtras.hasAdditionalHeaders()) {
+      headers.putAll(requestExtras.getAdditionalHeaders());
+    }
+    return headers;
+  }
+
+  private ByteBuf toBuffer(final String body) {
+    final ByteBuf content = transport.getAllocator().directBuffer(ByteBufUtil.utf8MaxBytes(body));
+    ByteBufUtil.writeUtf8(content, body);
+    return content;
+  }
+
+  private static void fillRequest(final AIRequest request, final RequestExtras requestExtras) {
+    if (requestExtras == null) {
+      return;
+    }
+    if (requestExtras.hasContexts()) {
+      request.setContexts(requestExtras.getContexts());
+    }
+    if (requestExtras.hasEntities()) {
+      request.setEntities(requestExtras.getEntities());
+    }
+    if (requestExtras.getLocation() != null) {
+      request.setLocation(requestExtras.getLocation());
+    }
+  }
+
+  private String getSessionId(final AIServiceContext serviceContext) {
+    return serviceContext != null ? serviceContext.getSessionId()
+        : defaultServiceContext.getSessionId();
+  }
+
+  private String getTimeZone(final AIServiceContext serviceContext) {
+    final TimeZone timeZone = serviceContext != null
+        ? serviceContext.getTimeZone()
+        : defaultServiceContext.getTimeZone();
+    return (timeZone != null ? timeZone : Calendar.getInstance().getTimeZone()).getID();
+  }
+
+  private interface ResponseConverter<T> {
+    T convert(Response response) throws AIServiceException;
+  }
+
+  /**
+   * Converts responses of query and user entities requests
+   */
+  private static class QueryResponseConverter implements ResponseConverter<AIResponse> {
+
+    private final Gson gson;
+
+    QueryResponseConverter(final Gson gson) {
+      this.gson = gson;
+    }
+
+    @Override
+    public AIResponse convert(final Response response) throws AIServiceException {
+      if (StringUtils.isEmpty(response.getBody())) {
+        throw new AIServiceException(
+            "Empty response from ai service. Please check configuration and Internet connection.");
+      }
+      final AIResponse aiResponse = gson.fromJson(response.getBody(), AIResponse.class);
+      if (aiResponse == null) {
+        throw new AIServiceException("API.AI response parsed as null.");
+      }
+      if (aiResponse.isError()) {
+        throw new AIServiceException(aiResponse);
+      }
+      aiResponse.cleanup();
+      return aiResponse;
+    }
+  }
+
+  /**
+   * Converts responses of contexts requests, failing on error status in the body
+   */
+  private abstract static class ServiceResponseConverter<T> implements ResponseConverter<T> {
+
+    @Override
+    public T convert(final Response response) throws AIServiceException {
+      final String body = response.getBody();
+      if (response.getCode() >= 400) {
+        throw new AIServiceException(body);
+      }
+      try {
+        final AIResponse aiResponse = GSON.fromJson(body, AIResponse.class);
+        if (aiResponse != null && aiResponse.getStatus() != null
+            && aiResponse.getStatus().getCode() != 200) {
+          if (aiResponse.getStatus().getCode() == NOT_FOUND_CODE) {
+            return convertNotFound(aiResponse);
+          }
+          throw new AIServiceException(aiResponse);
+        }
+      } catch (final JsonParseException e) {
+        // response is not in a expected format
+      }
+      return convert(body);
+    }
+
+    abstract T convert(String body);
+
+    T convertNotFound(final AIResponse aiResponse) throws AIServiceException {
+      throw new AIServiceException(aiResponse);
+    }
+  }
+
+  private static class ContextNamesResponse {
+    List<String> names;
+  }
+}
@@ -0,0 +1,543 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.netty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLException;
+
+import ai.api.http.Compression;
+import ai.api.http.HttpTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelPoolMap;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Non-blocking transport running all requests on a small event loop group.
+ * <p>
+ * Connections are kept in a fixed size pool per service host and reused with HTTP/1.1
+ * keep-alive. Native epoll is used on Linux when <code>netty-transport-native-epoll</code> is on
+ * the class path, NIO otherwise. Request bodies are written from pooled direct buffers. A request
+ * is resent on another connection if a reused one was closed before the request was written, at
+ * most three times. Requests already written are never resent.
+ * <p>
+ * Responses are requested compressed and decompressed by the pipeline. Request bodies are
+ * compressed and sizes are counted if a {@link Compression} is set by
+ * {@link #setCompression(Compression)}.
+ * <p>
+ * The transport can be set to <code>AIConfiguration</code> for blocking calls of
+ * <code>AIDataService</code>, or used by {@link NettyAIDataService} for calls completing
+ * futures. One instance should be shared by all services and closed on shutdown.
+ */
+public class NettyTransport implements HttpTransport, Closeable {
+
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 256;
+  private static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 60000;
+  private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+  private static final int MAX_RESPONSE_LENGTH = 16 * 1024 * 1024;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final int MAX_RESENDS = 3;
+
+  private static final AttributeKey<Promise<Response>> RESPONSE_PROMISE =
+      AttributeKey.valueOf(NettyTransport.class, "responsePromise");
+  private static final AttributeKey<Boolean> REUSED =
+      AttributeKey.valueOf(NettyTransport.class, "reused");
+
+  private final EventLoopGroup group;
+  private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+  private final ChannelPoolMap<String, FixedChannelPool> pools;
+  private final long requestTimeoutMillis;
+  private volatile Compression compression;
+
+  /**
+   * Create transport with default event loop threads count and connection pool size
+   */
+  public NettyTransport() {
+    this(0, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_REQUEST_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param threads Count of event loop threads. If 0 then twice the count of processors
+   * @param maxConnectionsPerHost Maximum count of open connections to a service host, requests
+   *        over the limit wait for a free connection
+   * @param requestTimeoutMillis Time to wait for a connection and a response
+   */
+  public NettyTransport(final int threads, final int maxConnectionsPerHost,
+      final long requestTimeoutMillis) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+    }
+    this.requestTimeoutMillis = requestTimeoutMillis;
+
+    final Class<? extends SocketChannel> channelClass;
+    if (isEpollAvailable()) {
+      group = new EpollEventLoopGroup(threads);
+      channelClass = EpollSocketChannel.class;
+    } else {
+      group = new NioEventLoopGroup(threads);
+      channelClass = NioSocketChannel.class;
+    }
+
+    final SslContext sslContext;
+    try {
+      sslContext = SslContextBuilder.forClient().build();
+    } catch (final SSLException e) {
+      throw new IllegalStateException("Can't initialize TLS", e);
+    }
+
+    final Bootstrap bootstrap = new Bootstrap()
+        .group(group)
+        .channel(channelClass)
+        .option(ChannelOption.ALLOCATOR, allocator)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .option(ChannelOption.SO_KEEPALIVE, true)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS);
+
+    pools = new AbstractChannelPoolMap<String, FixedChannelPool>() {
+      @Override
+      protected FixedChannelPool newPool(final String origin) {
+        final URI uri = URI.create(origin);
+        final boolean secure = "https".equals(uri.getScheme());
+        return new FixedChannelPool(
+            bootstrap.clone().remoteAddress(
+                InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort())),
+            new AbstractChannelPoolHandler() {
+              @Override
+              public void channelCreated(final Channel channel) {
+                final ChannelPipeline pipeline = channel.pipeline();
+                if (secure) {
+                  pipeline.addLast(
+                      sslContext.newHandler(channel.alloc(), uri.getHost(), uri.getPort()));
+                }
+                pipeline.addLast(new HttpClientCodec());
+                final ReceivedBytesCounter receivedBytesCounter = new ReceivedBytesCounter();
+                pipeline.addLast(receivedBytesCounter);
+                pipeline.addLast(new HttpContentDecompressor());
+                pipeline.addLast(new HttpObjectAggregator(MAX_RESPONSE_LENGTH));
+                pipeline.addLast(new ResponseHandler(NettyTransport.this, receivedBytesCounter));
+              }
+            }, maxConnectionsPerHost);
+      }
+    };
+  }
+
+  /**
+   * Blocking call for <code>AIDataService</code>. Should not be called from event loop threads.
+   */
+  @Override
+  public Response execute(final String method, final URL url, final Map<String, String> headers,
+      final String body, final int timeoutMillis) throws IOException {
+    final Future<Response> future = executeAsync(method, url, headers, body, timeoutMillis);
+    try {
+      future.await();
+    } catch (final InterruptedException e) {
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      final InterruptedIOException error = new InterruptedIOException("Request interrupted");
+      error.initCause(e);
+      throw error;
+    }
+    if (future.isSuccess()) {
+      return future.getNow();
+    }
+    final Throwable cause = future.cause();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    }
+    throw new IOException("Request failed", cause);
+  }
+
+  /**
+   * Send a request without blocking the calling thread
+   *
+   * @param body Request body encoded as UTF-8. <code>null</code> if the request has no body
+   * @param timeoutMillis Time to get the response if shorter than the transport request timeout.
+   *        <code>0</code> if only the transport timeout applies
+   * @return Future completed with the response or failed if no response was received.
+   *         Cancelling the future closes its connection.
+   */
+  public Future<Response> executeAsync(final String method, final URL url,
+      final Map<String, String> headers, final String body, final int timeoutMillis) {
+    ByteBuf content = Unpooled.EMPTY_BUFFER;
+    if (body != null) {
+      content = allocator.directBuffer(ByteBufUtil.utf8MaxBytes(body));
+      ByteBufUtil.writeUtf8(content, body);
+    }
+    return executeAsync(method, url, headers, content, timeoutMillis);
+  }
+
+  /**
+   * Send a request without blocking the calling thread
+   *
+   * @param body Request body. Released by the transport
+   * @param timeoutMillis Time to get the response if shorter than the transport request timeout.
+   *        <code>0</code> if only the transport timeout applies
+   * @return Future completed with the response or failed if no response was received.
+   *         Cancelling the future closes its connection.
+   */
+  public Future<Response> executeAsync(final String method, final URL url,
+      final Map<String, String> requestHeaders, final ByteBuf body, final int timeoutMillis) {
+    final Promise<Response> promise = group.next().newPromise();
+    final FixedChannelPool pool;
+    final ByteBuf content;
+    Map<String, String> headers = requestHeaders;
+    try {
+      pool = pools.get(getOrigin(url));
+      content = compress(body);
+    } catch (final RuntimeException e) {
+      body.release();
+      return promise.setFailure(e);
+    } catch (final IOException e) {
+      body.release();
+      return promise.setFailure(e);
+    }
+    if (content != body) {
+      headers = new LinkedHashMap<>(requestHeaders);
+      headers.put(HttpHeaderNames.CONTENT_ENCODING.toString(), HttpHeaderValues.GZIP.toString());
+    }
+
+    promise.addListener(new GenericFutureListener<Future<Response>>() {
+      @Override
+      public void operationComplete(final Future<Response> future) {
+        content.release();
+      }
+    });
+    acquire(pool, method, url, headers, content, promise, 0);
+
+    final long effectiveTimeoutMillis = timeoutMillis > 0
+        ? Math.min(timeoutMillis, requestTimeoutMillis)
+        : requestTimeoutMillis;
+    final ScheduledFuture<?> timeout = group.schedule(new Runnable() {
+      @Override
+      public void run() {
+        promise.tryFailure(new IOException(
+            "No response received in " + effectiveTimeoutMillis + " ms from " + url));
+      }
+    }, effectiveTimeoutMillis, TimeUnit.MILLISECONDS);
+    promise.addListener(new GenericFutureListener<Future<Response>>() {
+      @Override
+      public void operationComplete(final Future<Response> future) {
+        timeout.cancel(false);
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Get compression of request bodies and counter of compressed sizes
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Set compression of request bodies and counter of compressed sizes, usually the one of
+   * <code>AIConfiguration</code>. Responses are requested compressed regardless of it.
+   *
+   * @param compression If <code>null</code> then request bodies are sent uncompressed
+   */
+  public void setCompression(final Compression compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * @return Promise completed on an event loop of the transport
+   */
+  <T> Promise<T> newPromise() {
+    return group.next().newPromise();
+  }
+
+  ByteBufAllocator getAllocator() {
+    return allocator;
+  }
+
+  /**
+   * Stop event loops and close all connections
+   */
+  @Override
+  public void close() {
+    group.shutdownGracefully(0, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Compress the body with gzip if the compression is set and the body is large enough
+   *
+   * @param body Released if a compressed body is returned
+   */
+  private ByteBuf compress(final ByteBuf body) throws IOException {
+    final Compression compression = this.compression;
+    if (compression == null) {
+      return body;
+    }
+    final int bodyLength = body.readableBytes();
+    if (!compression.shouldCompress(bodyLength)) {
+      compression.onRequest(bodyLength, bodyLength);
+      return body;
+    }
+    final byte[] compressed = Compression.gzip(ByteBufUtil.getBytes(body));
+    body.release();
+    compression.onRequest(bodyLength, compressed.length);
+    return Unpooled.wrappedBuffer(compressed);
+  }
+
+  /**
+   * @param resends Count of attempts which failed on closed reused connections before writing
+   */
+  private void acquire(final FixedChannelPool pool, final String method, final URL url,
+      final Map<String, String> headers, final ByteBuf content, final Promise<Response> promise,
+      final int resends) {
+    // Each attempt writes its own view of the body, the original is kept for a retry
+    final ByteBuf body = content.retainedDuplicate();
+    pool.acquire().addListener(new FutureListener<Channel>() {
+      @Override
+      public void operationComplete(final Future<Channel> acquired) {
+        if (!acquired.isSuccess()) {
+          body.release();
+          promise.tryFailure(acquired.cause());
+          return;
+        }
+        final Channel channel = acquired.getNow();
+        if (promise.isDone()) {
+          body.release();
+          pool.release(channel);
+          return;
+        }
+        final boolean reused = channel.attr(REUSED).getAndSet(Boolean.TRUE) != null;
+        final Promise<Response> attempt = channel.eventLoop().newPromise();
+        final AtomicBoolean written = new AtomicBoolean();
+        attempt.addListener(new GenericFutureListener<Future<Response>>() {
+          @Override
+          public void operationComplete(final Future<Response> future) {
+            channel.attr(RESPONSE_PROMISE).set(null);
+            if (!future.isSuccess()) {
+              // The connection state is unknown after a failure or cancellation
+              channel.close();
+            }
+            pool.release(channel);
+
+            if (future.isSuccess()) {
+              promise.trySuccess(future.getNow());
+            } else if (reused && !written.get() && resends < MAX_RESENDS
+                && future.cause() instanceof ClosedChannelException) {
+              // The service closed an idle keep-alive connection before the request was written,
+              // so it is safe to send it again even if not idempotent
+              acquire(pool, method, url, headers, content, promise, resends + 1);
+            } else {
+              promise.tryFailure(future.cause());
+            }
+          }
+        });
+        promise.addListener(new GenericFutureListener<Future<Response>>() {
+          @Override
+          public void operationComplete(final Future<Response> future) {
+            if (!future.isSuccess()) {
+              attempt.tryFailure(future.cause() != null
+                  ? future.cause()
+                  : new IOException("Request cancelled"));
+            }
+          }
+        });
+        send(channel, createRequest(method, url, headers, body), attempt, written);
+      }
+    });
+  }
+
+  /**
+   * @param written Set when the whole request was written to the connection
+   */
+  private static void send(final Channel channel, final FullHttpRequest request,
+      final Promise<Response> attempt, final AtomicBoolean written) {
+    channel.attr(RESPONSE_PROMISE).set(attempt);
+    channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(final ChannelFuture future) {
+        if (future.isSuccess()) {
+          written.set(true);
+        } else {
+          attempt.tryFailure(future.cause());
+        }
+      }
+    });
+  }
+
+  private static FullHttpRequest createRequest(final String method, final URL url,
+      final Map<String, String> headers, final ByteBuf content) {
+    final String path = url.getFile().isEmpty() ? "/" : url.getFile();
+    final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+        HttpMethod.valueOf(method), path, content);
+    request.headers().set(HttpHeaderNames.HOST, url.getAuthority());
+    request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP_DEFLATE);
+    for (final Map.Entry<String, String> header : headers.entrySet()) {
+      request.headers().set(header.getKey(), header.getValue());
+    }
+    HttpUtil.setContentLength(request, content.readableBytes());
+    return request;
+  }
+
+  /**
+   * @return <code>true</code> if the optional native epoll transport is on the class path and
+   *         can be loaded
+   */
+  private static boolean isEpollAvailable() {
+    try {
+      return Epoll.isAvailable();
+    } catch (final NoClassDefFoundError e) {
+      return false;
+    }
+  }
+
+  private static String getOrigin(final URL url) {
+    final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return url.getProtocol() + "://" + url.getHost() + ":" + port;
+  }
+
+  /**
+   * Counts bytes of the response body as received, before decompression
+   */
+  private static class ReceivedBytesCounter extends ChannelInboundHandlerAdapter {
+
+    /**
+     * Accessed by the event loop of the channel only
+     */
+    private long count;
+
+    @Override
+    public void channelRead(final ChannelHandlerContext context, final Object message)
+        throws Exception {
+      if (message instanceof HttpResponse) {
+        count = 0;
+      }
+      if (message instanceof HttpContent) {
+        count += ((HttpContent) message).content().readableBytes();
+      }
+      super.channelRead(context, message);
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Completes the promise of the request sent over the channel
+   */
+  private static class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    private final NettyTransport transport;
+    private final ReceivedBytesCounter receivedBytesCounter;
+
+    ResponseHandler(final NettyTransport transport,
+        final ReceivedBytesCounter receivedBytesCounter) {
+      this.transport = transport;
+      this.receivedBytesCounter = receivedBytesCounter;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext context,
+        final FullHttpResponse response) {
+      final Promise<Response> promise = context.channel().attr(RESPONSE_PROMISE).getAndSet(null);
+      if (!HttpUtil.isKeepAlive(response)) {
+        // Closed before the promise releases the channel to the pool
+        context.close();
+      }
+      final Compression compression = transport.compression;
+      if (compression != null) {
+        compression.onResponse(response.content().readableBytes(),
+            receivedBytesCounter.getCount());
+      }
+      if (promise != null) {
+        final String body = response.content().isReadable()
+            ? response.content().toString(UTF8)
+            : null;
+        promise.trySuccess(new Response(response.status().code(), body));
+      }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext context) throws Exception {
+      fail(context, new ClosedChannelException());
+      super.channelInactive(context);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext context, final Throwable cause) {
+      fail(context, cause);
+      context.close();
+    }
+
+    private static void fail(final ChannelHandlerContext context, final Throwable cause) {
+      final Promise<Response> promise = context.channel().attr(RESPONSE_PROMISE).getAndSet(null);
+      if (promise != null) {
+        promise.tryFailure(cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.netty;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.AIConfiguration;
+import ai.api.AIServiceException;
+import ai.api.AIServiceTimeoutException;
+import ai.api.Deadline;
+import ai.api.RequestExtras;
+import ai.api.model.AIContext;
+import ai.api.model.AIRequest;
+import ai.api.model.AIResponse;
+import io.netty.util.concurrent.Future;
+
+public class NettyAIDataServiceTest {
+
+  private static final String RESPONSE = "{\"id\":\"1\",\"result\":{\"action\":\"weather\"},"
+      + "\"status\":{\"code\":200,\"errorType\":\"success\"}}";
+
+  private HttpServer server;
+  private NettyTransport transport;
+  private AIConfiguration config;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    transport = new NettyTransport(1, 4, 5000);
+    config = new AIConfiguration("token");
+    config.setServiceUrl("http://localhost:" + server.getAddress().getPort() + "/");
+  }
+
+  @After
+  public void tearDown() {
+    transport.close();
+    server.stop(0);
+  }
+
+  @Test
+  public void testRequest() throws Exception {
+    final String[] authorization = new String[1];
+    server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        authorization[0] = exchange.getRequestHeaders().getFirst("Authorization");
+        drain(exchange.getRequestBody());
+        respond(exchange, 200, RESPONSE);
+      }
+    });
+    NettyAIDataService dataService = new NettyAIDataService(config, transport);
+
+    Future<AIResponse> future = dataService.request(new AIRequest("weather"));
+    assertTrue(future.await(5, TimeUnit.SECONDS));
+    assertTrue(future.isSuccess());
+    assertEquals("weather", future.getNow().getResult().getAction());
+    assertEquals("Bearer token", authorization[0]);
+  }
+
+  @Test
+  public void testErrorStatus() throws Exception {
+    server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        respond(exchange, 401, "{\"status\":{\"code\":401,\"errorType\":\"unauthorized\"}}");
+      }
+    });
+    NettyAIDataService dataService = new NettyAIDataService(config, transport);
+
+    Future<AIResponse> future = dataService.request(new AIRequest("weather"));
+    assertTrue(future.await(5, TimeUnit.SECONDS));
+    assertTrue(future.cause() instanceof AIServiceException);
+    assertEquals(401, ((AIServiceException) future.cause()).getResponse().getStatus().getCode()
+        .intValue());
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, RESPONSE);
+      }
+    });
+    NettyAIDataService dataService = new NettyAIDataService(config, transport);
+    RequestExtras extras = new RequestExtras();
+    extras.setDeadline(Deadline.after(100, TimeUnit.MILLISECONDS));
+
+    try {
+      Future<AIResponse> future = dataService.request(new AIRequest("weather"), extras, null);
+      assertTrue(future.await(2, TimeUnit.SECONDS));
+      assertTrue(future.cause() instanceof AIServiceTimeoutException);
+
+      Future<AIResponse> expired = dataService.request(new AIRequest("weather"), extras, null);
+      assertTrue(expired.cause() instanceof AIServiceTimeoutException);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final CountDownLatch received = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        received.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, RESPONSE);
+      }
+    });
+    NettyAIDataService dataService = new NettyAIDataService(config, transport);
+
+    try {
+      Future<AIResponse> future = dataService.request(new AIRequest("weather"));
+      assertTrue(received.await(5, TimeUnit.SECONDS));
+      assertTrue(future.cancel(false));
+      assertTrue(future.isCancelled());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testContexts() throws Exception {
+    server.createContext("/contexts", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().endsWith("/missing")) {
+          respond(exchange, 200, "{\"status\":{\"code\":404,\"errorType\":\"not_found\"}}");
+        } else {
+          respond(exchange, 200, "[{\"name\":\"weather\",\"lifespan\":2}]");
+        }
+      }
+    });
+    NettyAIDataService dataService = new NettyAIDataService(config, transport);
+
+    Future<List<AIContext>> contexts = dataService.getActiveContexts(null);
+    assertTrue(contexts.await(5, TimeUnit.SECONDS));
+    assertEquals(1, contexts.getNow().size());
+    assertEquals("weather", contexts.getNow().get(0).getName());
+
+    Future<AIContext> missing = dataService.getActiveContext("missing", null);
+    assertTrue(missing.await(5, TimeUnit.SECONDS));
+    assertTrue(missing.isSuccess());
+    assertNull(missing.getNow());
+  }
+
+  private static void drain(InputStream inputStream) throws IOException {
+    byte[] chunk = new byte[4096];
+    while (inputStream.read(chunk) != -1) {
+      // discard
+    }
+    inputStream.close();
+  }
+
+  private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+    byte[] data = body.getBytes("UTF-8");
+    exchange.sendResponseHeaders(code, data.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(data);
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2017 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ai.api.netty;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ai.api.http.Compression;
+import ai.api.http.HttpTransport.Response;
+import io.netty.util.concurrent.Future;
+
+public class NettyTransportTest {
+
+  private HttpServer server;
+  private NettyTransport transport;
+  private String baseUrl;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+    transport = new NettyTransport(1, 4, 5000);
+  }
+
+  @After
+  public void tearDown() {
+    transport.close();
+    server.stop(0);
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    final Map<String, String> received = Collections.synchronizedMap(new HashMap<String, String>());
+    final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    server.createContext("/echo", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        received.put("method", exchange.getRequestMethod());
+        received.put("query", exchange.getRequestURI().getQuery());
+        received.put("X-Header", exchange.getRequestHeaders().getFirst("X-Header"));
+        respond(exchange, 201, read(exchange.getRequestBody()));
+      }
+    });
+    URL url = new URL(baseUrl + "/echo?v=1");
+
+    Response response = transport.execute("POST", url,
+        Collections.singletonMap("X-Header", "value"), "Привет", 0);
+    assertEquals(201, response.getCode());
+    assertEquals("Привет", response.getBody());
+    assertEquals("POST", received.get("method"));
+    assertEquals("v=1", received.get("query"));
+    assertEquals("value", received.get("X-Header"));
+
+    assertNull(transport.execute("GET", url, Collections.<String, String>emptyMap(), null, 0)
+        .getBody());
+    assertNull(received.get("X-Header"));
+    assertEquals("Keep-alive connection should be reused", 1, clientPorts.size());
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/slow", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, "late");
+      }
+    });
+    long start = System.nanoTime();
+    try {
+      transport.execute("GET", new URL(baseUrl + "/slow"),
+          Collections.<String, String>emptyMap(), null, 100);
+      fail("Timeout expected");
+    } catch (IOException e) {
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final CountDownLatch received = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    server.createContext("/slow", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        received.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, "late");
+      }
+    });
+    server.createContext("/fast", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "fast");
+      }
+    });
+
+    Future<Response> future = transport.executeAsync("GET", new URL(baseUrl + "/slow"),
+        Collections.<String, String>emptyMap(), (String) null, 0);
+    assertTrue(received.await(5, TimeUnit.SECONDS));
+    assertTrue(future.cancel(false));
+    assertTrue(future.isCancelled());
+    release.countDown();
+
+    assertEquals("fast", transport.execute("GET", new URL(baseUrl + "/fast"),
+        Collections.<String, String>emptyMap(), null, 0).getBody());
+  }
+
+  @Test
+  public void testNoResendAfterWrite() throws Exception {
+    final AtomicInteger requestCount = new AtomicInteger();
+    server.createContext("/query", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        read(exchange.getRequestBody());
+        if (requestCount.incrementAndGet() == 1) {
+          respond(exchange, 200, "{}");
+        } else {
+          // Close the connection without responding
+          exchange.close();
+        }
+      }
+    });
+    URL url = new URL(baseUrl + "/query");
+    Map<String, String> headers = Collections.emptyMap();
+
+    assertEquals(200, transport.execute("POST", url, headers, "{}", 0).getCode());
+    try {
+      transport.execute("POST", url, headers, "{}", 0);
+      fail("Request closed by the service should fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals("Written request should not be resent", 2, requestCount.get());
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    final Map<String, String> received = new ConcurrentHashMap<>();
+    final String body = createBody();
+    server.createContext("/gzip", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        received.put("Content-Encoding", String.valueOf(encoding));
+        received.put("body", read(Compression.decode(exchange.getRequestBody(), encoding)));
+
+        byte[] data = Compression.gzip(body.getBytes("UTF-8"));
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(data);
+        }
+      }
+    });
+    Compression compression = new Compression();
+    compression.setRequestThreshold(1024);
+    transport.setCompression(compression);
+
+    Response response = transport.execute("POST", new URL(baseUrl + "/gzip"),
+        Collections.<String, String>emptyMap(), body, 0);
+    assertEquals(body, response.getBody());
+    assertEquals("gzip", received.get("Content-Encoding"));
+    assertEquals(body, received.get("body"));
+    assertEquals(1, compression.getCompressedRequestCount());
+    assertTrue(compression.getRequestCompressionRatio() > 1);
+    assertTrue(compression.getResponseCompressionRatio() > 1);
+  }
+
+  private static String createBody() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      builder.append("{\"name\":\"entity\",\"value\":").append(i).append("}");
+    }
+    return builder.toString();
+  }
+
+  private static String read(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[4096];
+    int count;
+    while ((count = inputStream.read(chunk)) != -1) {
+      buffer.write(chunk, 0, count);
+    }
+    inputStream.close();
+    return buffer.toString("UTF-8");
+  }
+
+  private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+    byte[] data = body.getBytes("UTF-8");
+    exchange.sendResponseHeaders(code, data.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(data);
+    }
+  }
+}